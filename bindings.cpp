@@ -4,7 +4,9 @@
  * binding available at: https://github.com/nmslib/hnswlib/blob/master/python_bindings/bindings.cpp
  * 
  * Some modifications and simplifications have been done on the C side. 
- * The multithread support can be used and handled on the Java side.
+ * The multithread support can be used and handled on the Java side. Batch
+ * operations (queries and insertions) are the exception: they are spread
+ * over native threads.
  * 
  * This work is still in progress. Please feel free to contribute and give ideas.
  */
@@ -12,6 +14,13 @@
 #include <iostream>
 #include <atomic>
 #include <cmath>
+#include <thread>
+#include <mutex>
+#include <vector>
+#include <exception>
+#include <stdexcept>
+#include <streambuf>
+#include <algorithm>
 #include "hnswlib/hnswlib.h"
 
 #if _WIN32
@@ -31,24 +40,256 @@
 #define RESULT_GET_DATA_FAILED 6
 #define RESULT_ID_NOT_IN_INDEX 7
 #define RESULT_INDEX_NOT_INITIALIZED 8
+#define RESULT_INDEX_IS_READ_ONLY 9
 
 #define TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK(block)    if (index_cleared) return RESULT_ONCE_INDEX_IS_CLEARED_IT_CANNOT_BE_REUSED;  int result_code = RESULT_SUCCESSFUL; try { block } catch (...) { result_code = RESULT_EXCEPTION_THROWN; }; return result_code;
 #define TRY_CATCH_RETURN_INT_BLOCK(block)    if (!index_initialized) return RESULT_INDEX_NOT_INITIALIZED; TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK(block)
 
+/*
+ * Replacement for the OpenMP "parallel for" based on the one available in the python bindings.
+ * The function fn is called for every id in [start, end) by one of the numThreads workers.
+ */
+template<class Function>
+inline void ParallelFor(size_t start, size_t end, size_t numThreads, Function fn) {
+    if (numThreads <= 0) {
+        numThreads = std::thread::hardware_concurrency();
+    }
+
+    if (numThreads == 1) {
+        for (size_t id = start; id < end; id++) {
+            fn(id, 0);
+        }
+    } else {
+        std::vector<std::thread> threads;
+        std::atomic<size_t> current(start);
+
+        // keep track of exceptions in threads
+        // https://stackoverflow.com/a/32428427/1713196
+        std::exception_ptr lastException = nullptr;
+        std::mutex lastExceptMutex;
+
+        for (size_t threadId = 0; threadId < numThreads; ++threadId) {
+            threads.push_back(std::thread([&, threadId] {
+                while (true) {
+                    size_t id = current.fetch_add(1);
+
+                    if ((id >= end)) {
+                        break;
+                    }
+
+                    try {
+                        fn(id, threadId);
+                    } catch (...) {
+                        std::unique_lock<std::mutex> lastExcepLock(lastExceptMutex);
+                        lastException = std::current_exception();
+                        /*
+                         * This will work even when current is the largest value that
+                         * size_t can fit, because fetch_add returns the previous value
+                         * before the increment (what will result in overflow
+                         * and produce 0 instead of current + 1).
+                         */
+                        current = end;
+                        break;
+                    }
+                }
+            }));
+        }
+        for (auto &thread : threads) {
+            thread.join();
+        }
+        if (lastException) {
+            std::rethrow_exception(lastException);
+        }
+    }
+}
+
+/*
+ * Callbacks used to stream an index from/to the Java side (e.g., a channel). The write
+ * callback returns 0 when all the bytes were consumed; the read callback returns the
+ * number of bytes copied into the buffer (0 at the end of the stream). Both return a
+ * negative value on errors.
+ */
+typedef int (*WriteCallback)(const char* buffer, int length);
+typedef int (*ReadCallback)(char* buffer, int length);
+
+#define STREAM_CHUNK_SIZE (1 << 20)
+
+/*
+ * Output stream buffer which hands chunks of (at most) STREAM_CHUNK_SIZE bytes to a
+ * write callback. Small writes are gathered in a buffer; big ones are passed through.
+ */
+class CallbackOutputBuffer : public std::streambuf {
+public:
+    explicit CallbackOutputBuffer(WriteCallback callback) : callback(callback), buffer(STREAM_CHUNK_SIZE) {
+        setp(buffer.data(), buffer.data() + buffer.size());
+    }
+
+protected:
+    int_type overflow(int_type ch) override {
+        if (!flush_buffer())
+            return traits_type::eof();
+        if (!traits_type::eq_int_type(ch, traits_type::eof())) {
+            *pptr() = traits_type::to_char_type(ch);
+            pbump(1);
+        }
+        return traits_type::not_eof(ch);
+    }
+
+    std::streamsize xsputn(const char* data, std::streamsize count) override {
+        if (count <= epptr() - pptr()) {
+            std::copy(data, data + count, pptr());
+            pbump((int) count);
+            return count;
+        }
+        if (!flush_buffer())
+            return 0;
+        std::streamsize written = 0;
+        while (written < count) {
+            int length = (int) std::min<std::streamsize>(count - written, STREAM_CHUNK_SIZE);
+            if (callback(data + written, length) != 0)
+                return written;
+            written += length;
+        }
+        return written;
+    }
+
+    int sync() override {
+        return flush_buffer() ? 0 : -1;
+    }
+
+private:
+    bool flush_buffer() {
+        int length = (int) (pptr() - pbase());
+        if (length > 0 && callback(pbase(), length) != 0)
+            return false;
+        setp(buffer.data(), buffer.data() + buffer.size());
+        return true;
+    }
+
+    WriteCallback callback;
+    std::vector<char> buffer;
+};
+
+/*
+ * Input stream buffer which reads chunks of (at most) STREAM_CHUNK_SIZE bytes through
+ * a read callback. Big reads are copied straight into the destination.
+ */
+class CallbackInputBuffer : public std::streambuf {
+public:
+    explicit CallbackInputBuffer(ReadCallback callback) : callback(callback), buffer(STREAM_CHUNK_SIZE) {
+        setg(buffer.data(), buffer.data(), buffer.data());
+    }
+
+protected:
+    int_type underflow() override {
+        if (gptr() < egptr())
+            return traits_type::to_int_type(*gptr());
+        int length = callback(buffer.data(), (int) buffer.size());
+        if (length <= 0)
+            return traits_type::eof();
+        setg(buffer.data(), buffer.data(), buffer.data() + length);
+        return traits_type::to_int_type(*gptr());
+    }
+
+    std::streamsize xsgetn(char* data, std::streamsize count) override {
+        std::streamsize read = std::min<std::streamsize>(count, egptr() - gptr());
+        std::copy(gptr(), gptr() + read, data);
+        gbump((int) read);
+        while (read < count) {
+            int length = callback(data + read, (int) std::min<std::streamsize>(count - read, STREAM_CHUNK_SIZE));
+            if (length <= 0)
+                break;
+            read += length;
+        }
+        return read;
+    }
+
+private:
+    ReadCallback callback;
+    std::vector<char> buffer;
+};
+
+/*
+ * Filter backed by a bitset over the labels (bit i of word i / 64 is set when
+ * label i is allowed). Labels beyond the bitset are not allowed.
+ */
+class BitsetFilter : public hnswlib::BaseFilterFunctor {
+public:
+    BitsetFilter(const uint64_t* words, size_t number_of_words) :
+            words(words), number_of_words(number_of_words) {
+    }
+
+    bool operator()(hnswlib::labeltype id) {
+        size_t word = id >> 6;
+        return word < number_of_words && ((words[word] >> (id & 63)) & 1);
+    }
+
+private:
+    const uint64_t* words;
+    size_t number_of_words;
+};
+
+/*
+ * Creates the space with the specified name; quantized spaces are also returned through
+ * quantized_space (NULL otherwise).
+ */
+hnswlib::SpaceInterface<float>* create_space(const std::string &space_name, int dim,
+                                             bool &data_must_be_normalized, hnswlib::QuantizedSpace* &quantized_space) {
+    data_must_be_normalized = false;
+    quantized_space = NULL;
+    if(space_name=="L2") {
+        return new hnswlib::L2Space(dim);
+    } else if(space_name=="IP") {
+        return new hnswlib::InnerProductSpace(dim);
+    } else if(space_name=="COSINE") {
+        data_must_be_normalized = true;
+        return new hnswlib::InnerProductSpace(dim);
+    } else if(space_name=="COSINE_INT8") {
+        data_must_be_normalized = true;
+        return quantized_space = new hnswlib::Int8CosineSpace(dim);
+    } else if(space_name=="L2_FP16") {
+        return quantized_space = new hnswlib::HalfSpace(dim, false);
+    } else if(space_name=="IP_FP16") {
+        return quantized_space = new hnswlib::HalfSpace(dim, true);
+    } else if(space_name=="COSINE_FP16") {
+        data_must_be_normalized = true;
+        return quantized_space = new hnswlib::HalfSpace(dim, true);
+    } else {
+        throw std::invalid_argument("Unknown space: " + space_name);
+    }
+}
+
+void normalize_vector(float* array, int dim) {
+    float norm = 0.0f;
+    for (int i=0; i<dim; i++) {
+        norm += (array[i] * array[i]);
+    }
+    norm = 1.0f / (sqrtf(norm) + 1e-30f);
+    for (int i=0; i<dim; i++) {
+        array[i] = array[i] * norm;
+    }
+}
+
+/*
+ * Quantized spaces store (and compare) encoded vectors: the input is encoded into a
+ * buffer of the calling thread, which is valid until the next call on the same thread.
+ */
+const void* encode_vector(hnswlib::QuantizedSpace* quantized_space, const float* vector) {
+    if (!quantized_space) {
+        return vector;
+    }
+    static thread_local std::vector<char> buffer;
+    buffer.resize(quantized_space->get_data_size());
+    quantized_space->encode(vector, buffer.data());
+    return buffer.data();
+}
+
 template<typename dist_t, typename data_t=float>
 class Index {
 public:
     Index(const std::string &space_name, const int dim) :
             space_name(space_name), dim(dim) {
-        data_must_be_normalized = false;
-        if(space_name=="L2") {
-            l2space = new hnswlib::L2Space(dim);
-        } else if(space_name=="IP") {
-            l2space = new hnswlib::InnerProductSpace(dim);
-        } else if(space_name=="COSINE") {
-            l2space = new hnswlib::InnerProductSpace(dim);
-            data_must_be_normalized = true;
-        }
+        l2space = create_space(space_name, dim, data_must_be_normalized, quantized_space);
         appr_alg = NULL;
         index_initialized = false;
         index_cleared = false;
@@ -88,59 +329,177 @@ public:
         });
     }
 
+    int save_index_to_stream(WriteCallback write_callback) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            CallbackOutputBuffer buffer(write_callback);
+            std::ostream output(&buffer);
+            appr_alg->saveIndex(output);
+        });
+    }
+
+    int load_index_from_stream(ReadCallback read_callback, size_t max_elements) {
+        TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK({
+            if (appr_alg) {
+                std::cerr << "Warning: Calling load_index_from_stream for an already initialized index. Old index is being deallocated.";
+                delete appr_alg;
+                appr_alg = NULL;
+                index_initialized = false;
+            }
+            CallbackInputBuffer buffer(read_callback);
+            std::istream input(&buffer);
+            appr_alg = new hnswlib::HierarchicalNSW<dist_t>(l2space, input, max_elements);
+            index_initialized = true;
+        });
+    }
+
     int load_index(const std::string &path_to_index, size_t max_elements) {
         TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK({
             if (appr_alg) {
                 std::cerr << "Warning: Calling load_index for an already initialized index. Old index is being deallocated.";
                 delete appr_alg;
+                appr_alg = NULL;
+                index_initialized = false;
             }
             appr_alg = new hnswlib::HierarchicalNSW<dist_t>(l2space, path_to_index, false, max_elements);
+            index_initialized = true;
+        });
+    }
+
+    int load_index_mapped(const std::string &path_to_index) {
+        TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK({
+            if (appr_alg) {
+                std::cerr << "Warning: Calling load_index_mapped for an already initialized index. Old index is being deallocated.";
+                delete appr_alg;
+                appr_alg = NULL;
+                index_initialized = false;
+            }
+            hnswlib::HierarchicalNSW<dist_t> *mapped_alg = new hnswlib::HierarchicalNSW<dist_t>(l2space);
+            try {
+                mapped_alg->loadIndexMapped(path_to_index, l2space);
+            } catch (...) {
+                delete mapped_alg;
+                throw;
+            }
+            appr_alg = mapped_alg;
+            index_initialized = true;
         });
     }
 
+    bool is_read_only() const {
+        return appr_alg->isMapped();
+    }
+
 	void normalize_array(float* array){
-        float norm = 0.0f;
-        for (int i=0; i<dim; i++) {
-            norm += (array[i] * array[i]);
-        }
-        norm = 1.0f / (sqrtf(norm) + 1e-30f);
-        for (int i=0; i<dim; i++) {
-            array[i] = array[i] * norm;
-        }
+        normalize_vector(array, dim);
+    }
+
+    /*
+     * Identifiers are either ints (-1 meaning an incremental identifier) or 64-bit labels;
+     * both are stored as labeltype, so an int id and the long with the same value are the same item.
+     */
+    template<typename id_t>
+    int add_item(float* item, bool item_normalized, id_t id) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            if (is_read_only()) {
+                return RESULT_INDEX_IS_READ_ONLY;
+            }
+            if (get_available_slots() <= 0) {
+                return RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE;
+            }
+            try {
+                insert_item(item, item_normalized, to_label(id));
+            } catch (std::runtime_error &e) {
+                /* with parallel updates, another insertion may have taken the last slot after the check above. */
+                if (get_available_slots() <= 0) {
+                    return RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE;
+                }
+                throw;
+            }
+        });
     }
 
-    int add_item(float* item, bool item_normalized, int id) {
+    template<typename id_t>
+    int add_items(float* items, bool items_normalized, int number_of_items, id_t* ids, int number_of_threads) {
         TRY_CATCH_RETURN_INT_BLOCK({
-            if (get_current_count() >= get_max_elements()) {
+            if (is_read_only()) {
+                return RESULT_INDEX_IS_READ_ONLY;
+            }
+            if (number_of_items > get_available_slots()) {
                 return RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE;
-            }            
-            if ((data_must_be_normalized == true) && (item_normalized == false)) {
-                normalize_array(item);                
             }
-            int current_id = id != -1 ? id : incremental_id++;             
-            appr_alg->addPoint(item, current_id);                
+            if (number_of_items == 0) {
+                return RESULT_SUCCESSFUL;
+            }
+            /* without ids, the incremental labels are reserved at once so that row i gets base + i. */
+            hnswlib::labeltype base = ids == NULL ? incremental_id.fetch_add(number_of_items) : 0;
+            /* the first item is added alone, so the workers start from an existing entry point. */
+            insert_item(items, items_normalized, ids != NULL ? to_label(ids[0]) : base);
+            ParallelFor(1, number_of_items, number_of_threads, [&](size_t row, size_t /*thread_id*/) {
+                insert_item(items + row * dim, items_normalized, ids != NULL ? to_label(ids[row]) : base + row);
+            });
         });
     }
 
-    int hasId(int id) {
+    hnswlib::labeltype to_label(int id) {
+        int current_id = id != -1 ? id : incremental_id++;
+        return current_id;
+    }
+
+    static hnswlib::labeltype to_label(int64_t label) {
+        return label;
+    }
+
+    void insert_item(float* item, bool item_normalized, hnswlib::labeltype label) {
+        if ((data_must_be_normalized == true) && (item_normalized == false)) {
+            normalize_array(item);
+        }
+        appr_alg->addPoint(encode(item), label, -1, replace_deleted);
+    }
+
+    const void* encode(const float* vector) {
+        return encode_vector(quantized_space, vector);
+    }
+
+    /* free slots plus, when they can be reused, the slots of the deleted items. */
+    long get_available_slots() {
+        long available = (long) get_max_elements() - get_current_count();
+        if (replace_deleted) {
+            available += appr_alg->getDeletedCount();
+        }
+        return available;
+    }
+
+    /* label_lookup_ is guarded by cur_element_count_guard_ since insertions may run in parallel. */
+    bool find_internal_id(hnswlib::labeltype id, hnswlib::tableint &internal_id) {
+        std::unique_lock<std::mutex> lock(appr_alg->cur_element_count_guard_);
+        auto search = (appr_alg->label_lookup_.find(id));
+        if (search == (appr_alg->label_lookup_.end())) {
+            return false;
+        }
+        internal_id = search->second;
+        return true;
+    }
+
+    int hasId(hnswlib::labeltype id) {
     	TRY_CATCH_RETURN_INT_BLOCK({
-    		int label_c;
-			auto search = (appr_alg->label_lookup_.find(id));
-			if (search == (appr_alg->label_lookup_.end()) || (appr_alg->isMarkedDeleted(search->second))) {
+    		hnswlib::tableint label_c;
+			if (!find_internal_id(id, label_c) || (appr_alg->isMarkedDeleted(label_c))) {
 				return RESULT_ID_NOT_IN_INDEX;
 			}
 		});
     }
 
-    int getDataById(int id, float* data, int dim) {
+    int getDataById(hnswlib::labeltype id, float* data, int dim) {
     	TRY_CATCH_RETURN_INT_BLOCK({
-			int label_c;
-			auto search = (appr_alg->label_lookup_.find(id));
-			if (search == (appr_alg->label_lookup_.end()) || (appr_alg->isMarkedDeleted(search->second))) {
+			hnswlib::tableint label_c;
+			if (!find_internal_id(id, label_c) || (appr_alg->isMarkedDeleted(label_c))) {
 				return RESULT_ID_NOT_IN_INDEX;
 			}
-			label_c = search->second;
 			char* data_ptrv = (appr_alg->getDataByInternalId(label_c));
+			if (quantized_space) {
+				quantized_space->decode(data_ptrv, data);
+				return RESULT_SUCCESSFUL;
+			}
 			float* data_ptr = (float*) data_ptrv;
 			for (int i = 0; i < dim; i++) {
 				data[i] = *data_ptr;
@@ -149,42 +508,189 @@ public:
 		});
     }
 
+    /*
+     * Copies the identifiers and the (decoded) vectors of the items which are not deleted,
+     * up to capacity items; returns the number of items copied.
+     */
+    int get_items(int* ids, float* vectors, int capacity) {
+        if (!appr_alg) {
+            return 0;
+        }
+        int count = 0;
+        for (size_t i = 0; i < appr_alg->cur_element_count && count < capacity; i++) {
+            if (appr_alg->isMarkedDeleted(i)) {
+                continue;
+            }
+            char* data_ptrv = appr_alg->getDataByInternalId(i);
+            if (quantized_space) {
+                quantized_space->decode(data_ptrv, vectors + (size_t) count * dim);
+            } else {
+                memcpy(vectors + (size_t) count * dim, data_ptrv, dim * sizeof(float));
+            }
+            ids[count++] = (int) appr_alg->getExternalLabel(i);
+        }
+        return count;
+    }
+
     float compute_similarity(float* vector1, float* vector2) {
     	float similarity;
         try {
-        	similarity = (appr_alg->fstdistfunc_(vector1, vector2, (appr_alg -> dist_func_param_)));
+        	if (quantized_space) {
+        	    std::vector<char> encoded1(l2space->get_data_size());
+        	    quantized_space->encode(vector1, encoded1.data());
+        	    similarity = (appr_alg->fstdistfunc_(encoded1.data(), encode(vector2), (appr_alg -> dist_func_param_)));
+        	} else {
+        	    similarity = (appr_alg->fstdistfunc_(vector1, vector2, (appr_alg -> dist_func_param_)));
+        	}
         } catch (...) {
         	similarity = NAN;
         }
     	return similarity;
     }
 
-    int knn_query(float* input, bool input_normalized, int k, int* indices /* output */, float* coefficients /* output */) {
-        std::priority_queue<std::pair<dist_t, hnswlib::labeltype >> result;
+    template<typename id_t>
+    int knn_query(float* input, bool input_normalized, int k, id_t* indices /* output */, float* coefficients /* output */) {
         TRY_CATCH_RETURN_INT_BLOCK({
-            if ((data_must_be_normalized == true) && (input_normalized == false)) {
-                normalize_array(input);
-            }
-            result = appr_alg->searchKnn((void*) input, k);
-            if (result.size() != k)
-                return RESULT_QUERY_CANNOT_RETURN;
-            for (int i = k - 1; i >= 0; i--) {
-                auto &result_tuple = result.top();
-                coefficients[i] = result_tuple.first;
-                indices[i] = result_tuple.second;
-                result.pop();
-            }       
+            return search_knn(input, input_normalized, k, indices, coefficients);
         });
     }
 
-    int mark_deleted(int label) {
+    /* the ef of the query is a local parameter of the search: the ef of the index is not changed. */
+    int knn_query_with_ef(float* input, bool input_normalized, int k, int ef, int* indices /* output */, float* coefficients /* output */) {
         TRY_CATCH_RETURN_INT_BLOCK({
-        	appr_alg->markDelete(label);
+            return search_knn(input, input_normalized, k, indices, coefficients, nullptr, nullptr, ef);
         });
     }
 
-    void resize_index(size_t new_size) {
-        appr_alg->resizeIndex(new_size);
+    int knn_query_batch(float* input, bool input_normalized, int number_of_queries, int k, int number_of_threads,
+                        int* indices /* output */, float* coefficients /* output */) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            std::atomic<int> batch_result_code{RESULT_SUCCESSFUL};
+            ParallelFor(0, number_of_queries, number_of_threads, [&](size_t row, size_t /*thread_id*/) {
+                int query_result_code = search_knn(input + row * dim, input_normalized, k, indices + row * k, coefficients + row * k);
+                if (query_result_code != RESULT_SUCCESSFUL) {
+                    batch_result_code = query_result_code;
+                }
+            });
+            return batch_result_code;
+        });
+    }
+
+    int knn_query_with_statistics(float* input, bool input_normalized, int k, int* indices /* output */, float* coefficients /* output */,
+                                  uint64_t* statistics /* output */) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            hnswlib::SearchStats stats;
+            int result_code = search_knn(input, input_normalized, k, indices, coefficients, nullptr, &stats);
+            copy_statistics(1, stats, statistics);
+            return result_code;
+        });
+    }
+
+    int knn_query_filtered(float* input, bool input_normalized, int k, const uint64_t* filter, int filter_length,
+                           int* indices /* output */, float* coefficients /* output */) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            BitsetFilter bitset_filter(filter, filter_length);
+            return search_knn(input, input_normalized, k, indices, coefficients, &bitset_filter);
+        });
+    }
+
+    /*
+     * The labels are written as ints (truncated, as they were inserted through int ids) or as 64-bit labels.
+     * An ef of 0 means the ef of the index.
+     */
+    template<typename id_t>
+    int search_knn(float* input, bool input_normalized, int k, id_t* indices /* output */, float* coefficients /* output */,
+                   hnswlib::BaseFilterFunctor* filter = nullptr, hnswlib::SearchStats* stats = nullptr, size_t ef = 0) {
+        if ((data_must_be_normalized == true) && (input_normalized == false)) {
+            normalize_array(input);
+        }
+        /* the totals of the index are opt-in: otherwise, only the queries asking for statistics collect them. */
+        bool keep_totals = search_statistics_enabled.load(std::memory_order_relaxed);
+        hnswlib::SearchStats local_stats;
+        if (!stats && keep_totals) {
+            stats = &local_stats;
+        }
+        /* called through a const pointer, otherwise the (non-const) comparator overload would be picked. */
+        const hnswlib::HierarchicalNSW<dist_t> *alg = appr_alg;
+        std::priority_queue<std::pair<dist_t, hnswlib::labeltype >> result = ef == 0
+                ? alg->searchKnn(encode(input), k, filter, stats)
+                : alg->searchKnnWithEf(encode(input), k, ef, filter, stats);
+        if (keep_totals) {
+            add_to_totals(*stats);
+        }
+        if (result.size() != k)
+            return RESULT_QUERY_CANNOT_RETURN;
+        for (int i = k - 1; i >= 0; i--) {
+            auto &result_tuple = result.top();
+            coefficients[i] = result_tuple.first;
+            indices[i] = (id_t) result_tuple.second;
+            result.pop();
+        }
+        return RESULT_SUCCESSFUL;
+    }
+
+    void add_to_totals(const hnswlib::SearchStats &stats) {
+        total_queries.fetch_add(1, std::memory_order_relaxed);
+        total_distance_computations.fetch_add(stats.distance_computations, std::memory_order_relaxed);
+        total_visited_nodes.fetch_add(stats.visited_nodes, std::memory_order_relaxed);
+        total_layers.fetch_add(stats.layers, std::memory_order_relaxed);
+        total_upper_layer_hops.fetch_add(stats.upper_layer_hops, std::memory_order_relaxed);
+        total_candidates_expanded.fetch_add(stats.candidates_expanded, std::memory_order_relaxed);
+    }
+
+    /*
+     * Statistics are exchanged as: queries, distance computations, visited nodes,
+     * layers, upper layer hops and candidates expanded.
+     */
+    static void copy_statistics(uint64_t queries, const hnswlib::SearchStats &stats, uint64_t* statistics /* output */) {
+        statistics[0] = queries;
+        statistics[1] = stats.distance_computations;
+        statistics[2] = stats.visited_nodes;
+        statistics[3] = stats.layers;
+        statistics[4] = stats.upper_layer_hops;
+        statistics[5] = stats.candidates_expanded;
+    }
+
+    void get_search_statistics(uint64_t* statistics /* output */) {
+        hnswlib::SearchStats totals;
+        totals.distance_computations = total_distance_computations.load(std::memory_order_relaxed);
+        totals.visited_nodes = total_visited_nodes.load(std::memory_order_relaxed);
+        totals.layers = total_layers.load(std::memory_order_relaxed);
+        totals.upper_layer_hops = total_upper_layer_hops.load(std::memory_order_relaxed);
+        totals.candidates_expanded = total_candidates_expanded.load(std::memory_order_relaxed);
+        copy_statistics(total_queries.load(std::memory_order_relaxed), totals, statistics);
+    }
+
+    void reset_search_statistics() {
+        total_queries = 0;
+        total_distance_computations = 0;
+        total_visited_nodes = 0;
+        total_layers = 0;
+        total_upper_layer_hops = 0;
+        total_candidates_expanded = 0;
+    }
+
+    int mark_deleted(hnswlib::labeltype label) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+        	if (is_read_only()) {
+        	    return RESULT_INDEX_IS_READ_ONLY;
+        	}
+        	hnswlib::tableint internal_id;
+        	if (!find_internal_id(label, internal_id)) {
+        	    throw std::runtime_error("Label not found");
+        	}
+        	appr_alg->has_deletions_ = true;
+        	appr_alg->markDeletedInternal(internal_id);
+        });
+    }
+
+    int resize_index(size_t new_size) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            if (is_read_only()) {
+                return RESULT_INDEX_IS_READ_ONLY;
+            }
+            appr_alg->resizeIndex(new_size);
+        });
     }
 
     int get_max_elements() const {
@@ -198,8 +704,10 @@ public:
     int clear_index() {
     	TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK({
 			delete l2space;
+			l2space = NULL;
 			if (appr_alg)
 				delete appr_alg;
+			appr_alg = NULL;
 			index_cleared = true;
         });
     }
@@ -210,14 +718,170 @@ public:
     bool index_initialized;
     bool data_must_be_normalized;
     std::atomic<unsigned long> incremental_id{0};
+    std::atomic<bool> replace_deleted{false};
+    std::atomic<bool> search_statistics_enabled{false};
+    std::atomic<uint64_t> total_queries{0};
+    std::atomic<uint64_t> total_distance_computations{0};
+    std::atomic<uint64_t> total_visited_nodes{0};
+    std::atomic<uint64_t> total_layers{0};
+    std::atomic<uint64_t> total_upper_layer_hops{0};
+    std::atomic<uint64_t> total_candidates_expanded{0};
     hnswlib::HierarchicalNSW<dist_t> *appr_alg;
     hnswlib::SpaceInterface<float> *l2space;
+    hnswlib::QuantizedSpace *quantized_space;
 
     ~Index() {
         clear_index();
     }
 };
 
+/*
+ * Exact index: the queries scan all the items (BruteforceSearch) with the SIMD distance
+ * functions of the space. Items are inserted with explicit identifiers and deleting an
+ * item removes it (its slot is taken by the last item). Like Index, it must not be
+ * modified while it is queried; batches of queries run in parallel.
+ */
+template<typename dist_t>
+class ExactIndex {
+public:
+    ExactIndex(const std::string &space_name, const int dim) :
+            space_name(space_name), dim(dim) {
+        l2space = create_space(space_name, dim, data_must_be_normalized, quantized_space);
+        alg = NULL;
+        index_initialized = false;
+        index_cleared = false;
+    }
+
+    int init_new_index(const size_t max_elements) {
+        TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK({
+            if (alg) {
+                return RESULT_INDEX_ALREADY_INITIALIZED;
+            }
+            alg = new hnswlib::BruteforceSearch<dist_t>(l2space, max_elements);
+            index_initialized = true;
+        });
+    }
+
+    int add_items(float* items, bool items_normalized, int number_of_items, int* ids, int number_of_threads) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            if (number_of_items > available_slots(number_of_items, ids)) {
+                return RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE;
+            }
+            ParallelFor(0, number_of_items, number_of_items < 1024 ? 1 : number_of_threads, [&](size_t row, size_t /*thread_id*/) {
+                float* item = items + row * dim;
+                if (data_must_be_normalized && !items_normalized) {
+                    normalize_vector(item, dim);
+                }
+                alg->addPoint(encode_vector(quantized_space, item), ids[row]);
+            });
+        });
+    }
+
+    /* free slots, counting the items which only update an existing identifier as free. */
+    long available_slots(int number_of_items, int* ids) {
+        long available = (long) alg->maxelements_ - alg->cur_element_count;
+        if (number_of_items > available) {
+            std::unique_lock<std::mutex> lock(alg->index_lock);
+            for (int i = 0; i < number_of_items; i++) {
+                if (alg->dict_external_to_internal.count(ids[i])) {
+                    available++;
+                }
+            }
+        }
+        return available;
+    }
+
+    int knn_query(float* input, bool input_normalized, int number_of_queries, int k, int number_of_threads,
+                  int* indices /* output */, float* coefficients /* output */) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            std::atomic<int> batch_result_code{RESULT_SUCCESSFUL};
+            ParallelFor(0, number_of_queries, number_of_queries == 1 ? 1 : number_of_threads, [&](size_t row, size_t /*thread_id*/) {
+                int query_result_code = search_knn(input + row * dim, input_normalized, k, indices + row * k, coefficients + row * k);
+                if (query_result_code != RESULT_SUCCESSFUL) {
+                    batch_result_code = query_result_code;
+                }
+            });
+            return batch_result_code;
+        });
+    }
+
+    int search_knn(float* input, bool input_normalized, int k, int* indices /* output */, float* coefficients /* output */) {
+        if (data_must_be_normalized && !input_normalized) {
+            normalize_vector(input, dim);
+        }
+        const hnswlib::BruteforceSearch<dist_t> *const_alg = alg;
+        std::priority_queue<std::pair<dist_t, hnswlib::labeltype >> result = const_alg->searchKnn(encode_vector(quantized_space, input), k);
+        if (result.size() != (size_t) k)
+            return RESULT_QUERY_CANNOT_RETURN;
+        for (int i = k - 1; i >= 0; i--) {
+            auto &result_tuple = result.top();
+            coefficients[i] = result_tuple.first;
+            indices[i] = (int) result_tuple.second;
+            result.pop();
+        }
+        return RESULT_SUCCESSFUL;
+    }
+
+    int remove_item(int id) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            if (!alg->removePoint(id)) {
+                return RESULT_ID_NOT_IN_INDEX;
+            }
+        });
+    }
+
+    int has_id(int id) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            if (!alg->getDataByLabel(id)) {
+                return RESULT_ID_NOT_IN_INDEX;
+            }
+        });
+    }
+
+    int get_data(int id, float* data) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            char* stored = alg->getDataByLabel(id);
+            if (!stored) {
+                return RESULT_ID_NOT_IN_INDEX;
+            }
+            if (quantized_space) {
+                quantized_space->decode(stored, data);
+            } else {
+                memcpy(data, stored, dim * sizeof(float));
+            }
+        });
+    }
+
+    int resize_index(size_t new_size) {
+        TRY_CATCH_RETURN_INT_BLOCK({
+            alg->resizeIndex(new_size);
+        });
+    }
+
+    int clear_index() {
+        TRY_CATCH_NO_INITIALIZE_CHECK_AND_RETURN_INT_BLOCK({
+            delete alg;
+            alg = NULL;
+            delete l2space;
+            l2space = NULL;
+            index_cleared = true;
+        });
+    }
+
+    std::string space_name;
+    int dim;
+    bool index_cleared;
+    bool index_initialized;
+    bool data_must_be_normalized;
+    hnswlib::BruteforceSearch<dist_t> *alg;
+    hnswlib::SpaceInterface<float> *l2space;
+    hnswlib::QuantizedSpace *quantized_space;
+
+    ~ExactIndex() {
+        clear_index();
+    }
+};
+
 EXTERN_C DLLEXPORT Index<float>* createNewIndex(char* spaceName, int dimension){
     Index<float>* index;
     try {
@@ -236,6 +900,18 @@ EXTERN_C DLLEXPORT int addItemToIndex(float* item, int normalized, int label, In
     return index->add_item(item, normalized, label);
 }
 
+EXTERN_C DLLEXPORT int addItemsToIndex(float* items, int normalized, int numberOfItems, int* labels, int numberOfThreads, Index<float>* index) {
+    return index->add_items(items, normalized, numberOfItems, labels, numberOfThreads);
+}
+
+EXTERN_C DLLEXPORT int addItemToIndexWithLongId(float* item, int normalized, int64_t label, Index<float>* index) {
+    return index->add_item(item, normalized, label);
+}
+
+EXTERN_C DLLEXPORT int addItemsToIndexWithLongIds(float* items, int normalized, int numberOfItems, int64_t* labels, int numberOfThreads, Index<float>* index) {
+    return index->add_items(items, normalized, numberOfItems, labels, numberOfThreads);
+}
+
 EXTERN_C DLLEXPORT int getIndexLength(Index<float>* index) {
     if (index->appr_alg) {
         return index->appr_alg->cur_element_count;
@@ -244,6 +920,57 @@ EXTERN_C DLLEXPORT int getIndexLength(Index<float>* index) {
     }
 }
 
+EXTERN_C DLLEXPORT int getMaxElements(Index<float>* index) {
+    if (index->appr_alg) {
+        return index->get_max_elements();
+    } else {
+        return 0;
+    }
+}
+
+EXTERN_C DLLEXPORT int getDeletedCount(Index<float>* index) {
+    if (index->appr_alg) {
+        return index->appr_alg->getDeletedCount();
+    } else {
+        return 0;
+    }
+}
+
+EXTERN_C DLLEXPORT int64_t getMemoryUsage(Index<float>* index) {
+    if (index->appr_alg) {
+        return index->appr_alg->getMemoryUsage();
+    } else {
+        return 0;
+    }
+}
+
+EXTERN_C DLLEXPORT int getSimdLevel() {
+    return hnswlib::GetSimdLevel();
+}
+
+EXTERN_C DLLEXPORT int setMaxSimdLevel(int maxSimdLevel) {
+    hnswlib::MaxSimdLevel() = maxSimdLevel;
+    return hnswlib::GetSimdLevel();
+}
+
+EXTERN_C DLLEXPORT int64_t getTotalMemoryUsage() {
+    return hnswlib::MemoryTracker::total();
+}
+
+EXTERN_C DLLEXPORT int setReplaceDeleted(Index<float>* index, int replaceDeleted) {
+    index->replace_deleted = replaceDeleted != 0;
+    return RESULT_SUCCESSFUL;
+}
+
+EXTERN_C DLLEXPORT int setSearchStatisticsEnabled(Index<float>* index, int enabled) {
+    index->search_statistics_enabled = enabled != 0;
+    return RESULT_SUCCESSFUL;
+}
+
+EXTERN_C DLLEXPORT int resizeIndex(Index<float>* index, int maxNumberOfElements) {
+    return index->resize_index(maxNumberOfElements);
+}
+
 EXTERN_C DLLEXPORT int saveIndexToPath(Index<float>* index, char* path) {
     std::string path_string(path);
     return index->save_index(path_string);
@@ -254,14 +981,66 @@ EXTERN_C DLLEXPORT int loadIndexFromPath(Index<float>* index, size_t maxNumberOf
     return index->load_index(path_string, maxNumberOfElements);
 }
 
+EXTERN_C DLLEXPORT int saveIndexToStream(Index<float>* index, WriteCallback writeCallback) {
+    return index->save_index_to_stream(writeCallback);
+}
+
+EXTERN_C DLLEXPORT int loadIndexFromStream(Index<float>* index, int maxNumberOfElements, ReadCallback readCallback) {
+    return index->load_index_from_stream(readCallback, maxNumberOfElements);
+}
+
+EXTERN_C DLLEXPORT int loadIndexMappedFromPath(Index<float>* index, char* path) {
+    std::string path_string(path);
+    return index->load_index_mapped(path_string);
+}
+
+EXTERN_C DLLEXPORT int isIndexReadOnly(Index<float>* index) {
+    return index->appr_alg != NULL && index->is_read_only();
+}
+
 EXTERN_C DLLEXPORT int knnQuery(Index<float>* index, float* input, int normalized, int k, int* indices /* output */, float* coefficients /* output */) {
     return index->knn_query(input, normalized, k, indices, coefficients);
 }
 
+EXTERN_C DLLEXPORT int knnQueryWithEf(Index<float>* index, float* input, int normalized, int k, int ef, int* indices /* output */, float* coefficients /* output */) {
+    return index->knn_query_with_ef(input, normalized, k, ef, indices, coefficients);
+}
+
+EXTERN_C DLLEXPORT int knnQueryWithLongIds(Index<float>* index, float* input, int normalized, int k, int64_t* indices /* output */, float* coefficients /* output */) {
+    return index->knn_query(input, normalized, k, indices, coefficients);
+}
+
+EXTERN_C DLLEXPORT int knnQueryWithStatistics(Index<float>* index, float* input, int normalized, int k, int* indices /* output */, float* coefficients /* output */, uint64_t* statistics /* output */) {
+    return index->knn_query_with_statistics(input, normalized, k, indices, coefficients, statistics);
+}
+
+EXTERN_C DLLEXPORT int getSearchStatistics(Index<float>* index, uint64_t* statistics /* output */) {
+    index->get_search_statistics(statistics);
+    return RESULT_SUCCESSFUL;
+}
+
+EXTERN_C DLLEXPORT int resetSearchStatistics(Index<float>* index) {
+    index->reset_search_statistics();
+    return RESULT_SUCCESSFUL;
+}
+
+EXTERN_C DLLEXPORT int knnQueryFiltered(Index<float>* index, float* input, int normalized, int k, uint64_t* filter, int filterLength, int* indices /* output */, float* coefficients /* output */) {
+    return index->knn_query_filtered(input, normalized, k, filter, filterLength, indices, coefficients);
+}
+
+EXTERN_C DLLEXPORT int knnQueryBatch(Index<float>* index, float* input, int normalized, int numberOfQueries, int k, int numberOfThreads, int* indices /* output */, float* coefficients /* output */) {
+    return index->knn_query_batch(input, normalized, numberOfQueries, k, numberOfThreads, indices, coefficients);
+}
+
 EXTERN_C DLLEXPORT int clearIndex(Index<float>* index) {
     return index->clear_index();
 }
 
+EXTERN_C DLLEXPORT int destroyIndex(Index<float>* index) {
+    delete index;
+    return RESULT_SUCCESSFUL;
+}
+
 EXTERN_C DLLEXPORT int setEf(Index<float>* index, int ef) {
     return index->set_ef(ef);
 }
@@ -274,26 +1053,101 @@ EXTERN_C DLLEXPORT int hasId(Index<float>* index, int id) {
 	return index->hasId(id);
 }
 
+EXTERN_C DLLEXPORT int getDataByLongId(Index<float>* index, int64_t id, float* vector, int dim) {
+	return index->getDataById(id, vector, dim);
+}
+
+EXTERN_C DLLEXPORT int hasLongId(Index<float>* index, int64_t id) {
+	return index->hasId(id);
+}
+
+EXTERN_C DLLEXPORT int getItems(Index<float>* index, int* ids, float* vectors, int capacity) {
+	return index->get_items(ids, vectors, capacity);
+}
+
 EXTERN_C DLLEXPORT float computeSimilarity(Index<float>* index, float* vector1, float* vector2) {
-	return index->compute_similarity(vector1, vector2);
+    return index->appr_alg ? index->compute_similarity(vector1, vector2) : NAN;
 }
 
 EXTERN_C DLLEXPORT int getM(Index<float>* index) {
-    return index->get_M();
+    return index->appr_alg ? index->get_M() : 0;
 }
 
 EXTERN_C DLLEXPORT int getEfConstruction(Index<float>* index) {
-    return index->get_ef_construction();
+    return index->appr_alg ? index->get_ef_construction() : 0;
 }
 
 EXTERN_C DLLEXPORT int getEf(Index<float>* index) {
-    return index->get_ef();
+    return index->appr_alg ? index->get_ef() : 0;
 }
 
 EXTERN_C DLLEXPORT int markDeleted(Index<float>* index, int id) {
     return index->mark_deleted(id);
 }
 
+EXTERN_C DLLEXPORT int markDeletedLongId(Index<float>* index, int64_t id) {
+    return index->mark_deleted(id);
+}
+
 int main(){
     return RESULT_SUCCESSFUL;
-}
\ No newline at end of file
+}
+
+EXTERN_C DLLEXPORT ExactIndex<float>* createNewExactIndex(char* spaceName, int dimension) {
+    ExactIndex<float>* index;
+    try {
+        index = new ExactIndex<float>(spaceName, dimension);
+    } catch (...) {
+        index = NULL;
+    }
+    return index;
+}
+
+EXTERN_C DLLEXPORT int initNewExactIndex(ExactIndex<float>* index, int maxNumberOfElements) {
+    return index->init_new_index(maxNumberOfElements);
+}
+
+EXTERN_C DLLEXPORT int addItemsToExactIndex(float* items, int normalized, int numberOfItems, int* labels, int numberOfThreads, ExactIndex<float>* index) {
+    return index->add_items(items, normalized, numberOfItems, labels, numberOfThreads);
+}
+
+EXTERN_C DLLEXPORT int knnQueryExactIndex(ExactIndex<float>* index, float* input, int normalized, int numberOfQueries, int k, int numberOfThreads, int* indices /* output */, float* coefficients /* output */) {
+    return index->knn_query(input, normalized, numberOfQueries, k, numberOfThreads, indices, coefficients);
+}
+
+EXTERN_C DLLEXPORT int removeItemFromExactIndex(ExactIndex<float>* index, int id) {
+    return index->remove_item(id);
+}
+
+EXTERN_C DLLEXPORT int hasIdInExactIndex(ExactIndex<float>* index, int id) {
+    return index->has_id(id);
+}
+
+EXTERN_C DLLEXPORT int getDataFromExactIndex(ExactIndex<float>* index, int id, float* vector) {
+    return index->get_data(id, vector);
+}
+
+EXTERN_C DLLEXPORT int getExactIndexLength(ExactIndex<float>* index) {
+    return index->alg ? (int) index->alg->cur_element_count : 0;
+}
+
+EXTERN_C DLLEXPORT int getExactIndexMaxElements(ExactIndex<float>* index) {
+    return index->alg ? (int) index->alg->maxelements_ : 0;
+}
+
+EXTERN_C DLLEXPORT int64_t getExactIndexMemoryUsage(ExactIndex<float>* index) {
+    return index->alg ? index->alg->memory_tracker_.get() : 0;
+}
+
+EXTERN_C DLLEXPORT int resizeExactIndex(ExactIndex<float>* index, int maxNumberOfElements) {
+    return index->resize_index(maxNumberOfElements);
+}
+
+EXTERN_C DLLEXPORT int clearExactIndex(ExactIndex<float>* index) {
+    return index->clear_index();
+}
+
+EXTERN_C DLLEXPORT int destroyExactIndex(ExactIndex<float>* index) {
+    delete index;
+    return RESULT_SUCCESSFUL;
+}
@@ -0,0 +1,42 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of the benchmarks jar. It accepts the usual JMH command line
+ * options and always adds the GC profiler, so allocation rates are reported
+ * next to the latencies. When no thread count is given (-t), every benchmark
+ * runs with 1 thread and with one thread per available CPU.
+ *
+ * Usage: java -jar hnswlib-jna-benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		int[] threadCounts = commandLineOptions.getThreads().hasValue()
+				? new int[] { commandLineOptions.getThreads().get() }
+				: Arrays.stream(new int[] { 1, Runtime.getRuntime().availableProcessors() }).distinct().toArray();
+		for (int threads : threadCounts) {
+			Options options = new OptionsBuilder()
+					.parent(commandLineOptions)
+					.threads(threads)
+					.addProfiler(GCProfiler.class)
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
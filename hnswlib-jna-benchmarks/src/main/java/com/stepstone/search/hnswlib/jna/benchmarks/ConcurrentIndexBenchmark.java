@@ -0,0 +1,111 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import com.stepstone.search.hnswlib.jna.ConcurrencyMode;
+import com.stepstone.search.hnswlib.jna.ConcurrentIndex;
+import com.stepstone.search.hnswlib.jna.Index;
+import com.stepstone.search.hnswlib.jna.QueryTuple;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConcurrentIndex under a mixed load: query threads running next to a thread
+ * which keeps updating items. The updates reuse existing ids, so the index does
+ * not grow during the run. Use -tg to change the number of query/update threads.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConcurrentIndexBenchmark {
+
+	private static final int NUMBER_OF_VECTORS = 1_024;
+
+	@Param({"SERIALIZED_UPDATES", "PARALLEL_UPDATES"})
+	private ConcurrencyMode concurrencyMode;
+
+	@Param({"16", "128"})
+	private int dimension;
+
+	@Param({"16"})
+	private int m;
+
+	@Param({"10", "100"})
+	private int ef;
+
+	@Param({"10"})
+	private int k;
+
+	@Param({"50000"})
+	private int numberOfItems;
+
+	private Index index;
+	private float[][] updates;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		index = new ConcurrentIndex(SpaceName.COSINE, dimension, concurrencyMode);
+		/* spare capacity, so the updates (which reuse ids) pass the capacity check */
+		index.initialize(numberOfItems * 2, m, 200, 100);
+		index.addNormalizedItems(Vectors.flatten(Vectors.normalized(numberOfItems, dimension, Vectors.ITEMS_SEED)), null, 0);
+		index.setEf(ef);
+		updates = Vectors.normalized(NUMBER_OF_VECTORS, dimension, Vectors.ITEMS_SEED + 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		index.clear();
+	}
+
+	/**
+	 * Position of each thread in the vectors and ids it uses.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private float[][] queries;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(ConcurrentIndexBenchmark benchmark) {
+			queries = Vectors.normalized(NUMBER_OF_VECTORS, benchmark.dimension, Vectors.QUERIES_SEED + Thread.currentThread().getId());
+		}
+
+		int next() {
+			next = (next + 1) & (NUMBER_OF_VECTORS - 1);
+			return next;
+		}
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public QueryTuple query(Cursor cursor) {
+		return index.knnNormalizedQuery(cursor.queries[cursor.next()], k);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void update(Cursor cursor) {
+		int next = cursor.next();
+		index.addNormalizedItem(updates[next], next * 31 % numberOfItems);
+	}
+}
@@ -0,0 +1,87 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import com.stepstone.search.hnswlib.jna.Index;
+import com.stepstone.search.hnswlib.jna.QueryTuple;
+import com.stepstone.search.hnswlib.jna.SimdLevel;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the distance functions of each SIMD level: a single distance (which
+ * includes the cost of the native call) and a kNN query (hundreds of distances).
+ * The levels not supported by the CPU fail in the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class DistanceBenchmark {
+
+	private static final int NUMBER_OF_QUERIES = 1_024;
+
+	@Param({"NONE", "SSE", "AVX", "AVX2", "AVX512"})
+	private SimdLevel simdLevel;
+
+	@Param({"L2", "IP", "L2_FP16", "COSINE_INT8"})
+	private SpaceName spaceName;
+
+	@Param({"128", "960"})
+	private int dimension;
+
+	@Param({"10000"})
+	private int numberOfItems;
+
+	private Index index;
+	private float[][] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		SimdLevel supportedSimdLevel = Index.setMaxSimdLevel(simdLevel);
+		if (supportedSimdLevel != simdLevel) {
+			throw new IllegalStateException(simdLevel + " is not supported by this CPU (up to " + supportedSimdLevel + ").");
+		}
+		index = new Index(spaceName, dimension);
+		index.initialize(numberOfItems, 16, 100, 100);
+		index.addNormalizedItems(Vectors.flatten(Vectors.normalized(numberOfItems, dimension, Vectors.ITEMS_SEED)), null, 0);
+		index.setEf(100);
+		queries = Vectors.normalized(NUMBER_OF_QUERIES, dimension, Vectors.QUERIES_SEED);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		index.close();
+		Index.setMaxSimdLevel(SimdLevel.AVX512);
+	}
+
+	private float[] nextQuery() {
+		next = (next + 1) & (NUMBER_OF_QUERIES - 1);
+		return queries[next];
+	}
+
+	@Benchmark
+	public float computeSimilarity() {
+		return index.computeSimilarity(nextQuery(), queries[0]);
+	}
+
+	@Benchmark
+	public QueryTuple knnQuery() {
+		return index.knnNormalizedQuery(nextQuery(), 10);
+	}
+}
@@ -0,0 +1,73 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import com.stepstone.search.hnswlib.jna.Index;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time to insert a fixed number of items into an empty index. Every iteration
+ * starts from a new index, so the iterations are comparable with each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = InsertionBenchmark.ITEMS_PER_ITERATION)
+@Measurement(iterations = 5, batchSize = InsertionBenchmark.ITEMS_PER_ITERATION)
+@Fork(1)
+public class InsertionBenchmark {
+
+	static final int ITEMS_PER_ITERATION = 10_000;
+
+	@Param({"16", "128"})
+	private int dimension;
+
+	@Param({"16", "48"})
+	private int m;
+
+	@Param({"200"})
+	private int efConstruction;
+
+	private float[][] items;
+	private Index index;
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUpItems() {
+		items = Vectors.normalized(ITEMS_PER_ITERATION, dimension, Vectors.ITEMS_SEED);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIndex(BenchmarkParams params) {
+		index = new Index(SpaceName.COSINE, dimension);
+		/* each benchmark thread inserts a whole batch */
+		index.initialize(ITEMS_PER_ITERATION * params.getThreads(), m, efConstruction, 100);
+		nextId.set(0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIndex() {
+		index.clear();
+	}
+
+	@Benchmark
+	public void addItem() {
+		int id = nextId.getAndIncrement();
+		index.addNormalizedItem(items[id % ITEMS_PER_ITERATION], id);
+	}
+}
@@ -0,0 +1,97 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import com.stepstone.search.hnswlib.jna.Index;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the cheap per-item calls, which are dominated by the cost of crossing the JNA boundary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class LookupBenchmark {
+
+	private static final int NUMBER_OF_IDS = 1_024;
+
+	@Param({"16", "128"})
+	private int dimension;
+
+	@Param({"10000"})
+	private int numberOfItems;
+
+	private Index index;
+	private float[][] items;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		items = Vectors.normalized(numberOfItems, dimension, Vectors.ITEMS_SEED);
+		index = new Index(SpaceName.COSINE, dimension);
+		index.initialize(numberOfItems);
+		index.addNormalizedItems(Vectors.flatten(items), null, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		index.clear();
+	}
+
+	/**
+	 * Ids looked up by each benchmark thread; about half of them are not in the index.
+	 */
+	@State(Scope.Thread)
+	public static class Ids {
+
+		private int[] ids;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(LookupBenchmark benchmark) {
+			Random random = new Random(Vectors.QUERIES_SEED + Thread.currentThread().getId());
+			ids = new int[NUMBER_OF_IDS];
+			for (int i = 0; i < NUMBER_OF_IDS; i++) {
+				ids[i] = random.nextInt(benchmark.numberOfItems * 2);
+			}
+		}
+
+		int next() {
+			next = (next + 1) & (NUMBER_OF_IDS - 1);
+			return ids[next];
+		}
+	}
+
+	@Benchmark
+	public boolean hasId(Ids ids) {
+		return index.hasId(ids.next());
+	}
+
+	@Benchmark
+	public Optional<float[]> getData(Ids ids) {
+		return index.getData(ids.next());
+	}
+
+	@Benchmark
+	public float computeSimilarity(Ids ids) {
+		int id = ids.next() % numberOfItems;
+		return index.computeSimilarity(items[id], items[numberOfItems - 1 - id]);
+	}
+}
@@ -0,0 +1,95 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import com.stepstone.search.hnswlib.jna.Index;
+import com.stepstone.search.hnswlib.jna.QueryTuple;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the kNN queries over an index built once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+	private static final int NUMBER_OF_QUERIES = 1_024;
+
+	@Param({"16", "128"})
+	private int dimension;
+
+	@Param({"16", "48"})
+	private int m;
+
+	@Param({"10", "100"})
+	private int ef;
+
+	@Param({"10"})
+	private int k;
+
+	@Param({"50000"})
+	private int numberOfItems;
+
+	private Index index;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		index = new Index(SpaceName.COSINE, dimension);
+		index.initialize(numberOfItems, m, 200, 100);
+		index.addNormalizedItems(Vectors.flatten(Vectors.normalized(numberOfItems, dimension, Vectors.ITEMS_SEED)), null, 0);
+		index.setEf(ef);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		index.clear();
+	}
+
+	/**
+	 * Queries owned by each benchmark thread (they are normalized, so both
+	 * query flavours can safely share them).
+	 */
+	@State(Scope.Thread)
+	public static class Queries {
+
+		private float[][] queries;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(QueryBenchmark benchmark) {
+			queries = Vectors.normalized(NUMBER_OF_QUERIES, benchmark.dimension, Vectors.QUERIES_SEED + Thread.currentThread().getId());
+		}
+
+		float[] next() {
+			next = (next + 1) & (NUMBER_OF_QUERIES - 1);
+			return queries[next];
+		}
+	}
+
+	@Benchmark
+	public QueryTuple knnQuery(Queries queries) {
+		return index.knnQuery(queries.next(), k);
+	}
+
+	@Benchmark
+	public QueryTuple knnNormalizedQuery(Queries queries) {
+		return index.knnNormalizedQuery(queries.next(), k);
+	}
+}
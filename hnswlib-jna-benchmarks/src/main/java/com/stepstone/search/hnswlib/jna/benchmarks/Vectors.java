@@ -0,0 +1,58 @@
+package com.stepstone.search.hnswlib.jna.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates the (seeded) vectors used by the benchmarks, so every run
+ * works on exactly the same data.
+ */
+final class Vectors {
+
+	static final long ITEMS_SEED = 42;
+	static final long QUERIES_SEED = 4242;
+
+	private Vectors() {
+	}
+
+	/**
+	 * Generates normalized random vectors.
+	 *
+	 * @param numberOfVectors - how many vectors;
+	 * @param dimension - length of each vector;
+	 * @param seed - seed of the random generator.
+	 *
+	 * @return the vectors.
+	 */
+	static float[][] normalized(int numberOfVectors, int dimension, long seed) {
+		Random random = new Random(seed);
+		float[][] vectors = new float[numberOfVectors][dimension];
+		for (float[] vector : vectors) {
+			float norm = 0.0f;
+			for (int i = 0; i < dimension; i++) {
+				vector[i] = random.nextFloat() * 2.0f - 1.0f;
+				norm += vector[i] * vector[i];
+			}
+			norm = (float) (1.0 / (Math.sqrt(norm) + 1e-30));
+			for (int i = 0; i < dimension; i++) {
+				vector[i] *= norm;
+			}
+		}
+		return vectors;
+	}
+
+	/**
+	 * Copies the vectors one after the other into a single array (as expected by Index.addItems()).
+	 *
+	 * @param vectors - vectors with the same length.
+	 *
+	 * @return flat array with all the vectors.
+	 */
+	static float[] flatten(float[][] vectors) {
+		int dimension = vectors[0].length;
+		float[] flat = new float[vectors.length * dimension];
+		for (int i = 0; i < vectors.length; i++) {
+			System.arraycopy(vectors[i], 0, flat, i * dimension, dimension);
+		}
+		return flat;
+	}
+}
@@ -92,6 +92,30 @@ public class App {
         System.out.println("Building time for " + index.getLength() + " items took " + (endTime - startTime) + " seconds with " + numberOfThreads + " threads");
     }
 
+    private static void exampleOfNativeBulkIndexBuild() {
+        int numberOfItems = 200_000;
+        int dimension = 40;
+
+        /* all the vectors are stored one after the other in a single array */
+        float[] items = new float[numberOfItems * dimension];
+        int[] ids = new int[numberOfItems];
+        for (int i = 0; i < numberOfItems; i++){
+            System.arraycopy(getRandomFloatArray(dimension), 0, items, i * dimension, dimension);
+            ids[i] = i;
+        }
+
+        Index index = new Index(SpaceName.IP, dimension);
+        index.initialize(numberOfItems);
+
+        long startTime = Instant.now().getEpochSecond();
+        index.addItems(items, ids); /* the insertions are spread over native threads (one per CPU by default) */
+        long endTime = Instant.now().getEpochSecond();
+
+        System.out.println("Native Bulk Index Build:");
+        System.out.println("Building time for " + index.getLength() + " items took " + (endTime - startTime) + " seconds");
+        index.clear();
+    }
+
     private static float[] getRandomFloatArray(int dimension){
         float[] array = new float[dimension];
         Random random = new Random();
@@ -117,6 +141,7 @@ public class App {
         exampleOfACosineIndex();
         exampleOfAInnerProductIndex();
         exampleOfMultiThreadedIndexBuild();
+        exampleOfNativeBulkIndexBuild();
     }
 
 }
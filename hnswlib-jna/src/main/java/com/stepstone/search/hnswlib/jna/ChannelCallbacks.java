@@ -0,0 +1,85 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.sun.jna.Pointer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Native callbacks which stream an index from/to channels. The native chunks are
+ * wrapped (not copied) into direct byte buffers handed to the channels. Errors cannot
+ * cross the native boundary, so they are kept and rethrown via rethrowFailure() once
+ * the native call returns.
+ */
+final class ChannelCallbacks {
+
+	private static final int ERROR = -1;
+	private static final int END_OF_STREAM = 0;
+
+	private ChannelCallbacks() {
+	}
+
+	static final class Writer implements Hnswlib.WriteCallback {
+
+		private final WritableByteChannel channel;
+		private IOException failure;
+
+		Writer(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int invoke(Pointer buffer, int length) {
+			try {
+				ByteBuffer chunk = buffer.getByteBuffer(0, length);
+				while (chunk.hasRemaining()) {
+					channel.write(chunk);
+				}
+				return 0;
+			} catch (IOException e) {
+				failure = e;
+				return ERROR;
+			}
+		}
+
+		void rethrowFailure() {
+			if (failure != null) {
+				throw new UncheckedIOException(failure);
+			}
+		}
+	}
+
+	static final class Reader implements Hnswlib.ReadCallback {
+
+		private final ReadableByteChannel channel;
+		private IOException failure;
+
+		Reader(ReadableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int invoke(Pointer buffer, int length) {
+			try {
+				ByteBuffer chunk = buffer.getByteBuffer(0, length);
+				int read;
+				do {
+					read = channel.read(chunk);
+				} while (read == 0 && chunk.hasRemaining());
+				return read < 0 ? END_OF_STREAM : read;
+			} catch (IOException e) {
+				failure = e;
+				return ERROR;
+			}
+		}
+
+		void rethrowFailure() {
+			if (failure != null) {
+				throw new UncheckedIOException(failure);
+			}
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.stepstone.search.hnswlib.jna;
+
+/**
+ * Concurrency modes available for a ConcurrentIndex.
+ *
+ * SERIALIZED_UPDATES: insertions and deletions are exclusive (fair read/write lock).
+ * PARALLEL_UPDATES: insertions and deletions run in parallel with queries and with each
+ * other, relying on the fine-grained locks of the native implementation; only structural
+ * operations (load, loadMapped, clear, setEf, resize) are exclusive.
+ */
+public enum ConcurrencyMode { SERIALIZED_UPDATES, PARALLEL_UPDATES }
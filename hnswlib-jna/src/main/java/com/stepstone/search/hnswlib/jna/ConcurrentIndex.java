@@ -1,29 +1,66 @@
 package com.stepstone.search.hnswlib.jna;
 
+import com.stepstone.search.hnswlib.jna.metrics.IndexMetricsListener;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
+import java.util.BitSet;
 import java.util.Optional;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * This class offers a thread-safe alternative for a small-world Index.
  * It allows concurrent item insertion and querying which is not supported
  * by the native Hnswlib implementation.
  *
- * Note: this class relies on a ReadWriteLock with fairness enabled. So,
- * when multi-thread insertions are serialized. To take advantage of parallel
- * insertion, please create a Index instance and then retrieve a ConcurrentIndex
- * one via Index.synchronizedIndex() method call.
+ * Note: by default ({@link ConcurrencyMode#SERIALIZED_UPDATES}) this class relies
+ * on a ReadWriteLock with fairness enabled. So, when multi-thread insertions are
+ * serialized. To take advantage of parallel insertion, please create a Index instance
+ * and then retrieve a ConcurrentIndex one via Index.synchronizedIndex() method call,
+ * or use {@link ConcurrencyMode#PARALLEL_UPDATES}, which lets queries and
+ * updates run in parallel and keeps the exclusive lock for structural operations.
  */
 public class ConcurrentIndex extends Index {
 
-	private ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-	private Lock readLock = readWriteLock.readLock();
-	private Lock writeLock = readWriteLock.writeLock();
+	private final ConcurrencyMode concurrencyMode;
+	private final Lock readLock;
+	private final Lock updateLock;
+	private final Lock writeLock;
 
 	public ConcurrentIndex(SpaceName spaceName, int dimensions) {
+		this(spaceName, dimensions, ConcurrencyMode.SERIALIZED_UPDATES);
+	}
+
+	public ConcurrentIndex(SpaceName spaceName, int dimensions, ConcurrencyMode concurrencyMode) {
 		super(spaceName, dimensions);
+		this.concurrencyMode = concurrencyMode;
+		if (concurrencyMode == ConcurrencyMode.PARALLEL_UPDATES) {
+			/* queries and updates share the (non-reentrant) read lock; structural operations take the write lock. */
+			StampedLock stampedLock = new StampedLock();
+			this.readLock = stampedLock.asReadLock();
+			this.updateLock = this.readLock;
+			this.writeLock = stampedLock.asWriteLock();
+		} else {
+			ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+			this.readLock = readWriteLock.readLock();
+			this.updateLock = readWriteLock.writeLock();
+			this.writeLock = this.updateLock;
+		}
+	}
+
+	/**
+	 * Retrieves the concurrency mode of this index.
+	 *
+	 * @return the concurrency mode.
+	 */
+	public ConcurrencyMode getConcurrencyMode() {
+		return concurrencyMode;
 	}
 
 	/**
@@ -34,11 +71,11 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void addItem(float[] item) {
-		this.writeLock.lock();
+		lock(this.updateLock);
 		try {
 			super.addItem(item, NO_ID);
 		} finally {
-			this.writeLock.unlock();
+			this.updateLock.unlock();
 		}
 	}
 
@@ -52,11 +89,45 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void addItem(float[] item, int id) {
-		this.writeLock.lock();
+		lock(this.updateLock);
 		try {
 			super.addItem(item, id);
 		} finally {
-			this.writeLock.unlock();
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds an item stored in a buffer to the index.
+	 * It won't apply any extra normalization unless it is required
+	 * by the Vector Space (e.g., COSINE).
+	 *
+	 * @param item - buffer with at least dimension floats remaining in the native byte order;
+	 * @param id - an identifier used by the native library.
+	 */
+	@Override
+	public void addItem(FloatBuffer item, int id) {
+		lock(this.updateLock);
+		try {
+			super.addItem(item, id);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds a normalized item stored in a buffer to the index.
+	 *
+	 * @param item - buffer with at least dimension floats remaining in the native byte order;
+	 * @param id - an identifier used by the native library.
+	 */
+	@Override
+	public void addNormalizedItem(FloatBuffer item, int id) {
+		lock(this.updateLock);
+		try {
+			super.addNormalizedItem(item, id);
+		} finally {
+			this.updateLock.unlock();
 		}
 	}
 
@@ -68,11 +139,11 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void addNormalizedItem(float[] item) {
-		this.writeLock.lock();
+		lock(this.updateLock);
 		try {
 			super.addNormalizedItem(item, Index.NO_ID);
 		} finally {
-			this.writeLock.unlock();
+			this.updateLock.unlock();
 		}
 	}
 
@@ -84,11 +155,118 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void addNormalizedItem(float[] item, int id) {
-		this.writeLock.lock();
+		lock(this.updateLock);
 		try {
 			super.addNormalizedItem(item, id);
 		} finally {
-			this.writeLock.unlock();
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds several items to the index in a single native
+	 * call using a specific number of native threads. It won't apply any extra
+	 * normalization unless it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order) or null for incremental identifiers;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	@Override
+	public void addItems(float[] items, int[] ids, int numberOfThreads) {
+		lock(this.updateLock);
+		try {
+			super.addItems(items, ids, numberOfThreads);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds several normalized items to the index in
+	 * a single native call using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the normalized items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order) or null for incremental identifiers;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	@Override
+	public void addNormalizedItems(float[] items, int[] ids, int numberOfThreads) {
+		lock(this.updateLock);
+		try {
+			super.addNormalizedItems(items, ids, numberOfThreads);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds an item with a 64-bit ID to the index.
+	 * It won't apply any extra normalization unless it is required
+	 * by the Vector Space (e.g., COSINE).
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - a 64-bit identifier used by the native library.
+	 */
+	@Override
+	public void addItem(float[] item, long id) {
+		lock(this.updateLock);
+		try {
+			super.addItem(item, id);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds a normalized item with a 64-bit ID to the index.
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - a 64-bit identifier used by the native library.
+	 */
+	@Override
+	public void addNormalizedItem(float[] item, long id) {
+		lock(this.updateLock);
+		try {
+			super.addNormalizedItem(item, id);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds several items with 64-bit IDs to the index in
+	 * a single native call using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - 64-bit identifiers of the items (in the same order);
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	@Override
+	public void addItemsWithLongIds(float[] items, long[] ids, int numberOfThreads) {
+		lock(this.updateLock);
+		try {
+			super.addItemsWithLongIds(items, ids, numberOfThreads);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which adds several normalized items with 64-bit IDs to
+	 * the index in a single native call using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the normalized items, one after the other (number of items x dimension);
+	 * @param ids - 64-bit identifiers of the items (in the same order);
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	@Override
+	public void addNormalizedItemsWithLongIds(float[] items, long[] ids, int numberOfThreads) {
+		lock(this.updateLock);
+		try {
+			super.addNormalizedItemsWithLongIds(items, ids, numberOfThreads);
+		} finally {
+			this.updateLock.unlock();
 		}
 	}
 
@@ -100,7 +278,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public int getLength(){
-		this.readLock.lock();
+		lock(this.readLock);
 		try {
 			return super.getLength();
 		} finally {
@@ -108,6 +286,21 @@ public class ConcurrentIndex extends Index {
 		}
 	}
 
+	/**
+	 * Thread-safe method which copies the items into a new exact index.
+	 *
+	 * @return an exact index with the same vector space and items.
+	 */
+	@Override
+	ExactIndex toExactIndex() {
+		lock(this.readLock);
+		try {
+			return super.toExactIndex();
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 	/**
 	 * Thread-safe method which performs a knn query in the index instance.
 	 * In case the vector space requires the input to be normalized, it will
@@ -120,7 +313,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public QueryTuple knnQuery(float[] input, int k) {
-		this.readLock.lock();
+		lock(this.readLock);
 		QueryTuple queryTuple;
 		try {
 			queryTuple = super.knnQuery(input, k);
@@ -130,6 +323,96 @@ public class ConcurrentIndex extends Index {
 		return queryTuple;
 	}
 
+	/**
+	 * Thread-safe method which performs a knn query with a specific ef. Differently
+	 * from setEf(), it only takes the shared lock, so queries with different values
+	 * of ef run in parallel.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param ef - ef of this query (values below k behave as k).
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	@Override
+	public QueryTuple knnQuery(float[] input, int k, int ef) {
+		lock(this.readLock);
+		try {
+			return super.knnQuery(input, k, ef);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query with a specific ef without the query cache.
+	 */
+	@Override
+	QueryTuple knnQueryUncached(float[] input, int k, int ef) {
+		lock(this.readLock);
+		try {
+			return super.knnQueryUncached(input, k, ef);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query using a normalized input with
+	 * a specific ef (only takes the shared lock).
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param ef - ef of this query (values below k behave as k).
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	@Override
+	public QueryTuple knnNormalizedQuery(float[] input, int k, int ef) {
+		lock(this.readLock);
+		try {
+			return super.knnNormalizedQuery(input, k, ef);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance
+	 * writing the results into an existing query tuple.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param queryTuple - [output] a query tuple created for k results.
+	 */
+	@Override
+	public void knnQuery(float[] input, int k, QueryTuple queryTuple) {
+		lock(this.readLock);
+		try {
+			super.knnQuery(input, k, queryTuple);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance
+	 * using an normalized input and writing the results into an existing query tuple.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param queryTuple - [output] a query tuple created for k results.
+	 */
+	@Override
+	public void knnNormalizedQuery(float[] input, int k, QueryTuple queryTuple) {
+		lock(this.readLock);
+		try {
+			super.knnNormalizedQuery(input, k, queryTuple);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 	/**
 	 * Thread-safe method which performs a knn query in the index instance
 	 * using an normalized input. It will not normalize the vector again.
@@ -141,7 +424,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public QueryTuple knnNormalizedQuery(float[] input, int k) {
-		this.readLock.lock();
+		lock(this.readLock);
 		QueryTuple queryTuple;
 		try {
 			queryTuple = super.knnNormalizedQuery(input, k);
@@ -151,6 +434,202 @@ public class ConcurrentIndex extends Index {
 		return queryTuple;
 	}
 
+	/**
+	 * Thread-safe method which performs a knn query in the index instance
+	 * retrieving the 64-bit identifiers of the results.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected.
+	 *
+	 * @return a query tuple instance that contain the 64-bit indices and coefficients.
+	 */
+	@Override
+	public LongQueryTuple knnQueryWithLongIds(float[] input, int k) {
+		lock(this.readLock);
+		try {
+			return super.knnQueryWithLongIds(input, k);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance using
+	 * a normalized input and retrieving the 64-bit identifiers of the results.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected.
+	 *
+	 * @return a query tuple instance that contain the 64-bit indices and coefficients.
+	 */
+	@Override
+	public LongQueryTuple knnNormalizedQueryWithLongIds(float[] input, int k) {
+		lock(this.readLock);
+		try {
+			return super.knnNormalizedQueryWithLongIds(input, k);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance
+	 * admitting only the items whose identifiers are set in the filter.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param filter - identifiers allowed in the results.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	@Override
+	public QueryTuple knnQuery(float[] input, int k, BitSet filter) {
+		lock(this.readLock);
+		try {
+			return super.knnQuery(input, k, filter);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance using
+	 * a normalized input and admitting only the items whose identifiers are set in the filter.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param filter - identifiers allowed in the results.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	@Override
+	public QueryTuple knnNormalizedQuery(float[] input, int k, BitSet filter) {
+		lock(this.readLock);
+		try {
+			return super.knnNormalizedQuery(input, k, filter);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance
+	 * collecting statistics about the work done by the native search.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param statistics - [output] statistics of this query.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	@Override
+	public QueryTuple knnQuery(float[] input, int k, SearchStatistics statistics) {
+		lock(this.readLock);
+		try {
+			return super.knnQuery(input, k, statistics);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query in the index instance using
+	 * a normalized input and collecting statistics about the work done by the native search.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param statistics - [output] statistics of this query.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	@Override
+	public QueryTuple knnNormalizedQuery(float[] input, int k, SearchStatistics statistics) {
+		lock(this.readLock);
+		try {
+			return super.knnNormalizedQuery(input, k, statistics);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query reading the input from a buffer
+	 * and writing the results into caller-owned buffers.
+	 *
+	 * @param input - buffer with at least dimension floats remaining in the native byte order;
+	 * @param k - number of results expected;
+	 * @param ids - [output] buffer with at least k ints remaining in the native byte order;
+	 * @param coefficients - [output] buffer with at least k floats remaining in the native byte order.
+	 */
+	@Override
+	public void knnQuery(FloatBuffer input, int k, IntBuffer ids, FloatBuffer coefficients) {
+		lock(this.readLock);
+		try {
+			super.knnQuery(input, k, ids, coefficients);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs a knn query using a normalized input stored
+	 * in a buffer and writing the results into caller-owned buffers.
+	 *
+	 * @param input - buffer with at least dimension normalized floats remaining in the native byte order;
+	 * @param k - number of results expected;
+	 * @param ids - [output] buffer with at least k ints remaining in the native byte order;
+	 * @param coefficients - [output] buffer with at least k floats remaining in the native byte order.
+	 */
+	@Override
+	public void knnNormalizedQuery(FloatBuffer input, int k, IntBuffer ids, FloatBuffer coefficients) {
+		lock(this.readLock);
+		try {
+			super.knnNormalizedQuery(input, k, ids, coefficients);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs several knn queries in a single native call
+	 * using a specific number of native threads.
+	 *
+	 * @param inputs - float arrays with the length expected by the index (dimension);
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 *
+	 * @return one query tuple per input (in the same order).
+	 */
+	@Override
+	public QueryTuple[] knnQueryBatch(float[][] inputs, int k, int numberOfThreads) {
+		lock(this.readLock);
+		try {
+			return super.knnQueryBatch(inputs, k, numberOfThreads);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which performs several knn queries with normalized inputs
+	 * in a single native call using a specific number of native threads.
+	 *
+	 * @param inputs - normalized float arrays;
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 *
+	 * @return one query tuple per input (in the same order).
+	 */
+	@Override
+	public QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k, int numberOfThreads) {
+		lock(this.readLock);
+		try {
+			return super.knnNormalizedQueryBatch(inputs, k, numberOfThreads);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 	/**
 	 * Thread-safe method which stores the content of the index into a file.
 	 * This method relies on the native implementation.
@@ -159,7 +638,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void save(Path path) {
-		this.readLock.lock();
+		lock(this.readLock);
 		try {
 			super.save(path);
 		} finally {
@@ -178,7 +657,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void load(Path path, int maxNumberOfElements) {
-		this.writeLock.lock();
+		lock(this.writeLock);
 		try {
 			super.load(path, maxNumberOfElements);
 		} finally {
@@ -186,6 +665,74 @@ public class ConcurrentIndex extends Index {
 		}
 	}
 
+	/**
+	 * Thread-safe method which stores the content of the index into a channel.
+	 *
+	 * @param channel - destination channel.
+	 */
+	@Override
+	public void save(WritableByteChannel channel) {
+		lock(this.readLock);
+		try {
+			super.save(channel);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which loads the content of an index from a channel.
+	 *
+	 * Note: if the index was previously initialized, the old
+	 * content will be erased.
+	 *
+	 * @param channel - source channel;
+	 * @param maxNumberOfElements - max number of elements in the index.
+	 */
+	@Override
+	public void load(ReadableByteChannel channel, int maxNumberOfElements) {
+		lock(this.writeLock);
+		try {
+			super.load(channel, maxNumberOfElements);
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which loads the content stored in a file path onto the index
+	 * by mapping the file read-only into memory.
+	 *
+	 * Note: if the index was previously initialized, the old
+	 * content will be erased.
+	 *
+	 * @param path - path to the index file.
+	 */
+	@Override
+	public void loadMapped(Path path) {
+		lock(this.writeLock);
+		try {
+			super.loadMapped(path);
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which checks whether this index is read-only.
+	 *
+	 * @return true if items cannot be added or deleted.
+	 */
+	@Override
+	public boolean isReadOnly() {
+		lock(this.readLock);
+		try {
+			return super.isReadOnly();
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 	/**
 	 * Thread-safe method which frees the memory allocated for this index in the native context.
 	 *
@@ -193,7 +740,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void clear() {
-		this.writeLock.lock();
+		lock(this.writeLock);
 		try {
 			super.clear();
 		} finally {
@@ -201,6 +748,134 @@ public class ConcurrentIndex extends Index {
 		}
 	}
 
+	/**
+	 * Thread-safe method which releases this index (it waits for the running operations).
+	 */
+	@Override
+	public void close() {
+		lock(this.writeLock);
+		try {
+			super.close();
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which changes the maximum number of elements the index can hold.
+	 *
+	 * @param maxNumberOfElements - the new capacity (not smaller than the number of items in the index).
+	 */
+	@Override
+	public void resize(int maxNumberOfElements) {
+		lock(this.writeLock);
+		try {
+			super.resize(maxNumberOfElements);
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which retrieves the maximum number of elements the index can currently hold.
+	 *
+	 * @return the capacity of the index.
+	 */
+	@Override
+	public int getMaxNumberOfElements() {
+		lock(this.readLock);
+		try {
+			return super.getMaxNumberOfElements();
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which defines whether insertions reuse the slots of the deleted items.
+	 *
+	 * @param replaceDeleted - true to reuse the slots of the deleted items.
+	 */
+	@Override
+	public void setReplaceDeleted(boolean replaceDeleted) {
+		lock(this.writeLock);
+		try {
+			super.setReplaceDeleted(replaceDeleted);
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which retrieves the number of items marked as deleted.
+	 *
+	 * @return number of deleted items still stored in the index.
+	 */
+	@Override
+	public int getDeletedCount() {
+		lock(this.readLock);
+		try {
+			return super.getDeletedCount();
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method which retrieves the number of bytes allocated by this index in the native context.
+	 *
+	 * @return bytes allocated by the index.
+	 */
+	@Override
+	public long getMemoryUsage() {
+		lock(this.readLock);
+		try {
+			return super.getMemoryUsage();
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Grows the capacity under the write lock. It is called by the insertions, which
+	 * hold the update lock: with parallel updates that lock is shared, so it is released
+	 * while the write lock is held and acquired again afterwards.
+	 *
+	 * @param requiredNumberOfElements - the capacity needed by the insertion.
+	 */
+	@Override
+	protected void growCapacity(int requiredNumberOfElements) {
+		if (this.updateLock == this.writeLock) {
+			super.growCapacity(requiredNumberOfElements);
+			return;
+		}
+		this.updateLock.unlock();
+		try {
+			lock(this.writeLock);
+			try {
+				super.growCapacity(requiredNumberOfElements);
+			} finally {
+				this.writeLock.unlock();
+			}
+		} finally {
+			lock(this.updateLock);
+		}
+	}
+
+	/**
+	 * Acquires a lock reporting the time spent waiting for it to the metrics listener (if any).
+	 */
+	private void lock(Lock lock) {
+		IndexMetricsListener listener = getMetricsListener();
+		if (listener == null) {
+			lock.lock();
+			return;
+		}
+		long start = System.nanoTime();
+		lock.lock();
+		listener.onLockAcquired(System.nanoTime() - start, lock == this.writeLock);
+	}
+
 	/**
 	 * Thread-safe method which sets the query time accuracy / speed trade-off value.
 	 *
@@ -208,7 +883,7 @@ public class ConcurrentIndex extends Index {
 	 */
 	@Override
 	public void setEf(int ef) {
-		this.writeLock.lock();
+		lock(this.writeLock);
 		try {
 			super.setEf(ef);
 		} finally {
@@ -224,7 +899,7 @@ public class ConcurrentIndex extends Index {
 	 * @return true or false.
 	 */
 	public boolean hasId(int id) {
-		this.readLock.lock();
+		lock(this.readLock);
 		boolean hasId;
 		try {
 			hasId = super.hasId(id);
@@ -240,11 +915,11 @@ public class ConcurrentIndex extends Index {
 	 * @param id identifier.
 	 */
 	public void markDeleted(int id) {
-		this.writeLock.lock();
+		lock(this.updateLock);
 		try {
 			super.markDeleted(id);
 		} finally {
-			this.writeLock.unlock();
+			this.updateLock.unlock();
 		}
 	}
 
@@ -256,7 +931,7 @@ public class ConcurrentIndex extends Index {
 	 * @return an optional containing or not the
 	 */
 	public Optional<float[]> getData(int id) {
-		this.readLock.lock();
+		lock(this.readLock);
 		Optional data;
 		try {
 			data = super.getData(id);
@@ -266,4 +941,53 @@ public class ConcurrentIndex extends Index {
 		return data;
 	}
 
+	/**
+	 * Thread-safe method that checks whether there is an item with the specified 64-bit identifier in the index.
+	 *
+	 * @param id - 64-bit identifier.
+	 *
+	 * @return true or false.
+	 */
+	@Override
+	public boolean hasId(long id) {
+		lock(this.readLock);
+		try {
+			return super.hasId(id);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method that marks a 64-bit ID as deleted.
+	 *
+	 * @param id 64-bit identifier.
+	 */
+	@Override
+	public void markDeleted(long id) {
+		lock(this.updateLock);
+		try {
+			super.markDeleted(id);
+		} finally {
+			this.updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Thread-safe method that gets the data from a specific 64-bit identifier in the index.
+	 *
+	 * @param id - 64-bit identifier.
+	 *
+	 * @return an optional containing or not the
+	 */
+	@Override
+	public Optional<float[]> getData(long id) {
+		lock(this.readLock);
+		try {
+			return super.getData(id);
+		} finally {
+			this.readLock.unlock();
+		}
+	}
+
 }
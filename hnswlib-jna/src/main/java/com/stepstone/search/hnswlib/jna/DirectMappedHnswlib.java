@@ -0,0 +1,447 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Hnswlib implementation based on JNA direct mapping (static native methods
+ * registered via Native.register). Differently from the interface mapping
+ * (Native.load), calls do not go through a dynamic proxy, so there is no
+ * reflection nor boxing of the arguments on every invocation.
+ *
+ * The registration fails with an UnsatisfiedLinkError when any of the
+ * functions is missing in the shared library (e.g., an older build of it).
+ */
+final class DirectMappedHnswlib implements Hnswlib {
+
+	DirectMappedHnswlib(String libraryName) {
+		Native.register(Natives.class, NativeLibrary.getInstance(libraryName));
+	}
+
+	@Override
+	public Pointer createNewIndex(String spaceName, int dimension) {
+		return Natives.createNewIndex(spaceName, dimension);
+	}
+
+	@Override
+	public int initNewIndex(Pointer index, int maxNumberOfElements, int m, int efConstruction, int randomSeed) {
+		return Natives.initNewIndex(index, maxNumberOfElements, m, efConstruction, randomSeed);
+	}
+
+	@Override
+	public int addItemToIndex(float[] item, boolean normalized, int id, Pointer index) {
+		return Natives.addItemToIndex(item, normalized, id, index);
+	}
+
+	@Override
+	public int addItemToIndex(FloatBuffer item, boolean normalized, int id, Pointer index) {
+		return Natives.addItemToIndex(item, normalized, id, index);
+	}
+
+	@Override
+	public int addItemsToIndex(float[] items, boolean normalized, int numberOfItems, int[] ids, int numberOfThreads, Pointer index) {
+		return Natives.addItemsToIndex(items, normalized, numberOfItems, ids, numberOfThreads, index);
+	}
+
+	@Override
+	public int addItemToIndexWithLongId(float[] item, boolean normalized, long id, Pointer index) {
+		return Natives.addItemToIndexWithLongId(item, normalized, id, index);
+	}
+
+	@Override
+	public int addItemsToIndexWithLongIds(float[] items, boolean normalized, int numberOfItems, long[] ids, int numberOfThreads, Pointer index) {
+		return Natives.addItemsToIndexWithLongIds(items, normalized, numberOfItems, ids, numberOfThreads, index);
+	}
+
+	@Override
+	public int getIndexLength(Pointer index) {
+		return Natives.getIndexLength(index);
+	}
+
+	@Override
+	public int getMaxElements(Pointer index) {
+		return Natives.getMaxElements(index);
+	}
+
+	@Override
+	public int resizeIndex(Pointer index, int maxNumberOfElements) {
+		return Natives.resizeIndex(index, maxNumberOfElements);
+	}
+
+	@Override
+	public int getDeletedCount(Pointer index) {
+		return Natives.getDeletedCount(index);
+	}
+
+	@Override
+	public long getMemoryUsage(Pointer index) {
+		return Natives.getMemoryUsage(index);
+	}
+
+	@Override
+	public long getTotalMemoryUsage() {
+		return Natives.getTotalMemoryUsage();
+	}
+
+	@Override
+	public int getSimdLevel() {
+		return Natives.getSimdLevel();
+	}
+
+	@Override
+	public int setMaxSimdLevel(int maxSimdLevel) {
+		return Natives.setMaxSimdLevel(maxSimdLevel);
+	}
+
+	@Override
+	public int setReplaceDeleted(Pointer index, boolean replaceDeleted) {
+		return Natives.setReplaceDeleted(index, replaceDeleted);
+	}
+
+	@Override
+	public int saveIndexToPath(Pointer index, String path) {
+		return Natives.saveIndexToPath(index, path);
+	}
+
+	@Override
+	public int loadIndexFromPath(Pointer index, int maxNumberOfElements, String path) {
+		return Natives.loadIndexFromPath(index, maxNumberOfElements, path);
+	}
+
+	@Override
+	public int saveIndexToStream(Pointer index, WriteCallback writeCallback) {
+		return Natives.saveIndexToStream(index, writeCallback);
+	}
+
+	@Override
+	public int loadIndexFromStream(Pointer index, int maxNumberOfElements, ReadCallback readCallback) {
+		return Natives.loadIndexFromStream(index, maxNumberOfElements, readCallback);
+	}
+
+	@Override
+	public int loadIndexMappedFromPath(Pointer index, String path) {
+		return Natives.loadIndexMappedFromPath(index, path);
+	}
+
+	@Override
+	public boolean isIndexReadOnly(Pointer index) {
+		return Natives.isIndexReadOnly(index);
+	}
+
+	@Override
+	public int knnQuery(Pointer index, float[] input, boolean normalized, int k, int[] indices, float[] coefficients) {
+		return Natives.knnQuery(index, input, normalized, k, indices, coefficients);
+	}
+
+	@Override
+	public int knnQueryWithEf(Pointer index, float[] input, boolean normalized, int k, int ef, int[] indices, float[] coefficients) {
+		return Natives.knnQueryWithEf(index, input, normalized, k, ef, indices, coefficients);
+	}
+
+	@Override
+	public int knnQuery(Pointer index, FloatBuffer input, boolean normalized, int k, IntBuffer indices, FloatBuffer coefficients) {
+		return Natives.knnQuery(index, input, normalized, k, indices, coefficients);
+	}
+
+	@Override
+	public int knnQueryWithLongIds(Pointer index, float[] input, boolean normalized, int k, long[] indices, float[] coefficients) {
+		return Natives.knnQueryWithLongIds(index, input, normalized, k, indices, coefficients);
+	}
+
+	@Override
+	public int knnQueryFiltered(Pointer index, float[] input, boolean normalized, int k, long[] filter, int filterLength, int[] indices, float[] coefficients) {
+		return Natives.knnQueryFiltered(index, input, normalized, k, filter, filterLength, indices, coefficients);
+	}
+
+	@Override
+	public int knnQueryWithStatistics(Pointer index, float[] input, boolean normalized, int k, int[] indices, float[] coefficients, long[] statistics) {
+		return Natives.knnQueryWithStatistics(index, input, normalized, k, indices, coefficients, statistics);
+	}
+
+	@Override
+	public int getSearchStatistics(Pointer index, long[] statistics) {
+		return Natives.getSearchStatistics(index, statistics);
+	}
+
+	@Override
+	public int setSearchStatisticsEnabled(Pointer index, boolean enabled) {
+		return Natives.setSearchStatisticsEnabled(index, enabled);
+	}
+
+	@Override
+	public int resetSearchStatistics(Pointer index) {
+		return Natives.resetSearchStatistics(index);
+	}
+
+	@Override
+	public int knnQueryBatch(Pointer index, float[] input, boolean normalized, int numberOfQueries, int k, int numberOfThreads, int[] indices, float[] coefficients) {
+		return Natives.knnQueryBatch(index, input, normalized, numberOfQueries, k, numberOfThreads, indices, coefficients);
+	}
+
+	@Override
+	public int clearIndex(Pointer index) {
+		return Natives.clearIndex(index);
+	}
+
+	@Override
+	public int destroyIndex(Pointer index) {
+		return Natives.destroyIndex(index);
+	}
+
+	@Override
+	public int setEf(Pointer index, int ef) {
+		return Natives.setEf(index, ef);
+	}
+
+	@Override
+	public int getData(Pointer index, int id, float[] vector, int dim) {
+		return Natives.getData(index, id, vector, dim);
+	}
+
+	@Override
+	public int hasId(Pointer index, int id) {
+		return Natives.hasId(index, id);
+	}
+
+	@Override
+	public int getDataByLongId(Pointer index, long id, float[] vector, int dim) {
+		return Natives.getDataByLongId(index, id, vector, dim);
+	}
+
+	@Override
+	public int hasLongId(Pointer index, long id) {
+		return Natives.hasLongId(index, id);
+	}
+
+	@Override
+	public int getItems(Pointer index, int[] ids, float[] vectors, int capacity) {
+		return Natives.getItems(index, ids, vectors, capacity);
+	}
+
+	@Override
+	public float computeSimilarity(Pointer index, float[] vector1, float[] vector2) {
+		return Natives.computeSimilarity(index, vector1, vector2);
+	}
+
+	@Override
+	public int getM(Pointer index) {
+		return Natives.getM(index);
+	}
+
+	@Override
+	public int getEfConstruction(Pointer index) {
+		return Natives.getEfConstruction(index);
+	}
+
+	@Override
+	public int getEf(Pointer index) {
+		return Natives.getEf(index);
+	}
+
+	@Override
+	public int markDeleted(Pointer index, int id) {
+		return Natives.markDeleted(index, id);
+	}
+
+	@Override
+	public int markDeletedLongId(Pointer index, long id) {
+		return Natives.markDeletedLongId(index, id);
+	}
+
+	@Override
+	public Pointer createNewExactIndex(String spaceName, int dimension) {
+		return Natives.createNewExactIndex(spaceName, dimension);
+	}
+
+	@Override
+	public int initNewExactIndex(Pointer index, int maxNumberOfElements) {
+		return Natives.initNewExactIndex(index, maxNumberOfElements);
+	}
+
+	@Override
+	public int addItemsToExactIndex(float[] items, boolean normalized, int numberOfItems, int[] ids, int numberOfThreads, Pointer index) {
+		return Natives.addItemsToExactIndex(items, normalized, numberOfItems, ids, numberOfThreads, index);
+	}
+
+	@Override
+	public int knnQueryExactIndex(Pointer index, float[] input, boolean normalized, int numberOfQueries, int k, int numberOfThreads, int[] indices, float[] coefficients) {
+		return Natives.knnQueryExactIndex(index, input, normalized, numberOfQueries, k, numberOfThreads, indices, coefficients);
+	}
+
+	@Override
+	public int removeItemFromExactIndex(Pointer index, int id) {
+		return Natives.removeItemFromExactIndex(index, id);
+	}
+
+	@Override
+	public int hasIdInExactIndex(Pointer index, int id) {
+		return Natives.hasIdInExactIndex(index, id);
+	}
+
+	@Override
+	public int getDataFromExactIndex(Pointer index, int id, float[] vector) {
+		return Natives.getDataFromExactIndex(index, id, vector);
+	}
+
+	@Override
+	public int getExactIndexLength(Pointer index) {
+		return Natives.getExactIndexLength(index);
+	}
+
+	@Override
+	public int getExactIndexMaxElements(Pointer index) {
+		return Natives.getExactIndexMaxElements(index);
+	}
+
+	@Override
+	public long getExactIndexMemoryUsage(Pointer index) {
+		return Natives.getExactIndexMemoryUsage(index);
+	}
+
+	@Override
+	public int resizeExactIndex(Pointer index, int maxNumberOfElements) {
+		return Natives.resizeExactIndex(index, maxNumberOfElements);
+	}
+
+	@Override
+	public int clearExactIndex(Pointer index) {
+		return Natives.clearExactIndex(index);
+	}
+
+	@Override
+	public int destroyExactIndex(Pointer index) {
+		return Natives.destroyExactIndex(index);
+	}
+
+	/**
+	 * Native functions of the shared library. Their names and signatures
+	 * have to match the exported functions in bindings.cpp.
+	 */
+	private static final class Natives {
+
+		static native Pointer createNewIndex(String spaceName, int dimension);
+
+		static native int initNewIndex(Pointer index, int maxNumberOfElements, int m, int efConstruction, int randomSeed);
+
+		static native int addItemToIndex(float[] item, boolean normalized, int id, Pointer index);
+
+		static native int addItemToIndex(FloatBuffer item, boolean normalized, int id, Pointer index);
+
+		static native int addItemsToIndex(float[] items, boolean normalized, int numberOfItems, int[] ids, int numberOfThreads, Pointer index);
+
+		static native int addItemToIndexWithLongId(float[] item, boolean normalized, long id, Pointer index);
+
+		static native int addItemsToIndexWithLongIds(float[] items, boolean normalized, int numberOfItems, long[] ids, int numberOfThreads, Pointer index);
+
+		static native int getIndexLength(Pointer index);
+
+		static native int getMaxElements(Pointer index);
+
+		static native int resizeIndex(Pointer index, int maxNumberOfElements);
+
+		static native int getDeletedCount(Pointer index);
+
+		static native long getMemoryUsage(Pointer index);
+
+		static native long getTotalMemoryUsage();
+
+		static native int getSimdLevel();
+
+		static native int setMaxSimdLevel(int maxSimdLevel);
+
+		static native int setReplaceDeleted(Pointer index, boolean replaceDeleted);
+
+		static native int saveIndexToPath(Pointer index, String path);
+
+		static native int loadIndexFromPath(Pointer index, int maxNumberOfElements, String path);
+
+		static native int saveIndexToStream(Pointer index, WriteCallback writeCallback);
+
+		static native int loadIndexFromStream(Pointer index, int maxNumberOfElements, ReadCallback readCallback);
+
+		static native int loadIndexMappedFromPath(Pointer index, String path);
+
+		static native boolean isIndexReadOnly(Pointer index);
+
+		static native int knnQuery(Pointer index, float[] input, boolean normalized, int k, int[] indices, float[] coefficients);
+
+		static native int knnQueryWithEf(Pointer index, float[] input, boolean normalized, int k, int ef, int[] indices, float[] coefficients);
+
+		static native int knnQuery(Pointer index, FloatBuffer input, boolean normalized, int k, IntBuffer indices, FloatBuffer coefficients);
+
+		static native int knnQueryWithLongIds(Pointer index, float[] input, boolean normalized, int k, long[] indices, float[] coefficients);
+
+		static native int knnQueryFiltered(Pointer index, float[] input, boolean normalized, int k, long[] filter, int filterLength, int[] indices, float[] coefficients);
+
+		static native int knnQueryWithStatistics(Pointer index, float[] input, boolean normalized, int k, int[] indices, float[] coefficients, long[] statistics);
+
+		static native int getSearchStatistics(Pointer index, long[] statistics);
+
+		static native int setSearchStatisticsEnabled(Pointer index, boolean enabled);
+
+		static native int resetSearchStatistics(Pointer index);
+
+		static native int knnQueryBatch(Pointer index, float[] input, boolean normalized, int numberOfQueries, int k, int numberOfThreads, int[] indices, float[] coefficients);
+
+		static native int clearIndex(Pointer index);
+
+		static native int destroyIndex(Pointer index);
+
+		static native int setEf(Pointer index, int ef);
+
+		static native int getData(Pointer index, int id, float[] vector, int dim);
+
+		static native int hasId(Pointer index, int id);
+
+		static native int getDataByLongId(Pointer index, long id, float[] vector, int dim);
+
+		static native int hasLongId(Pointer index, long id);
+
+		static native int getItems(Pointer index, int[] ids, float[] vectors, int capacity);
+
+		static native float computeSimilarity(Pointer index, float[] vector1, float[] vector2);
+
+		static native int getM(Pointer index);
+
+		static native int getEfConstruction(Pointer index);
+
+		static native int getEf(Pointer index);
+
+		static native int markDeleted(Pointer index, int id);
+
+		static native int markDeletedLongId(Pointer index, long id);
+
+		static native Pointer createNewExactIndex(String spaceName, int dimension);
+
+		static native int initNewExactIndex(Pointer index, int maxNumberOfElements);
+
+		static native int addItemsToExactIndex(float[] items, boolean normalized, int numberOfItems, int[] ids, int numberOfThreads, Pointer index);
+
+		static native int knnQueryExactIndex(Pointer index, float[] input, boolean normalized, int numberOfQueries, int k, int numberOfThreads, int[] indices, float[] coefficients);
+
+		static native int removeItemFromExactIndex(Pointer index, int id);
+
+		static native int hasIdInExactIndex(Pointer index, int id);
+
+		static native int getDataFromExactIndex(Pointer index, int id, float[] vector);
+
+		static native int getExactIndexLength(Pointer index);
+
+		static native int getExactIndexMaxElements(Pointer index);
+
+		static native long getExactIndexMemoryUsage(Pointer index);
+
+		static native int resizeExactIndex(Pointer index, int maxNumberOfElements);
+
+		static native int clearExactIndex(Pointer index);
+
+		static native int destroyExactIndex(Pointer index);
+
+		private Natives() {
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.stepstone.search.hnswlib.jna;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Measures the recall@k and the latency of the queries of an index for different
+ * values of ef, and finds the smallest ef which reaches a target recall. The exact
+ * neighbours of the sample queries (ground truth) are computed by an ExactIndex with
+ * a copy of the items, unless they are given.
+ *
+ * The queries use a per-query ef (see Index.knnQuery(float[], int, int)), so the
+ * ef of the index is only changed by tuneAndApply(). They bypass the query cache of
+ * the index (if any), so the measurements are the ones of the native search. The tuner is meant to be run
+ * after building an index (e.g., in the pipeline which builds it from a new
+ * embedding model):
+ *
+ * <pre>
+ * new EfTuner(index, sampleQueries, 10).tuneAndApply(0.95);
+ * </pre>
+ */
+public class EfTuner {
+
+	private static final int DEFAULT_MAX_EF = 4_096;
+	private static final int WARM_UP_QUERIES = 100;
+
+	private final Index index;
+	private final float[][] queries;
+	private final int k;
+	private final int[][] groundTruth;
+
+	/**
+	 * @param index - the index to be tuned (initialized, with its items);
+	 * @param queries - sample of the queries (ideally, real ones);
+	 * @param k - number of results of the queries.
+	 */
+	public EfTuner(Index index, float[][] queries, int k) {
+		this(index, queries, k, computeGroundTruth(index, queries, k));
+	}
+
+	/**
+	 * @param index - the index to be tuned (initialized, with its items);
+	 * @param queries - sample of the queries (ideally, real ones);
+	 * @param k - number of results of the queries;
+	 * @param groundTruth - identifiers of the k exact neighbours of each query.
+	 */
+	public EfTuner(Index index, float[][] queries, int k, int[][] groundTruth) {
+		if (queries.length == 0) {
+			throw new IllegalArgumentException("At least one query is needed.");
+		}
+		if (groundTruth.length != queries.length) {
+			throw new IllegalArgumentException("Expected the ground truth of " + queries.length + " queries but got " + groundTruth.length + ".");
+		}
+		this.index = index;
+		this.queries = queries;
+		this.k = k;
+		this.groundTruth = groundTruth;
+	}
+
+	/**
+	 * Computes the exact neighbours of the queries by scanning all the items of an index.
+	 *
+	 * @param index - the index (with int identifiers);
+	 * @param queries - the queries;
+	 * @param k - number of neighbours per query.
+	 * @return the identifiers of the k exact neighbours of each query (nearest first).
+	 */
+	public static int[][] computeGroundTruth(Index index, float[][] queries, int k) {
+		try (ExactIndex exactIndex = ExactIndex.copyOf(index)) {
+			QueryTuple[] results = exactIndex.knnQueryBatch(queries, k);
+			int[][] groundTruth = new int[results.length][];
+			for (int i = 0; i < results.length; i++) {
+				groundTruth[i] = results[i].getIds();
+			}
+			return groundTruth;
+		}
+	}
+
+	/**
+	 * Measures the recall and the latency of the queries with a specific ef.
+	 *
+	 * @param ef - query time accuracy / speed trade-off value.
+	 * @return the measurement.
+	 */
+	public Measurement measure(int ef) {
+		return sweep(ef).get(0);
+	}
+
+	/**
+	 * Measures the recall and the latency of the queries with several values of ef.
+	 *
+	 * @param efs - query time accuracy / speed trade-off values.
+	 * @return one measurement per ef (in the same order).
+	 */
+	public List<Measurement> sweep(int... efs) {
+		List<Measurement> measurements = new ArrayList<>(efs.length);
+		for (int ef : efs) {
+			measurements.add(run(ef));
+		}
+		return measurements;
+	}
+
+	/**
+	 * Finds the smallest ef (up to 4096) whose recall reaches the target.
+	 *
+	 * @param targetRecall - recall@k to be reached (between 0 and 1).
+	 * @return the measurement of the smallest ef, or empty when the target cannot be reached.
+	 */
+	public Optional<Measurement> tune(double targetRecall) {
+		return tune(targetRecall, DEFAULT_MAX_EF);
+	}
+
+	/**
+	 * Finds the smallest ef (up to maxEf) whose recall reaches the target: ef is doubled
+	 * (starting from k) until the target is reached and then refined by a binary search,
+	 * assuming that the recall grows with ef.
+	 *
+	 * @param targetRecall - recall@k to be reached (between 0 and 1);
+	 * @param maxEf - largest ef to be tried.
+	 * @return the measurement of the smallest ef, or empty when the target cannot be reached.
+	 */
+	public Optional<Measurement> tune(double targetRecall, int maxEf) {
+		/* values of ef below k behave as k */
+		int failingEf = k - 1;
+		Measurement passing = null;
+		for (int ef = k; passing == null; ef = (int) Math.min(2L * ef, maxEf)) {
+			Measurement measurement = run(ef);
+			if (measurement.getRecall() >= targetRecall) {
+				passing = measurement;
+			} else if (ef >= maxEf) {
+				return Optional.empty();
+			} else {
+				failingEf = ef;
+			}
+		}
+		while (passing.getEf() - failingEf > 1) {
+			int ef = (failingEf + passing.getEf()) >>> 1;
+			Measurement measurement = run(ef);
+			if (measurement.getRecall() >= targetRecall) {
+				passing = measurement;
+			} else {
+				failingEf = ef;
+			}
+		}
+		return Optional.of(passing);
+	}
+
+	/**
+	 * Finds the smallest ef (up to 4096) whose recall reaches the target and sets it
+	 * in the index. When the target cannot be reached, the ef of the index is not changed.
+	 *
+	 * @param targetRecall - recall@k to be reached (between 0 and 1).
+	 * @return the measurement of the ef set in the index, or empty when the target cannot be reached.
+	 */
+	public Optional<Measurement> tuneAndApply(double targetRecall) {
+		return tuneAndApply(targetRecall, DEFAULT_MAX_EF);
+	}
+
+	/**
+	 * Finds the smallest ef (up to maxEf) whose recall reaches the target and sets it
+	 * in the index. When the target cannot be reached, the ef of the index is not changed.
+	 *
+	 * @param targetRecall - recall@k to be reached (between 0 and 1);
+	 * @param maxEf - largest ef to be tried.
+	 * @return the measurement of the ef set in the index, or empty when the target cannot be reached.
+	 */
+	public Optional<Measurement> tuneAndApply(double targetRecall, int maxEf) {
+		Optional<Measurement> measurement = tune(targetRecall, maxEf);
+		measurement.ifPresent(m -> index.setEf(m.getEf()));
+		return measurement;
+	}
+
+	private Measurement run(int ef) {
+		for (int i = 0; i < Math.min(WARM_UP_QUERIES, queries.length); i++) {
+			index.knnQueryUncached(queries[i], k, ef);
+		}
+		long[] latencies = new long[queries.length];
+		long found = 0;
+		for (int i = 0; i < queries.length; i++) {
+			long start = System.nanoTime();
+			QueryTuple queryTuple = index.knnQueryUncached(queries[i], k, ef);
+			latencies[i] = System.nanoTime() - start;
+			found += countFound(queryTuple.getIds(), groundTruth[i]);
+		}
+		Arrays.sort(latencies);
+		return new Measurement(ef, (double) found / ((long) queries.length * k), latencies);
+	}
+
+	private int countFound(int[] ids, int[] expectedIds) {
+		int found = 0;
+		for (int id : ids) {
+			for (int i = 0; i < Math.min(k, expectedIds.length); i++) {
+				if (id == expectedIds[i]) {
+					found++;
+					break;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Recall@k and latency of the sample queries with a specific ef.
+	 */
+	public static final class Measurement {
+
+		private final int ef;
+		private final double recall;
+		private final long[] sortedLatencies;
+
+		Measurement(int ef, double recall, long[] sortedLatencies) {
+			this.ef = ef;
+			this.recall = recall;
+			this.sortedLatencies = sortedLatencies;
+		}
+
+		public int getEf() {
+			return ef;
+		}
+
+		/**
+		 * Fraction of the exact k nearest neighbours returned by the queries.
+		 *
+		 * @return recall@k between 0 and 1.
+		 */
+		public double getRecall() {
+			return recall;
+		}
+
+		public double getMeanNanos() {
+			return Arrays.stream(sortedLatencies).average().orElse(0.0);
+		}
+
+		/**
+		 * Latency percentile of the queries (nearest-rank).
+		 *
+		 * @param percentile - value between 0 and 100 (e.g., 99.9).
+		 * @return the latency in nanoseconds.
+		 */
+		public long getPercentileNanos(double percentile) {
+			long rank = (long) Math.ceil(sortedLatencies.length * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+			return sortedLatencies[(int) Math.max(0, rank - 1)];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("ef=%d recall=%.4f mean=%.0fns p50=%dns p99=%dns",
+					ef, recall, getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99));
+		}
+	}
+}
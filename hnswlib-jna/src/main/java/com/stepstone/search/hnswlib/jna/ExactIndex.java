@@ -0,0 +1,349 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.stepstone.search.hnswlib.jna.exception.IndexAlreadyInitializedException;
+import com.stepstone.search.hnswlib.jna.exception.UnableToCreateNewIndexInstanceException;
+import com.sun.jna.Pointer;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index which answers the queries exactly, by computing the distance to all its
+ * items (with the SIMD distance functions of the vector space). It is meant for
+ * small collections, where a scan is as fast as navigating an HNSW graph without
+ * the cost of building it, and for computing the ground truth of the approximate
+ * queries (e.g., to measure their recall).
+ *
+ * Items need explicit identifiers; adding an item with an existing identifier
+ * replaces it, and deleting an item removes it (its memory is reused right away).
+ * The index is thread-safe: queries run in parallel, updates are exclusive.
+ */
+public class ExactIndex implements KnnIndex {
+
+	private static final int RESULT_SUCCESSFUL = 0;
+	private static final int RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE = 4;
+	private static final int ALL_AVAILABLE_THREADS = 0;
+
+	private static Hnswlib hnswlib = HnswlibFactory.getInstance();
+
+	private final Pointer reference;
+	private final NativeIndexReference.Owner owner;
+	private final SpaceName spaceName;
+	private final int dimension;
+	private final Lock readLock;
+	private final Lock writeLock;
+	private boolean initialized;
+	private volatile double growthFactor;
+
+	public ExactIndex(SpaceName spaceName, int dimension) {
+		this.spaceName = spaceName;
+		this.dimension = dimension;
+		reference = hnswlib.createNewExactIndex(spaceName.toString(), dimension);
+		if (reference == null) {
+			throw new UnableToCreateNewIndexInstanceException();
+		}
+		owner = new NativeIndexReference(reference, hnswlib::clearExactIndex, hnswlib::destroyExactIndex).register(this);
+		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
+	}
+
+	/**
+	 * Creates an exact index with the items of an approximate index (the items marked
+	 * as deleted are not copied), e.g., to compute the ground truth of its queries.
+	 * The items have to use int identifiers.
+	 *
+	 * @param index - the approximate index (initialized).
+	 * @return a new exact index, with the capacity for the copied items.
+	 */
+	public static ExactIndex copyOf(Index index) {
+		return index.toExactIndex();
+	}
+
+	/**
+	 * Initialize the index to be used.
+	 *
+	 * @param maxNumberOfElements - max number of elements in the index.
+	 *
+	 * @throws IndexAlreadyInitializedException when the index was initialized before.
+	 */
+	public void initialize(int maxNumberOfElements) {
+		writeLock.lock();
+		try {
+			if (initialized) {
+				throw new IndexAlreadyInitializedException();
+			}
+			Index.checkResultCode(hnswlib.initNewExactIndex(reference, maxNumberOfElements));
+			initialized = true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Changes the maximum number of elements the index can hold.
+	 *
+	 * @param maxNumberOfElements - the new capacity (not smaller than the number of items in the index).
+	 */
+	public void resize(int maxNumberOfElements) {
+		writeLock.lock();
+		try {
+			if (maxNumberOfElements < hnswlib.getExactIndexLength(reference)) {
+				throw new IllegalArgumentException("The index already contains more than " + maxNumberOfElements + " items.");
+			}
+			Index.checkResultCode(hnswlib.resizeExactIndex(reference, maxNumberOfElements));
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the factor used to grow the capacity when an insertion finds the index
+	 * full (e.g., 1.5 grows the index by 50%). Values up to 1.0 disable the growth
+	 * (default), in which case inserting into a full index throws
+	 * ItemCannotBeInsertedIntoTheVectorSpaceException.
+	 *
+	 * @param growthFactor - factor applied to the capacity when the index is full.
+	 */
+	public void setGrowthFactor(double growthFactor) {
+		this.growthFactor = growthFactor;
+	}
+
+	public double getGrowthFactor() {
+		return growthFactor;
+	}
+
+	public SpaceName getSpaceName() {
+		return spaceName;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	@Override
+	public void addItem(float[] item, int id) {
+		addItems(item, new int[] {id}, 1);
+	}
+
+	@Override
+	public void addNormalizedItem(float[] item, int id) {
+		addNormalizedItems(item, new int[] {id}, 1);
+	}
+
+	@Override
+	public void addItems(float[] items, int[] ids) {
+		addItems(items, ids, ALL_AVAILABLE_THREADS);
+	}
+
+	@Override
+	public void addItems(float[] items, int[] ids, int numberOfThreads) {
+		insert(items, false, ids, numberOfThreads);
+	}
+
+	@Override
+	public void addNormalizedItems(float[] items, int[] ids, int numberOfThreads) {
+		insert(items, true, ids, numberOfThreads);
+	}
+
+	/**
+	 * Runs a native insertion. When the index is full and a growth factor
+	 * is set, the capacity is increased and the insertion is retried.
+	 */
+	private void insert(float[] items, boolean normalized, int[] ids, int numberOfThreads) {
+		int numberOfItems = getNumberOfItems(items, ids);
+		writeLock.lock();
+		try {
+			int resultCode = hnswlib.addItemsToExactIndex(items, normalized, numberOfItems, ids, numberOfThreads, reference);
+			if (resultCode == RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE && growthFactor > 1.0) {
+				int maxNumberOfElements = hnswlib.getExactIndexMaxElements(reference);
+				long requiredNumberOfElements = (long) hnswlib.getExactIndexLength(reference) + numberOfItems;
+				long grownNumberOfElements = Math.max((long) Math.ceil(maxNumberOfElements * growthFactor), requiredNumberOfElements);
+				Index.checkResultCode(hnswlib.resizeExactIndex(reference, (int) Math.min(grownNumberOfElements, Integer.MAX_VALUE)));
+				resultCode = hnswlib.addItemsToExactIndex(items, normalized, numberOfItems, ids, numberOfThreads, reference);
+			}
+			Index.checkResultCode(resultCode);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private int getNumberOfItems(float[] items, int[] ids) {
+		if (ids == null) {
+			throw new IllegalArgumentException("The items of an exact index need explicit identifiers.");
+		}
+		if (items.length % dimension != 0) {
+			throw new IllegalArgumentException("The length of the items array must be a multiple of the dimension (" + dimension + ").");
+		}
+		int numberOfItems = items.length / dimension;
+		if (ids.length != numberOfItems) {
+			throw new IllegalArgumentException("Expected " + numberOfItems + " ids but got " + ids.length + ".");
+		}
+		return numberOfItems;
+	}
+
+	/**
+	 * Removes an item from the index.
+	 *
+	 * @param id - identifier.
+	 */
+	@Override
+	public void markDeleted(int id) {
+		writeLock.lock();
+		try {
+			Index.checkResultCode(hnswlib.removeItemFromExactIndex(reference, id));
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean hasId(int id) {
+		readLock.lock();
+		try {
+			return hnswlib.hasIdInExactIndex(reference, id) == RESULT_SUCCESSFUL;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public Optional<float[]> getData(int id) {
+		float[] vector = new float[dimension];
+		readLock.lock();
+		try {
+			if (hnswlib.getDataFromExactIndex(reference, id, vector) == RESULT_SUCCESSFUL) {
+				return Optional.of(vector);
+			}
+			return Optional.empty();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public QueryTuple knnQuery(float[] input, int k) {
+		return query(new float[][] {input}, false, k, 1)[0];
+	}
+
+	@Override
+	public QueryTuple knnNormalizedQuery(float[] input, int k) {
+		return query(new float[][] {input}, true, k, 1)[0];
+	}
+
+	@Override
+	public QueryTuple[] knnQueryBatch(float[][] inputs, int k) {
+		return knnQueryBatch(inputs, k, ALL_AVAILABLE_THREADS);
+	}
+
+	@Override
+	public QueryTuple[] knnQueryBatch(float[][] inputs, int k, int numberOfThreads) {
+		return query(inputs, false, k, numberOfThreads);
+	}
+
+	@Override
+	public QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k) {
+		return knnNormalizedQueryBatch(inputs, k, ALL_AVAILABLE_THREADS);
+	}
+
+	@Override
+	public QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k, int numberOfThreads) {
+		return query(inputs, true, k, numberOfThreads);
+	}
+
+	/**
+	 * Runs the queries in a single native call. The inputs are copied into a flat
+	 * array, so they are not modified by the normalization at the native level.
+	 */
+	private QueryTuple[] query(float[][] inputs, boolean normalized, int k, int numberOfThreads) {
+		int numberOfQueries = inputs.length;
+		float[] flatInput = new float[numberOfQueries * dimension];
+		for (int i = 0; i < numberOfQueries; i++) {
+			System.arraycopy(inputs[i], 0, flatInput, i * dimension, dimension);
+		}
+		int[] ids = new int[numberOfQueries * k];
+		float[] coefficients = new float[numberOfQueries * k];
+		readLock.lock();
+		try {
+			Index.checkResultCode(hnswlib.knnQueryExactIndex(reference, flatInput, normalized, numberOfQueries, k, numberOfThreads, ids, coefficients));
+		} finally {
+			readLock.unlock();
+		}
+		if (numberOfQueries == 1) {
+			return new QueryTuple[] {new QueryTuple(ids, coefficients)};
+		}
+		QueryTuple[] queryTuples = new QueryTuple[numberOfQueries];
+		for (int i = 0; i < numberOfQueries; i++) {
+			queryTuples[i] = new QueryTuple(Arrays.copyOfRange(ids, i * k, (i + 1) * k),
+					Arrays.copyOfRange(coefficients, i * k, (i + 1) * k));
+		}
+		return queryTuples;
+	}
+
+	@Override
+	public int getLength() {
+		readLock.lock();
+		try {
+			return hnswlib.getExactIndexLength(reference);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public int getMaxNumberOfElements() {
+		readLock.lock();
+		try {
+			return hnswlib.getExactIndexMaxElements(reference);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves the number of bytes allocated by this index in the native context.
+	 *
+	 * @return bytes allocated by the index; 0 when it is not initialized, cleared or closed.
+	 */
+	@Override
+	public long getMemoryUsage() {
+		readLock.lock();
+		try {
+			return hnswlib.getExactIndexMemoryUsage(reference);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Free the memory allocated for this index in the native context.
+	 *
+	 * NOTE: Once the index is cleared, it cannot be initialized or used again.
+	 */
+	public void clear() {
+		writeLock.lock();
+		try {
+			Index.checkResultCode(hnswlib.clearExactIndex(reference));
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Releases this index: the memory allocated in the native context is freed.
+	 * Closing an index more than once has no effect.
+	 *
+	 * NOTE: Once the index is closed, it cannot be used again.
+	 */
+	@Override
+	public void close() {
+		writeLock.lock();
+		try {
+			owner.close();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+}
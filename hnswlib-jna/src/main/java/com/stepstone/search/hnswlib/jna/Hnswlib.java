@@ -1,8 +1,12 @@
 package com.stepstone.search.hnswlib.jna;
 
+import com.sun.jna.Callback;
 import com.sun.jna.Library;
 import com.sun.jna.Pointer;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 /**
  * Interface that implements JNA (Java Native Access) to Hnswlib
  * a fast approximate nearest neighbor search library available
@@ -50,6 +54,61 @@ public interface Hnswlib extends Library {
 	 */
 	int addItemToIndex(float[] item, boolean normalized, int id, Pointer index);
 
+	/**
+	 * Add an item with a 64-bit identifier to the index.
+	 *
+	 * @param item - array containing the input to be inserted into the index;
+	 * @param normalized - is the item normalized? if not and if required, it will be performed at the native level;
+	 * @param id - a 64-bit identifier to be used for this entry;
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return a result code.
+	 */
+	int addItemToIndexWithLongId(float[] item, boolean normalized, long id, Pointer index);
+
+	/**
+	 * Add an item stored in a buffer to the index. Direct buffers are passed
+	 * to the native side without any copy.
+	 *
+	 * @param item - buffer containing the input to be inserted into the index;
+	 * @param normalized - is the item normalized? if not and if required, it will be performed at the native level;
+	 * @param id - an identifier to be used for this entry;
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return a result code.
+	 */
+	int addItemToIndex(FloatBuffer item, boolean normalized, int id, Pointer index);
+
+	/**
+	 * Add several items to the index in a single call. The insertions are
+	 * spread over a pool of native threads.
+	 *
+	 * @param items - flat array containing all the items, one after the other;
+	 * @param normalized - are the items normalized? if not and if required, it will be performed at the native level;
+	 * @param numberOfItems - number of items contained in the flat array;
+	 * @param ids - identifiers to be used for the entries (null for incremental identifiers);
+	 * @param numberOfThreads - number of native threads used (0 means one per available CPU);
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return a result code.
+	 */
+	int addItemsToIndex(float[] items, boolean normalized, int numberOfItems, int[] ids, int numberOfThreads, Pointer index);
+
+	/**
+	 * Add several items with 64-bit identifiers to the index in a single call.
+	 * The insertions are spread over a pool of native threads.
+	 *
+	 * @param items - flat array containing all the items, one after the other;
+	 * @param normalized - are the items normalized? if not and if required, it will be performed at the native level;
+	 * @param numberOfItems - number of items contained in the flat array;
+	 * @param ids - 64-bit identifiers to be used for the entries;
+	 * @param numberOfThreads - number of native threads used (0 means one per available CPU);
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return a result code.
+	 */
+	int addItemsToIndexWithLongIds(float[] items, boolean normalized, int numberOfItems, long[] ids, int numberOfThreads, Pointer index);
+
 	/**
 	 * Retrieve the number of elements already inserted into the index.
 	 *
@@ -59,6 +118,76 @@ public interface Hnswlib extends Library {
 	 */
 	int getIndexLength(Pointer index);
 
+	/**
+	 * Retrieve the maximum number of elements the index can hold.
+	 *
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return the capacity of the index.
+	 */
+	int getMaxElements(Pointer index);
+
+	/**
+	 * Change the maximum number of elements the index can hold (reallocating the native memory).
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param maxNumberOfElements - the new capacity.
+	 *
+	 * @return a result code.
+	 */
+	int resizeIndex(Pointer index, int maxNumberOfElements);
+
+	/**
+	 * Retrieve the number of items marked as deleted (whose slots can be reused by insertions).
+	 *
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return number of deleted items in the index.
+	 */
+	int getDeletedCount(Pointer index);
+
+	/**
+	 * Retrieve the number of bytes allocated by an index in the native context.
+	 *
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return bytes allocated by the index (0 when it is not initialized or already cleared).
+	 */
+	long getMemoryUsage(Pointer index);
+
+	/**
+	 * Retrieve the number of bytes allocated by all the indexes in the native context.
+	 *
+	 * @return bytes allocated by the indexes not cleared yet.
+	 */
+	long getTotalMemoryUsage();
+
+	/**
+	 * Retrieve the SIMD level of the distance functions chosen for the new indexes.
+	 *
+	 * @return ordinal of the SimdLevel.
+	 */
+	int getSimdLevel();
+
+	/**
+	 * Cap the SIMD level of the distance functions chosen for the new indexes.
+	 *
+	 * @param maxSimdLevel - ordinal of the highest SimdLevel allowed.
+	 *
+	 * @return ordinal of the resulting SimdLevel (limited by the CPU).
+	 */
+	int setMaxSimdLevel(int maxSimdLevel);
+
+	/**
+	 * Define whether insertions reuse the slots of the deleted items.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param replaceDeleted - true to reuse the slots of the deleted items.
+	 *
+	 * @return a result code.
+	 */
+	int setReplaceDeleted(Pointer index, boolean replaceDeleted);
+
 	/**
 	 * Save the content of an index into a file (using native implementation).
 	 *
@@ -80,6 +209,48 @@ public interface Hnswlib extends Library {
 	 */
 	int loadIndexFromPath(Pointer index, int maxNumberOfElements, String path);
 
+	/**
+	 * Stores the content of an index by handing chunks of bytes to a callback.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param writeCallback - callback which consumes the chunks (in order).
+	 *
+	 * @return a result code.
+	 */
+	int saveIndexToStream(Pointer index, WriteCallback writeCallback);
+
+	/**
+	 * Restore the content of an index saved via saveIndexToStream() (or into a file)
+	 * reading chunks of bytes through a callback.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param maxNumberOfElements - max number of items to be inserted into the index;
+	 * @param readCallback - callback which provides the chunks (in order).
+	 *
+	 * @return a result code.
+	 */
+	int loadIndexFromStream(Pointer index, int maxNumberOfElements, ReadCallback readCallback);
+
+	/**
+	 * Restore the content of an index saved into a file by mapping the file read-only
+	 * into memory (nothing is copied). The resulting index cannot be modified.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param path - path where the index is stored.
+	 *
+	 * @return a result code.
+	 */
+	int loadIndexMappedFromPath(Pointer index, String path);
+
+	/**
+	 * Checks whether the index is read-only (i.e., it is served from a memory mapped file).
+	 *
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return true if the index cannot be modified.
+	 */
+	boolean isIndexReadOnly(Pointer index);
+
 	/**
 	 * This function invokes the knnQuery available in the hnswlib native library.
 	 *
@@ -94,6 +265,131 @@ public interface Hnswlib extends Library {
 	 */
 	int knnQuery(Pointer index, float[] input, boolean normalized, int k, int[] indices, float[] coefficients);
 
+	/**
+	 * This function performs a knn query with a specific ef, which is only used by
+	 * this query (the ef of the index is not changed).
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param input - input used for the query;
+	 * @param normalized - is the input normalized? if not and if required, it will be performed at the native level;
+	 * @param k - number of results expected;
+	 * @param ef - query time accuracy / speed trade-off value of this query;
+	 * @param indices [output] retrieves the indices returned by the query;
+	 * @param coefficients [output] retrieves the coefficients returned by the query.
+	 *
+	 * @return a result code.
+	 */
+	int knnQueryWithEf(Pointer index, float[] input, boolean normalized, int k, int ef, int[] indices, float[] coefficients);
+
+	/**
+	 * This function invokes the knnQuery available in the hnswlib native library
+	 * retrieving the 64-bit identifiers of the results.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param input - input used for the query;
+	 * @param normalized - is the input normalized? if not and if required, it will be performed at the native level;
+	 * @param k - dimension used for the query;
+	 * @param indices [output] retrieves the 64-bit indices returned by the query;
+	 * @param coefficients [output] retrieves the coefficients returned by the query.
+	 *
+	 * @return a result code.
+	 */
+	int knnQueryWithLongIds(Pointer index, float[] input, boolean normalized, int k, long[] indices, float[] coefficients);
+
+	/**
+	 * This function invokes the knnQuery available in the hnswlib native library
+	 * using buffers for the input and for the outputs. Direct buffers are passed
+	 * to the native side without any copy.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param input - buffer with the input used for the query;
+	 * @param normalized - is the input normalized? if not and if required, it will be performed at the native level;
+	 * @param k - dimension used for the query;
+	 * @param indices [output] retrieves the indices returned by the query;
+	 * @param coefficients [output] retrieves the coefficients returned by the query.
+	 *
+	 * @return a result code.
+	 */
+	int knnQuery(Pointer index, FloatBuffer input, boolean normalized, int k, IntBuffer indices, FloatBuffer coefficients);
+
+	/**
+	 * This function performs several knn queries in a single native call. The queries
+	 * are spread over a pool of native threads.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param input - flat array containing all the queries, one after the other;
+	 * @param normalized - are the inputs normalized? if not and if required, it will be performed at the native level;
+	 * @param numberOfQueries - number of queries contained in the input;
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads used (0 means one per available CPU);
+	 * @param indices [output] retrieves the indices returned by the queries (k per query);
+	 * @param coefficients [output] retrieves the coefficients returned by the queries (k per query).
+	 *
+	 * @return a result code.
+	 */
+	int knnQueryBatch(Pointer index, float[] input, boolean normalized, int numberOfQueries, int k, int numberOfThreads, int[] indices, float[] coefficients);
+
+	/**
+	 * This function performs a knn query admitting only the items whose labels are
+	 * set in the filter bitset. The other items are still traversed during the search.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param input - input used for the query;
+	 * @param normalized - is the input normalized? if not and if required, it will be performed at the native level;
+	 * @param k - number of results expected;
+	 * @param filter - bitset over the labels (bit i of word i / 64 is set when label i is allowed);
+	 * @param filterLength - number of words in the filter;
+	 * @param indices [output] retrieves the indices returned by the query;
+	 * @param coefficients [output] retrieves the coefficients returned by the query.
+	 *
+	 * @return a result code.
+	 */
+	int knnQueryFiltered(Pointer index, float[] input, boolean normalized, int k, long[] filter, int filterLength, int[] indices, float[] coefficients);
+
+	/**
+	 * Performs a knn query collecting statistics about the work done by the search.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param input - input used for the query;
+	 * @param normalized - is the input normalized? if not and if required, it will be performed at the native level;
+	 * @param k - number of results expected;
+	 * @param indices [output] retrieves the indices returned by the query;
+	 * @param coefficients [output] retrieves the coefficients returned by the query;
+	 * @param statistics [output] queries, distance computations, visited nodes, layers, upper layer hops and candidates expanded.
+	 *
+	 * @return a result code.
+	 */
+	int knnQueryWithStatistics(Pointer index, float[] input, boolean normalized, int k, int[] indices, float[] coefficients, long[] statistics);
+
+	/**
+	 * Retrieves the statistics summed over all the queries performed by an index.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param statistics [output] queries, distance computations, visited nodes, layers, upper layer hops and candidates expanded.
+	 *
+	 * @return a result code.
+	 */
+	int getSearchStatistics(Pointer index, long[] statistics);
+
+	/**
+	 * Define whether an index sums the statistics of all its queries.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param enabled - true to keep the totals.
+	 *
+	 * @return a result code.
+	 */
+	int setSearchStatisticsEnabled(Pointer index, boolean enabled);
+
+	/**
+	 * Resets the statistics summed over all the queries performed by an index.
+	 *
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return a result code.
+	 */
+	int resetSearchStatistics(Pointer index);
+
 	/**
 	 * Clear the index from the memory.
 	 *
@@ -103,6 +399,16 @@ public interface Hnswlib extends Library {
 	 */
 	int clearIndex(Pointer index);
 
+	/**
+	 * Clear the index (if needed) and free the native instance itself.
+	 * The pointer reference cannot be used anymore afterwards.
+	 *
+	 * @param index - JNA pointer reference of the index.
+	 *
+	 * @return a result code.
+	 */
+	int destroyIndex(Pointer index);
+
 	/**
 	 * Sets the query time accuracy / speed trade-off value.
 	 *
@@ -124,6 +430,17 @@ public interface Hnswlib extends Library {
 	 */
 	int getData(Pointer index, int id, float[] vector, int dim);
 
+	/**
+	 * Populate vector with data for given 64-bit id
+	 * @param index index
+	 * @param id id
+	 * @param vector vector
+	 * @param dim dimension
+	 *
+	 * @return result code
+	 */
+	int getDataByLongId(Pointer index, long id, float[] vector, int dim);
+
 	/**
 	 * Determine whether the index contains data for given id.
 	 *
@@ -134,6 +451,28 @@ public interface Hnswlib extends Library {
 	 */
 	int hasId(Pointer index, int id);
 
+	/**
+	 * Determine whether the index contains data for given 64-bit id.
+	 *
+	 * @param index index
+	 * @param id id
+	 *
+	 * @return result_code
+	 */
+	int hasLongId(Pointer index, long id);
+
+	/**
+	 * Copies the identifiers and the vectors of the items which are not deleted.
+	 *
+	 * @param index - JNA pointer reference of the index;
+	 * @param ids - [output] identifiers of the items;
+	 * @param vectors - [output] flat array with the vectors of the items, one after the other;
+	 * @param capacity - maximum number of items to be copied.
+	 *
+	 * @return the number of items copied.
+	 */
+	int getItems(Pointer index, int[] ids, float[] vectors, int capacity);
+
 	/**
 	 * Compute similarity between two vectors
 	 *
@@ -182,4 +521,179 @@ public interface Hnswlib extends Library {
 	 */
 	int markDeleted(Pointer index, int id);
 
-}
\ No newline at end of file
+	/**
+	 * Marks an item 64-bit ID as deleted.
+	 *
+	 * @param index reference;
+	 * @param id label.
+	 *
+	 * @return a result code.
+	 */
+	int markDeletedLongId(Pointer index, long id);
+
+	/**
+	 * Allocates memory for an exact (brute-force) index in the native context.
+	 *
+	 * @param spaceName - name of the vector space (see SpaceName);
+	 * @param dimension - length of the vectors used for indexation.
+	 *
+	 * @return the exact index reference pointer.
+	 */
+	Pointer createNewExactIndex(String spaceName, int dimension);
+
+	/**
+	 * Initialize the exact index with its capacity.
+	 *
+	 * @param index - JNA pointer reference of the exact index;
+	 * @param maxNumberOfElements - max number of elements in the index.
+	 *
+	 * @return a result code.
+	 */
+	int initNewExactIndex(Pointer index, int maxNumberOfElements);
+
+	/**
+	 * Add several items to the exact index in a single call. An item with an existing
+	 * identifier replaces the previous one.
+	 *
+	 * @param items - flat array containing all the items, one after the other;
+	 * @param normalized - are the items normalized? if not and if required, it will be performed at the native level;
+	 * @param numberOfItems - number of items contained in the flat array;
+	 * @param ids - identifiers to be used for the entries;
+	 * @param numberOfThreads - number of native threads used (0 means one per available CPU);
+	 * @param index - JNA pointer reference of the exact index.
+	 *
+	 * @return a result code.
+	 */
+	int addItemsToExactIndex(float[] items, boolean normalized, int numberOfItems, int[] ids, int numberOfThreads, Pointer index);
+
+	/**
+	 * Performs one or more exact knn queries (scanning all the items). The queries
+	 * are spread over a pool of native threads.
+	 *
+	 * @param index - JNA pointer reference of the exact index;
+	 * @param input - flat array containing all the queries, one after the other;
+	 * @param normalized - are the inputs normalized? if not and if required, it will be performed at the native level;
+	 * @param numberOfQueries - number of queries contained in the input;
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads used (0 means one per available CPU);
+	 * @param indices [output] retrieves the indices returned by the queries (k per query);
+	 * @param coefficients [output] retrieves the coefficients returned by the queries (k per query).
+	 *
+	 * @return a result code.
+	 */
+	int knnQueryExactIndex(Pointer index, float[] input, boolean normalized, int numberOfQueries, int k, int numberOfThreads, int[] indices, float[] coefficients);
+
+	/**
+	 * Removes an item from the exact index (its slot is reused by the last item).
+	 *
+	 * @param index - JNA pointer reference of the exact index;
+	 * @param id - identifier of the item.
+	 *
+	 * @return a result code.
+	 */
+	int removeItemFromExactIndex(Pointer index, int id);
+
+	/**
+	 * Checks whether there is an item with the specified identifier in the exact index.
+	 *
+	 * @param index - JNA pointer reference of the exact index;
+	 * @param id - identifier.
+	 *
+	 * @return a result code (successful when the item exists).
+	 */
+	int hasIdInExactIndex(Pointer index, int id);
+
+	/**
+	 * Gets the data of an item of the exact index.
+	 *
+	 * @param index - JNA pointer reference of the exact index;
+	 * @param id - identifier;
+	 * @param vector - [output] array with the length of the dimension.
+	 *
+	 * @return a result code.
+	 */
+	int getDataFromExactIndex(Pointer index, int id, float[] vector);
+
+	/**
+	 * Retrieve the number of elements in the exact index.
+	 *
+	 * @param index - JNA pointer reference of the exact index.
+	 *
+	 * @return number of items.
+	 */
+	int getExactIndexLength(Pointer index);
+
+	/**
+	 * Retrieve the maximum number of elements the exact index can hold.
+	 *
+	 * @param index - JNA pointer reference of the exact index.
+	 *
+	 * @return the capacity.
+	 */
+	int getExactIndexMaxElements(Pointer index);
+
+	/**
+	 * Retrieve the number of bytes allocated by the exact index in the native context.
+	 *
+	 * @param index - JNA pointer reference of the exact index.
+	 *
+	 * @return bytes allocated.
+	 */
+	long getExactIndexMemoryUsage(Pointer index);
+
+	/**
+	 * Changes the capacity of the exact index.
+	 *
+	 * @param index - JNA pointer reference of the exact index;
+	 * @param maxNumberOfElements - the new capacity.
+	 *
+	 * @return a result code.
+	 */
+	int resizeExactIndex(Pointer index, int maxNumberOfElements);
+
+	/**
+	 * Free the memory allocated for the exact index in the native context.
+	 *
+	 * @param index - JNA pointer reference of the exact index.
+	 *
+	 * @return a result code.
+	 */
+	int clearExactIndex(Pointer index);
+
+	/**
+	 * Clear the exact index (if needed) and free the native instance itself.
+	 *
+	 * @param index - JNA pointer reference of the exact index.
+	 *
+	 * @return a result code.
+	 */
+	int destroyExactIndex(Pointer index);
+
+	/**
+	 * Native callback which consumes a chunk of a saved index.
+	 */
+	interface WriteCallback extends Callback {
+
+		/**
+		 * @param buffer - native memory holding the chunk (only valid during the call);
+		 * @param length - number of bytes in the chunk.
+		 *
+		 * @return 0 when the chunk was consumed or a negative value on errors.
+		 */
+		int invoke(Pointer buffer, int length);
+	}
+
+	/**
+	 * Native callback which provides a chunk of a saved index.
+	 */
+	interface ReadCallback extends Callback {
+
+		/**
+		 * @param buffer - [output] native memory to be filled (only valid during the call);
+		 * @param length - capacity of the buffer.
+		 *
+		 * @return number of bytes copied into the buffer, 0 at the end of the stream or a negative value on errors.
+		 */
+		int invoke(Pointer buffer, int length);
+	}
+}
@@ -8,6 +8,8 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * Factory for the hnswlib JNA implementation.
@@ -16,6 +18,9 @@ final class HnswlibFactory {
 
 	private static final String LIBRARY_NAME = "hnswlib-jna-" + Platform.ARCH;
 	private static final String JNA_LIBRARY_PATH_PROPERTY = "jna.library.path";
+	private static final String BINDING_PROPERTY = "hnswlib.jna.binding";
+	private static final String INTERFACE_BINDING = "interface";
+	private static final String SIMD_PROPERTY = "hnswlib.jna.simd";
 
 	private static Hnswlib instance;
 
@@ -25,22 +30,83 @@ final class HnswlibFactory {
 	/**
 	 * Return a single instance of the loaded library.
 	 *
+	 * By default, the library is bound via JNA direct mapping. The interface
+	 * mapping is used as a fallback when the direct mapping cannot be registered
+	 * (e.g., the shared library misses some functions) or when the system property
+	 * "hnswlib.jna.binding" is set to "interface".
+	 *
+	 * The native library detects the instruction sets of the CPU and uses the best
+	 * distance functions available; the system property "hnswlib.jna.simd" caps them
+	 * (with the name of a SimdLevel, e.g., "AVX2").
+	 *
 	 * @return hnswlib JNA instance.
 	 */
 	static synchronized Hnswlib getInstance() {
 		if (instance == null) {
-			try {
-				checkIfLibraryProvidedNeedsToBeLoadedIntoSO();
-				instance = Native.load(LIBRARY_NAME, Hnswlib.class);
-			} catch (UnsatisfiedLinkError | IOException | NullPointerException e) {
-				throw new UnsatisfiedLinkError("It's not possible to use the pre-generated dynamic libraries on your system. "
-						+ "Please compile it yourself (if not done yet) and set the \"" + JNA_LIBRARY_PATH_PROPERTY + "\" property "
-						+ "with correct path to where \"" + getLibraryFileName() + "\" is located.");
+			if (!INTERFACE_BINDING.equals(System.getProperty(BINDING_PROPERTY))) {
+				try {
+					instance = getDirectMappedInstance();
+				} catch (UnsatisfiedLinkError e) {
+					instance = getInterfaceMappedInstance();
+				}
+			} else {
+				instance = getInterfaceMappedInstance();
 			}
+			applyMaxSimdLevel(instance);
 		}
 		return instance;
 	}
 
+	private static void applyMaxSimdLevel(Hnswlib hnswlib) {
+		String maxSimdLevel = System.getProperty(SIMD_PROPERTY);
+		if (maxSimdLevel != null) {
+			try {
+				hnswlib.setMaxSimdLevel(SimdLevel.valueOf(maxSimdLevel.trim().toUpperCase(Locale.ROOT)).ordinal());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid value for \"" + SIMD_PROPERTY + "\": " + maxSimdLevel
+						+ " (expected one of " + Arrays.toString(SimdLevel.values()) + ").", e);
+			}
+		}
+	}
+
+	/**
+	 * Return a new binding of the library based on JNA direct mapping.
+	 *
+	 * @return hnswlib JNA instance.
+	 */
+	static Hnswlib getDirectMappedInstance() {
+		loadPreGeneratedLibraryIfNeeded();
+		return new DirectMappedHnswlib(LIBRARY_NAME);
+	}
+
+	/**
+	 * Return a new binding of the library based on JNA interface mapping.
+	 *
+	 * @return hnswlib JNA instance.
+	 */
+	static Hnswlib getInterfaceMappedInstance() {
+		loadPreGeneratedLibraryIfNeeded();
+		try {
+			return Native.load(LIBRARY_NAME, Hnswlib.class);
+		} catch (UnsatisfiedLinkError e) {
+			throw libraryNotAvailable();
+		}
+	}
+
+	private static synchronized void loadPreGeneratedLibraryIfNeeded() {
+		try {
+			checkIfLibraryProvidedNeedsToBeLoadedIntoSO();
+		} catch (IOException | NullPointerException e) {
+			throw libraryNotAvailable();
+		}
+	}
+
+	private static UnsatisfiedLinkError libraryNotAvailable() {
+		return new UnsatisfiedLinkError("It's not possible to use the pre-generated dynamic libraries on your system. "
+				+ "Please compile it yourself (if not done yet) and set the \"" + JNA_LIBRARY_PATH_PROPERTY + "\" property "
+				+ "with correct path to where \"" + getLibraryFileName() + "\" is located.");
+	}
+
 	private static String getLibraryFileName(){
 		String extension;
 		if (Platform.isLinux()) {
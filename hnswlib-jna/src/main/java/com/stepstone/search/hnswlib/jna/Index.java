@@ -1,19 +1,33 @@
 package com.stepstone.search.hnswlib.jna;
 
 import com.stepstone.search.hnswlib.jna.exception.IndexAlreadyInitializedException;
+import com.stepstone.search.hnswlib.jna.exception.IndexIsReadOnlyException;
 import com.stepstone.search.hnswlib.jna.exception.IndexNotInitializedException;
 import com.stepstone.search.hnswlib.jna.exception.ItemCannotBeInsertedIntoTheVectorSpaceException;
 import com.stepstone.search.hnswlib.jna.exception.OnceIndexIsClearedItCannotBeReusedException;
 import com.stepstone.search.hnswlib.jna.exception.QueryCannotReturnResultsException;
 import com.stepstone.search.hnswlib.jna.exception.UnableToCreateNewIndexInstanceException;
 import com.stepstone.search.hnswlib.jna.exception.UnexpectedNativeException;
+import com.stepstone.search.hnswlib.jna.metrics.IndexMetricsListener;
+import com.stepstone.search.hnswlib.jna.metrics.Operation;
 import com.sun.jna.Pointer;
-import it.unimi.dsi.fastutil.ints.IntArraySet;
 import it.unimi.dsi.fastutil.ints.IntSet;
-import it.unimi.dsi.fastutil.ints.IntSets;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
 
 /**
  * Represents a small world index in the java context.
@@ -22,9 +36,10 @@ import java.util.Optional;
  * JNA implementation.
  *
  * Each instance of index has a different memory context and should
- * work independently.
+ * work independently. The native memory is freed by close() (or clear()),
+ * or once the index becomes unreachable if it was not closed.
  */
-public class Index {
+public class Index implements KnnIndex {
 
 	protected static final int NO_ID = -1;
 	private static final int RESULT_SUCCESSFUL = 0;
@@ -32,16 +47,26 @@ public class Index {
 	private static final int RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE = 4;
 	private static final int RESULT_ONCE_INDEX_IS_CLEARED_IT_CANNOT_BE_REUSED = 5;
 	private static final int RESULT_INDEX_NOT_INITIALIZED = 8;
+	private static final int RESULT_INDEX_IS_READ_ONLY = 9;
+	private static final int ALL_AVAILABLE_THREADS = 0;
+	private static final int INDEX_EF = -1;
+	private static final long NOT_MEASURED = Long.MIN_VALUE;
 
 	private static Hnswlib hnswlib = HnswlibFactory.getInstance();
 
 	private Pointer reference;
+	private NativeIndexReference.Owner owner;
 	private boolean initialized;
 	private boolean cleared;
 	private SpaceName spaceName;
 	private int dimension;
-	private boolean referenceReused;
-	private IntSet ids = IntSets.synchronize(new IntArraySet());
+	private IntSet ids = new StripedIntSet();
+	private volatile double growthFactor;
+	private volatile boolean replaceDeleted;
+	private volatile boolean searchStatisticsEnabled;
+	private volatile QueryCache queryCache;
+	private AtomicLong version = new AtomicLong();
+	private volatile IndexMetricsListener metricsListener;
 
 	public Index(SpaceName spaceName, int dimension) {
 		this.spaceName = spaceName;
@@ -50,6 +75,7 @@ public class Index {
 		if (reference == null) {
 			throw new UnableToCreateNewIndexInstanceException();
 		}
+		owner = new NativeIndexReference(hnswlib, reference).register(this);
 	}
 
 	/**
@@ -96,13 +122,88 @@ public class Index {
 		}
 	}
 
+	/**
+	 * Changes the maximum number of elements the index can hold. The native
+	 * memory is reallocated, so this is an expensive operation.
+	 *
+	 * @param maxNumberOfElements - the new capacity (not smaller than the number of items in the index).
+	 */
+	public void resize(int maxNumberOfElements) {
+		if (maxNumberOfElements < hnswlib.getIndexLength(reference)) {
+			throw new IllegalArgumentException("The index already contains more than " + maxNumberOfElements + " items.");
+		}
+		checkResultCode(hnswlib.resizeIndex(reference, maxNumberOfElements));
+	}
+
+	/**
+	 * Retrieves the maximum number of elements the index can currently hold.
+	 *
+	 * @return the capacity of the index.
+	 */
+	public int getMaxNumberOfElements() {
+		return hnswlib.getMaxElements(reference);
+	}
+
+	/**
+	 * Sets the factor used to grow the capacity when an insertion finds the index
+	 * full (e.g., 1.5 grows the index by 50%), so the maxNumberOfElements given at
+	 * initialization does not need to be over-provisioned. Values up to 1.0 disable
+	 * the growth (default), in which case inserting into a full index throws
+	 * ItemCannotBeInsertedIntoTheVectorSpaceException.
+	 *
+	 * Note: growing reallocates the native memory, so when items are inserted
+	 * from several threads, please use a ConcurrentIndex.
+	 *
+	 * @param growthFactor - factor applied to the capacity when the index is full.
+	 */
+	public void setGrowthFactor(double growthFactor) {
+		this.growthFactor = growthFactor;
+	}
+
+	public double getGrowthFactor() {
+		return growthFactor;
+	}
+
+	/**
+	 * Defines whether insertions reuse the slots of the items marked as deleted
+	 * (disabled by default). A new item takes the slot of a deleted one, whose
+	 * identifier is dropped, and the neighbourhood of the slot is repaired; adding
+	 * an item with the identifier of a deleted item makes it visible again. This
+	 * keeps the memory bounded in indexes with a high turnover of items, as the
+	 * deleted slots count as available capacity.
+	 *
+	 * @param replaceDeleted - true to reuse the slots of the deleted items.
+	 */
+	public void setReplaceDeleted(boolean replaceDeleted) {
+		checkResultCode(hnswlib.setReplaceDeleted(reference, replaceDeleted));
+		this.replaceDeleted = replaceDeleted;
+	}
+
+	public boolean isReplaceDeleted() {
+		return replaceDeleted;
+	}
+
+	/**
+	 * Retrieves the number of items marked as deleted, i.e., the slots that can be
+	 * reclaimed by insertions when setReplaceDeleted(true) is used.
+	 *
+	 * @return number of deleted items still stored in the index.
+	 */
+	public int getDeletedCount() {
+		return hnswlib.getDeletedCount(reference);
+	}
+
 	/**
 	 * Sets the query time accuracy / speed trade-off value.
 	 *
 	 * @param ef value.
 	 */
 	public void setEf(int ef) {
-		checkResultCode(hnswlib.setEf(reference, ef));
+		try {
+			checkResultCode(hnswlib.setEf(reference, ef));
+		} finally {
+			version.incrementAndGet();
+		}
 	}
 
 	/**
@@ -112,7 +213,7 @@ public class Index {
 	 * @param item - float array with the length expected by the index (dimension).
 	 */
 	public void addItem(float[] item) {
-		addItem(item, NO_ID);
+		insert(1, () -> hnswlib.addItemToIndex(item, false, NO_ID, reference));
 	}
 
 	/**
@@ -123,7 +224,35 @@ public class Index {
 	 * @param id - an identifier used by the native library.
 	 */
 	public void addItem(float[] item, int id) {
-		checkResultCode(hnswlib.addItemToIndex(item, false, id, reference));
+		insert(1, () -> hnswlib.addItemToIndex(item, false, id, reference));
+	}
+
+	/**
+	 * Add an item stored in a buffer to the index. It won't apply any extra
+	 * normalization unless it is required by the Vector Space (e.g., COSINE).
+	 * Direct buffers are read in place by the native library (no copy is made),
+	 * starting from their current position. The buffer must use the native byte
+	 * order (ByteOrder.nativeOrder()).
+	 *
+	 * @param item - buffer with at least dimension floats remaining;
+	 * @param id - an identifier used by the native library.
+	 */
+	public void addItem(FloatBuffer item, int id) {
+		checkRemaining(item, dimension);
+		insert(1, () -> hnswlib.addItemToIndex(item, false, id, reference));
+	}
+
+	/**
+	 * Add a normalized item stored in a buffer to the index. Direct buffers are read
+	 * in place by the native library (no copy is made), starting from their current position.
+	 * The buffer must use the native byte order (ByteOrder.nativeOrder()).
+	 *
+	 * @param item - buffer with at least dimension floats remaining;
+	 * @param id - an identifier used by the native library.
+	 */
+	public void addNormalizedItem(FloatBuffer item, int id) {
+		checkRemaining(item, dimension);
+		insert(1, () -> hnswlib.addItemToIndex(item, true, id, reference));
 	}
 
 	/**
@@ -141,12 +270,100 @@ public class Index {
 		}
 	}
 
+	/**
+	 * Add several items to the index in a single native call. The insertions are
+	 * spread over one native thread per available CPU. It won't apply any extra
+	 * normalization unless it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order) or null for incremental identifiers.
+	 */
+	public void addItems(float[] items, int[] ids) {
+		addItems(items, ids, ALL_AVAILABLE_THREADS);
+	}
+
+	/**
+	 * Add several items to the index in a single native call using a specific
+	 * number of native threads. It won't apply any extra normalization unless
+	 * it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order) or null for incremental identifiers;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	public void addItems(float[] items, int[] ids, int numberOfThreads) {
+		int numberOfItems = getNumberOfItems(items, ids);
+		insert(numberOfItems, () -> hnswlib.addItemsToIndex(items, false, numberOfItems, ids, numberOfThreads, reference));
+	}
+
+	/**
+	 * Add several normalized items to the index in a single native call
+	 * using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the normalized items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order) or null for incremental identifiers;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	public void addNormalizedItems(float[] items, int[] ids, int numberOfThreads) {
+		int numberOfItems = getNumberOfItems(items, ids);
+		insert(numberOfItems, () -> hnswlib.addItemsToIndex(items, true, numberOfItems, ids, numberOfThreads, reference));
+	}
+
+	/**
+	 * Runs a native insertion. When the index is full and a growth factor
+	 * is set, the capacity is increased and the insertion is retried.
+	 */
+	private void insert(int numberOfItems, IntSupplier insertion) {
+		long start = startMeasuring();
+		try {
+			int resultCode = insertion.getAsInt();
+			while (resultCode == RESULT_ITEM_CANNOT_BE_INSERTED_INTO_THE_VECTOR_SPACE && growthFactor > 1.0) {
+				growCapacity(hnswlib.getIndexLength(reference) + numberOfItems);
+				resultCode = insertion.getAsInt();
+			}
+			checkResultCode(resultCode);
+		} finally {
+			version.incrementAndGet();
+			stopMeasuring(Operation.INSERT, start, numberOfItems);
+		}
+	}
+
+	/**
+	 * Increases the capacity of the index (at least to the required number of elements)
+	 * according to the growth factor. It is called during insertions when the index is full.
+	 *
+	 * @param requiredNumberOfElements - the capacity needed by the insertion.
+	 */
+	protected void growCapacity(int requiredNumberOfElements) {
+		int maxNumberOfElements = hnswlib.getMaxElements(reference);
+		if (maxNumberOfElements < requiredNumberOfElements) {
+			long grownNumberOfElements = Math.max((long) Math.ceil(maxNumberOfElements * growthFactor), requiredNumberOfElements);
+			checkResultCode(hnswlib.resizeIndex(reference, (int) Math.min(grownNumberOfElements, Integer.MAX_VALUE)));
+		}
+	}
+
+	private int getNumberOfItems(float[] items, int[] ids) {
+		return ids != null ? getNumberOfItems(items, ids.length) : getNumberOfItems(items, -1);
+	}
+
+	private int getNumberOfItems(float[] items, int numberOfIds) {
+		if (items.length % dimension != 0) {
+			throw new IllegalArgumentException("The length of the items array must be a multiple of the dimension (" + dimension + ").");
+		}
+		int numberOfItems = items.length / dimension;
+		if (numberOfIds >= 0 && numberOfIds != numberOfItems) {
+			throw new IllegalArgumentException("Expected " + numberOfItems + " ids but got " + numberOfIds + ".");
+		}
+		return numberOfItems;
+	}
+
 	public void setIds(IntSet ids) {
 		this.ids = ids;
 	}
 
 	/**
-	 * Get ids for items in this index
+	 * Get ids for items in this index (saved via addItem(item, id, true)). By default,
+	 * it is a StripedIntSet: thread-safe, with iterators over a snapshot of the ids.
 	 * @return set of ids
 	 */
 	public IntSet getIds() {
@@ -160,7 +377,7 @@ public class Index {
 	 * @param item - float array with the length expected by the index (dimension).
 	 */
 	public void addNormalizedItem(float[] item) {
-		addNormalizedItem(item, NO_ID);
+		insert(1, () -> hnswlib.addItemToIndex(item, true, NO_ID, reference));
 	}
 
 	/**
@@ -170,7 +387,7 @@ public class Index {
 	 * @param id - an identifier used by the native library.
 	 */
 	public void addNormalizedItem(float[] item, int id) {
-		checkResultCode(hnswlib.addItemToIndex(item, true, id, reference));
+		insert(1, () -> hnswlib.addItemToIndex(item, true, id, reference));
 	}
 
 	/**
@@ -186,6 +403,68 @@ public class Index {
 		}
 	}
 
+	/**
+	 * Add an item with a 64-bit ID to the index. It won't apply any extra normalization
+	 * unless it is required by the Vector Space (e.g., COSINE). Long identifiers are stored
+	 * as they are in the native library; an int identifier and the long with the same value
+	 * refer to the same item.
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - a 64-bit identifier used by the native library.
+	 */
+	public void addItem(float[] item, long id) {
+		insert(1, () -> hnswlib.addItemToIndexWithLongId(item, false, id, reference));
+	}
+
+	/**
+	 * Add a normalized item with a 64-bit ID to the index.
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - a 64-bit identifier used by the native library.
+	 */
+	public void addNormalizedItem(float[] item, long id) {
+		insert(1, () -> hnswlib.addItemToIndexWithLongId(item, true, id, reference));
+	}
+
+	/**
+	 * Add several items with 64-bit IDs to the index in a single native call. The
+	 * insertions are spread over one native thread per available CPU. It won't apply
+	 * any extra normalization unless it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - 64-bit identifiers of the items (in the same order).
+	 */
+	public void addItemsWithLongIds(float[] items, long[] ids) {
+		addItemsWithLongIds(items, ids, ALL_AVAILABLE_THREADS);
+	}
+
+	/**
+	 * Add several items with 64-bit IDs to the index in a single native call using
+	 * a specific number of native threads. It won't apply any extra normalization
+	 * unless it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - 64-bit identifiers of the items (in the same order);
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	public void addItemsWithLongIds(float[] items, long[] ids, int numberOfThreads) {
+		int numberOfItems = getNumberOfItems(items, ids.length);
+		insert(numberOfItems, () -> hnswlib.addItemsToIndexWithLongIds(items, false, numberOfItems, ids, numberOfThreads, reference));
+	}
+
+	/**
+	 * Add several normalized items with 64-bit IDs to the index in a single native
+	 * call using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the normalized items, one after the other (number of items x dimension);
+	 * @param ids - 64-bit identifiers of the items (in the same order);
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	public void addNormalizedItemsWithLongIds(float[] items, long[] ids, int numberOfThreads) {
+		int numberOfItems = getNumberOfItems(items, ids.length);
+		insert(numberOfItems, () -> hnswlib.addItemsToIndexWithLongIds(items, true, numberOfItems, ids, numberOfThreads, reference));
+	}
+
 	/**
 	 * Return the number of elements already inserted in
 	 * the index.
@@ -196,6 +475,14 @@ public class Index {
 		return hnswlib.getIndexLength(reference);
 	}
 
+	public SpaceName getSpaceName() {
+		return spaceName;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
 	/**
 	 * Performs a knn query in the index instance. In case the vector space requires
 	 * the input to be normalized, it will normalize at the native level.
@@ -207,10 +494,59 @@ public class Index {
 	 */
 	public QueryTuple knnQuery(float[] input, int k) {
 		QueryTuple queryTuple = new QueryTuple(k);
-		checkResultCode(hnswlib.knnQuery(reference, input, false, k, queryTuple.ids, queryTuple.coefficients));
+		query(input, false, k, queryTuple);
 		return queryTuple;
 	}
 
+	/**
+	 * Performs a knn query with a specific ef (query time accuracy / speed trade-off
+	 * value), which is only used by this query: the ef of the index is not changed, so
+	 * queries with different values of ef can run at the same time. In case the vector
+	 * space requires the input to be normalized, it will normalize at the native level.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param ef - ef of this query (values below k behave as k).
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnQuery(float[] input, int k, int ef) {
+		checkEf(ef);
+		QueryTuple queryTuple = new QueryTuple(k);
+		query(input, false, k, ef, queryTuple);
+		return queryTuple;
+	}
+
+	/**
+	 * Performs a knn query with a specific ef which never goes through the query cache,
+	 * so its latency and results are the ones of the native search (see EfTuner).
+	 */
+	QueryTuple knnQueryUncached(float[] input, int k, int ef) {
+		checkEf(ef);
+		QueryTuple queryTuple = new QueryTuple(k);
+		long start = startMeasuring();
+		try {
+			checkResultCode(nativeQuery(input, false, k, ef, queryTuple));
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
+		return queryTuple;
+	}
+
+	/**
+	 * Performs a knn query in the index instance writing the results into an
+	 * existing query tuple, so no result arrays are allocated. In case the vector
+	 * space requires the input to be normalized, it will normalize at the native level.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param queryTuple - [output] a query tuple created for k results.
+	 */
+	public void knnQuery(float[] input, int k, QueryTuple queryTuple) {
+		checkQueryTuple(k, queryTuple);
+		query(input, false, k, queryTuple);
+	}
+
 	/**
 	 * Performs a knn query in the index instance using an normalized input.
 	 * It will not normalize the vector again.
@@ -222,10 +558,464 @@ public class Index {
 	 */
 	public QueryTuple knnNormalizedQuery(float[] input, int k) {
 		QueryTuple queryTuple = new QueryTuple(k);
-		checkResultCode(hnswlib.knnQuery(reference, input, true, k, queryTuple.ids, queryTuple.coefficients));
+		query(input, true, k, queryTuple);
+		return queryTuple;
+	}
+
+	/**
+	 * Performs a knn query using an normalized input with a specific ef, which is
+	 * only used by this query (the ef of the index is not changed).
+	 * It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param ef - ef of this query (values below k behave as k).
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnNormalizedQuery(float[] input, int k, int ef) {
+		checkEf(ef);
+		QueryTuple queryTuple = new QueryTuple(k);
+		query(input, true, k, ef, queryTuple);
+		return queryTuple;
+	}
+
+	/**
+	 * Performs a knn query in the index instance using an normalized input and
+	 * writing the results into an existing query tuple, so no result arrays are
+	 * allocated. It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param queryTuple - [output] a query tuple created for k results.
+	 */
+	public void knnNormalizedQuery(float[] input, int k, QueryTuple queryTuple) {
+		checkQueryTuple(k, queryTuple);
+		query(input, true, k, queryTuple);
+	}
+
+	/**
+	 * Performs a knn query in the index instance retrieving the 64-bit identifiers
+	 * of the results (see addItem(float[], long)). In case the vector space requires
+	 * the input to be normalized, it will normalize at the native level.
+	 *
+	 * Note: these queries do not go through the query cache.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected.
+	 *
+	 * @return a query tuple instance that contain the 64-bit indices and coefficients.
+	 */
+	public LongQueryTuple knnQueryWithLongIds(float[] input, int k) {
+		return queryWithLongIds(input, false, k);
+	}
+
+	/**
+	 * Performs a knn query in the index instance using an normalized input and
+	 * retrieving the 64-bit identifiers of the results. It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected.
+	 *
+	 * @return a query tuple instance that contain the 64-bit indices and coefficients.
+	 */
+	public LongQueryTuple knnNormalizedQueryWithLongIds(float[] input, int k) {
+		return queryWithLongIds(input, true, k);
+	}
+
+	private LongQueryTuple queryWithLongIds(float[] input, boolean normalized, int k) {
+		LongQueryTuple queryTuple = new LongQueryTuple(k);
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.knnQueryWithLongIds(reference, input, normalized, k, queryTuple.ids, queryTuple.coefficients));
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
 		return queryTuple;
 	}
 
+	/**
+	 * Performs a knn query in the index instance admitting only the items whose
+	 * identifiers are set in the filter. The filter is applied inside the native
+	 * search, so there is no need to over-fetch results and filter them afterwards.
+	 * In case the vector space requires the input to be normalized, it will
+	 * normalize at the native level.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param filter - identifiers allowed in the results.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnQuery(float[] input, int k, BitSet filter) {
+		return knnQueryFiltered(input, false, k, filter);
+	}
+
+	/**
+	 * Performs a knn query in the index instance using an normalized input and
+	 * admitting only the items whose identifiers are set in the filter.
+	 * It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param filter - identifiers allowed in the results.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnNormalizedQuery(float[] input, int k, BitSet filter) {
+		return knnQueryFiltered(input, true, k, filter);
+	}
+
+	private QueryTuple knnQueryFiltered(float[] input, boolean normalized, int k, BitSet filter) {
+		long start = startMeasuring();
+		try {
+			QueryTuple queryTuple = new QueryTuple(k);
+			long[] words = filter.toLongArray();
+			checkResultCode(hnswlib.knnQueryFiltered(reference, input, normalized, k, words, words.length, queryTuple.ids, queryTuple.coefficients));
+			return queryTuple;
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
+	}
+
+	/**
+	 * Performs a knn query in the index instance collecting statistics about the
+	 * work done by the native search (it never goes through the query cache).
+	 * In case the vector space requires the input to be normalized, it will
+	 * normalize at the native level.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param statistics - [output] statistics of this query.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnQuery(float[] input, int k, SearchStatistics statistics) {
+		return knnQueryWithStatistics(input, false, k, statistics);
+	}
+
+	/**
+	 * Performs a knn query in the index instance using an normalized input and collecting
+	 * statistics about the work done by the native search (it never goes through the
+	 * query cache). It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param statistics - [output] statistics of this query.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnNormalizedQuery(float[] input, int k, SearchStatistics statistics) {
+		return knnQueryWithStatistics(input, true, k, statistics);
+	}
+
+	private QueryTuple knnQueryWithStatistics(float[] input, boolean normalized, int k, SearchStatistics statistics) {
+		long start = startMeasuring();
+		try {
+			QueryTuple queryTuple = new QueryTuple(k);
+			checkResultCode(hnswlib.knnQueryWithStatistics(reference, input, normalized, k, queryTuple.ids, queryTuple.coefficients, statistics.values));
+			return queryTuple;
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
+	}
+
+	/**
+	 * Defines whether the statistics of all the queries are summed (disabled by default).
+	 * Keeping the totals makes every query update counters shared by all the threads,
+	 * so they are meant to be enabled while tuning or diagnosing the index.
+	 *
+	 * @param searchStatisticsEnabled - true to sum the statistics of all the queries.
+	 */
+	public void setSearchStatisticsEnabled(boolean searchStatisticsEnabled) {
+		checkResultCode(hnswlib.setSearchStatisticsEnabled(reference, searchStatisticsEnabled));
+		this.searchStatisticsEnabled = searchStatisticsEnabled;
+	}
+
+	public boolean isSearchStatisticsEnabled() {
+		return searchStatisticsEnabled;
+	}
+
+	/**
+	 * Retrieves the statistics summed over all the queries performed by the native
+	 * library for this index (single, filtered and batch queries; cache hits excluded)
+	 * while setSearchStatisticsEnabled(true) is set.
+	 * Dividing them by the number of queries gives the average work per query, which
+	 * helps tuning M and ef and spotting a degraded graph.
+	 *
+	 * @return a snapshot of the statistics.
+	 */
+	public SearchStatistics getSearchStatistics() {
+		SearchStatistics statistics = new SearchStatistics();
+		checkResultCode(hnswlib.getSearchStatistics(reference, statistics.values));
+		return statistics;
+	}
+
+	/**
+	 * Resets the statistics summed over the queries performed by this index.
+	 */
+	public void resetSearchStatistics() {
+		checkResultCode(hnswlib.resetSearchStatistics(reference));
+	}
+
+	/**
+	 * Runs a knn query, going through the query cache (when there is one).
+	 */
+	private void query(float[] input, boolean normalized, int k, QueryTuple queryTuple) {
+		query(input, normalized, k, INDEX_EF, queryTuple);
+	}
+
+	private void query(float[] input, boolean normalized, int k, int ef, QueryTuple queryTuple) {
+		long start = startMeasuring();
+		try {
+			queryOrGetCached(input, normalized, k, ef, queryTuple);
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
+	}
+
+	private void queryOrGetCached(float[] input, boolean normalized, int k, int ef, QueryTuple queryTuple) {
+		QueryCache cache = queryCache;
+		if (cache == null) {
+			checkResultCode(nativeQuery(input, normalized, k, ef, queryTuple));
+			return;
+		}
+		/* the version is read before the query, so results racing with a modification are never served */
+		long currentVersion = version.get();
+		QueryTuple cached = cache.get(input, normalized, k, ef, currentVersion);
+		if (cached != null) {
+			System.arraycopy(cached.ids, 0, queryTuple.ids, 0, k);
+			System.arraycopy(cached.coefficients, 0, queryTuple.coefficients, 0, k);
+			return;
+		}
+		float[] originalInput = input.clone();
+		checkResultCode(nativeQuery(input, normalized, k, ef, queryTuple));
+		cache.put(originalInput, normalized, k, ef, currentVersion, queryTuple);
+	}
+
+	private int nativeQuery(float[] input, boolean normalized, int k, int ef, QueryTuple queryTuple) {
+		if (ef == INDEX_EF) {
+			return hnswlib.knnQuery(reference, input, normalized, k, queryTuple.ids, queryTuple.coefficients);
+		}
+		return hnswlib.knnQueryWithEf(reference, input, normalized, k, ef, queryTuple.ids, queryTuple.coefficients);
+	}
+
+	private static void checkEf(int ef) {
+		if (ef <= 0) {
+			throw new IllegalArgumentException("The ef of a query must be positive.");
+		}
+	}
+
+	/**
+	 * Attaches a cache for the results of knnQuery(float[], int) and knnNormalizedQuery(float[], int)
+	 * (and their variants with a QueryTuple or a per-query ef). Cached results are discarded when the index changes
+	 * (adding or deleting items, load, setEf or clear).
+	 *
+	 * Note: on cache hits, the input is not normalized in place by the native library.
+	 *
+	 * @param queryCache - the cache (not shared with other indexes, except the views from synchronizedIndex()) or null to disable caching.
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Sets the listener notified about the operations executed by this index (e.g.,
+	 * IndexMetrics.attach(index)). Operations are only timed while a listener is set.
+	 *
+	 * @param metricsListener - the listener or null to stop measuring.
+	 */
+	public void setMetricsListener(IndexMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	public IndexMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	private long startMeasuring() {
+		return metricsListener == null ? NOT_MEASURED : System.nanoTime();
+	}
+
+	private void stopMeasuring(Operation operation, long start, int numberOfItems) {
+		IndexMetricsListener listener = metricsListener;
+		if (listener != null && start != NOT_MEASURED) {
+			listener.onOperation(operation, System.nanoTime() - start, numberOfItems);
+		}
+	}
+
+	private static void checkQueryTuple(int k, QueryTuple queryTuple) {
+		if (queryTuple.getK() != k) {
+			throw new IllegalArgumentException("The query tuple holds " + queryTuple.getK() + " results but k is " + k + ".");
+		}
+	}
+
+	/**
+	 * Creates a query session for this index. A session owns the result
+	 * holder reused by all its queries, so a steady-state query does not
+	 * allocate result arrays. Sessions are not thread-safe: create one
+	 * per thread (e.g., via ThreadLocal).
+	 *
+	 * @param k - number of results expected by the queries of the session.
+	 *
+	 * @return a new query session.
+	 */
+	public QuerySession newQuerySession(int k) {
+		return new QuerySession(this, k);
+	}
+
+	/**
+	 * Performs a knn query in the index instance reading the input from a buffer and
+	 * writing the results into caller-owned buffers. Direct buffers are accessed in place
+	 * by the native library (no copy is made), starting from their current position;
+	 * the positions are not changed. In case the vector space requires the input to be
+	 * normalized, it will normalize at the native level (in the input buffer).
+	 * All the buffers must use the native byte order (ByteOrder.nativeOrder()).
+	 *
+	 * @param input - buffer with at least dimension floats remaining;
+	 * @param k - number of results expected;
+	 * @param ids - [output] buffer with at least k ints remaining;
+	 * @param coefficients - [output] buffer with at least k floats remaining.
+	 */
+	public void knnQuery(FloatBuffer input, int k, IntBuffer ids, FloatBuffer coefficients) {
+		checkBuffers(input, k, ids, coefficients);
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.knnQuery(reference, input, false, k, ids, coefficients));
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
+	}
+
+	/**
+	 * Performs a knn query in the index instance using a normalized input stored in a buffer
+	 * and writing the results into caller-owned buffers. Direct buffers are accessed in place
+	 * by the native library (no copy is made), starting from their current position;
+	 * the positions are not changed. All the buffers must use the native byte order
+	 * (ByteOrder.nativeOrder()).
+	 *
+	 * @param input - buffer with at least dimension normalized floats remaining;
+	 * @param k - number of results expected;
+	 * @param ids - [output] buffer with at least k ints remaining;
+	 * @param coefficients - [output] buffer with at least k floats remaining.
+	 */
+	public void knnNormalizedQuery(FloatBuffer input, int k, IntBuffer ids, FloatBuffer coefficients) {
+		checkBuffers(input, k, ids, coefficients);
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.knnQuery(reference, input, true, k, ids, coefficients));
+		} finally {
+			stopMeasuring(Operation.QUERY, start, 1);
+		}
+	}
+
+	private void checkBuffers(FloatBuffer input, int k, IntBuffer ids, FloatBuffer coefficients) {
+		checkRemaining(input, dimension);
+		checkRemaining(ids, k);
+		checkRemaining(coefficients, k);
+	}
+
+	private static void checkRemaining(FloatBuffer buffer, int expected) {
+		checkRemaining(buffer, buffer.order(), expected);
+	}
+
+	private static void checkRemaining(IntBuffer buffer, int expected) {
+		checkRemaining(buffer, buffer.order(), expected);
+	}
+
+	private static void checkRemaining(Buffer buffer, ByteOrder order, int expected) {
+		if (order != ByteOrder.nativeOrder()) {
+			throw new IllegalArgumentException("Expected a buffer in the native byte order (" + ByteOrder.nativeOrder() + ") but got " + order + ".");
+		}
+		if (buffer.remaining() < expected) {
+			throw new IllegalArgumentException("Expected at least " + expected + " remaining elements in the buffer but got " + buffer.remaining() + ".");
+		}
+	}
+
+	/**
+	 * Performs several knn queries in a single native call. The queries are
+	 * spread over one native thread per available CPU. In case the vector space
+	 * requires the inputs to be normalized, it will normalize at the native level
+	 * (the input arrays are not modified).
+	 *
+	 * @param inputs - float arrays with the length expected by the index (dimension);
+	 * @param k - number of results expected per query.
+	 *
+	 * @return one query tuple per input (in the same order).
+	 */
+	public QueryTuple[] knnQueryBatch(float[][] inputs, int k) {
+		return knnQueryBatch(inputs, k, ALL_AVAILABLE_THREADS);
+	}
+
+	/**
+	 * Performs several knn queries in a single native call using a specific
+	 * number of native threads. In case the vector space requires the inputs
+	 * to be normalized, it will normalize at the native level (the input arrays
+	 * are not modified).
+	 *
+	 * @param inputs - float arrays with the length expected by the index (dimension);
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 *
+	 * @return one query tuple per input (in the same order).
+	 */
+	public QueryTuple[] knnQueryBatch(float[][] inputs, int k, int numberOfThreads) {
+		return knnQueryBatch(inputs, false, k, numberOfThreads);
+	}
+
+	/**
+	 * Performs several knn queries with normalized inputs in a single native call.
+	 * The queries are spread over one native thread per available CPU.
+	 *
+	 * @param inputs - normalized float arrays;
+	 * @param k - number of results expected per query.
+	 *
+	 * @return one query tuple per input (in the same order).
+	 */
+	public QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k) {
+		return knnNormalizedQueryBatch(inputs, k, ALL_AVAILABLE_THREADS);
+	}
+
+	/**
+	 * Performs several knn queries with normalized inputs in a single native call
+	 * using a specific number of native threads.
+	 *
+	 * @param inputs - normalized float arrays;
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 *
+	 * @return one query tuple per input (in the same order).
+	 */
+	public QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k, int numberOfThreads) {
+		return knnQueryBatch(inputs, true, k, numberOfThreads);
+	}
+
+	private QueryTuple[] knnQueryBatch(float[][] inputs, boolean normalized, int k, int numberOfThreads) {
+		int numberOfQueries = inputs.length;
+		float[] flatInput = new float[numberOfQueries * dimension];
+		for (int i = 0; i < numberOfQueries; i++) {
+			System.arraycopy(inputs[i], 0, flatInput, i * dimension, dimension);
+		}
+		int[] ids = new int[numberOfQueries * k];
+		float[] coefficients = new float[numberOfQueries * k];
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.knnQueryBatch(reference, flatInput, normalized, numberOfQueries, k, numberOfThreads, ids, coefficients));
+		} finally {
+			stopMeasuring(Operation.BATCH_QUERY, start, numberOfQueries);
+		}
+		QueryTuple[] queryTuples = new QueryTuple[numberOfQueries];
+		for (int i = 0; i < numberOfQueries; i++) {
+			queryTuples[i] = new QueryTuple(Arrays.copyOfRange(ids, i * k, (i + 1) * k),
+					Arrays.copyOfRange(coefficients, i * k, (i + 1) * k));
+		}
+		return queryTuples;
+	}
+
 	/**
 	 * Stores the content of the index into a file.
 	 * This method relies on the native implementation.
@@ -233,7 +1023,12 @@ public class Index {
 	 * @param path - destination path.
 	 */
 	public void save(Path path) {
-		checkResultCode(hnswlib.saveIndexToPath(reference, path.toAbsolutePath().toString()));
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.saveIndexToPath(reference, path.toAbsolutePath().toString()));
+		} finally {
+			stopMeasuring(Operation.SAVE, start, 1);
+		}
 	}
 
 	/**
@@ -246,7 +1041,125 @@ public class Index {
 	 * @param maxNumberOfElements - max number of elements in the index.
 	 */
 	public void load(Path path, int maxNumberOfElements) {
-		checkResultCode(hnswlib.loadIndexFromPath(reference, maxNumberOfElements, path.toAbsolutePath().toString()));
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.loadIndexFromPath(reference, maxNumberOfElements, path.toAbsolutePath().toString()));
+			initialized = true;
+		} finally {
+			version.incrementAndGet();
+			stopMeasuring(Operation.LOAD, start, 1);
+		}
+	}
+
+	/**
+	 * Stores the content of the index into an output stream (in the same format as save(Path)).
+	 * The index is streamed in chunks, so no temporary file is needed. The stream is not closed.
+	 *
+	 * @param output - destination stream.
+	 *
+	 * @throws java.io.UncheckedIOException when the stream cannot be written.
+	 */
+	public void save(OutputStream output) {
+		save(Channels.newChannel(output));
+	}
+
+	/**
+	 * Stores the content of the index into a (blocking) channel, in the same format as
+	 * save(Path). The native chunks are handed to the channel without copies.
+	 * The channel is not closed.
+	 *
+	 * @param channel - destination channel.
+	 *
+	 * @throws java.io.UncheckedIOException when the channel cannot be written.
+	 */
+	public void save(WritableByteChannel channel) {
+		long start = startMeasuring();
+		try {
+			ChannelCallbacks.Writer writer = new ChannelCallbacks.Writer(channel);
+			int resultCode = hnswlib.saveIndexToStream(reference, writer);
+			writer.rethrowFailure();
+			checkResultCode(resultCode);
+		} finally {
+			stopMeasuring(Operation.SAVE, start, 1);
+		}
+	}
+
+	/**
+	 * This method loads the content of an index stored via save() from an input stream.
+	 * The stream is read in chunks (possibly beyond the end of the index) and it is not closed.
+	 *
+	 * Note: if the index was previously initialized, the old
+	 * content will be erased.
+	 *
+	 * @param input - source stream;
+	 * @param maxNumberOfElements - max number of elements in the index.
+	 *
+	 * @throws java.io.UncheckedIOException when the stream cannot be read.
+	 */
+	public void load(InputStream input, int maxNumberOfElements) {
+		load(Channels.newChannel(input), maxNumberOfElements);
+	}
+
+	/**
+	 * This method loads the content of an index stored via save() from a (blocking) channel.
+	 * The channel fills the native buffers directly. The channel is not closed.
+	 *
+	 * Note: if the index was previously initialized, the old
+	 * content will be erased.
+	 *
+	 * @param channel - source channel;
+	 * @param maxNumberOfElements - max number of elements in the index.
+	 *
+	 * @throws java.io.UncheckedIOException when the channel cannot be read.
+	 */
+	public void load(ReadableByteChannel channel, int maxNumberOfElements) {
+		long start = startMeasuring();
+		try {
+			ChannelCallbacks.Reader reader = new ChannelCallbacks.Reader(channel);
+			int resultCode = hnswlib.loadIndexFromStream(reference, maxNumberOfElements, reader);
+			reader.rethrowFailure();
+			checkResultCode(resultCode);
+			initialized = true;
+		} finally {
+			version.incrementAndGet();
+			stopMeasuring(Operation.LOAD, start, 1);
+		}
+	}
+
+	/**
+	 * This method loads the content stored in a file path onto the index by mapping
+	 * the file read-only into memory. The items and the graph are served straight from
+	 * the mapping, so loading is fast, no extra heap is needed and several processes
+	 * loading the same file share the page cache. The index becomes read-only: adding
+	 * or deleting items will throw IndexIsReadOnlyException.
+	 *
+	 * Note: if the index was previously initialized, the old
+	 * content will be erased. The file must not be modified while it is mapped.
+	 *
+	 * @param path - path to the index file.
+	 */
+	public void loadMapped(Path path) {
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.loadIndexMappedFromPath(reference, path.toAbsolutePath().toString()));
+			initialized = true;
+		} catch (RuntimeException e) {
+			/* the previous content (if any) was already released by the native call */
+			initialized = false;
+			throw e;
+		} finally {
+			version.incrementAndGet();
+			stopMeasuring(Operation.LOAD, start, 1);
+		}
+	}
+
+	/**
+	 * Checks whether this index is read-only (loaded via loadMapped()).
+	 *
+	 * @return true if items cannot be added or deleted.
+	 */
+	public boolean isReadOnly() {
+		return initialized && !cleared && hnswlib.isIndexReadOnly(reference);
 	}
 
 	/**
@@ -257,19 +1170,65 @@ public class Index {
 	public void clear() {
 		checkResultCode(hnswlib.clearIndex(reference));
 		cleared = true;
+		initialized = false;
+		version.incrementAndGet();
 	}
 
 	/**
-	 * Cleanup the area allocated by the index in the native side.
+	 * Releases this index: the memory allocated in the native context is freed,
+	 * unless it is shared with another index which is still open (see synchronizedIndex()).
+	 * Closing an index more than once has no effect.
 	 *
-	 * @throws Throwable when anything weird happened. :)
+	 * NOTE: Once the index is closed, it cannot be used again.
 	 */
 	@Override
-	protected void finalize() throws Throwable {
-		if (!cleared && !referenceReused) {
-			this.clear();
+	public void close() {
+		/* this index cannot be used anymore, even when a view keeps the native memory */
+		cleared = true;
+		initialized = false;
+		if (owner.close()) {
+			version.incrementAndGet();
 		}
-		super.finalize();
+	}
+
+	/**
+	 * Retrieves the number of bytes allocated by this index in the native context
+	 * (the pages of an index loaded via loadMapped() are not counted).
+	 *
+	 * @return bytes allocated by the index; 0 when it is not initialized, cleared or closed.
+	 */
+	public long getMemoryUsage() {
+		return hnswlib.getMemoryUsage(reference);
+	}
+
+	/**
+	 * Retrieves the number of bytes allocated by all the indexes in the native context.
+	 *
+	 * @return bytes allocated by the indexes which were not freed yet.
+	 */
+	public static long getTotalMemoryUsage() {
+		return hnswlib.getTotalMemoryUsage();
+	}
+
+	/**
+	 * Retrieves the instruction set of the distance functions of the indexes created from now on
+	 * (the best one supported by the CPU, unless capped).
+	 *
+	 * @return the SIMD level.
+	 */
+	public static SimdLevel getSimdLevel() {
+		return SimdLevel.values()[hnswlib.getSimdLevel()];
+	}
+
+	/**
+	 * Caps the instruction set of the distance functions of the indexes created from now on
+	 * (existing indexes keep theirs). The initial cap comes from the system property "hnswlib.jna.simd".
+	 *
+	 * @param maxSimdLevel - the highest SIMD level allowed.
+	 * @return the resulting SIMD level (limited by the CPU).
+	 */
+	public static SimdLevel setMaxSimdLevel(SimdLevel maxSimdLevel) {
+		return SimdLevel.values()[hnswlib.setMaxSimdLevel(maxSimdLevel.ordinal())];
 	}
 
 	/**
@@ -278,7 +1237,7 @@ public class Index {
 	 *
 	 * @throws UnexpectedNativeException when something went out of control in the native side.
 	 */
-	private void checkResultCode(int resultCode) {
+	static void checkResultCode(int resultCode) {
 		switch (resultCode) {
 			case RESULT_SUCCESSFUL:
 				break;
@@ -290,6 +1249,8 @@ public class Index {
 				throw new OnceIndexIsClearedItCannotBeReusedException();
 			case RESULT_INDEX_NOT_INITIALIZED:
 				throw new IndexNotInitializedException();
+			case RESULT_INDEX_IS_READ_ONLY:
+				throw new IndexIsReadOnlyException();
 			default:
 				throw new UnexpectedNativeException();
 		}
@@ -305,6 +1266,16 @@ public class Index {
 		return hnswlib.hasId(reference, id) == RESULT_SUCCESSFUL;
 	}
 
+	/**
+	 * Checks whether there is an item with the specified 64-bit identifier in the index.
+	 *
+	 * @param id - 64-bit identifier.
+	 * @return true or false.
+	 */
+	public boolean hasId(long id) {
+		return hnswlib.hasLongId(reference, id) == RESULT_SUCCESSFUL;
+	}
+
 	/**
 	 * Gets the data from a specific identifier in the index.
 	 *
@@ -321,6 +1292,39 @@ public class Index {
 		return Optional.empty();
 	}
 
+	/**
+	 * Gets the data from a specific 64-bit identifier in the index.
+	 *
+	 * @param id - 64-bit identifier.
+	 *
+	 * @return an optional containing or not the
+	 */
+	public Optional<float[]> getData(long id) {
+		float[] vector = new float[dimension];
+		int success = hnswlib.getDataByLongId(reference, id, vector, dimension);
+		if (success == RESULT_SUCCESSFUL) {
+			return Optional.of(vector);
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Copies the items which are not deleted into a new (initialized) exact index.
+	 *
+	 * @return an exact index with the same vector space and items.
+	 */
+	ExactIndex toExactIndex() {
+		int capacity = Math.max(0, hnswlib.getIndexLength(reference) - hnswlib.getDeletedCount(reference));
+		int[] itemIds = new int[capacity];
+		float[] vectors = new float[capacity * dimension];
+		int numberOfItems = hnswlib.getItems(reference, itemIds, vectors, capacity);
+		ExactIndex exactIndex = new ExactIndex(spaceName, dimension);
+		exactIndex.initialize(Math.max(numberOfItems, 1));
+		/* the stored vectors are already normalized when the space requires it */
+		exactIndex.addNormalizedItems(Arrays.copyOf(vectors, numberOfItems * dimension), Arrays.copyOf(itemIds, numberOfItems), ALL_AVAILABLE_THREADS);
+		return exactIndex;
+	}
+
 	/**
 	 * Computer similarity on the native side taking advantage of
 	 * SSE, AVX, SIMD instructions, when available.
@@ -371,13 +1375,39 @@ public class Index {
 	 * @param id identifier.
 	 */
 	public void markDeleted(int id){
-		checkResultCode(hnswlib.markDeleted(reference, id));
-		if (ids.contains(id)) {
-			ids.remove(id);
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.markDeleted(reference, id));
+		} finally {
+			version.incrementAndGet();
+			stopMeasuring(Operation.DELETE, start, 1);
+		}
+		ids.remove(id);
+	}
+
+	/**
+	 * Marks a 64-bit ID as deleted.
+	 *
+	 * @param id 64-bit identifier.
+	 */
+	public void markDeleted(long id){
+		long start = startMeasuring();
+		try {
+			checkResultCode(hnswlib.markDeletedLongId(reference, id));
+		} finally {
+			version.incrementAndGet();
+			stopMeasuring(Operation.DELETE, start, 1);
+		}
+		/* the saved ids are ints: a long with the same value refers to the same item */
+		if (id == (int) id) {
+			ids.remove((int) id);
 		}
 	}
 
 	private void checkIndexIsInitialized() {
+		if (cleared) {
+			throw new OnceIndexIsClearedItCannotBeReusedException();
+		}
 		if (!initialized) {
 			throw new IndexNotInitializedException();
 		}
@@ -415,12 +1445,33 @@ public class Index {
 	 * @return a thread-safe index
 	 */
 	public static Index synchronizedIndex(Index index) {
-		Index concurrentIndex = new ConcurrentIndex(index.spaceName, index.dimension);
+		return synchronizedIndex(index, ConcurrencyMode.SERIALIZED_UPDATES);
+	}
+
+	/**
+	 * Returns a thread-safe index (ConcurrentIndex) backed by the specified index
+	 * and using the specified concurrency mode.
+	 *
+	 * @param index - the index to be wrapped in a thread-safe index;
+	 * @param concurrencyMode - how updates are synchronized with queries and other updates.
+	 * @return a thread-safe view of the specified index.
+	 */
+	public static Index synchronizedIndex(Index index, ConcurrencyMode concurrencyMode) {
+		Index concurrentIndex = new ConcurrentIndex(index.spaceName, index.dimension, concurrencyMode);
+		/* the view shares the native index: it is freed once both are closed (or unreachable) */
+		concurrentIndex.owner.release();
+		concurrentIndex.owner = index.owner.getReference().register(concurrentIndex);
 		concurrentIndex.reference = index.reference;
 		concurrentIndex.cleared = index.cleared;
 		concurrentIndex.initialized = index.initialized;
 		concurrentIndex.setIds(index.getIds());
-		index.referenceReused = true;
+		concurrentIndex.growthFactor = index.growthFactor;
+		concurrentIndex.replaceDeleted = index.replaceDeleted;
+		concurrentIndex.searchStatisticsEnabled = index.searchStatisticsEnabled;
+		concurrentIndex.queryCache = index.queryCache;
+		concurrentIndex.metricsListener = index.metricsListener;
+		/* both see the changes made through the other one, so their cached results are discarded together */
+		concurrentIndex.version = index.version;
 		return concurrentIndex;
 	}
 }
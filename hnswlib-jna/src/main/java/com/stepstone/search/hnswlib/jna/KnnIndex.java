@@ -0,0 +1,206 @@
+package com.stepstone.search.hnswlib.jna;
+
+import java.util.Optional;
+
+/**
+ * Operations shared by the approximate (Index) and the exact (ExactIndex)
+ * indexes, so that the application code does not depend on the kind of search.
+ *
+ * Use create() to get the most convenient index for the expected number of items:
+ * scanning a small collection is as fast as navigating the graph, without the cost
+ * of building it and with perfect recall.
+ */
+public interface KnnIndex extends AutoCloseable {
+
+	/**
+	 * Collections up to this number of items are searched exactly by create().
+	 */
+	int EXACT_SEARCH_THRESHOLD = 10_000;
+
+	/**
+	 * Creates an initialized index for the expected number of items: an ExactIndex
+	 * up to EXACT_SEARCH_THRESHOLD items, otherwise an Index (with the default parameters).
+	 *
+	 * @param spaceName - vector space;
+	 * @param dimension - length of the vectors;
+	 * @param maxNumberOfElements - expected number of items.
+	 * @return an index ready to be used.
+	 */
+	static KnnIndex create(SpaceName spaceName, int dimension, int maxNumberOfElements) {
+		return create(spaceName, dimension, maxNumberOfElements, EXACT_SEARCH_THRESHOLD);
+	}
+
+	/**
+	 * Creates an initialized index for the expected number of items: an ExactIndex
+	 * up to the specified threshold, otherwise an Index (with the default parameters).
+	 *
+	 * @param spaceName - vector space;
+	 * @param dimension - length of the vectors;
+	 * @param maxNumberOfElements - expected number of items;
+	 * @param exactSearchThreshold - largest number of items searched exactly.
+	 * @return an index ready to be used.
+	 */
+	static KnnIndex create(SpaceName spaceName, int dimension, int maxNumberOfElements, int exactSearchThreshold) {
+		if (maxNumberOfElements <= exactSearchThreshold) {
+			ExactIndex index = new ExactIndex(spaceName, dimension);
+			index.initialize(maxNumberOfElements);
+			return index;
+		}
+		Index index = new Index(spaceName, dimension);
+		index.initialize(maxNumberOfElements);
+		return index;
+	}
+
+	/**
+	 * Add an item with ID to the index. It won't apply any extra normalization
+	 * unless it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - an identifier used by the native library.
+	 */
+	void addItem(float[] item, int id);
+
+	/**
+	 * Add a normalized item with ID to the index.
+	 *
+	 * @param item - normalized float array with the length expected by the index (dimension);
+	 * @param id - an identifier used by the native library.
+	 */
+	void addNormalizedItem(float[] item, int id);
+
+	/**
+	 * Add several items to the index in a single native call, using one native
+	 * thread per available CPU.
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order).
+	 */
+	void addItems(float[] items, int[] ids);
+
+	/**
+	 * Add several items to the index in a single native call using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order);
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	void addItems(float[] items, int[] ids, int numberOfThreads);
+
+	/**
+	 * Add several normalized items to the index in a single native call using a specific number of native threads.
+	 *
+	 * @param items - flat array with all the normalized items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order);
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 */
+	void addNormalizedItems(float[] items, int[] ids, int numberOfThreads);
+
+	/**
+	 * Deletes an item, so it is not returned by the queries anymore.
+	 *
+	 * @param id - identifier.
+	 */
+	void markDeleted(int id);
+
+	/**
+	 * Checks whether there is an item with the specified identifier in the index.
+	 *
+	 * @param id - identifier.
+	 * @return true or false.
+	 */
+	boolean hasId(int id);
+
+	/**
+	 * Gets the data from a specific identifier in the index.
+	 *
+	 * @param id - identifier.
+	 * @return an optional containing the vector, if the item exists.
+	 */
+	Optional<float[]> getData(int id);
+
+	/**
+	 * Performs a knn query. In case the vector space requires the input
+	 * to be normalized, it will normalize at the native level.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected.
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	QueryTuple knnQuery(float[] input, int k);
+
+	/**
+	 * Performs a knn query using a normalized input.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected.
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	QueryTuple knnNormalizedQuery(float[] input, int k);
+
+	/**
+	 * Performs several knn queries in a single native call, using one native
+	 * thread per available CPU.
+	 *
+	 * @param inputs - float arrays with the length expected by the index (dimension);
+	 * @param k - number of results expected per query.
+	 * @return one query tuple per input (in the same order).
+	 */
+	QueryTuple[] knnQueryBatch(float[][] inputs, int k);
+
+	/**
+	 * Performs several knn queries in a single native call using a specific number of native threads.
+	 *
+	 * @param inputs - float arrays with the length expected by the index (dimension);
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 * @return one query tuple per input (in the same order).
+	 */
+	QueryTuple[] knnQueryBatch(float[][] inputs, int k, int numberOfThreads);
+
+	/**
+	 * Performs several knn queries with normalized inputs in a single native call.
+	 *
+	 * @param inputs - normalized float arrays;
+	 * @param k - number of results expected per query.
+	 * @return one query tuple per input (in the same order).
+	 */
+	QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k);
+
+	/**
+	 * Performs several knn queries with normalized inputs in a single native call
+	 * using a specific number of native threads.
+	 *
+	 * @param inputs - normalized float arrays;
+	 * @param k - number of results expected per query;
+	 * @param numberOfThreads - number of native threads (0 means one per available CPU).
+	 * @return one query tuple per input (in the same order).
+	 */
+	QueryTuple[] knnNormalizedQueryBatch(float[][] inputs, int k, int numberOfThreads);
+
+	/**
+	 * Return the number of elements in the index.
+	 *
+	 * @return elements count.
+	 */
+	int getLength();
+
+	/**
+	 * Retrieves the maximum number of elements the index can currently hold.
+	 *
+	 * @return the capacity of the index.
+	 */
+	int getMaxNumberOfElements();
+
+	/**
+	 * Retrieves the number of bytes allocated by the index in the native context.
+	 *
+	 * @return bytes allocated by the index.
+	 */
+	long getMemoryUsage();
+
+	/**
+	 * Frees the native memory of the index, which cannot be used anymore.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,34 @@
+package com.stepstone.search.hnswlib.jna;
+
+/**
+ * Query Tuple that represents the results of a knn query on an index
+ * whose items were inserted with 64-bit (long) identifiers.
+ * It contains two arrays: ids and coefficients.
+ */
+public class LongQueryTuple {
+
+	long[] ids;
+	float[] coefficients;
+
+	public LongQueryTuple(int k) {
+		ids = new long[k];
+		coefficients = new float[k];
+	}
+
+	public float[] getCoefficients() {
+		return coefficients;
+	}
+
+	public long[] getIds() {
+		return ids;
+	}
+
+	/**
+	 * Number of results this query tuple can hold.
+	 *
+	 * @return the k value this tuple was created for.
+	 */
+	public int getK() {
+		return ids.length;
+	}
+}
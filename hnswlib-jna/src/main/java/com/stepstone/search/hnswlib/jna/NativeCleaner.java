@@ -0,0 +1,69 @@
+package com.stepstone.search.hnswlib.jna;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Runs cleanup actions once their objects become phantom reachable, in a single
+ * daemon thread (the Java 8 counterpart of java.lang.ref.Cleaner). Unlike finalize(),
+ * the object cannot be resurrected and the action runs at most once.
+ *
+ * The actions must not refer to their objects, otherwise they never become unreachable.
+ */
+final class NativeCleaner {
+
+	private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+	private static final Set<Cleanable> CLEANABLES = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+	static {
+		Thread thread = new Thread(NativeCleaner::run, "hnswlib-jna-cleaner");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private NativeCleaner() {
+	}
+
+	/**
+	 * Registers an action to be run when the object becomes phantom reachable.
+	 *
+	 * @param object - object to be monitored;
+	 * @param action - cleanup action (without references to the object).
+	 */
+	static void register(Object object, Runnable action) {
+		CLEANABLES.add(new Cleanable(object, action));
+	}
+
+	private static void run() {
+		while (true) {
+			try {
+				Reference<?> reference = QUEUE.remove();
+				((Cleanable) reference).clean();
+			} catch (InterruptedException e) {
+				/* the cleaner thread lives as long as the class loader */
+			} catch (RuntimeException | LinkageError e) {
+				/* a failing action (e.g., a native library without destroyIndex) must not stop the other ones */
+			}
+		}
+	}
+
+	private static final class Cleanable extends PhantomReference<Object> {
+
+		private final Runnable action;
+
+		Cleanable(Object object, Runnable action) {
+			super(object, QUEUE);
+			this.action = action;
+		}
+
+		void clean() {
+			if (CLEANABLES.remove(this)) {
+				action.run();
+			}
+		}
+	}
+}
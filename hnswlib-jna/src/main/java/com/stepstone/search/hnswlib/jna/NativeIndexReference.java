@@ -0,0 +1,104 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.sun.jna.Pointer;
+
+import java.util.function.Consumer;
+
+/**
+ * Native index shared by one or more instances (e.g., an index and its
+ * synchronized view). Each of them is an owner of the native index:
+ *
+ * - the memory of the index is freed (clearIndex) when the last open owner is closed,
+ *   or becomes unreachable without being closed;
+ * - the native instance itself is freed (destroyIndex) when the last owner becomes
+ *   unreachable, so that closed owners can still call the native library safely
+ *   (it reports the index as cleared).
+ */
+final class NativeIndexReference {
+
+	private final Pointer pointer;
+	private final Consumer<Pointer> clear;
+	private final Consumer<Pointer> destroy;
+	private int openOwners;
+	private int reachableOwners;
+
+	NativeIndexReference(Hnswlib hnswlib, Pointer pointer) {
+		this(pointer, hnswlib::clearIndex, hnswlib::destroyIndex);
+	}
+
+	/**
+	 * @param pointer - the native index;
+	 * @param clear - frees the memory of the native index;
+	 * @param destroy - frees the native instance itself.
+	 */
+	NativeIndexReference(Pointer pointer, Consumer<Pointer> clear, Consumer<Pointer> destroy) {
+		this.pointer = pointer;
+		this.clear = clear;
+		this.destroy = destroy;
+	}
+
+	Pointer getPointer() {
+		return pointer;
+	}
+
+	/**
+	 * Adds an owner of the native index, released automatically once it becomes unreachable.
+	 *
+	 * @param index - the owner.
+	 * @return handle to close the ownership explicitly.
+	 */
+	synchronized Owner register(Object index) {
+		openOwners++;
+		reachableOwners++;
+		Owner owner = new Owner();
+		NativeCleaner.register(index, owner::release);
+		return owner;
+	}
+
+	/**
+	 * Ownership of the native index by an index instance.
+	 */
+	final class Owner {
+
+		private boolean open = true;
+		private boolean reachable = true;
+
+		NativeIndexReference getReference() {
+			return NativeIndexReference.this;
+		}
+
+		/**
+		 * Closes the ownership; the native memory is freed if no other owner is open.
+		 *
+		 * @return true if the ownership was open.
+		 */
+		boolean close() {
+			synchronized (NativeIndexReference.this) {
+				if (!open) {
+					return false;
+				}
+				open = false;
+				if (--openOwners == 0) {
+					/* the index may have been cleared explicitly before */
+					clear.accept(pointer);
+				}
+				return true;
+			}
+		}
+
+		/**
+		 * Closes the ownership and gives up the native instance (the owner does not use it anymore).
+		 */
+		void release() {
+			synchronized (NativeIndexReference.this) {
+				close();
+				if (reachable) {
+					reachable = false;
+					if (--reachableOwners == 0) {
+						destroy.accept(pointer);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.stepstone.search.hnswlib.jna;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache (least recently used eviction) for the results of knn queries.
+ * It can be attached to an index via Index.setQueryCache() and it is used by
+ * knnQuery(float[], int) and knnNormalizedQuery(float[], int) (also the variants
+ * with a QueryTuple). Filtered, buffer and batch queries are not cached.
+ *
+ * Every entry keeps the version of the index at the moment the query was executed.
+ * Operations that change the results (adding or deleting items, load, setEf, clear)
+ * increase the version of the index, so older entries are ignored (and dropped).
+ *
+ * A cache must be attached to a single index. This class is thread-safe.
+ */
+public final class QueryCache {
+
+	private final int maxNumberOfEntries;
+	private final LinkedHashMap<Key, Entry> entries;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public QueryCache(int maxNumberOfEntries) {
+		if (maxNumberOfEntries <= 0) {
+			throw new IllegalArgumentException("The cache must hold at least one entry.");
+		}
+		this.maxNumberOfEntries = maxNumberOfEntries;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > QueryCache.this.maxNumberOfEntries) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Looks up the results of a query executed at the specified index version.
+	 *
+	 * @param input - query vector (not copied);
+	 * @param normalized - was the query normalized by the caller?
+	 * @param k - number of results;
+	 * @param ef - ef used by the query (or -1 for the ef of the index);
+	 * @param version - current version of the index.
+	 *
+	 * @return the cached results (shared, they must not be modified) or null.
+	 */
+	synchronized QueryTuple get(float[] input, boolean normalized, int k, int ef, long version) {
+		Key key = new Key(input, normalized, k, ef);
+		Entry entry = entries.get(key);
+		if (entry != null && entry.version != version) {
+			entries.remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.result;
+	}
+
+	/**
+	 * Stores the results of a query.
+	 *
+	 * @param input - copy of the query vector as given by the caller (before any native normalization), owned by the cache from now on;
+	 * @param normalized - was the query normalized by the caller?
+	 * @param k - number of results;
+	 * @param ef - ef used by the query (or -1 for the ef of the index);
+	 * @param version - version of the index read before the query was executed;
+	 * @param result - results of the query (copied).
+	 */
+	synchronized void put(float[] input, boolean normalized, int k, int ef, long version, QueryTuple result) {
+		entries.put(new Key(input, normalized, k, ef), new Entry(version,
+				new QueryTuple(result.ids.clone(), result.coefficients.clone())));
+	}
+
+	/**
+	 * Removes all entries (the statistics are kept).
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxNumberOfEntries() {
+		return maxNumberOfEntries;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Ratio of lookups answered by the cache.
+	 *
+	 * @return a value between 0 and 1 (0 when the cache was never used).
+	 */
+	public synchronized double getHitRate() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+	}
+
+	private static final class Key {
+
+		private final float[] input;
+		private final boolean normalized;
+		private final int k;
+		private final int ef;
+		private final int hash;
+
+		private Key(float[] input, boolean normalized, int k, int ef) {
+			this.input = input;
+			this.normalized = normalized;
+			this.k = k;
+			this.ef = ef;
+			this.hash = 31 * (31 * (31 * Arrays.hashCode(input) + k) + ef) + (normalized ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hash == other.hash && k == other.k && ef == other.ef
+					&& normalized == other.normalized && Arrays.equals(input, other.input);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Entry {
+
+		private final long version;
+		private final QueryTuple result;
+
+		private Entry(long version, QueryTuple result) {
+			this.version = version;
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.stepstone.search.hnswlib.jna;
+
+/**
+ * A query session owns the result holder of its queries, so repeated
+ * queries with the same k do not allocate result arrays.
+ *
+ * The query tuple returned by the session is overwritten by the next query
+ * of the same session; copy the results if they need to be kept.
+ *
+ * Note: sessions are not thread-safe. Each thread should use its own
+ * session (e.g., via ThreadLocal.withInitial(() -> index.newQuerySession(k))).
+ */
+public final class QuerySession {
+
+	private final Index index;
+	private final int k;
+	private final QueryTuple queryTuple;
+
+	QuerySession(Index index, int k) {
+		this.index = index;
+		this.k = k;
+		this.queryTuple = new QueryTuple(k);
+	}
+
+	/**
+	 * Performs a knn query in the index of this session. In case the vector space
+	 * requires the input to be normalized, it will normalize at the native level.
+	 *
+	 * @param input - float array.
+	 *
+	 * @return the query tuple owned by this session.
+	 */
+	public QueryTuple knnQuery(float[] input) {
+		index.knnQuery(input, k, queryTuple);
+		return queryTuple;
+	}
+
+	/**
+	 * Performs a knn query in the index of this session using a normalized input.
+	 * It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array.
+	 *
+	 * @return the query tuple owned by this session.
+	 */
+	public QueryTuple knnNormalizedQuery(float[] input) {
+		index.knnNormalizedQuery(input, k, queryTuple);
+		return queryTuple;
+	}
+
+	/**
+	 * Number of results returned by the queries of this session.
+	 *
+	 * @return the k value.
+	 */
+	public int getK() {
+		return k;
+	}
+}
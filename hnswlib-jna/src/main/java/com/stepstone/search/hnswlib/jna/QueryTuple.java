@@ -3,17 +3,26 @@ package com.stepstone.search.hnswlib.jna;
 /**
  * Query Tuple that represents the results of a knn query.
  * It contains two arrays: ids and coefficients.
+ *
+ * A query tuple can be reused across queries with the same k
+ * (e.g., via Index.knnQuery(float[], int, QueryTuple)); in that case
+ * its arrays are overwritten by every query.
  */
 public class QueryTuple {
 
 	int[] ids;
 	float[] coefficients;
 
-	QueryTuple (int k) {
+	public QueryTuple (int k) {
 		ids = new int[k];
 		coefficients = new float[k];
 	}
 
+	QueryTuple (int[] ids, float[] coefficients) {
+		this.ids = ids;
+		this.coefficients = coefficients;
+	}
+
 	public float[] getCoefficients() {
 		return coefficients;
 	}
@@ -21,4 +30,13 @@ public class QueryTuple {
 	public int[] getIds() {
 		return ids;
 	}
+
+	/**
+	 * Number of results this query tuple can hold.
+	 *
+	 * @return the k value this tuple was created for.
+	 */
+	public int getK() {
+		return ids.length;
+	}
 }
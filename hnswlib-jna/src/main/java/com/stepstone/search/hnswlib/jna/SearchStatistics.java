@@ -0,0 +1,88 @@
+package com.stepstone.search.hnswlib.jna;
+
+/**
+ * Work done by the native library to answer knn queries: either a single
+ * query (see Index.knnQuery(float[], int, SearchStatistics)) or all the
+ * queries of an index (see Index.getSearchStatistics(), kept while
+ * Index.setSearchStatisticsEnabled(true) is set).
+ *
+ * A search statistics instance can be reused across queries; in that case
+ * its values are overwritten by every query.
+ */
+public class SearchStatistics {
+
+	static final int SIZE = 6;
+	private static final int QUERIES = 0;
+	private static final int DISTANCE_COMPUTATIONS = 1;
+	private static final int VISITED_NODES = 2;
+	private static final int LAYERS = 3;
+	private static final int UPPER_LAYER_HOPS = 4;
+	private static final int CANDIDATES_EXPANDED = 5;
+
+	final long[] values = new long[SIZE];
+
+	/**
+	 * Number of queries these statistics refer to.
+	 *
+	 * @return number of queries.
+	 */
+	public long getQueries() {
+		return values[QUERIES];
+	}
+
+	/**
+	 * Number of distances computed between the query and the items of the index.
+	 *
+	 * @return number of distance computations.
+	 */
+	public long getDistanceComputations() {
+		return values[DISTANCE_COMPUTATIONS];
+	}
+
+	/**
+	 * Number of distinct items reached in the base layer of the graph.
+	 *
+	 * @return number of visited nodes.
+	 */
+	public long getVisitedNodes() {
+		return values[VISITED_NODES];
+	}
+
+	/**
+	 * Number of layers of the graph traversed (including the base layer).
+	 *
+	 * @return number of layers.
+	 */
+	public long getLayers() {
+		return values[LAYERS];
+	}
+
+	/**
+	 * Number of neighbour lists scanned by the greedy search in the upper layers.
+	 *
+	 * @return number of upper layer hops.
+	 */
+	public long getUpperLayerHops() {
+		return values[UPPER_LAYER_HOPS];
+	}
+
+	/**
+	 * Number of candidates whose neighbour lists were scanned in the base layer
+	 * (bounded by ef; it grows when the graph degrades, e.g., after many deletions).
+	 *
+	 * @return number of candidates expanded.
+	 */
+	public long getCandidatesExpanded() {
+		return values[CANDIDATES_EXPANDED];
+	}
+
+	@Override
+	public String toString() {
+		return "SearchStatistics{queries=" + getQueries()
+				+ ", distanceComputations=" + getDistanceComputations()
+				+ ", visitedNodes=" + getVisitedNodes()
+				+ ", layers=" + getLayers()
+				+ ", upperLayerHops=" + getUpperLayerHops()
+				+ ", candidatesExpanded=" + getCandidatesExpanded() + "}";
+	}
+}
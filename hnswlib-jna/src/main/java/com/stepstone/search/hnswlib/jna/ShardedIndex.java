@@ -0,0 +1,514 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.stepstone.search.hnswlib.jna.exception.QueryCannotReturnResultsException;
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+
+/**
+ * Index that spreads its items over several native indexes (shards) according
+ * to the hash of their identifiers. Each shard is a ConcurrentIndex with parallel
+ * updates, so items can be added from several threads; batches are split by shard
+ * and inserted into all of them in parallel. Queries run against all the shards
+ * concurrently and their results are merged into the k closest items.
+ *
+ * Sharding lifts the limits of a single index (capacity and native allocation) and
+ * reduces the contention of insertions, at the cost of querying every shard.
+ *
+ * Note: items must be added with an identifier (no incremental identifiers).
+ */
+public class ShardedIndex implements AutoCloseable {
+
+	private static final String MANIFEST_FILE_NAME = "shards.properties";
+	private static final String SHARD_FILE_NAME_FORMAT = "shard-%d.hnsw";
+	private static final String NUMBER_OF_SHARDS_PROPERTY = "numberOfShards";
+	private static final String SPACE_NAME_PROPERTY = "spaceName";
+	private static final String DIMENSION_PROPERTY = "dimension";
+	private static final int INDEX_EF = -1;
+
+	private final SpaceName spaceName;
+	private final int dimension;
+	private final Index[] shards;
+	private final Executor executor;
+
+	public ShardedIndex(SpaceName spaceName, int dimension, int numberOfShards) {
+		this(spaceName, dimension, numberOfShards, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a sharded index.
+	 *
+	 * @param spaceName - vector space of the shards;
+	 * @param dimension - dimension of the items;
+	 * @param numberOfShards - number of native indexes;
+	 * @param executor - executor used to query, insert into, save and load the shards in parallel.
+	 */
+	public ShardedIndex(SpaceName spaceName, int dimension, int numberOfShards, Executor executor) {
+		if (numberOfShards < 1) {
+			throw new IllegalArgumentException("The number of shards must be positive.");
+		}
+		this.spaceName = spaceName;
+		this.dimension = dimension;
+		this.executor = executor;
+		this.shards = new Index[numberOfShards];
+		for (int i = 0; i < numberOfShards; i++) {
+			shards[i] = new ConcurrentIndex(spaceName, dimension, ConcurrencyMode.PARALLEL_UPDATES);
+		}
+	}
+
+	/**
+	 * Initialize all the shards with the default values for M, efConstruction and randomSeed.
+	 *
+	 * @param maxNumberOfElementsPerShard - max number of elements in each shard.
+	 */
+	public void initialize(int maxNumberOfElementsPerShard) {
+		initialize(maxNumberOfElementsPerShard, 16, 200, 100);
+	}
+
+	/**
+	 * Initialize all the shards.
+	 *
+	 * @param maxNumberOfElementsPerShard - max number of elements in each shard;
+	 * @param m - M;
+	 * @param efConstruction - efConstruction;
+	 * @param randomSeed - a random seed.
+	 */
+	public void initialize(int maxNumberOfElementsPerShard, int m, int efConstruction, int randomSeed) {
+		for (Index shard : shards) {
+			shard.initialize(maxNumberOfElementsPerShard, m, efConstruction, randomSeed);
+		}
+	}
+
+	/**
+	 * Sets the growth factor of all the shards (see Index.setGrowthFactor()).
+	 *
+	 * @param growthFactor - factor applied to the capacity of a full shard.
+	 */
+	public void setGrowthFactor(double growthFactor) {
+		for (Index shard : shards) {
+			shard.setGrowthFactor(growthFactor);
+		}
+	}
+
+	/**
+	 * Sets the query time accuracy / speed trade-off value of all the shards.
+	 *
+	 * @param ef value.
+	 */
+	public void setEf(int ef) {
+		for (Index shard : shards) {
+			shard.setEf(ef);
+		}
+	}
+
+	public int getNumberOfShards() {
+		return shards.length;
+	}
+
+	/**
+	 * Retrieves a shard (e.g., to inspect its metrics or statistics).
+	 *
+	 * @param shard - shard number.
+	 *
+	 * @return the index of the shard.
+	 */
+	public Index getShard(int shard) {
+		return shards[shard];
+	}
+
+	/**
+	 * Retrieves the shard which holds an identifier.
+	 *
+	 * @param id - identifier.
+	 *
+	 * @return shard number.
+	 */
+	public int getShardOf(int id) {
+		return Math.floorMod(HashCommon.mix(id), shards.length);
+	}
+
+	/**
+	 * Adds an item to the shard of its identifier. It won't apply any extra
+	 * normalization unless it is required by the Vector Space (e.g., COSINE).
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - an identifier used by the native library.
+	 */
+	public void addItem(float[] item, int id) {
+		shards[getShardOf(id)].addItem(item, id);
+	}
+
+	/**
+	 * Adds a normalized item to the shard of its identifier.
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - an identifier used by the native library.
+	 */
+	public void addNormalizedItem(float[] item, int id) {
+		shards[getShardOf(id)].addNormalizedItem(item, id);
+	}
+
+	/**
+	 * Adds several items, splitting them by shard and inserting into all the shards
+	 * in parallel. It won't apply any extra normalization unless it is required
+	 * by the Vector Space (e.g., COSINE).
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order).
+	 */
+	public void addItems(float[] items, int[] ids) {
+		addItems(items, ids, false);
+	}
+
+	/**
+	 * Adds several normalized items, splitting them by shard and inserting into all
+	 * the shards in parallel.
+	 *
+	 * @param items - flat array with all the normalized items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order).
+	 */
+	public void addNormalizedItems(float[] items, int[] ids) {
+		addItems(items, ids, true);
+	}
+
+	private void addItems(float[] items, int[] ids, boolean normalized) {
+		if (items.length != ids.length * dimension) {
+			throw new IllegalArgumentException("The items must contain " + ids.length + " x " + dimension + " floats.");
+		}
+		int[] itemsPerShard = new int[shards.length];
+		int[] shardOfItem = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			shardOfItem[i] = getShardOf(ids[i]);
+			itemsPerShard[shardOfItem[i]]++;
+		}
+		float[][] shardItems = new float[shards.length][];
+		int[][] shardIds = new int[shards.length][];
+		for (int shard = 0; shard < shards.length; shard++) {
+			shardItems[shard] = new float[itemsPerShard[shard] * dimension];
+			shardIds[shard] = new int[itemsPerShard[shard]];
+		}
+		int[] position = new int[shards.length];
+		for (int i = 0; i < ids.length; i++) {
+			int shard = shardOfItem[i];
+			System.arraycopy(items, i * dimension, shardItems[shard], position[shard] * dimension, dimension);
+			shardIds[shard][position[shard]++] = ids[i];
+		}
+		forEachShard(shard -> {
+			if (shardIds[shard].length == 0) {
+				return null;
+			}
+			/* the parallelism comes from the shards, so each one inserts with a single native thread */
+			if (normalized) {
+				shards[shard].addNormalizedItems(shardItems[shard], shardIds[shard], 1);
+			} else {
+				shards[shard].addItems(shardItems[shard], shardIds[shard], 1);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Performs a knn query against all the shards in parallel and merges their results.
+	 * In case the vector space requires the input to be normalized, it will be normalized
+	 * (in place) once before querying the shards.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnQuery(float[] input, int k) {
+		if (spaceName.requiresNormalization()) {
+			Index.normalize(input);
+		}
+		return knnNormalizedQuery(input, k);
+	}
+
+	/**
+	 * Performs a knn query using a normalized input against all the shards in parallel
+	 * and merges their results. It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnNormalizedQuery(float[] input, int k) {
+		return query(input, k, INDEX_EF);
+	}
+
+	/**
+	 * Performs a knn query with a specific ef against all the shards in parallel and
+	 * merges their results. The ef is only used by this query (the ef of the shards is
+	 * not changed). In case the vector space requires the input to be normalized, it will
+	 * be normalized (in place) once before querying the shards.
+	 *
+	 * @param input - float array;
+	 * @param k - number of results expected;
+	 * @param ef - ef of this query in each shard.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnQuery(float[] input, int k, int ef) {
+		checkEf(ef);
+		if (spaceName.requiresNormalization()) {
+			Index.normalize(input);
+		}
+		return knnNormalizedQuery(input, k, ef);
+	}
+
+	/**
+	 * Performs a knn query using a normalized input with a specific ef against all
+	 * the shards in parallel and merges their results. It will not normalize the vector again.
+	 *
+	 * @param input - a normalized float array;
+	 * @param k - number of results expected;
+	 * @param ef - ef of this query in each shard.
+	 *
+	 * @return a query tuple instance that contain the indices and coefficients.
+	 */
+	public QueryTuple knnNormalizedQuery(float[] input, int k, int ef) {
+		checkEf(ef);
+		return query(input, k, ef);
+	}
+
+	private QueryTuple query(float[] input, int k, int ef) {
+		QueryTuple[] shardResults = forEachShard(shard -> queryShard(shards[shard], input, k, ef), QueryTuple[]::new);
+		return merge(shardResults, k);
+	}
+
+	private static void checkEf(int ef) {
+		if (ef <= 0) {
+			throw new IllegalArgumentException("The ef of a query must be positive.");
+		}
+	}
+
+	/**
+	 * Queries a shard for (at most) k results; shards with fewer items which are not
+	 * deleted contribute what they have.
+	 */
+	private static QueryTuple queryShard(Index shard, float[] input, int k, int ef) {
+		int shardK = Math.min(k, shard.getLength() - shard.getDeletedCount());
+		while (shardK > 0) {
+			try {
+				return ef == INDEX_EF ? shard.knnNormalizedQuery(input, shardK) : shard.knnNormalizedQuery(input, shardK, ef);
+			} catch (QueryCannotReturnResultsException e) {
+				/* items deleted meanwhile, or not reached by the graph search: ask for fewer results */
+				shardK = Math.min(shardK - 1, shard.getLength() - shard.getDeletedCount());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Merges the results of the shards keeping the k closest items in a bounded max-heap.
+	 */
+	private static QueryTuple merge(QueryTuple[] shardResults, int k) {
+		PriorityQueue<Candidate> closest = new PriorityQueue<>(k + 1, (a, b) -> Float.compare(b.coefficient, a.coefficient));
+		for (QueryTuple shardResult : shardResults) {
+			if (shardResult == null) {
+				continue;
+			}
+			for (int i = 0; i < shardResult.ids.length; i++) {
+				float coefficient = shardResult.coefficients[i];
+				if (closest.size() < k) {
+					closest.add(new Candidate(shardResult.ids[i], coefficient));
+				} else if (coefficient < closest.peek().coefficient) {
+					closest.poll();
+					closest.add(new Candidate(shardResult.ids[i], coefficient));
+				} else {
+					/* the results of a shard are sorted, so the rest cannot be closer */
+					break;
+				}
+			}
+		}
+		if (closest.size() < k) {
+			throw new QueryCannotReturnResultsException();
+		}
+		QueryTuple queryTuple = new QueryTuple(k);
+		for (int i = k - 1; i >= 0; i--) {
+			Candidate candidate = closest.poll();
+			queryTuple.ids[i] = candidate.id;
+			queryTuple.coefficients[i] = candidate.coefficient;
+		}
+		return queryTuple;
+	}
+
+	/**
+	 * Returns the number of elements in all the shards.
+	 *
+	 * @return elements count.
+	 */
+	public long getLength() {
+		long length = 0;
+		for (Index shard : shards) {
+			length += shard.getLength();
+		}
+		return length;
+	}
+
+	/**
+	 * Checks whether there is an item with the specified identifier in the index.
+	 *
+	 * @param id - identifier.
+	 *
+	 * @return true or false.
+	 */
+	public boolean hasId(int id) {
+		return shards[getShardOf(id)].hasId(id);
+	}
+
+	/**
+	 * Gets the data from a specific identifier in the index.
+	 *
+	 * @param id - identifier.
+	 *
+	 * @return an optional containing or not the item.
+	 */
+	public Optional<float[]> getData(int id) {
+		return shards[getShardOf(id)].getData(id);
+	}
+
+	/**
+	 * Marks an ID as deleted.
+	 *
+	 * @param id identifier.
+	 */
+	public void markDeleted(int id) {
+		shards[getShardOf(id)].markDeleted(id);
+	}
+
+	/**
+	 * Stores all the shards into a directory (one file per shard and a manifest).
+	 * The manifest is written last, so a directory without it is an incomplete save.
+	 *
+	 * @param directory - destination directory (created if needed).
+	 */
+	public void save(Path directory) {
+		try {
+			Files.createDirectories(directory);
+			Files.deleteIfExists(directory.resolve(MANIFEST_FILE_NAME));
+			forEachShard(shard -> {
+				shards[shard].save(directory.resolve(String.format(SHARD_FILE_NAME_FORMAT, shard)));
+				return null;
+			});
+			Properties manifest = new Properties();
+			manifest.setProperty(NUMBER_OF_SHARDS_PROPERTY, Integer.toString(shards.length));
+			manifest.setProperty(SPACE_NAME_PROPERTY, spaceName.name());
+			manifest.setProperty(DIMENSION_PROPERTY, Integer.toString(dimension));
+			Path temporaryManifest = directory.resolve(MANIFEST_FILE_NAME + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temporaryManifest, StandardCharsets.UTF_8)) {
+				manifest.store(writer, "hnswlib-jna sharded index");
+			}
+			Files.move(temporaryManifest, directory.resolve(MANIFEST_FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Loads all the shards stored in a directory by save(). The number of shards,
+	 * the space and the dimension of the stored index must match this one.
+	 *
+	 * Note: the old content of the shards will be erased.
+	 *
+	 * @param directory - directory with the shards;
+	 * @param maxNumberOfElementsPerShard - max number of elements in each shard.
+	 */
+	public void load(Path directory, int maxNumberOfElementsPerShard) {
+		Properties manifest = new Properties();
+		try (Reader reader = Files.newBufferedReader(directory.resolve(MANIFEST_FILE_NAME), StandardCharsets.UTF_8)) {
+			manifest.load(reader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		String expected = shards.length + " shards of " + spaceName + " with dimension " + dimension;
+		String stored = manifest.getProperty(NUMBER_OF_SHARDS_PROPERTY) + " shards of " + manifest.getProperty(SPACE_NAME_PROPERTY)
+				+ " with dimension " + manifest.getProperty(DIMENSION_PROPERTY);
+		if (!expected.equals(stored)) {
+			throw new IllegalArgumentException("The directory holds " + stored + " but this index has " + expected + ".");
+		}
+		forEachShard(shard -> {
+			shards[shard].load(directory.resolve(String.format(SHARD_FILE_NAME_FORMAT, shard)), maxNumberOfElementsPerShard);
+			return null;
+		});
+	}
+
+	/**
+	 * Frees the memory allocated for all the shards in the native context.
+	 *
+	 * NOTE: Once the index is cleared, it cannot be initialized or used again.
+	 */
+	public void clear() {
+		for (Index shard : shards) {
+			shard.clear();
+		}
+	}
+
+	/**
+	 * Releases all the shards (see Index.close()).
+	 */
+	@Override
+	public void close() {
+		for (Index shard : shards) {
+			shard.close();
+		}
+	}
+
+	private void forEachShard(IntFunction<Void> task) {
+		forEachShard(task, Void[]::new);
+	}
+
+	/**
+	 * Runs a task per shard on the executor and waits for all of them. The first
+	 * failure (if any) is rethrown once all the tasks are done.
+	 */
+	private <T> T[] forEachShard(IntFunction<T> task, IntFunction<T[]> arrayFactory) {
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[shards.length];
+		for (int shard = 0; shard < shards.length; shard++) {
+			int shardNumber = shard;
+			futures[shard] = CompletableFuture.supplyAsync(() -> task.apply(shardNumber), executor);
+		}
+		try {
+			CompletableFuture.allOf(futures).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		T[] results = arrayFactory.apply(shards.length);
+		for (int shard = 0; shard < shards.length; shard++) {
+			@SuppressWarnings("unchecked")
+			T result = (T) futures[shard].join();
+			results[shard] = result;
+		}
+		return results;
+	}
+
+	private static final class Candidate {
+
+		private final int id;
+		private final float coefficient;
+
+		private Candidate(int id, float coefficient) {
+			this.id = id;
+			this.coefficient = coefficient;
+		}
+	}
+}
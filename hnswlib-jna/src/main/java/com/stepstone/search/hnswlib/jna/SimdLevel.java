@@ -0,0 +1,11 @@
+package com.stepstone.search.hnswlib.jna;
+
+/**
+ * Instruction sets used by the distance functions of the native library. The best level
+ * supported by the CPU (and the OS) is detected at runtime, and the distance functions
+ * of an index are chosen when it is created. AVX2 also requires FMA and F16C.
+ *
+ * The level can be capped with the system property "hnswlib.jna.simd" (e.g., -Dhnswlib.jna.simd=AVX2)
+ * or via Index.setMaxSimdLevel().
+ */
+public enum SimdLevel { NONE, SSE, AVX, AVX2, AVX512 }
@@ -2,5 +2,37 @@ package com.stepstone.search.hnswlib.jna;
 
 /**
  * Space names available in the native implementation.
+ *
+ * The quantized spaces take (and return) float arrays like the others, but store the
+ * vectors in a compact format, which is encoded at insertion and query time: FP16
+ * spaces use half precision floats (2 bytes per dimension) and COSINE_INT8 uses signed
+ * bytes (1 byte per dimension, round(x * 127 / max|x|) of the normalized components, plus
+ * a 4-byte scale per vector). They need
+ * 2 to 4 times less memory at the price of a small loss of precision (and recall).
  */
-public enum SpaceName { L2, IP, COSINE /* requires normalized arrays */ }
+public enum SpaceName {
+
+	L2(false),
+	IP(false),
+	COSINE(true) /* requires normalized arrays */,
+	COSINE_INT8(true),
+	L2_FP16(false),
+	IP_FP16(false),
+	COSINE_FP16(true);
+
+	private final boolean normalized;
+
+	SpaceName(boolean normalized) {
+		this.normalized = normalized;
+	}
+
+	/**
+	 * Whether the items and queries of this space are normalized (by the native
+	 * library, unless they are added or queried as normalized).
+	 *
+	 * @return true for the cosine spaces.
+	 */
+	public boolean requiresNormalization() {
+		return normalized;
+	}
+}
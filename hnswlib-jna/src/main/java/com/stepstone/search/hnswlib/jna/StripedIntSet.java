@@ -0,0 +1,179 @@
+package com.stepstone.search.hnswlib.jna;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.AbstractIntSet;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Thread-safe set of ints split into stripes, each one an open-addressing hash set
+ * (IntOpenHashSet) guarded by its own monitor. Adding, removing and looking up an
+ * identifier takes (expected) constant time and only locks the stripe of the
+ * identifier, so threads working on different identifiers rarely contend.
+ *
+ * Iterators work on a snapshot of the set taken when they are created (they never
+ * throw ConcurrentModificationException); size() is the sum of the stripe sizes
+ * and may not reflect concurrent modifications.
+ */
+public class StripedIntSet extends AbstractIntSet {
+
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 4 * Runtime.getRuntime().availableProcessors();
+
+	private final IntOpenHashSet[] stripes;
+	private final int shift;
+
+	public StripedIntSet() {
+		this(DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates a set with a number of stripes suitable for the expected number of concurrent writers.
+	 *
+	 * @param concurrencyLevel - expected number of threads modifying the set (rounded up to a power of 2).
+	 */
+	public StripedIntSet(int concurrencyLevel) {
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("The concurrency level must be positive.");
+		}
+		int numberOfStripes = HashCommon.nextPowerOfTwo(Math.min(concurrencyLevel, 1 << 16));
+		stripes = new IntOpenHashSet[numberOfStripes];
+		for (int i = 0; i < numberOfStripes; i++) {
+			stripes[i] = new IntOpenHashSet();
+		}
+		/* the stripe comes from the high bits of the hash, the sets of the stripes use the low ones */
+		shift = Integer.SIZE - Integer.numberOfTrailingZeros(numberOfStripes);
+	}
+
+	private IntOpenHashSet stripeOf(int k) {
+		return shift == Integer.SIZE ? stripes[0] : stripes[HashCommon.mix(k) >>> shift];
+	}
+
+	@Override
+	public boolean add(int k) {
+		IntOpenHashSet stripe = stripeOf(k);
+		synchronized (stripe) {
+			return stripe.add(k);
+		}
+	}
+
+	@Override
+	public boolean remove(int k) {
+		IntOpenHashSet stripe = stripeOf(k);
+		synchronized (stripe) {
+			return stripe.remove(k);
+		}
+	}
+
+	@Override
+	public boolean contains(int k) {
+		IntOpenHashSet stripe = stripeOf(k);
+		synchronized (stripe) {
+			return stripe.contains(k);
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (IntOpenHashSet stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (IntOpenHashSet stripe : stripes) {
+			synchronized (stripe) {
+				if (!stripe.isEmpty()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		for (IntOpenHashSet stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * Copies the elements of the set (stripe by stripe) into a new array.
+	 *
+	 * @return a snapshot of the elements.
+	 */
+	@Override
+	public int[] toIntArray() {
+		int[] elements = new int[0];
+		int size = 0;
+		for (IntOpenHashSet stripe : stripes) {
+			synchronized (stripe) {
+				if (size + stripe.size() > elements.length) {
+					elements = Arrays.copyOf(elements, Math.max(2 * elements.length, size + stripe.size()));
+				}
+				for (IntIterator iterator = stripe.iterator(); iterator.hasNext(); ) {
+					elements[size++] = iterator.nextInt();
+				}
+			}
+		}
+		return Arrays.copyOf(elements, size);
+	}
+
+	@Override
+	public int[] toArray(int[] a) {
+		int[] elements = toIntArray();
+		if (a == null || a.length < elements.length) {
+			return elements;
+		}
+		System.arraycopy(elements, 0, a, 0, elements.length);
+		return a;
+	}
+
+	/**
+	 * Iterates over a snapshot of the set; removing through the iterator removes from the set.
+	 *
+	 * @return an iterator over the elements present when it was created.
+	 */
+	@Override
+	public IntIterator iterator() {
+		int[] elements = toIntArray();
+		return new IntIterator() {
+
+			private int next;
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return next < elements.length;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = next++;
+				return elements[last];
+			}
+
+			@Override
+			public void remove() {
+				if (last == -1) {
+					throw new IllegalStateException();
+				}
+				StripedIntSet.this.remove(elements[last]);
+				last = -1;
+			}
+		};
+	}
+}
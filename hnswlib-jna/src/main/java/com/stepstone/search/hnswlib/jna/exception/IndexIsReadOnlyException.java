@@ -0,0 +1,8 @@
+package com.stepstone.search.hnswlib.jna.exception;
+
+/**
+ * Exception thrown when trying to modify an index that is read-only
+ * (the index was loaded via the method loadMapped()).
+ */
+public class IndexIsReadOnlyException extends UnexpectedNativeException {
+}
@@ -0,0 +1,245 @@
+package com.stepstone.search.hnswlib.jna.metrics;
+
+import com.stepstone.search.hnswlib.jna.Index;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default IndexMetricsListener: keeps a latency histogram and an item counter per
+ * operation, the lock waiting time of a ConcurrentIndex and the number of elements
+ * of the index against its capacity. It relies only on the JDK (LongAdder based
+ * histograms and JMX), so it is cheap enough to be always enabled.
+ *
+ * Usage:
+ *   IndexMetrics metrics = IndexMetrics.attach(index);
+ *   metrics.register("my-index"); // optional, exposes the metrics via JMX
+ */
+public final class IndexMetrics implements IndexMetricsListener, IndexMetricsMXBean {
+
+	private static final String JMX_DOMAIN = "com.stepstone.search.hnswlib.jna";
+	private static final double NANOS_PER_MICRO = 1_000.0;
+
+	private final Index index;
+	private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> items = new EnumMap<>(Operation.class);
+	private final LatencyHistogram lockWaits = new LatencyHistogram();
+	private final LongAdder exclusiveLockAcquisitions = new LongAdder();
+	private volatile ObjectName objectName;
+
+	public IndexMetrics(Index index) {
+		this.index = index;
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new LatencyHistogram());
+			items.put(operation, new LongAdder());
+		}
+	}
+
+	/**
+	 * Creates the metrics of an index and sets them as its metrics listener.
+	 *
+	 * @param index - index to be measured.
+	 *
+	 * @return the metrics.
+	 */
+	public static IndexMetrics attach(Index index) {
+		IndexMetrics metrics = new IndexMetrics(index);
+		index.setMetricsListener(metrics);
+		return metrics;
+	}
+
+	@Override
+	public void onOperation(Operation operation, long durationNanos, int numberOfItems) {
+		latencies.get(operation).record(durationNanos);
+		items.get(operation).add(numberOfItems);
+	}
+
+	@Override
+	public void onLockAcquired(long waitNanos, boolean exclusive) {
+		lockWaits.record(waitNanos);
+		if (exclusive) {
+			exclusiveLockAcquisitions.increment();
+		}
+	}
+
+	/**
+	 * Retrieves the latency histogram of an operation.
+	 *
+	 * @param operation - the operation.
+	 *
+	 * @return the histogram (calls, not items).
+	 */
+	public LatencyHistogram getLatencies(Operation operation) {
+		return latencies.get(operation);
+	}
+
+	/**
+	 * Retrieves the number of items processed by an operation (e.g., inserted items
+	 * or queries executed in batches).
+	 *
+	 * @param operation - the operation.
+	 *
+	 * @return the number of items.
+	 */
+	public long getItemCount(Operation operation) {
+		return items.get(operation).sum();
+	}
+
+	public LatencyHistogram getLockWaits() {
+		return lockWaits;
+	}
+
+	/**
+	 * Registers these metrics in the platform MBean server as
+	 * com.stepstone.search.hnswlib.jna:type=Index,name=[name].
+	 *
+	 * @param name - name of the index in JMX.
+	 *
+	 * @throws IllegalStateException when the registration fails (e.g., the name is already used).
+	 */
+	public void register(String name) {
+		try {
+			ObjectName newObjectName = new ObjectName(JMX_DOMAIN + ":type=Index,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+			objectName = newObjectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Unable to register the metrics of the index " + name + ".", e);
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server (if registered).
+	 */
+	public void unregister() {
+		ObjectName registeredObjectName = objectName;
+		if (registeredObjectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				server.unregisterMBean(registeredObjectName);
+			} catch (JMException e) {
+				throw new IllegalStateException("Unable to unregister " + registeredObjectName + ".", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public long getQueryCount() {
+		return latencies.get(Operation.QUERY).getCount();
+	}
+
+	@Override
+	public double getQueryMeanMicros() {
+		return latencies.get(Operation.QUERY).getMeanNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getQueryP99Micros() {
+		return latencies.get(Operation.QUERY).getPercentileNanos(99.0) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getQueryMaxMicros() {
+		return latencies.get(Operation.QUERY).getMaxNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getBatchQueryCount() {
+		return latencies.get(Operation.BATCH_QUERY).getCount();
+	}
+
+	@Override
+	public double getBatchQueryMeanMicros() {
+		return latencies.get(Operation.BATCH_QUERY).getMeanNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getInsertCount() {
+		return items.get(Operation.INSERT).sum();
+	}
+
+	@Override
+	public double getInsertMeanMicros() {
+		return latencies.get(Operation.INSERT).getMeanNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getInsertP99Micros() {
+		return latencies.get(Operation.INSERT).getPercentileNanos(99.0) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getDeleteCount() {
+		return items.get(Operation.DELETE).sum();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return latencies.get(Operation.LOAD).getCount();
+	}
+
+	@Override
+	public double getLoadMaxMicros() {
+		return latencies.get(Operation.LOAD).getMaxNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getSaveCount() {
+		return latencies.get(Operation.SAVE).getCount();
+	}
+
+	@Override
+	public double getSaveMaxMicros() {
+		return latencies.get(Operation.SAVE).getMaxNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getLockAcquisitionCount() {
+		return lockWaits.getCount();
+	}
+
+	@Override
+	public double getLockWaitMeanMicros() {
+		return lockWaits.getMeanNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLockWaitP99Micros() {
+		return lockWaits.getPercentileNanos(99.0) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getLockWaitMaxMicros() {
+		return lockWaits.getMaxNanos() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getExclusiveLockAcquisitionCount() {
+		return exclusiveLockAcquisitions.sum();
+	}
+
+	@Override
+	public int getNumberOfElements() {
+		return index.getLength();
+	}
+
+	@Override
+	public int getMaxNumberOfElements() {
+		return index.getMaxNumberOfElements();
+	}
+
+	@Override
+	public void reset() {
+		for (Operation operation : Operation.values()) {
+			latencies.get(operation).reset();
+			items.get(operation).reset();
+		}
+		lockWaits.reset();
+		exclusiveLockAcquisitions.reset();
+	}
+}
@@ -0,0 +1,30 @@
+package com.stepstone.search.hnswlib.jna.metrics;
+
+/**
+ * Listener notified by an index about the operations it executes. It can be
+ * set via Index.setMetricsListener(); when no listener is set, the index does
+ * not measure anything.
+ *
+ * Implementations are called from the threads using the index, so they must be
+ * thread-safe and cheap (e.g., IndexMetrics).
+ */
+public interface IndexMetricsListener {
+
+	/**
+	 * Called after an operation (successful or not) was executed in the native side.
+	 *
+	 * @param operation - the operation;
+	 * @param durationNanos - time spent in the operation (lock waiting not included);
+	 * @param numberOfItems - number of items involved (e.g., items inserted or queries in a batch).
+	 */
+	void onOperation(Operation operation, long durationNanos, int numberOfItems);
+
+	/**
+	 * Called by ConcurrentIndex after acquiring one of its locks.
+	 *
+	 * @param waitNanos - time spent waiting for the lock;
+	 * @param exclusive - was it the exclusive (write) lock?
+	 */
+	default void onLockAcquired(long waitNanos, boolean exclusive) {
+	}
+}
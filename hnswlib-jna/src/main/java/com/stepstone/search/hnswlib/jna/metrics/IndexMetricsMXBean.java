@@ -0,0 +1,52 @@
+package com.stepstone.search.hnswlib.jna.metrics;
+
+/**
+ * JMX view of the metrics of an index (see IndexMetrics.register()).
+ * Latencies are reported in microseconds.
+ */
+public interface IndexMetricsMXBean {
+
+	long getQueryCount();
+
+	double getQueryMeanMicros();
+
+	double getQueryP99Micros();
+
+	double getQueryMaxMicros();
+
+	long getBatchQueryCount();
+
+	double getBatchQueryMeanMicros();
+
+	long getInsertCount();
+
+	double getInsertMeanMicros();
+
+	double getInsertP99Micros();
+
+	long getDeleteCount();
+
+	long getLoadCount();
+
+	double getLoadMaxMicros();
+
+	long getSaveCount();
+
+	double getSaveMaxMicros();
+
+	long getLockAcquisitionCount();
+
+	double getLockWaitMeanMicros();
+
+	double getLockWaitP99Micros();
+
+	double getLockWaitMaxMicros();
+
+	long getExclusiveLockAcquisitionCount();
+
+	int getNumberOfElements();
+
+	int getMaxNumberOfElements();
+
+	void reset();
+}
@@ -0,0 +1,97 @@
+package com.stepstone.search.hnswlib.jna.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets (bucket i > 0 holds
+ * values in [2^(i-1), 2^i) nanoseconds). Recording costs a few LongAdder
+ * increments, so it can be left enabled in production; the percentiles
+ * are approximated by the upper bound of their bucket (at most 2x off).
+ */
+public final class LatencyHistogram {
+
+	private static final int NUMBER_OF_BUCKETS = 64;
+
+	private final LongAdder[] buckets = new LongAdder[NUMBER_OF_BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param nanos - latency in nanoseconds (negative values are recorded as 0).
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		/* 0 goes to bucket 0 and the largest (positive) long to bucket 63 */
+		buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	public double getMeanNanos() {
+		long n = count.sum();
+		return n == 0 ? 0.0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Approximates a percentile.
+	 *
+	 * @param percentile - value between 0 and 100 (e.g., 99.9);
+	 *
+	 * @return the upper bound (in nanoseconds) of the bucket containing the percentile or 0 when empty.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long[] counts = new long[NUMBER_OF_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank)) {
+				return Math.min(upperBound(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	/**
+	 * Removes all the recorded values.
+	 */
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	private static long upperBound(int bucket) {
+		return bucket >= NUMBER_OF_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+}
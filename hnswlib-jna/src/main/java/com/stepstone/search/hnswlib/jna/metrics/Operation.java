@@ -0,0 +1,6 @@
+package com.stepstone.search.hnswlib.jna.metrics;
+
+/**
+ * Operations of an index reported to an IndexMetricsListener.
+ */
+public enum Operation { QUERY, BATCH_QUERY, INSERT, DELETE, LOAD, SAVE }
@@ -0,0 +1,20 @@
+package com.stepstone.search.hnswlib.jna.persistence;
+
+/**
+ * When the mutations recorded by a LoggedIndex are forced to the storage device.
+ */
+public enum LogSyncMode {
+
+	/**
+	 * Every mutation returns once its record is durable. Concurrent mutations are
+	 * group-committed: a single fsync covers all the records appended while the
+	 * previous one was running.
+	 */
+	EVERY_MUTATION,
+
+	/**
+	 * Records are only forced by LoggedIndex.sync(), snapshot() and close(); a crash
+	 * may lose the mutations since the last sync (but never corrupts the log).
+	 */
+	ON_DEMAND
+}
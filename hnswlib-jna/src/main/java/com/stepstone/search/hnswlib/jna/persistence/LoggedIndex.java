@@ -0,0 +1,312 @@
+package com.stepstone.search.hnswlib.jna.persistence;
+
+import com.stepstone.search.hnswlib.jna.Index;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index whose mutations are persisted incrementally: a snapshot of the index (as
+ * written by Index.save()) plus a MutationLog with the insertions and deletions
+ * executed since that snapshot. Opening a LoggedIndex recovers the index by loading
+ * the latest snapshot and replaying its log (in batches, via the bulk insertion path).
+ *
+ * Mutations are applied to the index first and then appended to the log, so only
+ * successful mutations are logged; a mutation is durable once the method returns
+ * (with LogSyncMode.EVERY_MUTATION) or after the next sync(). snapshot() saves the
+ * index and starts a new (empty) log, which keeps the log and the recovery time short.
+ *
+ * Directory layout: snapshot-[generation].hnsw and mutations-[generation].log. A log
+ * holds the mutations executed after the snapshot of the same generation (generation
+ * 0 has no snapshot).
+ *
+ * Queries can be run against getIndex() directly. Mutations from several threads require
+ * a thread-safe index (e.g., a ConcurrentIndex); snapshot() waits for them to finish.
+ * Concurrent mutations of the same identifier may be logged in a different order than
+ * they were applied, so they should be avoided.
+ */
+public class LoggedIndex implements Closeable {
+
+	private static final Pattern SNAPSHOT_FILE_NAME = Pattern.compile("snapshot-(\\d+)\\.hnsw");
+	private static final int REPLAY_BATCH_SIZE = 1024;
+
+	private final Index index;
+	private final Path directory;
+	private final int dimension;
+	private final LogSyncMode syncMode;
+	private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+	private volatile MutationLog log;
+	private long generation;
+
+	private LoggedIndex(Index index, Path directory, int dimension, LogSyncMode syncMode) {
+		this.index = index;
+		this.directory = directory;
+		this.dimension = dimension;
+		this.syncMode = syncMode;
+	}
+
+	/**
+	 * Opens (or creates) the persisted index stored in a directory. The index must be a
+	 * new one (not initialized): it is either loaded from the latest snapshot or initialized
+	 * with the specified capacity, and then the mutations of the log are replayed.
+	 *
+	 * @param index - new index instance (with the space and dimension of the persisted one);
+	 * @param dimension - dimension of the index;
+	 * @param directory - directory with the snapshot and the log (created if needed);
+	 * @param maxNumberOfElements - max number of elements in the index;
+	 * @param syncMode - when the mutations are forced to the storage device.
+	 *
+	 * @return the recovered index.
+	 *
+	 * @throws UncheckedIOException when the directory cannot be read or written.
+	 */
+	public static LoggedIndex open(Index index, int dimension, Path directory, int maxNumberOfElements, LogSyncMode syncMode) {
+		LoggedIndex loggedIndex = new LoggedIndex(index, directory, dimension, syncMode);
+		loggedIndex.recover(maxNumberOfElements);
+		return loggedIndex;
+	}
+
+	private void recover(int maxNumberOfElements) {
+		try {
+			Files.createDirectories(directory);
+			generation = findLatestSnapshotGeneration();
+			if (generation > 0) {
+				index.load(snapshotPath(generation), maxNumberOfElements);
+			} else {
+				index.initialize(maxNumberOfElements);
+			}
+			Path logPath = logPath(generation);
+			if (Files.exists(logPath)) {
+				replay(logPath);
+			}
+			log = MutationLog.open(logPath, dimension);
+			deleteOlderGenerations();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private long findLatestSnapshotGeneration() throws IOException {
+		long latest = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.hnsw")) {
+			for (Path file : files) {
+				Matcher matcher = SNAPSHOT_FILE_NAME.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					latest = Math.max(latest, Long.parseLong(matcher.group(1)));
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * Replays a log, grouping consecutive insertions into bulk insertions.
+	 */
+	private void replay(Path logPath) {
+		Replay replay = new Replay();
+		MutationLog.read(logPath, dimension, replay);
+		replay.flush();
+	}
+
+	/**
+	 * Adds an item to the index and logs it.
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - an identifier used by the native library.
+	 */
+	public void addItem(float[] item, int id) {
+		float[] originalItem = item.clone();
+		mutate(() -> index.addItem(item, id), current -> current.appendInsert(id, originalItem, false));
+	}
+
+	/**
+	 * Adds a normalized item to the index and logs it.
+	 *
+	 * @param item - float array with the length expected by the index (dimension);
+	 * @param id - an identifier used by the native library.
+	 */
+	public void addNormalizedItem(float[] item, int id) {
+		mutate(() -> index.addNormalizedItem(item, id), current -> current.appendInsert(id, item, true));
+	}
+
+	/**
+	 * Adds several items to the index (in a single native call) and logs them.
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - identifiers of the items (in the same order).
+	 */
+	public void addItems(float[] items, int[] ids) {
+		float[] originalItems = items.clone();
+		mutate(() -> index.addItems(items, ids), current -> current.appendInserts(originalItems, ids, false));
+	}
+
+	/**
+	 * Marks an ID as deleted and logs it.
+	 *
+	 * @param id identifier.
+	 */
+	public void markDeleted(int id) {
+		mutate(() -> index.markDeleted(id), current -> current.appendDelete(id));
+	}
+
+	private void mutate(Runnable mutation, Appender appender) {
+		MutationLog current;
+		long sequence;
+		snapshotLock.readLock().lock();
+		try {
+			mutation.run();
+			current = log;
+			sequence = appender.append(current);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+		if (syncMode == LogSyncMode.EVERY_MUTATION) {
+			/* a snapshot may have rotated the log meanwhile; it synced the old one before closing it */
+			current.sync(sequence);
+		}
+	}
+
+	/**
+	 * Forces the logged mutations to the storage device.
+	 */
+	public void sync() {
+		snapshotLock.readLock().lock();
+		try {
+			log.sync();
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves a snapshot of the index and starts a new log, then removes the previous
+	 * snapshot and log. Mutations wait until the snapshot is saved.
+	 *
+	 * @throws UncheckedIOException when the snapshot cannot be written.
+	 */
+	public void snapshot() {
+		snapshotLock.writeLock().lock();
+		try {
+			long nextGeneration = generation + 1;
+			Path temporarySnapshot = directory.resolve("snapshot-" + nextGeneration + ".hnsw.tmp");
+			index.save(temporarySnapshot);
+			forceFile(temporarySnapshot);
+			Files.move(temporarySnapshot, snapshotPath(nextGeneration), StandardCopyOption.ATOMIC_MOVE);
+			MutationLog nextLog = MutationLog.open(logPath(nextGeneration), dimension);
+			log.close();
+			log = nextLog;
+			generation = nextGeneration;
+			deleteOlderGenerations();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	private static void forceFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	private void deleteOlderGenerations() throws IOException {
+		for (long older = generation - 1; older >= 0; older--) {
+			boolean deleted = Files.deleteIfExists(logPath(older));
+			deleted |= Files.deleteIfExists(snapshotPath(older));
+			if (!deleted) {
+				break;
+			}
+		}
+	}
+
+	private Path snapshotPath(long snapshotGeneration) {
+		return directory.resolve("snapshot-" + snapshotGeneration + ".hnsw");
+	}
+
+	private Path logPath(long logGeneration) {
+		return directory.resolve("mutations-" + logGeneration + ".log");
+	}
+
+	public Index getIndex() {
+		return index;
+	}
+
+	/**
+	 * Syncs and closes the log (the index is not cleared).
+	 */
+	@Override
+	public void close() {
+		snapshotLock.writeLock().lock();
+		try {
+			log.close();
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	private interface Appender {
+
+		long append(MutationLog log);
+	}
+
+	/**
+	 * Applies the records of a log to the index, buffering consecutive insertions
+	 * of the same kind so they go through the bulk insertion path.
+	 */
+	private final class Replay implements MutationLog.Visitor {
+
+		private final float[] items = new float[REPLAY_BATCH_SIZE * dimension];
+		private final int[] ids = new int[REPLAY_BATCH_SIZE];
+		private final IntSet idsInBatch = new IntOpenHashSet(REPLAY_BATCH_SIZE);
+		private int size;
+		private boolean normalized;
+
+		@Override
+		public void onInsert(int id, float[] item, boolean normalizedItem) {
+			/* an item inserted twice (an update) must not be added twice in parallel */
+			if (size == REPLAY_BATCH_SIZE || (size > 0 && normalized != normalizedItem) || idsInBatch.contains(id)) {
+				flush();
+			}
+			normalized = normalizedItem;
+			System.arraycopy(item, 0, items, size * dimension, dimension);
+			ids[size++] = id;
+			idsInBatch.add(id);
+		}
+
+		@Override
+		public void onDelete(int id) {
+			flush();
+			index.markDeleted(id);
+		}
+
+		void flush() {
+			if (size == 0) {
+				return;
+			}
+			float[] batchItems = size == REPLAY_BATCH_SIZE ? items : Arrays.copyOf(items, size * dimension);
+			int[] batchIds = size == REPLAY_BATCH_SIZE ? ids : Arrays.copyOf(ids, size);
+			if (normalized) {
+				index.addNormalizedItems(batchItems, batchIds, 0);
+			} else {
+				index.addItems(batchItems, batchIds, 0);
+			}
+			size = 0;
+			idsInBatch.clear();
+		}
+	}
+}
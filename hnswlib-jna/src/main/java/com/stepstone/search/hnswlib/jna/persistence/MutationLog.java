@@ -0,0 +1,356 @@
+package com.stepstone.search.hnswlib.jna.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the mutations (insertions and deletions) of an index.
+ *
+ * The log starts with a header (magic number, format version and dimension) followed
+ * by records: type (1 byte), label (4 bytes), vector (dimension floats, insertions only)
+ * and the CRC32 of all of them (4 bytes). A record torn by a crash fails its checksum,
+ * so reading stops at the last complete record.
+ *
+ * Appends are buffered in memory and written to the file in batches; sync() forces
+ * them to the storage device. Concurrent calls to sync() are group-committed: the
+ * thread running the fsync covers every record appended before it started, and the
+ * threads waiting for it return as soon as their records are covered.
+ *
+ * A failed write or fsync leaves the log failed: the records which were not synced
+ * may be lost, so every later append and sync throws instead of reporting them durable.
+ */
+public final class MutationLog implements Closeable {
+
+	static final byte INSERT = 1;
+	static final byte NORMALIZED_INSERT = 2;
+	static final byte DELETE = 3;
+
+	private static final int MAGIC = 0x484e4d4c; /* HNML */
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 3 * Integer.BYTES;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final int dimension;
+	private final int maxRecordSize;
+	private final ByteBuffer buffer;
+	private final CRC32 crc = new CRC32();
+	private final Object syncLock = new Object();
+	private long appendedSequence;
+	private volatile long syncedSequence;
+	private volatile IOException failure;
+
+	private MutationLog(FileChannel channel, int dimension) {
+		this.channel = channel;
+		this.dimension = dimension;
+		this.maxRecordSize = 1 + Integer.BYTES + dimension * Float.BYTES + Integer.BYTES;
+		this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, maxRecordSize)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Opens a log for appending, creating it when it does not exist. Existing logs are
+	 * truncated after their last complete record (see read()).
+	 *
+	 * @param path - path of the log;
+	 * @param dimension - dimension of the vectors of the index.
+	 *
+	 * @return the log.
+	 *
+	 * @throws UncheckedIOException when the log cannot be opened.
+	 */
+	public static MutationLog open(Path path, int dimension) {
+		try {
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				return open(channel, dimension);
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Opens a log for appending on a channel (readable and writable), which is owned by the log from now on.
+	 */
+	static MutationLog open(FileChannel channel, int dimension) throws IOException {
+		MutationLog log = new MutationLog(channel, dimension);
+		if (channel.size() == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(dimension).flip();
+			writeFully(channel, header, 0);
+			channel.force(true);
+		} else {
+			channel.truncate(scan(channel, dimension, null));
+		}
+		channel.position(channel.size());
+		return log;
+	}
+
+	/**
+	 * Reads the complete records of a log (in order). A torn or corrupted record
+	 * ends the reading.
+	 *
+	 * @param path - path of the log;
+	 * @param dimension - dimension of the vectors of the index;
+	 * @param visitor - receives the records.
+	 *
+	 * @throws UncheckedIOException when the log cannot be read.
+	 */
+	public static void read(Path path, int dimension, Visitor visitor) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			scan(channel, dimension, visitor);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends an insertion.
+	 *
+	 * @param id - label of the item;
+	 * @param item - vector of the item;
+	 * @param normalized - was the item added as normalized?
+	 *
+	 * @return the sequence number of the record (to be used with sync(long)).
+	 */
+	public long appendInsert(int id, float[] item, boolean normalized) {
+		if (item.length != dimension) {
+			throw new IllegalArgumentException("The item must have " + dimension + " floats.");
+		}
+		return append(normalized ? NORMALIZED_INSERT : INSERT, id, item, 0);
+	}
+
+	/**
+	 * Appends several insertions.
+	 *
+	 * @param items - flat array with all the items, one after the other (number of items x dimension);
+	 * @param ids - labels of the items (in the same order);
+	 * @param normalized - were the items added as normalized?
+	 *
+	 * @return the sequence number of the last record (to be used with sync(long)).
+	 */
+	public synchronized long appendInserts(float[] items, int[] ids, boolean normalized) {
+		if (items.length != ids.length * dimension) {
+			throw new IllegalArgumentException("The items must contain " + ids.length + " x " + dimension + " floats.");
+		}
+		for (int i = 0; i < ids.length; i++) {
+			append(normalized ? NORMALIZED_INSERT : INSERT, ids[i], items, i * dimension);
+		}
+		return appendedSequence;
+	}
+
+	/**
+	 * Appends a deletion.
+	 *
+	 * @param id - label of the deleted item.
+	 *
+	 * @return the sequence number of the record (to be used with sync(long)).
+	 */
+	public long appendDelete(int id) {
+		return append(DELETE, id, null, 0);
+	}
+
+	private synchronized long append(byte type, int id, float[] items, int offset) {
+		checkNotFailed();
+		if (buffer.remaining() < maxRecordSize) {
+			writeBuffer();
+		}
+		int start = buffer.position();
+		buffer.put(type).putInt(id);
+		if (items != null) {
+			for (int i = 0; i < dimension; i++) {
+				buffer.putFloat(items[offset + i]);
+			}
+		}
+		crc.reset();
+		crc.update(buffer.array(), start, buffer.position() - start);
+		buffer.putInt((int) crc.getValue());
+		return ++appendedSequence;
+	}
+
+	private void writeBuffer() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw fail(e);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Marks the log as failed: the records after the last sync may not be in the file.
+	 */
+	private UncheckedIOException fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+		return new UncheckedIOException("The mutation log failed after record " + syncedSequence + ".", e);
+	}
+
+	private void checkNotFailed() {
+		IOException e = failure;
+		if (e != null) {
+			throw new UncheckedIOException("The mutation log failed after record " + syncedSequence + ".", e);
+		}
+	}
+
+	/**
+	 * Forces all the appended records to the storage device.
+	 */
+	public void sync() {
+		long sequence;
+		synchronized (this) {
+			sequence = appendedSequence;
+		}
+		sync(sequence);
+	}
+
+	/**
+	 * Waits until the record with the specified sequence number (and all the previous
+	 * ones) is durable, running an fsync when no other thread already covers it.
+	 *
+	 * @param sequence - sequence number returned by an append.
+	 *
+	 * @throws UncheckedIOException when the record is not durable because the log failed.
+	 */
+	public void sync(long sequence) {
+		if (syncedSequence >= sequence) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (syncedSequence >= sequence) {
+				return;
+			}
+			long covered;
+			synchronized (this) {
+				checkNotFailed();
+				writeBuffer();
+				covered = appendedSequence;
+			}
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				throw fail(e);
+			}
+			syncedSequence = covered;
+		}
+	}
+
+	/**
+	 * Syncs and closes the log.
+	 */
+	@Override
+	public void close() {
+		try {
+			sync();
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a log, returning the position after the last complete one.
+	 */
+	private static long scan(FileChannel channel, int dimension, Visitor visitor) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if (readFully(channel, header, 0) < HEADER_SIZE) {
+			throw new IllegalStateException("The mutation log has no header.");
+		}
+		header.flip();
+		int magic = header.getInt();
+		int formatVersion = header.getInt();
+		int logDimension = header.getInt();
+		if (magic != MAGIC || formatVersion != FORMAT_VERSION || logDimension != dimension) {
+			throw new IllegalStateException("Unsupported mutation log (format " + formatVersion + ", dimension " + logDimension + ").");
+		}
+		long position = HEADER_SIZE;
+		ByteBuffer record = ByteBuffer.allocate(1 + Integer.BYTES + dimension * Float.BYTES + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+		float[] item = new float[dimension];
+		while (true) {
+			record.clear().limit(1 + Integer.BYTES);
+			if (readFully(channel, record, position) < record.limit()) {
+				return position;
+			}
+			byte type = record.get(0);
+			if (type != INSERT && type != NORMALIZED_INSERT && type != DELETE) {
+				return position;
+			}
+			int recordSize = 1 + Integer.BYTES + (type == DELETE ? 0 : dimension * Float.BYTES) + Integer.BYTES;
+			record.limit(recordSize);
+			if (readFully(channel, record, position) < recordSize) {
+				return position;
+			}
+			crc.reset();
+			crc.update(record.array(), 0, recordSize - Integer.BYTES);
+			if (record.getInt(recordSize - Integer.BYTES) != (int) crc.getValue()) {
+				return position;
+			}
+			if (visitor != null) {
+				int id = record.getInt(1);
+				if (type == DELETE) {
+					visitor.onDelete(id);
+				} else {
+					record.position(1 + Integer.BYTES);
+					record.asFloatBuffer().get(item);
+					visitor.onInsert(id, item, type == NORMALIZED_INSERT);
+				}
+			}
+			position += recordSize;
+		}
+	}
+
+	/**
+	 * Reads from a position until the buffer is full or the end of the file,
+	 * returning the position of the buffer.
+	 */
+	private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return buffer.position();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/**
+	 * Receives the records read from a log.
+	 */
+	public interface Visitor {
+
+		/**
+		 * @param id - label of the item;
+		 * @param item - vector of the item (reused across calls);
+		 * @param normalized - was the item added as normalized?
+		 */
+		void onInsert(int id, float[] item, boolean normalized);
+
+		/**
+		 * @param id - label of the deleted item.
+		 */
+		void onDelete(int id);
+	}
+}
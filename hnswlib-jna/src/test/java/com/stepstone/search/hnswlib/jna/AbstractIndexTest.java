@@ -1,21 +1,41 @@
 package com.stepstone.search.hnswlib.jna;
 
 import com.stepstone.search.hnswlib.jna.exception.IndexAlreadyInitializedException;
+import com.stepstone.search.hnswlib.jna.exception.IndexIsReadOnlyException;
 import com.stepstone.search.hnswlib.jna.exception.IndexNotInitializedException;
 import com.stepstone.search.hnswlib.jna.exception.ItemCannotBeInsertedIntoTheVectorSpaceException;
 import com.stepstone.search.hnswlib.jna.exception.OnceIndexIsClearedItCannotBeReusedException;
 import com.stepstone.search.hnswlib.jna.exception.QueryCannotReturnResultsException;
 import com.stepstone.search.hnswlib.jna.exception.UnexpectedNativeException;
+import com.stepstone.search.hnswlib.jna.metrics.IndexMetrics;
+import com.stepstone.search.hnswlib.jna.metrics.Operation;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -23,6 +43,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 public abstract class AbstractIndexTest {
 
@@ -501,4 +523,1078 @@ public abstract class AbstractIndexTest {
 		index.clear();
 	}
 
+	@Test
+	public void testKnnQueryBatchMatchesSingleQueries() {
+		Index index = createIndexInstance(SpaceName.L2, 20);
+		index.initialize(500);
+		for (int i = 0; i < 500; i++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(20), i);
+		}
+
+		float[][] inputs = new float[50][];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = HnswlibTestUtils.getRandomFloatArray(20);
+		}
+		QueryTuple[] batchResults = index.knnQueryBatch(inputs, 5, 4);
+
+		assertEquals(inputs.length, batchResults.length);
+		for (int i = 0; i < inputs.length; i++) {
+			QueryTuple singleResult = index.knnQuery(inputs[i], 5);
+			assertArrayEquals(singleResult.getIds(), batchResults[i].getIds());
+			assertArrayEquals(singleResult.getCoefficients(), batchResults[i].getCoefficients(), 0.000001f);
+		}
+		index.clear();
+	}
+
+	@Test
+	public void testKnnQueryBatchWithNativeNormalization() {
+		Index index = createIndexInstance(SpaceName.COSINE, 7);
+		index.initialize(7);
+
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f }, 14);
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.95f }, 13);
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.9f }, 12);
+
+		float[] input = new float[] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f };
+		QueryTuple[] results = index.knnQueryBatch(new float[][] { input, input }, 2);
+
+		assertArrayEquals(new float[] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f }, input, 0.0f);
+		for (QueryTuple queryTuple : results) {
+			assertArrayEquals(new int[] {14, 13}, queryTuple.getIds());
+			assertArrayEquals(new float[] {-2.3841858E-7f, 1.552105E-4f}, queryTuple.getCoefficients(), 0.000001f);
+		}
+		index.clear();
+	}
+
+	@Test(expected = QueryCannotReturnResultsException.class)
+	public void testKnnQueryBatchWithNotEnoughItems() {
+		Index index = createIndexInstance(SpaceName.IP, 3);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f, 1.0f }, 1);
+		index.knnQueryBatch(new float[][] { { 1.0f, 1.0f, 1.0f }, { 0.5f, 1.0f, 1.0f } }, 2);
+	}
+
+	@Test
+	public void testAddItemsInParallel() {
+		Index index = createIndexInstance(SpaceName.L2, 10);
+		index.initialize(1_000);
+
+		float[] items = new float[1_000 * 10];
+		int[] ids = new int[1_000];
+		for (int i = 0; i < ids.length; i++) {
+			System.arraycopy(HnswlibTestUtils.getRandomFloatArray(10), 0, items, i * 10, 10);
+			ids[i] = 5_000 + i;
+		}
+		index.addItems(items, ids, 4);
+
+		assertEquals(1_000, index.getLength());
+		for (int i = 0; i < ids.length; i++) {
+			float[] expected = Arrays.copyOfRange(items, i * 10, (i + 1) * 10);
+			assertArrayEquals(expected, index.getData(ids[i]).get(), 0.0f);
+		}
+		index.clear();
+	}
+
+	@Test
+	public void testAddItemsWithIncrementalIdsAndNativeNormalization() {
+		Index index = createIndexInstance(SpaceName.COSINE, 7);
+		index.initialize(2);
+
+		float[] items = {
+				1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f,
+				2.0f, 2.0f, 2.0f, 2.0f, 2.0f, 2.0f, 2.0f };
+		index.addItems(items, null);
+
+		assertEquals(2, index.getLength());
+		assertArrayEquals(new float[] {0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f},
+				index.getData(0).get(), 0.000001f);
+		assertArrayEquals(new float[] {0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f, 0.3779645f},
+				index.getData(1).get(), 0.000001f);
+		index.clear();
+	}
+
+	@Test
+	public void testAddItemsWithIncrementalIdsFollowTheRowOrder() {
+		int numberOfItems = 20_000;
+		try (Index index = createIndexInstance(SpaceName.L2, 2)) {
+			index.initialize(numberOfItems, 8, 20, 100);
+			float[] items = new float[numberOfItems * 2];
+			for (int i = 0; i < numberOfItems; i++) {
+				items[i * 2] = i;
+				items[i * 2 + 1] = -i;
+			}
+			index.addItems(items, null, 8);
+
+			assertEquals(numberOfItems, index.getLength());
+			for (int i = 0; i < numberOfItems; i++) {
+				assertArrayEquals(new float[] { i, -i }, index.getData(i).get(), 0.0f);
+			}
+		}
+	}
+
+	@Test(expected = ItemCannotBeInsertedIntoTheVectorSpaceException.class)
+	public void testAddItemsBeyondCapacity() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		index.addItems(new float[] { 1.0f, 1.0f, 2.0f, 2.0f, 3.0f, 3.0f }, new int[] { 1, 2, 3 });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddItemsWithWrongNumberOfIds() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		index.addItems(new float[] { 1.0f, 1.0f, 2.0f, 2.0f }, new int[] { 1 });
+	}
+
+	@Test
+	public void testAddItemAndQueryWithDirectBuffers() {
+		Index index = createIndexInstance(SpaceName.L2, 7);
+		index.initialize(7);
+
+		FloatBuffer items = ByteBuffer.allocateDirect(3 * 7 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		items.put(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.9f });
+		items.put(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.95f });
+		items.put(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f });
+		for (int i = 0; i < 3; i++) {
+			items.position(i * 7);
+			index.addItem(items, 10 + i);
+		}
+
+		FloatBuffer input = ByteBuffer.allocateDirect(7 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		input.put(new float[] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f }).flip();
+		IntBuffer ids = ByteBuffer.allocateDirect(3 * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		FloatBuffer coefficients = ByteBuffer.allocateDirect(3 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		index.knnQuery(input, 3, ids, coefficients);
+
+		assertEquals(0, ids.position());
+		assertEquals(12, ids.get(0));
+		assertEquals(11, ids.get(1));
+		assertEquals(10, ids.get(2));
+		assertEquals(0.0f, coefficients.get(0), 0.000001f);
+		assertEquals(0.0025f, coefficients.get(1), 0.000001f);
+		assertEquals(0.01f, coefficients.get(2), 0.000001f);
+		index.clear();
+	}
+
+	@Test
+	public void testKnnQueryWithDirectBuffersMatchesArrays() {
+		Index index = createIndexInstance(SpaceName.COSINE, 16);
+		index.initialize(100);
+		for (int i = 0; i < 100; i++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(16), i);
+		}
+		float[] query = HnswlibTestUtils.getRandomFloatArray(16);
+		Index.normalize(query);
+
+		FloatBuffer input = ByteBuffer.allocateDirect(16 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		input.put(query).flip();
+		IntBuffer ids = ByteBuffer.allocateDirect(5 * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		FloatBuffer coefficients = ByteBuffer.allocateDirect(5 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		index.knnNormalizedQuery(input, 5, ids, coefficients);
+
+		QueryTuple expected = index.knnNormalizedQuery(query, 5);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(expected.getIds()[i], ids.get(i));
+			assertEquals(expected.getCoefficients()[i], coefficients.get(i), 0.000001f);
+		}
+		index.clear();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKnnQueryWithTooSmallOutputBuffer() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		index.knnQuery(FloatBuffer.wrap(new float[] { 1.0f, 1.0f }), 2, IntBuffer.allocate(1), FloatBuffer.allocate(2));
+	}
+
+	@Test
+	public void testBuffersInNonNativeByteOrderAreRejected() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		ByteOrder foreign = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		FloatBuffer nativeInput = ByteBuffer.allocateDirect(2 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		FloatBuffer foreignInput = ByteBuffer.allocateDirect(2 * Float.BYTES).order(foreign).asFloatBuffer();
+		IntBuffer nativeIds = ByteBuffer.allocateDirect(Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		IntBuffer foreignIds = ByteBuffer.allocateDirect(Integer.BYTES).order(foreign).asIntBuffer();
+		FloatBuffer nativeCoefficients = ByteBuffer.allocateDirect(Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		FloatBuffer foreignCoefficients = ByteBuffer.allocateDirect(Float.BYTES).order(foreign).asFloatBuffer();
+
+		List<Runnable> calls = Arrays.asList(
+				() -> index.addItem(foreignInput, 1),
+				() -> index.addNormalizedItem(foreignInput, 1),
+				() -> index.knnQuery(foreignInput, 1, nativeIds, nativeCoefficients),
+				() -> index.knnQuery(nativeInput, 1, foreignIds, nativeCoefficients),
+				() -> index.knnNormalizedQuery(nativeInput, 1, nativeIds, foreignCoefficients));
+		for (Runnable call : calls) {
+			try {
+				call.run();
+				fail("the buffer does not use the native byte order");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("byte order"));
+			}
+		}
+		assertEquals(0, index.getLength());
+		index.clear();
+	}
+
+	@Test
+	public void testKnnQueryReusingQueryTuple() {
+		Index index = createIndexInstance(SpaceName.IP, 7);
+		index.initialize(7);
+
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f }, 5);
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.95f }, 6);
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.9f }, 7);
+
+		QueryTuple queryTuple = new QueryTuple(2);
+		int[] ids = queryTuple.getIds();
+		float[] coefficients = queryTuple.getCoefficients();
+
+		index.knnQuery(new float[] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f }, 2, queryTuple);
+		assertArrayEquals(new int[] {5, 6}, queryTuple.getIds());
+		assertArrayEquals(new float[] {-6.0f, -5.95f}, queryTuple.getCoefficients(), 0.000001f);
+
+		index.knnNormalizedQuery(new float[] { 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, -1.0f }, 2, queryTuple);
+		assertArrayEquals(new int[] {7, 6}, queryTuple.getIds());
+		assertTrue(ids == queryTuple.getIds());
+		assertTrue(coefficients == queryTuple.getCoefficients());
+		index.clear();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKnnQueryWithQueryTupleOfDifferentSize() {
+		Index index = createIndexInstance(SpaceName.IP, 2);
+		index.initialize(2);
+		index.addItem(new float [] { 1.0f, 1.0f }, 5);
+		index.knnQuery(new float[] { 1.0f, 1.0f }, 1, new QueryTuple(2));
+	}
+
+	@Test
+	public void testQuerySession() {
+		Index index = createIndexInstance(SpaceName.L2, 7);
+		index.initialize(7);
+
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.9f }, 48);
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.95f }, 35);
+		index.addItem(new float [] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f }, 33);
+
+		QuerySession session = index.newQuerySession(2);
+		QueryTuple first = session.knnQuery(new float[] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f });
+		assertArrayEquals(new int[] {33, 35}, first.getIds());
+		QueryTuple second = session.knnNormalizedQuery(new float[] { 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.9f });
+		assertArrayEquals(new int[] {48, 35}, second.getIds());
+		assertTrue(first == second);
+		index.clear();
+	}
+
+	@Test
+	public void testQuerySessionDoesNotAllocateInSteadyState() {
+		/* the interface mapping boxes the arguments of every call through its dynamic proxy */
+		assumeTrue(HnswlibFactory.getInstance() instanceof DirectMappedHnswlib);
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+		Index index = createIndexInstance(SpaceName.COSINE, 16);
+		index.initialize(1_000);
+		for (int id = 0; id < 1_000; id++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(16), id);
+		}
+		float[] input = HnswlibTestUtils.getRandomFloatArray(16);
+		QuerySession session = index.newQuerySession(10);
+		QueryTuple queryTuple = new QueryTuple(10);
+		for (int i = 0; i < 20_000; i++) {
+			session.knnQuery(input);
+			index.knnQuery(input, 10, queryTuple);
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < 1_000; i++) {
+			session.knnQuery(input);
+			index.knnQuery(input, 10, queryTuple);
+		}
+		assertEquals(0, threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes);
+		index.clear();
+	}
+
+	@Test
+	public void testIndexSaveAndLoadMapped() throws IOException {
+		File tempFile = File.createTempFile("index", "sm");
+		Path tempFilePath = Paths.get(tempFile.getAbsolutePath());
+
+		Index i1 = createIndexInstance(SpaceName.L2, 3);
+		i1.initialize(100);
+		for (int id = 0; id < 100; id++) {
+			i1.addItem(new float[] { id, id * 0.5f, 1.0f }, id);
+		}
+		i1.markDeleted(7);
+		i1.save(tempFilePath);
+		QueryTuple expected = i1.knnQuery(new float[] { 10.2f, 5.1f, 1.0f }, 5);
+		i1.clear();
+
+		Index i2 = createIndexInstance(SpaceName.L2, 3);
+		assertFalse(i2.isReadOnly());
+		i2.loadMapped(tempFilePath);
+		assertTrue(i2.isReadOnly());
+		assertEquals(100, i2.getLength());
+		assertTrue(i2.hasId(99));
+		assertFalse(i2.hasId(7));
+		assertArrayEquals(new float[] { 42.0f, 21.0f, 1.0f }, i2.getData(42).get(), 0.0f);
+
+		QueryTuple actual = i2.knnQuery(new float[] { 10.2f, 5.1f, 1.0f }, 5);
+		assertArrayEquals(expected.getIds(), actual.getIds());
+		assertArrayEquals(expected.getCoefficients(), actual.getCoefficients(), 0.0f);
+		i2.clear();
+
+		assertTrue(tempFile.delete());
+	}
+
+	@Test
+	public void testIndexLoadedMappedIsReadOnly() throws IOException {
+		File tempFile = File.createTempFile("index", "sm");
+		Path tempFilePath = Paths.get(tempFile.getAbsolutePath());
+
+		Index i1 = createIndexInstance(SpaceName.COSINE, 3);
+		i1.initialize(2);
+		i1.addItem(new float[] { 1.3f, 1.2f, 1.5f }, 3);
+		i1.save(tempFilePath);
+		i1.clear();
+
+		Index i2 = createIndexInstance(SpaceName.COSINE, 3);
+		i2.loadMapped(tempFilePath);
+		try {
+			i2.addItem(new float[] { 1.0f, 1.0f, 1.0f }, 4);
+			fail("items cannot be added to a mapped index");
+		} catch (IndexIsReadOnlyException e) {
+			assertFalse(i2.hasId(4));
+		}
+		try {
+			i2.markDeleted(3);
+			fail("items cannot be deleted from a mapped index");
+		} catch (IndexIsReadOnlyException e) {
+			assertTrue(i2.hasId(3));
+		}
+		i2.clear();
+
+		assertTrue(tempFile.delete());
+	}
+
+	@Test(expected = UnexpectedNativeException.class)
+	public void testLoadMappedCorruptedFile() throws IOException {
+		File tempFile = File.createTempFile("index", "sm");
+		tempFile.deleteOnExit();
+		Files.write(tempFile.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+
+		Index index = createIndexInstance(SpaceName.L2, 3);
+		index.loadMapped(Paths.get(tempFile.getAbsolutePath()));
+	}
+
+	@Test
+	public void testFailedLoadMappedLeavesTheIndexNotInitialized() throws IOException {
+		File tempFile = File.createTempFile("index", "sm");
+		tempFile.deleteOnExit();
+		Files.write(tempFile.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+
+		Index index = createIndexInstance(SpaceName.L2, 3);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 2.0f, 3.0f }, 1);
+		try {
+			index.loadMapped(Paths.get(tempFile.getAbsolutePath()));
+			fail("a corrupted file cannot be loaded");
+		} catch (UnexpectedNativeException e) {
+			assertFalse(index.isReadOnly());
+		}
+		try {
+			index.knnQuery(new float[] { 1.0f, 2.0f, 3.0f }, 1);
+			fail("the previous content was released");
+		} catch (IndexNotInitializedException e) {
+			assertFalse(index.hasId(1));
+		}
+		index.clear();
+	}
+
+	@Test
+	public void testKnnQueryWithFilter() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(1_000);
+		for (int id = 0; id < 1_000; id++) {
+			index.addItem(new float[] { id, 0.0f }, id);
+		}
+
+		BitSet filter = new BitSet();
+		filter.set(7);
+		filter.set(500);
+		filter.set(503);
+		filter.set(990);
+
+		QueryTuple queryTuple = index.knnQuery(new float[] { 0.0f, 0.0f }, 3, filter);
+		assertArrayEquals(new int[] {7, 500, 503}, queryTuple.getIds());
+		assertArrayEquals(new float[] {49.0f, 250_000.0f, 253_009.0f}, queryTuple.getCoefficients(), 0.0f);
+
+		queryTuple = index.knnNormalizedQuery(new float[] { 1_000.0f, 0.0f }, 2, filter);
+		assertArrayEquals(new int[] {990, 503}, queryTuple.getIds());
+		index.clear();
+	}
+
+	@Test
+	public void testKnnQueryWithSelectiveFilter() {
+		int dimension = 16;
+		Index index = createIndexInstance(SpaceName.COSINE, dimension);
+		index.initialize(5_000);
+		BitSet filter = new BitSet();
+		for (int id = 0; id < 5_000; id++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(dimension), id);
+			if (id % 100 == 0) {
+				filter.set(id);
+			}
+		}
+
+		QueryTuple queryTuple = index.knnQuery(HnswlibTestUtils.getRandomFloatArray(dimension), 10, filter);
+		assertEquals(10, queryTuple.getIds().length);
+		for (int id : queryTuple.getIds()) {
+			assertTrue(filter.get(id));
+		}
+		index.clear();
+	}
+
+	@Test(expected = QueryCannotReturnResultsException.class)
+	public void testKnnQueryWithFilterMatchingLessThanK() {
+		Index index = createIndexInstance(SpaceName.IP, 2);
+		index.initialize(10);
+		for (int id = 0; id < 10; id++) {
+			index.addItem(new float[] { id, 1.0f }, id);
+		}
+		BitSet filter = new BitSet();
+		filter.set(3);
+		index.knnQuery(new float[] { 1.0f, 1.0f }, 2, filter);
+	}
+
+	@Test
+	public void testResize() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		assertEquals(2, index.getMaxNumberOfElements());
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+
+		index.resize(10);
+		assertEquals(10, index.getMaxNumberOfElements());
+		index.addItem(new float[] { 3.0f, 3.0f }, 3);
+		assertEquals(3, index.getLength());
+		assertArrayEquals(new int[] {1, 2, 3}, index.knnQuery(new float[] { 0.0f, 0.0f }, 3).getIds());
+		index.clear();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testResizeBelowNumberOfItems() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+		index.resize(1);
+	}
+
+	@Test
+	public void testGrowthFactor() {
+		Index index = createIndexInstance(SpaceName.COSINE, 3);
+		index.initialize(2);
+		index.setGrowthFactor(1.5);
+		for (int id = 0; id < 10; id++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(3), id);
+		}
+		assertEquals(10, index.getLength());
+		/* 2 -> 3 -> 5 -> 8 -> 12 */
+		assertEquals(12, index.getMaxNumberOfElements());
+
+		int[] ids = new int[20];
+		Arrays.setAll(ids, i -> 10 + i);
+		index.addItems(HnswlibTestUtils.getRandomFloatArray(3 * 20), ids);
+		assertEquals(30, index.getLength());
+		assertEquals(30, index.getMaxNumberOfElements());
+		index.clear();
+	}
+
+	@Test
+	public void testReplaceDeleted() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(3);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+		index.addItem(new float[] { 3.0f, 3.0f }, 3);
+		index.markDeleted(2);
+		assertEquals(1, index.getDeletedCount());
+
+		index.setReplaceDeleted(true);
+		assertTrue(index.isReplaceDeleted());
+		index.addItem(new float[] { 10.0f, 10.0f }, 4);
+		assertEquals(0, index.getDeletedCount());
+		assertEquals(3, index.getLength());
+		assertEquals(3, index.getMaxNumberOfElements());
+		assertTrue(index.hasId(4));
+		assertFalse(index.hasId(2));
+		assertArrayEquals(new float[] { 10.0f, 10.0f }, index.getData(4).get(), 0.0f);
+		assertArrayEquals(new int[] {4, 3, 1}, index.knnQuery(new float[] { 11.0f, 11.0f }, 3).getIds());
+		index.clear();
+	}
+
+	@Test
+	public void testReplaceDeletedRevivesDeletedId() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(2);
+		index.setReplaceDeleted(true);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+		index.markDeleted(1);
+		index.addItem(new float[] { 5.0f, 5.0f }, 1);
+		assertEquals(0, index.getDeletedCount());
+		assertEquals(2, index.getLength());
+		assertArrayEquals(new int[] {1, 2}, index.knnQuery(new float[] { 6.0f, 6.0f }, 2).getIds());
+		index.clear();
+	}
+
+	@Test
+	public void testReplaceDeletedKeepsLengthBounded() {
+		Index index = createIndexInstance(SpaceName.COSINE, 8);
+		index.initialize(100);
+		index.setReplaceDeleted(true);
+		for (int id = 0; id < 100; id++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(8), id);
+		}
+		/* each round replaces half of the items, the index stays full */
+		for (int round = 1; round <= 5; round++) {
+			int[] ids = new int[50];
+			for (int i = 0; i < 50; i++) {
+				index.markDeleted((round - 1) * 50 + i);
+				ids[i] = 100 + (round - 1) * 50 + i;
+			}
+			assertEquals(50, index.getDeletedCount());
+			float[] items = HnswlibTestUtils.getRandomFloatArray(8 * 50);
+			index.addItems(items, ids);
+			assertEquals(0, index.getDeletedCount());
+			assertEquals(100, index.getLength());
+			assertEquals(100, index.getMaxNumberOfElements());
+			float[] lastItem = Arrays.copyOfRange(items, 8 * 49, 8 * 50);
+			assertEquals(ids[49], index.knnQuery(lastItem, 1).getIds()[0]);
+		}
+		index.clear();
+	}
+
+	@Test(expected = ItemCannotBeInsertedIntoTheVectorSpaceException.class)
+	public void testDeletedSlotsAreNotReusedByDefault() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(1);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.markDeleted(1);
+		assertEquals(1, index.getDeletedCount());
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+	}
+
+	@Test
+	public void testLongIds() {
+		long first = 1L << 40;
+		long second = Long.MAX_VALUE;
+		long third = -7L;
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f }, first);
+		index.addItem(new float[] { 2.0f, 2.0f }, second);
+		index.addNormalizedItem(new float[] { 3.0f, 3.0f }, third);
+		assertEquals(3, index.getLength());
+
+		LongQueryTuple queryTuple = index.knnQueryWithLongIds(new float[] { 0.0f, 0.0f }, 3);
+		assertArrayEquals(new long[] {first, second, third}, queryTuple.getIds());
+		assertArrayEquals(new float[] {2.0f, 8.0f, 18.0f}, queryTuple.getCoefficients(), 0.0f);
+		assertTrue(index.hasId(second));
+		assertFalse(index.hasId(first + 1));
+		assertArrayEquals(new float[] { 2.0f, 2.0f }, index.getData(second).get(), 0.0f);
+		assertFalse(index.getData(first + 1).isPresent());
+
+		index.markDeleted(first);
+		assertFalse(index.hasId(first));
+		assertArrayEquals(new long[] {second, third}, index.knnNormalizedQueryWithLongIds(new float[] { 0.0f, 0.0f }, 2).getIds());
+		index.clear();
+	}
+
+	@Test
+	public void testLongIdsInBatch() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(100);
+		long[] ids = new long[100];
+		float[] items = new float[2 * 100];
+		for (int i = 0; i < 100; i++) {
+			ids[i] = (1L << 33) + i;
+			items[2 * i] = i;
+			items[2 * i + 1] = i;
+		}
+		index.addItemsWithLongIds(items, ids);
+		assertEquals(100, index.getLength());
+		for (int i = 0; i < 100; i += 10) {
+			assertEquals(ids[i], index.knnQueryWithLongIds(new float[] { i, i }, 1).getIds()[0]);
+		}
+		index.clear();
+	}
+
+	@Test
+	public void testLongIdsMatchIntIds() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f }, 5);
+		index.addItem(new float[] { 2.0f, 2.0f }, -3);
+		assertTrue(index.hasId(5L));
+		assertTrue(index.hasId(-3L));
+		assertArrayEquals(new long[] {5L, -3L}, index.knnQueryWithLongIds(new float[] { 0.0f, 0.0f }, 2).getIds());
+		index.markDeleted(5L);
+		assertFalse(index.hasId(5));
+		index.clear();
+	}
+
+	@Test
+	public void testSavedIds() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1, true);
+		index.addNormalizedItem(new float[] { 2.0f, 2.0f }, 2, true);
+		index.addItem(new float[] { 3.0f, 3.0f }, 3, false);
+		assertEquals(2, index.getIds().size());
+		assertTrue(index.getIds().contains(1));
+		assertFalse(index.getIds().contains(3));
+
+		index.markDeleted(1);
+		index.markDeleted(3);
+		assertArrayEquals(new int[] {2}, index.getIds().toIntArray());
+		index.clear();
+	}
+
+	@Test
+	public void testQuantizedSpacesRecall() {
+		assertQuantizedRecall(SpaceName.COSINE, SpaceName.COSINE_INT8, 32, 2000);
+		assertQuantizedRecall(SpaceName.COSINE, SpaceName.COSINE_FP16, 32, 2000);
+		assertQuantizedRecall(SpaceName.L2, SpaceName.L2_FP16, 32, 2000);
+		assertQuantizedRecall(SpaceName.IP, SpaceName.IP_FP16, 32, 2000);
+	}
+
+	@Test
+	public void testInt8RecallWithHighDimension() {
+		assertQuantizedRecall(SpaceName.COSINE, SpaceName.COSINE_INT8, 768, 1000);
+	}
+
+	private void assertQuantizedRecall(SpaceName floatSpace, SpaceName quantizedSpace, int dimension, int numberOfItems) {
+		int k = 10;
+		Random random = new Random(42);
+		float[] items = new float[numberOfItems * dimension];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = (float) random.nextGaussian();
+		}
+		Index floatIndex = createIndexInstance(floatSpace, dimension);
+		Index quantizedIndex = createIndexInstance(quantizedSpace, dimension);
+		floatIndex.initialize(numberOfItems);
+		quantizedIndex.initialize(numberOfItems);
+		floatIndex.addItems(items.clone(), null);
+		quantizedIndex.addItems(items.clone(), null);
+		floatIndex.setEf(200);
+		quantizedIndex.setEf(200);
+
+		int found = 0;
+		int numberOfQueries = 50;
+		for (int q = 0; q < numberOfQueries; q++) {
+			float[] query = new float[dimension];
+			for (int i = 0; i < dimension; i++) {
+				query[i] = (float) random.nextGaussian();
+			}
+			int[] expected = floatIndex.knnQuery(query.clone(), k).getIds();
+			int[] actual = quantizedIndex.knnQuery(query.clone(), k).getIds();
+			for (int id : actual) {
+				for (int expectedId : expected) {
+					if (id == expectedId) {
+						found++;
+					}
+				}
+			}
+		}
+		double recall = found / (double) (numberOfQueries * k);
+		assertTrue(quantizedSpace + " recall " + recall, recall >= 0.9);
+
+		float[] data = quantizedIndex.getData(1).get();
+		float[] original = Arrays.copyOfRange(items, dimension, 2 * dimension);
+		if (quantizedSpace.requiresNormalization()) {
+			Index.normalize(original);
+		}
+		assertArrayEquals(original, data, quantizedSpace == SpaceName.COSINE_INT8 ? 0.005f : 0.002f);
+		floatIndex.clear();
+		quantizedIndex.clear();
+	}
+
+	@Test
+	public void testQueryCache() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+		QueryCache queryCache = new QueryCache(10);
+		index.setQueryCache(queryCache);
+
+		QueryTuple first = index.knnQuery(new float[] { 0.0f, 0.0f }, 1);
+		QueryTuple second = index.knnQuery(new float[] { 0.0f, 0.0f }, 1);
+		assertArrayEquals(new int[] {1}, first.getIds());
+		assertArrayEquals(first.getIds(), second.getIds());
+		assertArrayEquals(first.getCoefficients(), second.getCoefficients(), 0.0f);
+		assertFalse(first.getIds() == second.getIds());
+		assertEquals(1, queryCache.getMissCount());
+		assertEquals(1, queryCache.getHitCount());
+
+		QueryTuple queryTuple = new QueryTuple(1);
+		index.knnQuery(new float[] { 0.0f, 0.0f }, 1, queryTuple);
+		assertArrayEquals(new int[] {1}, queryTuple.getIds());
+		assertEquals(2, queryCache.getHitCount());
+
+		index.knnNormalizedQuery(new float[] { 0.0f, 0.0f }, 1);
+		index.knnQuery(new float[] { 0.0f, 0.0f }, 2);
+		assertEquals(3, queryCache.getMissCount());
+		assertEquals(3, queryCache.size());
+		index.clear();
+	}
+
+	@Test
+	public void testQueryCacheIsInvalidatedByModifications() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+		QueryCache queryCache = new QueryCache(10);
+		index.setQueryCache(queryCache);
+
+		assertArrayEquals(new int[] {2}, index.knnQuery(new float[] { 0.0f, 0.0f }, 1).getIds());
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		assertArrayEquals(new int[] {1}, index.knnQuery(new float[] { 0.0f, 0.0f }, 1).getIds());
+		index.markDeleted(1);
+		assertArrayEquals(new int[] {2}, index.knnQuery(new float[] { 0.0f, 0.0f }, 1).getIds());
+		index.setEf(20);
+		assertArrayEquals(new int[] {2}, index.knnQuery(new float[] { 0.0f, 0.0f }, 1).getIds());
+		assertEquals(0, queryCache.getHitCount());
+		assertEquals(4, queryCache.getMissCount());
+		assertArrayEquals(new int[] {2}, index.knnQuery(new float[] { 0.0f, 0.0f }, 1).getIds());
+		assertEquals(1, queryCache.getHitCount());
+		index.clear();
+	}
+
+	@Test
+	public void testQueryCacheKeepsTheOriginalInput() {
+		Index index = createIndexInstance(SpaceName.COSINE, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 0.0f }, 1);
+		index.addItem(new float[] { 0.0f, 1.0f }, 2);
+		index.setQueryCache(new QueryCache(10));
+
+		float[] input = new float[] { 3.0f, 1.0f };
+		index.knnQuery(input, 1);
+		assertArrayEquals(new int[] {1}, index.knnQuery(new float[] { 3.0f, 1.0f }, 1).getIds());
+		assertEquals(1, index.getQueryCache().getHitCount());
+		index.clear();
+	}
+
+	@Test
+	public void testIndexMetrics() throws IOException {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		IndexMetrics metrics = IndexMetrics.attach(index);
+
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItems(new float[] { 2.0f, 2.0f, 3.0f, 3.0f }, new int[] { 2, 3 }, 1);
+		index.knnQuery(new float[] { 0.0f, 0.0f }, 1);
+		BitSet filter = new BitSet();
+		filter.set(2);
+		index.knnQuery(new float[] { 0.0f, 0.0f }, 1, filter);
+		index.knnQueryBatch(new float[][] { { 0.0f, 0.0f }, { 1.0f, 1.0f } }, 1, 1);
+		index.markDeleted(3);
+		File tempFile = File.createTempFile("index", "sm");
+		Path indexFile = Paths.get(tempFile.getAbsolutePath());
+		index.save(indexFile);
+		index.load(indexFile, 10);
+
+		assertEquals(2, metrics.getLatencies(Operation.INSERT).getCount());
+		assertEquals(3, metrics.getInsertCount());
+		assertEquals(2, metrics.getQueryCount());
+		assertEquals(1, metrics.getBatchQueryCount());
+		assertEquals(2, metrics.getItemCount(Operation.BATCH_QUERY));
+		assertEquals(1, metrics.getDeleteCount());
+		assertEquals(1, metrics.getSaveCount());
+		assertEquals(1, metrics.getLoadCount());
+		assertTrue(metrics.getQueryMaxMicros() > 0);
+		assertEquals(3, metrics.getNumberOfElements());
+		assertEquals(10, metrics.getMaxNumberOfElements());
+		if (index instanceof ConcurrentIndex) {
+			assertTrue(metrics.getLockAcquisitionCount() >= 9);
+			assertTrue(metrics.getExclusiveLockAcquisitionCount() >= 1);
+		} else {
+			assertEquals(0, metrics.getLockAcquisitionCount());
+		}
+
+		metrics.reset();
+		assertEquals(0, metrics.getQueryCount());
+		index.setMetricsListener(null);
+		index.knnQuery(new float[] { 0.0f, 0.0f }, 1);
+		assertEquals(0, metrics.getQueryCount());
+		index.clear();
+		assertTrue(tempFile.delete());
+	}
+
+	@Test
+	public void testIndexMetricsMBean() throws Exception {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		IndexMetrics metrics = IndexMetrics.attach(index);
+		String name = getClass().getSimpleName();
+		metrics.register(name);
+		try {
+			index.knnQuery(new float[] { 0.0f, 0.0f }, 1);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("com.stepstone.search.hnswlib.jna:type=Index,name=" + ObjectName.quote(name));
+			assertEquals(1L, server.getAttribute(objectName, "QueryCount"));
+			assertEquals(1, server.getAttribute(objectName, "NumberOfElements"));
+		} finally {
+			metrics.unregister();
+		}
+		index.clear();
+	}
+
+	@Test
+	public void testSearchStatistics() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(100);
+		for (int i = 0; i < 100; i++) {
+			index.addItem(new float[] { i, i % 10 }, i);
+		}
+		index.knnQuery(new float[] { 5.0f, 5.0f }, 3);
+		assertEquals(0, index.getSearchStatistics().getQueries());
+		assertFalse(index.isSearchStatisticsEnabled());
+
+		index.setSearchStatisticsEnabled(true);
+		SearchStatistics statistics = new SearchStatistics();
+		QueryTuple queryTuple = index.knnQuery(new float[] { 5.0f, 5.0f }, 3, statistics);
+		assertEquals(5, queryTuple.getIds()[0]);
+		assertEquals(1, statistics.getQueries());
+		assertTrue(statistics.getDistanceComputations() >= statistics.getVisitedNodes());
+		assertTrue(statistics.getVisitedNodes() >= 3);
+		assertTrue(statistics.getCandidatesExpanded() >= 1);
+		assertTrue(statistics.getLayers() >= 1);
+
+		index.knnQuery(new float[] { 5.0f, 5.0f }, 3);
+		index.knnQueryBatch(new float[][] { { 1.0f, 1.0f }, { 2.0f, 2.0f } }, 3, 1);
+		SearchStatistics totals = index.getSearchStatistics();
+		assertEquals(4, totals.getQueries());
+		assertTrue(totals.getDistanceComputations() >= statistics.getDistanceComputations());
+
+		index.resetSearchStatistics();
+		assertEquals(0, index.getSearchStatistics().getQueries());
+		assertEquals(0, index.getSearchStatistics().getDistanceComputations());
+
+		index.setSearchStatisticsEnabled(false);
+		index.knnQuery(new float[] { 5.0f, 5.0f }, 3, statistics);
+		assertEquals(1, statistics.getQueries());
+		assertEquals(0, index.getSearchStatistics().getQueries());
+		index.clear();
+	}
+
+	@Test
+	public void testSearchStatisticsOfNormalizedQuery() {
+		Index index = createIndexInstance(SpaceName.COSINE, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 0.0f }, 1);
+		index.addItem(new float[] { 0.0f, 1.0f }, 2);
+		SearchStatistics statistics = new SearchStatistics();
+		QueryTuple queryTuple = index.knnNormalizedQuery(new float[] { 0.0f, 1.0f }, 1, statistics);
+		assertEquals(2, queryTuple.getIds()[0]);
+		assertEquals(1, statistics.getQueries());
+		assertEquals(2, statistics.getVisitedNodes());
+		index.clear();
+	}
+
+	@Test
+	public void testIndexSaveAndLoadThroughStreams() throws IOException {
+		int dimension = 200;
+		Index i1 = createIndexInstance(SpaceName.L2, dimension);
+		i1.initialize(2000);
+		float[] items = new float[2000 * dimension];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = (i * 31 % 997) / 997.0f;
+		}
+		i1.addItems(items, null, 0);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		i1.save(output);
+
+		File tempFile = File.createTempFile("index", "sm");
+		Path tempFilePath = Paths.get(tempFile.getAbsolutePath());
+		i1.save(tempFilePath);
+		assertTrue(output.size() > 1 << 20);
+		assertArrayEquals(Files.readAllBytes(tempFilePath), output.toByteArray());
+		assertTrue(tempFile.delete());
+		float[] query = Arrays.copyOfRange(items, 7 * dimension, 8 * dimension);
+		QueryTuple expected = i1.knnQuery(query, 5);
+		i1.clear();
+
+		Index i2 = createIndexInstance(SpaceName.L2, dimension);
+		i2.load(new ByteArrayInputStream(output.toByteArray()), 2000);
+		assertEquals(2000, i2.getLength());
+		assertArrayEquals(expected.getIds(), i2.knnQuery(query, 5).getIds());
+		i2.clear();
+
+		Index i3 = createIndexInstance(SpaceName.L2, dimension);
+		i3.load(Channels.newChannel(new ByteArrayInputStream(output.toByteArray())), 2000);
+		assertArrayEquals(expected.getIds(), i3.knnQuery(query, 5).getIds());
+		i3.clear();
+	}
+
+	@Test(expected = UnexpectedNativeException.class)
+	public void testLoadTruncatedStream() {
+		Index i1 = createIndexInstance(SpaceName.L2, 2);
+		i1.initialize(10);
+		i1.addItem(new float[] { 1.0f, 2.0f }, 1);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		i1.save(output);
+		i1.clear();
+
+		byte[] bytes = output.toByteArray();
+		Index i2 = createIndexInstance(SpaceName.L2, 2);
+		i2.load(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)), 10);
+	}
+
+	@Test
+	public void testSaveIntoFailingStream() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 2.0f }, 1);
+		try {
+			index.save(new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					throw new IOException("disk full");
+				}
+			});
+			fail("The failure of the stream should be reported.");
+		} catch (UncheckedIOException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+		index.clear();
+	}
+
+	@Test
+	public void testCloseFreesNativeMemory() {
+		Index index = createIndexInstance(SpaceName.L2, 16);
+		assertEquals(0, index.getMemoryUsage());
+		index.initialize(1_000);
+		for (int i = 0; i < 100; i++) {
+			index.addItem(HnswlibTestUtils.getRandomFloatArray(16), i);
+		}
+		long memoryUsage = index.getMemoryUsage();
+		assertTrue(memoryUsage > 1_000 * 16 * Float.BYTES);
+		assertTrue(Index.getTotalMemoryUsage() >= memoryUsage);
+
+		long totalMemoryUsage = Index.getTotalMemoryUsage();
+		index.close();
+		assertEquals(0, index.getMemoryUsage());
+		assertEquals(totalMemoryUsage - memoryUsage, Index.getTotalMemoryUsage());
+		index.close();
+		assertEquals(totalMemoryUsage - memoryUsage, Index.getTotalMemoryUsage());
+	}
+
+	@Test(expected = OnceIndexIsClearedItCannotBeReusedException.class)
+	public void testIndexCannotBeUsedAfterClose() {
+		Index index = createIndexInstance(SpaceName.L2, 2);
+		try (Index closedIndex = index) {
+			closedIndex.initialize(10);
+			closedIndex.addItem(new float[] { 1.0f, 2.0f }, 1);
+		}
+		index.addItem(new float[] { 2.0f, 1.0f }, 2);
+	}
+
+	@Test
+	public void testGettersFailAfterCloseAndClear() {
+		Index closedIndex = createIndexInstance(SpaceName.L2, 2);
+		closedIndex.initialize(10);
+		closedIndex.close();
+		assertGettersFailAsCleared(closedIndex);
+
+		Index clearedIndex = createIndexInstance(SpaceName.L2, 2);
+		clearedIndex.initialize(10);
+		clearedIndex.clear();
+		assertGettersFailAsCleared(clearedIndex);
+		clearedIndex.close();
+	}
+
+	private static void assertGettersFailAsCleared(Index index) {
+		List<Runnable> getters = Arrays.asList(
+				index::getM,
+				index::getEf,
+				index::getEfConstruction,
+				() -> index.computeSimilarity(new float[] { 1.0f, 0.0f }, new float[] { 0.0f, 1.0f }));
+		for (Runnable getter : getters) {
+			try {
+				getter.run();
+				fail("the index was released");
+			} catch (OnceIndexIsClearedItCannotBeReusedException e) {
+				assertFalse(index.isReadOnly());
+			}
+		}
+	}
+
+	@Test
+	public void testMemoryUsageGrowsWithResize() {
+		try (Index index = createIndexInstance(SpaceName.L2, 16)) {
+			index.initialize(100);
+			long memoryUsage = index.getMemoryUsage();
+			index.resize(1_000);
+			assertTrue(index.getMemoryUsage() > memoryUsage);
+		}
+	}
+
+	@Test
+	public void testQueryWithEfDoesNotChangeTheEfOfTheIndex() {
+		try (Index index = createIndexInstance(SpaceName.L2, 16)) {
+			index.initialize(2_000, 4, 20, 100);
+			for (int i = 0; i < 2_000; i++) {
+				index.addItem(HnswlibTestUtils.getRandomFloatArray(16), i);
+			}
+			index.setEf(10);
+			float[][] queries = new float[20][];
+			QueryTuple[] results = new QueryTuple[queries.length];
+			for (int i = 0; i < queries.length; i++) {
+				queries[i] = HnswlibTestUtils.getRandomFloatArray(16);
+				results[i] = index.knnQuery(queries[i], 10, 400);
+			}
+			assertEquals(10, index.getEf());
+
+			index.setEf(400);
+			for (int i = 0; i < queries.length; i++) {
+				assertArrayEquals(index.knnQuery(queries[i], 10).getIds(), results[i].getIds());
+				assertArrayEquals(index.knnNormalizedQuery(queries[i], 10).getIds(), index.knnNormalizedQuery(queries[i], 10, 400).getIds());
+			}
+		}
+	}
+
+	@Test
+	public void testCachedQueriesDependOnTheirEf() {
+		try (Index index = createIndexInstance(SpaceName.L2, 2)) {
+			index.initialize(10);
+			index.setQueryCache(new QueryCache(10));
+			for (int i = 0; i < 10; i++) {
+				index.addItem(new float[] { i, 0.0f }, i);
+			}
+			float[] query = new float[] { 4.2f, 0.0f };
+			QueryTuple withSmallEf = index.knnQuery(query, 3, 3);
+			assertArrayEquals(withSmallEf.getIds(), index.knnQuery(query, 3, 3).getIds());
+			assertArrayEquals(new int[] { 4, 5, 3 }, index.knnQuery(query, 3, 50).getIds());
+			assertEquals(1, index.getQueryCache().getHitCount());
+			assertEquals(2, index.getQueryCache().getMissCount());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testQueryWithNonPositiveEfFails() {
+		try (Index index = createIndexInstance(SpaceName.L2, 2)) {
+			index.initialize(10);
+			index.addItem(new float[] { 1.0f, 0.0f }, 1);
+			index.knnQuery(new float[] { 1.0f, 0.0f }, 1, 0);
+		}
+	}
 }
@@ -0,0 +1,125 @@
+package com.stepstone.search.hnswlib.jna;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EfTunerTest {
+
+	private static final int DIMENSION = 16;
+	private static final int NUMBER_OF_ITEMS = 5_000;
+	private static final int K = 10;
+
+	private Index index;
+	private float[] items;
+	private float[][] queries;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(7);
+		items = new float[NUMBER_OF_ITEMS * DIMENSION];
+		int[] ids = new int[NUMBER_OF_ITEMS];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = random.nextFloat();
+		}
+		for (int i = 0; i < NUMBER_OF_ITEMS; i++) {
+			ids[i] = i;
+		}
+		index = new Index(SpaceName.L2, DIMENSION);
+		/* a sparse graph, so that small values of ef miss neighbours */
+		index.initialize(NUMBER_OF_ITEMS, 4, 20, 100);
+		index.addItems(items, ids);
+		queries = new float[200][DIMENSION];
+		for (float[] query : queries) {
+			for (int i = 0; i < DIMENSION; i++) {
+				query[i] = random.nextFloat();
+			}
+		}
+		index.setEf(K);
+	}
+
+	@After
+	public void tearDown() {
+		index.close();
+	}
+
+	@Test
+	public void testRecallGrowsWithEf() {
+		EfTuner tuner = new EfTuner(index, queries, K);
+		List<EfTuner.Measurement> measurements = tuner.sweep(K, 100, 1_000);
+		assertEquals(3, measurements.size());
+		assertTrue(measurements.get(0).getRecall() < measurements.get(2).getRecall());
+		assertTrue(measurements.get(2).getRecall() > 0.99);
+		for (EfTuner.Measurement measurement : measurements) {
+			assertTrue(measurement.getPercentileNanos(50) > 0);
+			assertTrue(measurement.getPercentileNanos(50) <= measurement.getPercentileNanos(99));
+		}
+		assertEquals(K, index.getEf());
+	}
+
+	@Test
+	public void testTuneFindsTheSmallestEfReachingTheTarget() {
+		EfTuner tuner = new EfTuner(index, queries, K);
+		Optional<EfTuner.Measurement> tuned = tuner.tune(0.95);
+		assertTrue(tuned.isPresent());
+		int ef = tuned.get().getEf();
+		assertTrue(tuned.get().getRecall() >= 0.95);
+		assertTrue(ef > K);
+		assertTrue(tuner.measure(ef - 1).getRecall() < 0.95);
+		assertEquals(K, index.getEf());
+
+		assertEquals(ef, tuner.tuneAndApply(0.95).get().getEf());
+		assertEquals(ef, index.getEf());
+	}
+
+	@Test
+	public void testUnreachableTargetIsNotApplied() {
+		EfTuner tuner = new EfTuner(index, queries, K);
+		assertFalse(tuner.tuneAndApply(1.01, 64).isPresent());
+		assertEquals(K, index.getEf());
+	}
+
+	@Test
+	public void testMeasurementsBypassTheQueryCache() {
+		EfTuner tuner = new EfTuner(index, queries, K);
+		double recall = tuner.measure(K).getRecall();
+		QueryCache queryCache = new QueryCache(1_000);
+		index.setQueryCache(queryCache);
+
+		assertEquals(recall, tuner.measure(K).getRecall(), 0.0);
+		tuner.sweep(K, 100);
+		assertEquals(0, queryCache.getHitCount());
+		assertEquals(0, queryCache.getMissCount());
+		assertEquals(0, queryCache.size());
+	}
+
+	@Test
+	public void testGroundTruthIsTheExactSearch() {
+		int[][] groundTruth = EfTuner.computeGroundTruth(index, queries, K);
+		for (int i = 0; i < queries.length; i++) {
+			assertEquals(K, groundTruth[i].length);
+			float nearest = Float.MAX_VALUE;
+			for (int id = 0; id < NUMBER_OF_ITEMS; id++) {
+				nearest = Math.min(nearest, distance(queries[i], items, id));
+			}
+			assertEquals(nearest, distance(queries[i], items, groundTruth[i][0]), 1e-5f);
+		}
+	}
+
+	private static float distance(float[] query, float[] items, int id) {
+		float distance = 0.0f;
+		for (int i = 0; i < DIMENSION; i++) {
+			float difference = query[i] - items[id * DIMENSION + i];
+			distance += difference * difference;
+		}
+		return distance;
+	}
+}
@@ -0,0 +1,220 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.stepstone.search.hnswlib.jna.exception.ItemCannotBeInsertedIntoTheVectorSpaceException;
+import com.stepstone.search.hnswlib.jna.exception.QueryCannotReturnResultsException;
+import com.stepstone.search.hnswlib.jna.exception.UnexpectedNativeException;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExactIndexTest {
+
+	@Test
+	public void testQueryReturnsTheExactNearestNeighbours() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2, 2)) {
+			index.initialize(100);
+			float[] items = new float[100 * 2];
+			int[] ids = new int[100];
+			for (int i = 0; i < 100; i++) {
+				items[i * 2] = i;
+				ids[i] = i;
+			}
+			index.addItems(items, ids);
+			assertEquals(100, index.getLength());
+
+			QueryTuple queryTuple = index.knnQuery(new float[] { 10.2f, 0.0f }, 5);
+			assertArrayEquals(new int[] { 10, 11, 9, 12, 8 }, queryTuple.getIds());
+			assertArrayEquals(new float[] { 0.04f, 0.64f, 1.44f, 3.24f, 4.84f }, queryTuple.getCoefficients(), 1e-4f);
+		}
+	}
+
+	@Test
+	public void testBatchQueriesMatchTheSingleQueries() {
+		int dimension = 32;
+		try (ExactIndex index = new ExactIndex(SpaceName.COSINE, dimension)) {
+			index.initialize(2_000);
+			float[] items = new float[2_000 * dimension];
+			int[] ids = new int[2_000];
+			for (int i = 0; i < ids.length; i++) {
+				System.arraycopy(HnswlibTestUtils.getRandomFloatArray(dimension), 0, items, i * dimension, dimension);
+				ids[i] = i * 3;
+			}
+			index.addItems(items, ids);
+
+			float[][] queries = new float[50][];
+			for (int i = 0; i < queries.length; i++) {
+				queries[i] = HnswlibTestUtils.getRandomFloatArray(dimension);
+			}
+			QueryTuple[] results = index.knnQueryBatch(queries, 10, 4);
+			for (int i = 0; i < queries.length; i++) {
+				QueryTuple single = index.knnQuery(queries[i], 10);
+				assertArrayEquals(single.getIds(), results[i].getIds());
+				assertArrayEquals(single.getCoefficients(), results[i].getCoefficients(), 1e-6f);
+			}
+		}
+	}
+
+	@Test
+	public void testExactResultsAreTheGroundTruthOfTheApproximateIndex() {
+		int dimension = 16;
+		int numberOfItems = 1_000;
+		Random random = new Random(42);
+		float[] items = new float[numberOfItems * dimension];
+		int[] ids = new int[numberOfItems];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = random.nextFloat();
+		}
+		for (int i = 0; i < numberOfItems; i++) {
+			ids[i] = i;
+		}
+		try (ExactIndex exactIndex = new ExactIndex(SpaceName.IP, dimension);
+			 Index index = new Index(SpaceName.IP, dimension)) {
+			exactIndex.initialize(numberOfItems);
+			exactIndex.addItems(items, ids);
+			index.initialize(numberOfItems);
+			index.addItems(items, ids);
+			index.setEf(200);
+
+			int found = 0;
+			for (int q = 0; q < 100; q++) {
+				float[] query = new float[dimension];
+				for (int i = 0; i < dimension; i++) {
+					query[i] = random.nextFloat();
+				}
+				int[] expected = exactIndex.knnQuery(query, 10).getIds();
+				int[] actual = index.knnQuery(query, 10).getIds();
+				for (int id : actual) {
+					for (int e : expected) {
+						if (id == e) {
+							found++;
+						}
+					}
+				}
+			}
+			assertTrue("recall@10 = " + found / 1000.0, found >= 950);
+		}
+	}
+
+	@Test
+	public void testDeletedItemsAreRemoved() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2, 2)) {
+			index.initialize(3);
+			index.addItem(new float[] { 1.0f, 0.0f }, 1);
+			index.addItem(new float[] { 2.0f, 0.0f }, 2);
+			index.addItem(new float[] { 3.0f, 0.0f }, 3);
+
+			index.markDeleted(1);
+			assertEquals(2, index.getLength());
+			assertFalse(index.hasId(1));
+			assertFalse(index.getData(1).isPresent());
+			assertTrue(index.hasId(3));
+			assertArrayEquals(new float[] { 3.0f, 0.0f }, index.getData(3).get(), 0.0f);
+			assertArrayEquals(new int[] { 2, 3 }, index.knnQuery(new float[] { 0.0f, 0.0f }, 2).getIds());
+
+			/* the slot of the removed item is reused */
+			index.addItem(new float[] { 4.0f, 0.0f }, 4);
+			assertEquals(3, index.getLength());
+		}
+	}
+
+	@Test(expected = UnexpectedNativeException.class)
+	public void testDeletingAnUnknownItemFails() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2, 2)) {
+			index.initialize(1);
+			index.markDeleted(1);
+		}
+	}
+
+	@Test
+	public void testAddingAnExistingIdReplacesTheItem() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2, 2)) {
+			index.initialize(1);
+			index.addItem(new float[] { 1.0f, 0.0f }, 7);
+			index.addItem(new float[] { 2.0f, 0.0f }, 7);
+			assertEquals(1, index.getLength());
+			assertArrayEquals(new float[] { 2.0f, 0.0f }, index.getData(7).get(), 0.0f);
+		}
+	}
+
+	@Test(expected = ItemCannotBeInsertedIntoTheVectorSpaceException.class)
+	public void testFullIndexRejectsNewItems() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2, 2)) {
+			index.initialize(1);
+			index.addItem(new float[] { 1.0f, 0.0f }, 1);
+			index.addItem(new float[] { 2.0f, 0.0f }, 2);
+		}
+	}
+
+	@Test
+	public void testFullIndexGrowsWithGrowthFactor() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2_FP16, 2)) {
+			index.initialize(2);
+			index.setGrowthFactor(2.0);
+			long memoryUsage = index.getMemoryUsage();
+			for (int i = 0; i < 10; i++) {
+				index.addItem(new float[] { i, 0.0f }, i);
+			}
+			assertEquals(10, index.getLength());
+			assertTrue(index.getMaxNumberOfElements() >= 10);
+			assertTrue(index.getMemoryUsage() > memoryUsage);
+			assertArrayEquals(new float[] { 9.0f, 0.0f }, index.getData(9).get(), 0.0f);
+		}
+	}
+
+	@Test(expected = QueryCannotReturnResultsException.class)
+	public void testQueryWithMoreResultsThanItemsFails() {
+		try (ExactIndex index = new ExactIndex(SpaceName.L2, 2)) {
+			index.initialize(10);
+			index.addItem(new float[] { 1.0f, 0.0f }, 1);
+			index.knnQuery(new float[] { 1.0f, 0.0f }, 2);
+		}
+	}
+
+	@Test
+	public void testCloseFreesNativeMemory() {
+		ExactIndex index = new ExactIndex(SpaceName.L2, 32);
+		index.initialize(1_000);
+		assertTrue(index.getMemoryUsage() > 0);
+		index.close();
+		assertEquals(0, index.getMemoryUsage());
+		assertEquals(0, index.getLength());
+		index.close();
+	}
+
+	@Test
+	public void testCopyOfContainsTheItemsWhichAreNotDeleted() {
+		try (Index index = new Index(SpaceName.COSINE, 2)) {
+			index.initialize(10);
+			for (int i = 0; i < 10; i++) {
+				index.addItem(new float[] { 1.0f, i }, i);
+			}
+			index.markDeleted(3);
+			try (ExactIndex exactIndex = ExactIndex.copyOf(index)) {
+				assertEquals(9, exactIndex.getLength());
+				assertFalse(exactIndex.hasId(3));
+				assertArrayEquals(index.getData(5).get(), exactIndex.getData(5).get(), 0.0f);
+				assertArrayEquals(index.knnQuery(new float[] { 1.0f, 2.9f }, 3).getIds(),
+						exactIndex.knnQuery(new float[] { 1.0f, 2.9f }, 3).getIds());
+			}
+		}
+	}
+
+	@Test
+	public void testFactoryChoosesTheIndexByTheNumberOfItems() {
+		try (KnnIndex index = KnnIndex.create(SpaceName.L2, 2, KnnIndex.EXACT_SEARCH_THRESHOLD)) {
+			assertTrue(index instanceof ExactIndex);
+			index.addItem(new float[] { 1.0f, 0.0f }, 1);
+			assertArrayEquals(new int[] { 1 }, index.knnQuery(new float[] { 1.0f, 0.0f }, 1).getIds());
+		}
+		try (KnnIndex index = KnnIndex.create(SpaceName.L2, 2, 100, 10)) {
+			assertTrue(index instanceof Index);
+			index.addItem(new float[] { 1.0f, 0.0f }, 1);
+			assertArrayEquals(new int[] { 1 }, index.knnQuery(new float[] { 1.0f, 0.0f }, 1).getIds());
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.sun.jna.Pointer;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the JNA interface mapping with the direct mapping on the hot
+ * paths (knnQuery and addItemToIndex). A small dimension is used on purpose,
+ * so the cost of crossing the JNA boundary dominates.
+ */
+@Ignore
+public class HnswlibBindingPerformanceTest {
+
+	private static final int DIMENSION = 8;
+	private static final int NUMBER_OF_ITEMS = 20_000;
+	private static final int NUMBER_OF_QUERIES = 500_000;
+
+	@Test
+	public void testDirectMappingIsFasterThanInterfaceMapping() {
+		Hnswlib interfaceMapping = HnswlibFactory.getInterfaceMappedInstance();
+		Hnswlib directMapping = HnswlibFactory.getInstance();
+
+		/* warm up both bindings before measuring */
+		measure(interfaceMapping);
+		measure(directMapping);
+
+		long[] interfaceMappingTimes = measure(interfaceMapping);
+		long[] directMappingTimes = measure(directMapping);
+
+		System.out.printf("addItemToIndex: interface mapping %d ns/op, direct mapping %d ns/op%n",
+				interfaceMappingTimes[0] / NUMBER_OF_ITEMS, directMappingTimes[0] / NUMBER_OF_ITEMS);
+		System.out.printf("knnQuery: interface mapping %d ns/op, direct mapping %d ns/op%n",
+				interfaceMappingTimes[1] / NUMBER_OF_QUERIES, directMappingTimes[1] / NUMBER_OF_QUERIES);
+		assertTrue(directMappingTimes[1] < interfaceMappingTimes[1]);
+	}
+
+	/**
+	 * @return the time in nanoseconds spent on insertions and on queries.
+	 */
+	private static long[] measure(Hnswlib hnswlib) {
+		Pointer index = hnswlib.createNewIndex(SpaceName.L2.toString(), DIMENSION);
+		hnswlib.initNewIndex(index, NUMBER_OF_ITEMS, 16, 200, 100);
+		float[][] items = new float[NUMBER_OF_ITEMS][];
+		for (int i = 0; i < NUMBER_OF_ITEMS; i++) {
+			items[i] = HnswlibTestUtils.getRandomFloatArray(DIMENSION);
+		}
+
+		long begin = System.nanoTime();
+		for (int i = 0; i < NUMBER_OF_ITEMS; i++) {
+			assertEquals(0, hnswlib.addItemToIndex(items[i], false, i, index));
+		}
+		long insertionTime = System.nanoTime() - begin;
+
+		int[] ids = new int[1];
+		float[] coefficients = new float[1];
+		begin = System.nanoTime();
+		for (int i = 0; i < NUMBER_OF_QUERIES; i++) {
+			assertEquals(0, hnswlib.knnQuery(index, items[i % NUMBER_OF_ITEMS], false, 1, ids, coefficients));
+		}
+		long queryTime = System.nanoTime() - begin;
+
+		hnswlib.clearIndex(index);
+		return new long[] { insertionTime, queryTime };
+	}
+}
@@ -0,0 +1,55 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.sun.jna.Pointer;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+
+public class HnswlibFactoryTest {
+
+	@Test
+	public void testDirectMappingIsUsedByDefault() {
+		assertThat(HnswlibFactory.getInstance(), instanceOf(DirectMappedHnswlib.class));
+	}
+
+	@Test
+	public void testInterfaceMappingFallback() {
+		Hnswlib hnswlib = HnswlibFactory.getInterfaceMappedInstance();
+		assertBindingWorks(hnswlib);
+	}
+
+	@Test
+	public void testDirectMapping() {
+		assertBindingWorks(HnswlibFactory.getInstance());
+	}
+
+	private static void assertBindingWorks(Hnswlib hnswlib) {
+		Pointer index = hnswlib.createNewIndex(SpaceName.L2.toString(), 2);
+		assertNotNull(index);
+		assertEquals(0, hnswlib.initNewIndex(index, 10, 16, 200, 100));
+		assertEquals(0, hnswlib.addItemToIndex(new float[] { 1.0f, 1.0f }, false, 7, index));
+		assertEquals(0, hnswlib.addItemToIndex(FloatBuffer.wrap(new float[] { 2.0f, 2.0f }), false, 8, index));
+		assertEquals(2, hnswlib.getIndexLength(index));
+
+		int[] ids = new int[2];
+		float[] coefficients = new float[2];
+		assertEquals(0, hnswlib.knnQuery(index, new float[] { 1.0f, 1.0f }, false, 2, ids, coefficients));
+		assertArrayEquals(new int[] { 7, 8 }, ids);
+		assertArrayEquals(new float[] { 0.0f, 2.0f }, coefficients, 0.000001f);
+
+		IntBuffer idsBuffer = IntBuffer.allocate(2);
+		FloatBuffer coefficientsBuffer = FloatBuffer.allocate(2);
+		assertEquals(0, hnswlib.knnQuery(index, FloatBuffer.wrap(new float[] { 2.0f, 2.0f }), false, 2, idsBuffer, coefficientsBuffer));
+		assertArrayEquals(new int[] { 8, 7 }, idsBuffer.array());
+		assertArrayEquals(new float[] { 0.0f, 2.0f }, coefficientsBuffer.array(), 0.000001f);
+
+		assertEquals(0, hnswlib.clearIndex(index));
+	}
+}
@@ -6,8 +6,10 @@ import com.stepstone.search.hnswlib.jna.exception.UnexpectedNativeException;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class IndexTest extends AbstractIndexTest {
 
@@ -36,6 +38,107 @@ public class IndexTest extends AbstractIndexTest {
 		i1.addItem(HnswlibTestUtils.getRandomFloatArray(50));
 	}
 
+	@Test
+	public void testSynchronisedIndexKeepsMemoryUntilBothAreClosed() {
+		Index i1 = createIndexInstance(SpaceName.COSINE, 50);
+		i1.initialize(1_000);
+		i1.addItem(HnswlibTestUtils.getRandomFloatArray(50), 1);
+		Index syncIndex = Index.synchronizedIndex(i1);
+		long memoryUsage = syncIndex.getMemoryUsage();
+		assertTrue(memoryUsage > 0);
+
+		i1.close();
+		assertEquals(memoryUsage, syncIndex.getMemoryUsage());
+		assertEquals(1, syncIndex.knnQuery(HnswlibTestUtils.getRandomFloatArray(50), 1).getIds()[0]);
+		syncIndex.close();
+		assertEquals(0, syncIndex.getMemoryUsage());
+	}
+
+	@Test
+	public void testSynchronisedIndexDiscardsTheCachedResultsOfTheOriginal() {
+		Index i1 = createIndexInstance(SpaceName.L2, 2);
+		i1.initialize(10);
+		i1.setQueryCache(new QueryCache(10));
+		i1.addItem(new float[] { 1.0f, 0.0f }, 1);
+		Index syncIndex = Index.synchronizedIndex(i1);
+		float[] query = { 2.0f, 0.0f };
+		assertArrayEquals(new int[] { 1 }, i1.knnQuery(query, 1).getIds());
+		assertArrayEquals(new int[] { 1 }, syncIndex.knnQuery(query, 1).getIds());
+
+		syncIndex.addItem(new float[] { 2.0f, 0.0f }, 2);
+		assertArrayEquals(new int[] { 2 }, i1.knnQuery(query, 1).getIds());
+		i1.addItem(new float[] { 2.1f, 0.0f }, 3);
+		i1.markDeleted(2);
+		assertArrayEquals(new int[] { 3 }, syncIndex.knnQuery(query, 1).getIds());
+		syncIndex.close();
+		i1.close();
+	}
+
+	@Test
+	public void testSynchronisedIndexGettersAfterTheOriginalIsCleared() {
+		Index i1 = createIndexInstance(SpaceName.L2, 2);
+		i1.initialize(10);
+		Index syncIndex = Index.synchronizedIndex(i1);
+		i1.clear();
+		/* the view does not know that the shared native index was freed, but it must not crash */
+		assertEquals(0, syncIndex.getM());
+		assertEquals(0, syncIndex.getEf());
+		assertEquals(0, syncIndex.getEfConstruction());
+		assertTrue(Float.isNaN(syncIndex.computeSimilarity(new float[] { 1.0f, 0.0f }, new float[] { 0.0f, 1.0f })));
+		syncIndex.close();
+		i1.close();
+	}
+
+	@Test
+	public void testUnreachableIndexIsReleased() throws InterruptedException {
+		Index index = createIndexInstance(SpaceName.L2, 64);
+		index.initialize(10_000);
+		long memoryUsage = index.getMemoryUsage();
+		long totalMemoryUsage = Index.getTotalMemoryUsage();
+		index = null;
+
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (Index.getTotalMemoryUsage() > totalMemoryUsage - memoryUsage && System.currentTimeMillis() < deadline) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue(Index.getTotalMemoryUsage() <= totalMemoryUsage - memoryUsage);
+	}
+
+	@Test
+	public void testSimdLevelsComputeTheSameDistances() {
+		SimdLevel detectedSimdLevel = Index.getSimdLevel();
+		int[] dimensions = { 3, 8, 16, 37, 64, 100 };
+		SpaceName[] spaceNames = { SpaceName.L2, SpaceName.IP, SpaceName.COSINE, SpaceName.L2_FP16, SpaceName.COSINE_INT8 };
+		try {
+			for (int dimension : dimensions) {
+				float[] item1 = HnswlibTestUtils.getRandomFloatArray(dimension);
+				float[] item2 = HnswlibTestUtils.getRandomFloatArray(dimension);
+				for (SpaceName spaceName : spaceNames) {
+					Index.setMaxSimdLevel(SimdLevel.NONE);
+					float expected = computeSimilarity(spaceName, dimension, item1, item2);
+					for (SimdLevel simdLevel : SimdLevel.values()) {
+						if (simdLevel.compareTo(detectedSimdLevel) <= 0) {
+							assertEquals(simdLevel, Index.setMaxSimdLevel(simdLevel));
+							assertEquals(spaceName + " / " + dimension + " / " + simdLevel,
+									expected, computeSimilarity(spaceName, dimension, item1, item2), 1e-4 * Math.max(1, Math.abs(expected)));
+						}
+					}
+				}
+			}
+		} finally {
+			Index.setMaxSimdLevel(SimdLevel.AVX512);
+		}
+		assertEquals(detectedSimdLevel, Index.getSimdLevel());
+	}
+
+	private float computeSimilarity(SpaceName spaceName, int dimension, float[] item1, float[] item2) {
+		try (Index index = createIndexInstance(spaceName, dimension)) {
+			index.initialize(1);
+			return index.computeSimilarity(item1, item2);
+		}
+	}
+
 	@Test
 	public void testComputeSimilarity() {
 		Index index = createIndexInstance(SpaceName.COSINE, 2);
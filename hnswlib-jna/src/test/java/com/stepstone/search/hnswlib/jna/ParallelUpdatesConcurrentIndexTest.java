@@ -0,0 +1,93 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.stepstone.search.hnswlib.jna.exception.UnexpectedNativeException;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelUpdatesConcurrentIndexTest extends AbstractIndexTest {
+
+	@Override
+	protected Index createIndexInstance(SpaceName spaceName, int dimensions) {
+		return new ConcurrentIndex(spaceName, dimensions, ConcurrencyMode.PARALLEL_UPDATES);
+	}
+
+	@Test
+	public void testSynchronizedIndexWithParallelUpdates() throws UnexpectedNativeException {
+		Index index = new Index(SpaceName.L2, 3);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 2.0f, 3.0f }, 1);
+
+		Index concurrentIndex = Index.synchronizedIndex(index, ConcurrencyMode.PARALLEL_UPDATES);
+		assertEquals(ConcurrencyMode.PARALLEL_UPDATES, ((ConcurrentIndex) concurrentIndex).getConcurrencyMode());
+		assertTrue(concurrentIndex.hasId(1));
+
+		concurrentIndex.clear();
+	}
+
+	@Test
+	public void testConcurrentInsertDeleteQueryAndLookup() throws InterruptedException, UnexpectedNativeException {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.max(4, cpus));
+		AtomicInteger failures = new AtomicInteger();
+
+		Index i1 = createIndexInstance(SpaceName.L2, 50);
+		i1.initialize(2_000);
+		i1.setEf(50);
+		for (int id = 0; id < 100; id++) {
+			i1.addItem(HnswlibTestUtils.getRandomFloatArray(50), id);
+		}
+
+		for (int i = 100; i < 2_000; i++) {
+			int id = i;
+			executorService.submit(() -> {
+				try {
+					i1.addItem(HnswlibTestUtils.getRandomFloatArray(50), id);
+					i1.knnQuery(HnswlibTestUtils.getRandomFloatArray(50), 1);
+					i1.hasId(id / 20);
+					i1.getData(id / 20);
+					if (id % 10 == 0) {
+						i1.markDeleted(id / 20);
+					}
+				} catch (RuntimeException e) {
+					failures.incrementAndGet();
+				}
+			});
+		}
+
+		executorService.shutdown();
+		executorService.awaitTermination(5, TimeUnit.MINUTES);
+
+		assertEquals(0, failures.get());
+		assertEquals(2_000, i1.getLength());
+		assertTrue(i1.hasId(1_999));
+
+		i1.clear();
+	}
+
+	@Test
+	public void testConcurrentInsertionsWithGrowthFactor() throws InterruptedException {
+		ExecutorService executorService = Executors.newFixedThreadPool(8);
+		Index index = createIndexInstance(SpaceName.L2, 16);
+		index.initialize(10);
+		index.setGrowthFactor(2.0);
+
+		for (int i = 0; i < 2_000; i++) {
+			int id = i;
+			executorService.submit(() -> index.addItem(HnswlibTestUtils.getRandomFloatArray(16), id));
+		}
+		executorService.shutdown();
+		executorService.awaitTermination(5, TimeUnit.MINUTES);
+
+		assertEquals(2_000, index.getLength());
+		assertEquals(2_560, index.getMaxNumberOfElements());
+		assertTrue(index.hasId(1_999));
+		index.clear();
+	}
+}
@@ -0,0 +1,52 @@
+package com.stepstone.search.hnswlib.jna;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class QueryCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		QueryCache queryCache = new QueryCache(2);
+		QueryTuple result = new QueryTuple(new int[] { 1 }, new float[] { 0.5f });
+		queryCache.put(new float[] { 1.0f }, false, 1, -1, 0, result);
+		queryCache.put(new float[] { 2.0f }, false, 1, -1, 0, result);
+		assertNotNull(queryCache.get(new float[] { 1.0f }, false, 1, -1, 0));
+
+		queryCache.put(new float[] { 3.0f }, false, 1, -1, 0, result);
+		assertEquals(2, queryCache.size());
+		assertEquals(1, queryCache.getEvictionCount());
+		assertNull(queryCache.get(new float[] { 2.0f }, false, 1, -1, 0));
+		assertNotNull(queryCache.get(new float[] { 1.0f }, false, 1, -1, 0));
+		assertNotNull(queryCache.get(new float[] { 3.0f }, false, 1, -1, 0));
+		assertEquals(3, queryCache.getHitCount());
+		assertEquals(1, queryCache.getMissCount());
+		assertEquals(0.75, queryCache.getHitRate(), 0.0);
+	}
+
+	@Test
+	public void testEntriesFromOlderVersionsAreDropped() {
+		QueryCache queryCache = new QueryCache(2);
+		queryCache.put(new float[] { 1.0f }, false, 1, -1, 7, new QueryTuple(new int[] { 1 }, new float[] { 0.5f }));
+		assertNull(queryCache.get(new float[] { 1.0f }, false, 1, -1, 8));
+		assertEquals(0, queryCache.size());
+	}
+
+	@Test
+	public void testKeyIncludesAllQueryParameters() {
+		QueryCache queryCache = new QueryCache(10);
+		queryCache.put(new float[] { 1.0f }, false, 1, -1, 0, new QueryTuple(new int[] { 1 }, new float[] { 0.5f }));
+		assertNull(queryCache.get(new float[] { 1.0f }, true, 1, -1, 0));
+		assertNull(queryCache.get(new float[] { 1.0f }, false, 2, -1, 0));
+		assertNull(queryCache.get(new float[] { 1.0f }, false, 1, 50, 0));
+		assertNotNull(queryCache.get(new float[] { 1.0f }, false, 1, -1, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new QueryCache(0);
+	}
+}
@@ -0,0 +1,151 @@
+package com.stepstone.search.hnswlib.jna;
+
+import com.stepstone.search.hnswlib.jna.exception.QueryCannotReturnResultsException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedIndexTest {
+
+	@Test
+	public void testItemsAreSpreadOverTheShards() {
+		ShardedIndex index = new ShardedIndex(SpaceName.L2, 2, 4);
+		index.initialize(100);
+		for (int i = 0; i < 100; i++) {
+			index.addItem(new float[] { i, 0.0f }, i);
+		}
+		assertEquals(100, index.getLength());
+		for (int shard = 0; shard < index.getNumberOfShards(); shard++) {
+			assertTrue(index.getShard(shard).getLength() > 0);
+		}
+		assertTrue(index.hasId(42));
+		assertTrue(index.getShard(index.getShardOf(42)).hasId(42));
+		assertArrayEquals(new float[] { 42.0f, 0.0f }, index.getData(42).get(), 0.0f);
+		index.clear();
+	}
+
+	@Test
+	public void testQueryMergesTheResultsOfAllTheShards() {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		ShardedIndex index = new ShardedIndex(SpaceName.L2, 2, 3, executor);
+		index.initialize(50);
+		float[] items = new float[100 * 2];
+		int[] ids = new int[100];
+		for (int i = 0; i < 100; i++) {
+			items[i * 2] = i;
+			ids[i] = i;
+		}
+		index.addItems(items, ids);
+		assertEquals(100, index.getLength());
+
+		QueryTuple queryTuple = index.knnQuery(new float[] { 10.2f, 0.0f }, 5);
+		assertArrayEquals(new int[] { 10, 11, 9, 12, 8 }, queryTuple.getIds());
+		float[] coefficients = queryTuple.getCoefficients();
+		for (int i = 1; i < coefficients.length; i++) {
+			assertTrue(coefficients[i - 1] <= coefficients[i]);
+		}
+
+		index.markDeleted(10);
+		assertArrayEquals(new int[] { 11 }, index.knnQuery(new float[] { 10.2f, 0.0f }, 1).getIds());
+		index.clear();
+		executor.shutdown();
+	}
+
+	@Test
+	public void testShardsWithDeletedItemsContributeTheirOtherItems() {
+		ShardedIndex index = new ShardedIndex(SpaceName.L2, 2, 2);
+		index.initialize(10);
+		for (int i = 0; i < 6; i++) {
+			index.addItem(new float[] { i, 0.0f }, i);
+		}
+		Index shard = index.getShard(index.getShardOf(0));
+		int liveItems = shard.getLength();
+		index.markDeleted(0);
+
+		QueryTuple queryTuple = index.knnQuery(new float[] { 0.0f, 0.0f }, 5);
+		assertArrayEquals(new int[] { 1, 2, 3, 4, 5 }, queryTuple.getIds());
+		assertEquals(liveItems - 1, shard.getLength() - shard.getDeletedCount());
+		index.clear();
+	}
+
+	@Test(expected = QueryCannotReturnResultsException.class)
+	public void testQueryWithMoreResultsThanItems() {
+		ShardedIndex index = new ShardedIndex(SpaceName.L2, 2, 4);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 1.0f }, 1);
+		index.addItem(new float[] { 2.0f, 2.0f }, 2);
+		try {
+			assertEquals(2, index.knnQuery(new float[] { 0.0f, 0.0f }, 2).getIds().length);
+			index.knnQuery(new float[] { 0.0f, 0.0f }, 3);
+		} finally {
+			index.clear();
+		}
+	}
+
+	@Test
+	public void testCosineQueryIsNormalizedOnce() {
+		ShardedIndex index = new ShardedIndex(SpaceName.COSINE, 2, 2);
+		index.initialize(10);
+		index.addItem(new float[] { 1.0f, 0.0f }, 1);
+		index.addItem(new float[] { 0.0f, 1.0f }, 2);
+		index.addItem(new float[] { 1.0f, 1.0f }, 3);
+		assertArrayEquals(new int[] { 2, 3, 1 }, index.knnQuery(new float[] { 0.0f, 5.0f }, 3).getIds());
+		index.clear();
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		Path directory = Files.createTempDirectory("sharded");
+		ShardedIndex index = new ShardedIndex(SpaceName.L2, 2, 3);
+		index.initialize(20);
+		for (int i = 0; i < 30; i++) {
+			index.addItem(new float[] { i, i }, i);
+		}
+		index.save(directory);
+		QueryTuple expected = index.knnQuery(new float[] { 3.0f, 3.0f }, 4);
+		index.clear();
+
+		ShardedIndex loaded = new ShardedIndex(SpaceName.L2, 2, 3);
+		loaded.load(directory, 20);
+		assertEquals(30, loaded.getLength());
+		assertArrayEquals(expected.getIds(), loaded.knnQuery(new float[] { 3.0f, 3.0f }, 4).getIds());
+		loaded.clear();
+
+		ShardedIndex different = new ShardedIndex(SpaceName.L2, 2, 2);
+		try {
+			different.load(directory, 20);
+			throw new AssertionError("The number of shards should not match.");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("3 shards"));
+		}
+		different.clear();
+
+		for (int shard = 0; shard < 3; shard++) {
+			Files.delete(directory.resolve("shard-" + shard + ".hnsw"));
+		}
+		Files.delete(directory.resolve("shards.properties"));
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testQueryWithEfIsSentToTheShards() {
+		ShardedIndex index = new ShardedIndex(SpaceName.L2, 2, 3);
+		index.initialize(50);
+		for (int i = 0; i < 100; i++) {
+			index.addItem(new float[] { i, 0.0f }, i);
+		}
+		assertArrayEquals(new int[] { 10, 11, 9 }, index.knnQuery(new float[] { 10.2f, 0.0f }, 3, 50).getIds());
+		for (int shard = 0; shard < index.getNumberOfShards(); shard++) {
+			assertEquals(10, index.getShard(shard).getEf());
+		}
+		index.clear();
+	}
+}
@@ -0,0 +1,82 @@
+package com.stepstone.search.hnswlib.jna;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StripedIntSetTest {
+
+	@Test
+	public void testAddRemoveContains() {
+		StripedIntSet set = new StripedIntSet(8);
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(1));
+		assertTrue(set.add(-5));
+		assertTrue(set.add(Integer.MAX_VALUE));
+		assertFalse(set.add(1));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(-5));
+		assertFalse(set.contains(2));
+
+		assertTrue(set.remove(-5));
+		assertFalse(set.remove(-5));
+		assertFalse(set.contains(-5));
+		int[] elements = set.toIntArray();
+		Arrays.sort(elements);
+		assertArrayEquals(new int[] { 1, Integer.MAX_VALUE }, elements);
+
+		set.clear();
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testIteratorWorksOnSnapshot() {
+		StripedIntSet set = new StripedIntSet(4);
+		IntStream.range(0, 100).forEach(set::add);
+		IntIterator iterator = set.iterator();
+		set.add(1000);
+		int count = 0;
+		while (iterator.hasNext()) {
+			int element = iterator.nextInt();
+			if (element % 2 == 0) {
+				iterator.remove();
+			}
+			count++;
+		}
+		assertEquals(100, count);
+		assertEquals(51, set.size());
+		assertFalse(set.contains(10));
+		assertTrue(set.contains(1000));
+	}
+
+	@Test
+	public void testConcurrentAdditions() throws Exception {
+		StripedIntSet set = new StripedIntSet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<?>[] futures = new Future<?>[8];
+			for (int t = 0; t < futures.length; t++) {
+				int offset = t * 10_000;
+				futures[t] = executor.submit(() -> IntStream.range(offset, offset + 10_000).forEach(set::add));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(80_000, set.size());
+		assertEquals(80_000, set.toIntArray().length);
+		assertTrue(IntStream.range(0, 80_000).allMatch(set::contains));
+	}
+}
@@ -0,0 +1,54 @@
+package com.stepstone.search.hnswlib.jna.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0.0, histogram.getMeanNanos(), 0.0);
+		assertEquals(0, histogram.getPercentileNanos(99.0));
+		assertEquals(0, histogram.getMaxNanos());
+	}
+
+	@Test
+	public void testRecordedValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1_000L);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50_500.0, histogram.getMeanNanos(), 0.0);
+		assertEquals(100_000, histogram.getMaxNanos());
+
+		long p50 = histogram.getPercentileNanos(50.0);
+		assertTrue(p50 >= 50_000 && p50 < 100_000);
+		assertEquals(100_000, histogram.getPercentileNanos(100.0));
+	}
+
+	@Test
+	public void testExtremeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(0);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(3, histogram.getCount());
+		assertEquals(0, histogram.getPercentileNanos(50.0));
+		assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(99.0));
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(10);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxNanos());
+		assertEquals(0, histogram.getPercentileNanos(50.0));
+	}
+}
@@ -0,0 +1,73 @@
+package com.stepstone.search.hnswlib.jna.persistence;
+
+import com.stepstone.search.hnswlib.jna.ConcurrentIndex;
+import com.stepstone.search.hnswlib.jna.Index;
+import com.stepstone.search.hnswlib.jna.SpaceName;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoggedIndexTest {
+
+	@Test
+	public void testRecoveryReplaysTheLog() throws IOException {
+		Path directory = Files.createTempDirectory("logged");
+		LoggedIndex loggedIndex = LoggedIndex.open(new Index(SpaceName.L2, 2), 2, directory, 100, LogSyncMode.EVERY_MUTATION);
+		loggedIndex.addItem(new float[] { 1.0f, 1.0f }, 1);
+		loggedIndex.addItems(new float[] { 2.0f, 2.0f, 3.0f, 3.0f }, new int[] { 2, 3 });
+		loggedIndex.markDeleted(1);
+		/* no close: simulates a crash */
+		loggedIndex.getIndex().clear();
+
+		Index recovered = new Index(SpaceName.L2, 2);
+		LoggedIndex reopened = LoggedIndex.open(recovered, 2, directory, 100, LogSyncMode.EVERY_MUTATION);
+		assertEquals(3, recovered.getLength());
+		assertArrayEquals(new int[] { 2, 3 }, recovered.knnQuery(new float[] { 1.0f, 1.0f }, 2).getIds());
+		reopened.close();
+		recovered.clear();
+		deleteDirectory(directory);
+	}
+
+	@Test
+	public void testSnapshotStartsANewLog() throws IOException {
+		Path directory = Files.createTempDirectory("logged");
+		LoggedIndex loggedIndex = LoggedIndex.open(new ConcurrentIndex(SpaceName.COSINE, 2), 2, directory, 100, LogSyncMode.ON_DEMAND);
+		loggedIndex.addItem(new float[] { 1.0f, 0.0f }, 1);
+		loggedIndex.snapshot();
+		assertTrue(Files.exists(directory.resolve("snapshot-1.hnsw")));
+		assertFalse(Files.exists(directory.resolve("mutations-0.log")));
+		loggedIndex.addItem(new float[] { 0.0f, 3.0f }, 2);
+		loggedIndex.addNormalizedItem(new float[] { 0.6f, 0.8f }, 3);
+		loggedIndex.close();
+		loggedIndex.getIndex().clear();
+
+		Index recovered = new ConcurrentIndex(SpaceName.COSINE, 2);
+		LoggedIndex reopened = LoggedIndex.open(recovered, 2, directory, 100, LogSyncMode.ON_DEMAND);
+		assertEquals(3, recovered.getLength());
+		assertArrayEquals(new int[] { 2, 3, 1 }, recovered.knnQuery(new float[] { 0.0f, 1.0f }, 3).getIds());
+		reopened.snapshot();
+		reopened.close();
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(2, files.count());
+		}
+		recovered.clear();
+		deleteDirectory(directory);
+	}
+
+	private static void deleteDirectory(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,146 @@
+package com.stepstone.search.hnswlib.jna.persistence;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MutationLogTest {
+
+	@Test
+	public void testRecordsAreReadInOrder() throws IOException {
+		Path path = Files.createTempFile("mutations", ".log");
+		Files.delete(path);
+		try (MutationLog log = MutationLog.open(path, 2)) {
+			log.appendInsert(1, new float[] { 1.0f, 2.0f }, false);
+			log.appendDelete(1);
+			log.appendInserts(new float[] { 3.0f, 4.0f, 5.0f, 6.0f }, new int[] { 2, 3 }, true);
+		}
+		assertEquals("insert 1 [1.0, 2.0] false, delete 1, insert 2 [3.0, 4.0] true, insert 3 [5.0, 6.0] true", readAll(path));
+		Files.delete(path);
+	}
+
+	@Test
+	public void testTornRecordIsDiscarded() throws IOException {
+		Path path = Files.createTempFile("mutations", ".log");
+		Files.delete(path);
+		try (MutationLog log = MutationLog.open(path, 2)) {
+			log.appendInsert(1, new float[] { 1.0f, 2.0f }, false);
+			log.appendInsert(2, new float[] { 3.0f, 4.0f }, false);
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+		assertEquals("insert 1 [1.0, 2.0] false", readAll(path));
+
+		try (MutationLog log = MutationLog.open(path, 2)) {
+			log.appendDelete(1);
+		}
+		assertEquals("insert 1 [1.0, 2.0] false, delete 1", readAll(path));
+		Files.delete(path);
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		Path path = Files.createTempFile("mutations", ".log");
+		Files.delete(path);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try (MutationLog log = MutationLog.open(path, 2)) {
+			for (int i = 0; i < 200; i++) {
+				int id = i;
+				executor.submit(() -> log.sync(log.appendInsert(id, new float[] { id, id }, false)));
+			}
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		}
+		List<Integer> ids = new ArrayList<>();
+		MutationLog.read(path, 2, new MutationLog.Visitor() {
+			@Override
+			public void onInsert(int id, float[] item, boolean normalized) {
+				assertEquals(id, (int) item[0]);
+				ids.add(id);
+			}
+
+			@Override
+			public void onDelete(int id) {
+			}
+		});
+		assertEquals(200, ids.size());
+		Files.delete(path);
+	}
+
+	@Test
+	public void testFailedLogRejectsAppendsAndSyncs() throws IOException {
+		Path path = Files.createTempFile("mutations", ".log");
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MutationLog log = MutationLog.open(channel, 2);
+		long synced = log.appendInsert(1, new float[] { 1.0f, 2.0f }, false);
+		log.sync(synced);
+		long lost = log.appendInsert(2, new float[] { 3.0f, 4.0f }, false);
+		channel.close();
+
+		try {
+			log.sync(lost);
+			fail("the record was not written");
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof ClosedChannelException);
+		}
+		log.sync(synced);
+		try {
+			log.appendDelete(1);
+			fail("the log failed");
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof ClosedChannelException);
+		}
+		try {
+			log.sync();
+			fail("the log failed");
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof ClosedChannelException);
+		}
+		assertEquals("insert 1 [1.0, 2.0] false", readAll(path));
+		Files.delete(path);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDimensionMustMatch() throws IOException {
+		Path path = Files.createTempFile("mutations", ".log");
+		Files.delete(path);
+		MutationLog.open(path, 2).close();
+		try {
+			MutationLog.open(path, 3);
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	private static String readAll(Path path) {
+		List<String> records = new ArrayList<>();
+		MutationLog.read(path, 2, new MutationLog.Visitor() {
+			@Override
+			public void onInsert(int id, float[] item, boolean normalized) {
+				records.add("insert " + id + " [" + item[0] + ", " + item[1] + "] " + normalized);
+			}
+
+			@Override
+			public void onDelete(int id) {
+				records.add("delete " + id);
+			}
+		});
+		return String.join(", ", records);
+	}
+}
@@ -3,6 +3,8 @@
 #include <fstream>
 #include <mutex>
 #include <algorithm>
+#include <limits>
+#include "visited_list_pool.h"
 
 namespace hnswlib {
     template<typename dist_t>
@@ -23,7 +25,8 @@ namespace hnswlib {
             size_per_element_ = data_size_ + sizeof(labeltype);
             data_ = (char *) malloc(maxElements * size_per_element_);
             if (data_ == nullptr)
-                std::runtime_error("Not enough memory: BruteforceSearch failed to allocate data");
+                throw std::runtime_error("Not enough memory: BruteforceSearch failed to allocate data");
+            memory_tracker_.add(maxelements_ * size_per_element_);
             cur_element_count = 0;
         }
 
@@ -31,6 +34,9 @@ namespace hnswlib {
             free(data_);
         }
 
+        // bytes allocated for the elements
+        MemoryTracker memory_tracker_;
+
         char *data_;
         size_t maxelements_;
         size_t cur_element_count;
@@ -72,41 +78,70 @@ namespace hnswlib {
 
         };
 
-        void removePoint(labeltype cur_external) {
-            size_t cur_c=dict_external_to_internal[cur_external];
-
-            dict_external_to_internal.erase(cur_external);
-
-            labeltype label=*((labeltype*)(data_ + size_per_element_ * (cur_element_count-1) + data_size_));
-            dict_external_to_internal[label]=cur_c;
-            memcpy(data_ + size_per_element_ * cur_c,
-                   data_ + size_per_element_ * (cur_element_count-1),
-                   data_size_+sizeof(labeltype));
+        // Removes an element by moving the last one into its slot; returns false if the label is unknown.
+        bool removePoint(labeltype cur_external) {
+            std::unique_lock<std::mutex> lock(index_lock);
+            auto search = dict_external_to_internal.find(cur_external);
+            if (search == dict_external_to_internal.end())
+                return false;
+            size_t cur_c=search->second;
+
+            dict_external_to_internal.erase(search);
+
+            if (cur_c != cur_element_count - 1) {
+                labeltype label=*((labeltype*)(data_ + size_per_element_ * (cur_element_count-1) + data_size_));
+                dict_external_to_internal[label]=cur_c;
+                memcpy(data_ + size_per_element_ * cur_c,
+                       data_ + size_per_element_ * (cur_element_count-1),
+                       data_size_+sizeof(labeltype));
+            }
             cur_element_count--;
+            return true;
+        }
+
+        // Returns the stored data of a label, or nullptr if it is unknown.
+        char *getDataByLabel(labeltype label) {
+            std::unique_lock<std::mutex> lock(index_lock);
+            auto search = dict_external_to_internal.find(label);
+            if (search == dict_external_to_internal.end())
+                return nullptr;
+            return data_ + size_per_element_ * search->second;
+        }
 
+        void resizeIndex(size_t new_max_elements) {
+            if (new_max_elements < cur_element_count)
+                throw std::runtime_error("Cannot resize, max element is less than the current number of elements");
+            char *data_new = (char *) realloc(data_, std::max(new_max_elements, (size_t) 1) * size_per_element_);
+            if (data_new == nullptr)
+                throw std::runtime_error("Not enough memory: resizeIndex failed to reallocate data");
+            memory_tracker_.remove(maxelements_ * size_per_element_);
+            memory_tracker_.add(new_max_elements * size_per_element_);
+            data_ = data_new;
+            maxelements_ = new_max_elements;
         }
 
 
         std::priority_queue<std::pair<dist_t, labeltype >>
-        searchKnn(const void *query_data, size_t k) const {
+        searchKnn(const void *query_data, size_t k, BaseFilterFunctor* isIdAllowed = nullptr, SearchStats* stats = nullptr) const {
             std::priority_queue<std::pair<dist_t, labeltype >> topResults;
-            if (cur_element_count == 0) return topResults;
-            for (int i = 0; i < k; i++) {
-                dist_t dist = fstdistfunc_(query_data, data_ + size_per_element_ * i, dist_func_param_);
-                topResults.push(std::pair<dist_t, labeltype>(dist, *((labeltype *) (data_ + size_per_element_ * i +
-                                                                                    data_size_))));
-            }
-            dist_t lastdist = topResults.top().first;
-            for (int i = k; i < cur_element_count; i++) {
+            if (cur_element_count == 0 || k == 0) return topResults;
+            dist_t lastdist = std::numeric_limits<dist_t>::max();
+            for (size_t i = 0; i < cur_element_count; i++) {
+                labeltype label = *((labeltype *) (data_ + size_per_element_ * i + data_size_));
+                if (isIdAllowed && !(*isIdAllowed)(label)) {
+                    continue;
+                }
                 dist_t dist = fstdistfunc_(query_data, data_ + size_per_element_ * i, dist_func_param_);
-                if (dist <= lastdist) {
-                    topResults.push(std::pair<dist_t, labeltype>(dist, *((labeltype *) (data_ + size_per_element_ * i +
-                                                                                        data_size_))));
+                if (stats) {
+                    stats->distance_computations++;
+                    stats->visited_nodes++;
+                }
+                if (topResults.size() < k || dist <= lastdist) {
+                    topResults.push(std::pair<dist_t, labeltype>(dist, label));
                     if (topResults.size() > k)
                         topResults.pop();
                     lastdist = topResults.top().first;
                 }
-
             }
             return topResults;
         };
@@ -158,9 +193,14 @@ namespace hnswlib {
             size_per_element_ = data_size_ + sizeof(labeltype);
             data_ = (char *) malloc(maxelements_ * size_per_element_);
             if (data_ == nullptr)
-                std::runtime_error("Not enough memory: loadIndex failed to allocate data");
+                throw std::runtime_error("Not enough memory: loadIndex failed to allocate data");
+            memory_tracker_.add(maxelements_ * size_per_element_);
 
             input.read(data_, maxelements_ * size_per_element_);
+            for (size_t i = 0; i < cur_element_count; i++) {
+                labeltype label = *((labeltype *) (data_ + size_per_element_ * i + data_size_));
+                dict_external_to_internal[label] = i;
+            }
 
             input.close();
 
@@ -8,6 +8,17 @@
 #include <unordered_set>
 #include <list>
 #include <assert.h>
+#if defined(_WIN32)
+#ifndef NOMINMAX
+#define NOMINMAX
+#endif
+#include <windows.h>
+#else
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+#endif
 
 namespace hnswlib {
     typedef unsigned int tableint;
@@ -25,6 +36,10 @@ namespace hnswlib {
             loadIndex(location, s, max_elements);
         }
 
+        HierarchicalNSW(SpaceInterface<dist_t> *s, std::istream &input, size_t max_elements=0) {
+            loadIndex(input, s, max_elements);
+        }
+
         HierarchicalNSW(SpaceInterface<dist_t> *s, size_t max_elements, size_t M = 16, size_t ef_construction = 200, size_t random_seed = 100) :
                 link_list_locks_(max_elements), element_levels_(max_elements), link_list_update_locks_(max_update_element_locks) {
             max_elements_ = max_elements;
@@ -54,7 +69,7 @@ namespace hnswlib {
 
             cur_element_count = 0;
 
-            visited_list_pool_ = new VisitedListPool(1, max_elements);
+            visited_list_pool_ = new VisitedListPool(1, max_elements, &memory_tracker_);
 
 
 
@@ -68,6 +83,7 @@ namespace hnswlib {
             size_links_per_element_ = maxM_ * sizeof(tableint) + sizeof(linklistsizeint);
             mult_ = 1 / log(1.0 * M_);
             revSize_ = 1.0 / mult_;
+            updateStructuralMemory();
         }
 
         struct CompareByFirst {
@@ -79,10 +95,17 @@ namespace hnswlib {
 
         ~HierarchicalNSW() {
 
-            free(data_level0_memory_);
-            for (tableint i = 0; i < cur_element_count; i++) {
-                if (element_levels_[i] > 0)
-                    free(linkLists_[i]);
+            if (mapped_memory_ != nullptr) {
+                // level 0 and the link lists live in the mapping
+                unmapFile();
+            } else {
+                free(data_level0_memory_);
+                for (tableint i = 0; i < cur_element_count; i++) {
+                    if (element_levels_[i] > 0) {
+                        free(linkLists_[i]);
+                        memory_tracker_.remove(size_links_per_element_ * element_levels_[i] + 1);
+                    }
+                }
             }
             free(linkLists_);
             delete visited_list_pool_;
@@ -102,6 +125,10 @@ namespace hnswlib {
         int maxlevel_;
 
 
+        // bytes allocated by the index (see getMemoryUsage)
+        MemoryTracker memory_tracker_;
+        size_t structural_memory_ = 0;
+
         VisitedListPool *visited_list_pool_;
         std::mutex cur_element_count_guard_;
 
@@ -131,6 +158,18 @@ namespace hnswlib {
         void *dist_func_param_;
         std::unordered_map<labeltype, tableint> label_lookup_;
 
+        // internal ids of the elements marked as deleted (slots that insertions may reuse)
+        std::mutex deleted_elements_lock_;
+        std::unordered_set<tableint> deleted_elements_;
+
+        // set when the index is served from a read-only memory mapping (see loadIndexMapped)
+        char *mapped_memory_ = nullptr;
+        size_t mapped_size_ = 0;
+#if defined(_WIN32)
+        HANDLE mapped_file_ = INVALID_HANDLE_VALUE;
+        HANDLE mapped_file_mapping_ = nullptr;
+#endif
+
         std::default_random_engine level_generator_;
         std::default_random_engine update_probability_generator_;
 
@@ -241,12 +280,11 @@ namespace hnswlib {
             return top_candidates;
         }
 
-        mutable std::atomic<long> metric_distance_computations;
-        mutable std::atomic<long> metric_hops;
-
+        // collect_metrics requires stats: the counters are per search, so concurrent searches do not contend on them
         template <bool has_deletions, bool collect_metrics=false>
         std::priority_queue<std::pair<dist_t, tableint>, std::vector<std::pair<dist_t, tableint>>, CompareByFirst>
-        searchBaseLayerST(tableint ep_id, const void *data_point, size_t ef) const {
+        searchBaseLayerST(tableint ep_id, const void *data_point, size_t ef, BaseFilterFunctor* isIdAllowed = nullptr,
+                          SearchStats* stats = nullptr) const {
             VisitedList *vl = visited_list_pool_->getFreeVisitedList();
             vl_type *visited_array = vl->mass;
             vl_type visited_array_tag = vl->curV;
@@ -255,7 +293,7 @@ namespace hnswlib {
             std::priority_queue<std::pair<dist_t, tableint>, std::vector<std::pair<dist_t, tableint>>, CompareByFirst> candidate_set;
 
             dist_t lowerBound;
-            if (!has_deletions || !isMarkedDeleted(ep_id)) {
+            if ((!has_deletions || !isMarkedDeleted(ep_id)) && ((!isIdAllowed) || (*isIdAllowed)(getExternalLabel(ep_id)))) {
                 dist_t dist = fstdistfunc_(data_point, getDataByInternalId(ep_id), dist_func_param_);
                 lowerBound = dist;
                 top_candidates.emplace(dist, ep_id);
@@ -266,12 +304,16 @@ namespace hnswlib {
             }
 
             visited_array[ep_id] = visited_array_tag;
+            if(collect_metrics){
+                stats->visited_nodes++;
+            }
 
             while (!candidate_set.empty()) {
 
                 std::pair<dist_t, tableint> current_node_pair = candidate_set.top();
 
-                if ((-current_node_pair.first) > lowerBound) {
+                // with a filter, keep exploring until ef allowed elements are found
+                if ((-current_node_pair.first) > lowerBound && (!isIdAllowed || top_candidates.size() == ef)) {
                     break;
                 }
                 candidate_set.pop();
@@ -281,8 +323,7 @@ namespace hnswlib {
                 size_t size = getListCount((linklistsizeint*)data);
 //                bool cur_node_deleted = isMarkedDeleted(current_node_id);
                 if(collect_metrics){
-                    metric_hops++;
-                    metric_distance_computations+=size;
+                    stats->candidates_expanded++;
                 }
 
 #ifdef USE_SSE
@@ -306,6 +347,10 @@ namespace hnswlib {
 
                         char *currObj1 = (getDataByInternalId(candidate_id));
                         dist_t dist = fstdistfunc_(data_point, currObj1, dist_func_param_);
+                        if(collect_metrics){
+                            stats->visited_nodes++;
+                            stats->distance_computations++;
+                        }
 
                         if (top_candidates.size() < ef || lowerBound > dist) {
                             candidate_set.emplace(-dist, candidate_id);
@@ -315,7 +360,7 @@ namespace hnswlib {
                                          _MM_HINT_T0);////////////////////////
 #endif
 
-                            if (!has_deletions || !isMarkedDeleted(candidate_id))
+                            if ((!has_deletions || !isMarkedDeleted(candidate_id)) && ((!isIdAllowed) || (*isIdAllowed)(getExternalLabel(candidate_id))))
                                 top_candidates.emplace(dist, candidate_id);
 
                             if (top_candidates.size() > ef)
@@ -570,7 +615,7 @@ namespace hnswlib {
 
 
             delete visited_list_pool_;
-            visited_list_pool_ = new VisitedListPool(1, new_max_elements);
+            visited_list_pool_ = new VisitedListPool(1, new_max_elements, &memory_tracker_);
 
 
 
@@ -595,13 +640,18 @@ namespace hnswlib {
             linkLists_=linkLists_new;
 
             max_elements_=new_max_elements;
+            updateStructuralMemory();
 
         }
 
         void saveIndex(const std::string &location) {
             std::ofstream output(location, std::ios::binary);
-            std::streampos position;
+            saveIndex(output);
+            output.close();
+        }
 
+        // writes the index sequentially, so output does not need to be seekable
+        void saveIndex(std::ostream &output) {
             writeBinaryPOD(output, offsetLevel0_);
             writeBinaryPOD(output, max_elements_);
             writeBinaryPOD(output, cur_element_count);
@@ -625,7 +675,9 @@ namespace hnswlib {
                 if (linkListSize)
                     output.write(linkLists_[i], linkListSize);
             }
-            output.close();
+            output.flush();
+            if (!output)
+                throw std::runtime_error("Cannot write the index");
         }
 
         void loadIndex(const std::string &location, SpaceInterface<dist_t> *s, size_t max_elements_i=0) {
@@ -645,11 +697,6 @@ namespace hnswlib {
             readBinaryPOD(input, offsetLevel0_);
             readBinaryPOD(input, max_elements_);
             readBinaryPOD(input, cur_element_count);
-
-            size_t max_elements=max_elements_i;
-            if(max_elements < cur_element_count)
-                max_elements = max_elements_;
-            max_elements_ = max_elements;
             readBinaryPOD(input, size_data_per_element_);
             readBinaryPOD(input, label_offset_);
             readBinaryPOD(input, offsetData_);
@@ -663,13 +710,6 @@ namespace hnswlib {
             readBinaryPOD(input, ef_construction_);
 
 
-            data_size_ = s->get_data_size();
-            fstdistfunc_ = s->get_dist_func();
-            dist_func_param_ = s->get_dist_func_param();
-
-            auto pos=input.tellg();
-
-
             /// Optional - check if index is ok:
 
             input.seekg(cur_element_count * size_data_per_element_,input.cur);
@@ -693,13 +733,51 @@ namespace hnswlib {
 
             /// Optional check end
 
-            input.seekg(pos,input.beg);
+            input.seekg(0,input.beg);
+            loadIndex(input, s, max_elements_i);
+            input.close();
+        }
+
+        /**
+         * Loads an index saved via saveIndex reading input sequentially (it does not need
+         * to be seekable, e.g., a socket). Unlike the file variant, the size of the index
+         * is not checked upfront: truncated or inconsistent input is detected while reading.
+         */
+        void loadIndex(std::istream &input, SpaceInterface<dist_t> *s, size_t max_elements_i=0) {
+            readBinaryPOD(input, offsetLevel0_);
+            readBinaryPOD(input, max_elements_);
+            readBinaryPOD(input, cur_element_count);
+
+            size_t max_elements=max_elements_i;
+            if(max_elements < cur_element_count)
+                max_elements = max_elements_;
+            max_elements_ = max_elements;
+            readBinaryPOD(input, size_data_per_element_);
+            readBinaryPOD(input, label_offset_);
+            readBinaryPOD(input, offsetData_);
+            readBinaryPOD(input, maxlevel_);
+            readBinaryPOD(input, enterpoint_node_);
+
+            readBinaryPOD(input, maxM_);
+            readBinaryPOD(input, maxM0_);
+            readBinaryPOD(input, M_);
+            readBinaryPOD(input, mult_);
+            readBinaryPOD(input, ef_construction_);
+
+            if (!input || cur_element_count > max_elements_ || size_data_per_element_ == 0)
+                throw std::runtime_error("Index seems to be corrupted or unsupported");
+
+            data_size_ = s->get_data_size();
+            fstdistfunc_ = s->get_dist_func();
+            dist_func_param_ = s->get_dist_func_param();
 
 
             data_level0_memory_ = (char *) malloc(max_elements * size_data_per_element_);
             if (data_level0_memory_ == nullptr)
                 throw std::runtime_error("Not enough memory: loadIndex failed to allocate level0");
             input.read(data_level0_memory_, cur_element_count * size_data_per_element_);
+            if (!input)
+                throw std::runtime_error("Index seems to be corrupted or unsupported");
 
 
 
@@ -712,7 +790,7 @@ namespace hnswlib {
             std::vector<std::mutex>(max_update_element_locks).swap(link_list_update_locks_);
 
 
-            visited_list_pool_ = new VisitedListPool(1, max_elements);
+            visited_list_pool_ = new VisitedListPool(1, max_elements, &memory_tracker_);
 
 
             linkLists_ = (char **) malloc(sizeof(void *) * max_elements);
@@ -725,6 +803,8 @@ namespace hnswlib {
                 label_lookup_[getExternalLabel(i)]=i;
                 unsigned int linkListSize;
                 readBinaryPOD(input, linkListSize);
+                if (!input || linkListSize % size_links_per_element_ != 0)
+                    throw std::runtime_error("Index seems to be corrupted or unsupported");
                 if (linkListSize == 0) {
                     element_levels_[i] = 0;
 
@@ -734,22 +814,111 @@ namespace hnswlib {
                     linkLists_[i] = (char *) malloc(linkListSize);
                     if (linkLists_[i] == nullptr)
                         throw std::runtime_error("Not enough memory: loadIndex failed to allocate linklist");
+                    memory_tracker_.add(linkListSize);
                     input.read(linkLists_[i], linkListSize);
+                    if (!input)
+                        throw std::runtime_error("Index seems to be corrupted or unsupported");
                 }
             }
 
             has_deletions_=false;
 
             for (size_t i = 0; i < cur_element_count; i++) {
-                if(isMarkedDeleted(i))
+                if(isMarkedDeleted(i)) {
                     has_deletions_=true;
+                    deleted_elements_.insert(i);
+                }
             }
-
-            input.close();
+            updateStructuralMemory();
 
             return;
         }
 
+        /**
+         * Loads an index saved via saveIndex by mapping the file read-only into memory.
+         * Level 0 and the upper-level link lists are served straight from the mapping
+         * (nothing is copied), so processes mapping the same file share the page cache.
+         * The resulting index is read-only: it cannot be extended, updated or marked.
+         */
+        void loadIndexMapped(const std::string &location, SpaceInterface<dist_t> *s) {
+            // keeps the destructor safe if the file turns out to be corrupted
+            linkLists_ = nullptr;
+            visited_list_pool_ = nullptr;
+            mapFile(location);
+            char *end = mapped_memory_ + mapped_size_;
+            char *position = mapped_memory_;
+
+            readMappedPOD(position, end, offsetLevel0_);
+            readMappedPOD(position, end, max_elements_);
+            readMappedPOD(position, end, cur_element_count);
+            readMappedPOD(position, end, size_data_per_element_);
+            readMappedPOD(position, end, label_offset_);
+            readMappedPOD(position, end, offsetData_);
+            readMappedPOD(position, end, maxlevel_);
+            readMappedPOD(position, end, enterpoint_node_);
+
+            readMappedPOD(position, end, maxM_);
+            readMappedPOD(position, end, maxM0_);
+            readMappedPOD(position, end, M_);
+            readMappedPOD(position, end, mult_);
+            readMappedPOD(position, end, ef_construction_);
+
+            // a mapped index cannot grow
+            max_elements_ = cur_element_count;
+
+            data_size_ = s->get_data_size();
+            fstdistfunc_ = s->get_dist_func();
+            dist_func_param_ = s->get_dist_func_param();
+
+            if ((size_t) (end - position) < cur_element_count * size_data_per_element_)
+                throw std::runtime_error("Index seems to be corrupted or unsupported");
+            data_level0_memory_ = position;
+            position += cur_element_count * size_data_per_element_;
+
+            size_links_per_element_ = maxM_ * sizeof(tableint) + sizeof(linklistsizeint);
+            size_links_level0_ = maxM0_ * sizeof(tableint) + sizeof(linklistsizeint);
+            std::vector<std::mutex>(max_elements_).swap(link_list_locks_);
+            std::vector<std::mutex>(max_update_element_locks).swap(link_list_update_locks_);
+
+            visited_list_pool_ = new VisitedListPool(1, max_elements_, &memory_tracker_);
+
+            linkLists_ = (char **) malloc(sizeof(void *) * std::max(max_elements_, (size_t) 1));
+            if (linkLists_ == nullptr)
+                throw std::runtime_error("Not enough memory: loadIndexMapped failed to allocate linklists");
+            element_levels_ = std::vector<int>(max_elements_);
+            revSize_ = 1.0 / mult_;
+            ef_ = 10;
+            has_deletions_ = false;
+            for (size_t i = 0; i < cur_element_count; i++) {
+                label_lookup_[getExternalLabel(i)] = i;
+                if (isMarkedDeleted(i)) {
+                    has_deletions_ = true;
+                    deleted_elements_.insert(i);
+                }
+                unsigned int linkListSize;
+                readMappedPOD(position, end, linkListSize);
+                if (linkListSize == 0) {
+                    element_levels_[i] = 0;
+                    linkLists_[i] = nullptr;
+                } else {
+                    if ((size_t) (end - position) < linkListSize)
+                        throw std::runtime_error("Index seems to be corrupted or unsupported");
+                    element_levels_[i] = linkListSize / size_links_per_element_;
+                    linkLists_[i] = position;
+                    position += linkListSize;
+                }
+            }
+
+            // throw exception if it either corrupted or old index
+            if (position != end)
+                throw std::runtime_error("Index seems to be corrupted or unsupported");
+            updateStructuralMemory();
+        }
+
+        bool isMapped() const {
+            return mapped_memory_ != nullptr;
+        }
+
         template<typename data_t>
         std::vector<data_t> getDataByLabel(labeltype label)
         {
@@ -793,8 +962,12 @@ namespace hnswlib {
          * @param internalId
          */
         void markDeletedInternal(tableint internalId) {
+            std::unique_lock <std::mutex> lock_deleted(deleted_elements_lock_);
             unsigned char *ll_cur = ((unsigned char *)get_linklist0(internalId))+2;
-            *ll_cur |= DELETE_MARK;
+            if (!(*ll_cur & DELETE_MARK)) {
+                *ll_cur |= DELETE_MARK;
+                deleted_elements_.insert(internalId);
+            }
         }
 
         /**
@@ -802,8 +975,54 @@ namespace hnswlib {
          * @param internalId
          */
         void unmarkDeletedInternal(tableint internalId) {
+            std::unique_lock <std::mutex> lock_deleted(deleted_elements_lock_);
             unsigned char *ll_cur = ((unsigned char *)get_linklist0(internalId))+2;
             *ll_cur &= ~DELETE_MARK;
+            deleted_elements_.erase(internalId);
+        }
+
+        /**
+         * Bytes allocated by the index: level 0, the link lists, the locks and the visited
+         * lists (the hash tables of labels and deleted elements are not counted). The pages
+         * of a memory-mapped index belong to the page cache and are not counted either.
+         */
+        size_t getMemoryUsage() {
+            return memory_tracker_.get();
+        }
+
+        /**
+         * Recomputes the memory sized by max_elements_ (after a resize or a load).
+         */
+        void updateStructuralMemory() {
+            size_t structural_memory = max_elements_ * (sizeof(void *) + sizeof(int) + sizeof(std::mutex))
+                    + max_update_element_locks * sizeof(std::mutex);
+            if (mapped_memory_ == nullptr)
+                structural_memory += max_elements_ * size_data_per_element_;
+            memory_tracker_.remove(structural_memory_);
+            memory_tracker_.add(structural_memory);
+            structural_memory_ = structural_memory;
+        }
+
+        /**
+         * Number of elements marked as deleted, i.e., slots which can be reused by
+         * insertions with replace_deleted.
+         */
+        size_t getDeletedCount() {
+            std::unique_lock <std::mutex> lock_deleted(deleted_elements_lock_);
+            return deleted_elements_.size();
+        }
+
+        /**
+         * Takes a deleted element out of the reusable slots (it stays marked as deleted).
+         */
+        bool takeDeletedElement(tableint &internalId) {
+            std::unique_lock <std::mutex> lock_deleted(deleted_elements_lock_);
+            if (deleted_elements_.empty())
+                return false;
+            auto first = deleted_elements_.begin();
+            internalId = *first;
+            deleted_elements_.erase(first);
+            return true;
         }
 
         /**
@@ -824,6 +1043,67 @@ namespace hnswlib {
             *((unsigned short int*)(ptr))=*((unsigned short int *)&size);
         }
 
+        template<typename T>
+        static void readMappedPOD(char *&position, const char *end, T &podRef) {
+            if ((size_t) (end - position) < sizeof(T))
+                throw std::runtime_error("Index seems to be corrupted or unsupported");
+            memcpy((char *) &podRef, position, sizeof(T));
+            position += sizeof(T);
+        }
+
+        void mapFile(const std::string &location) {
+#if defined(_WIN32)
+            mapped_file_ = CreateFileA(location.c_str(), GENERIC_READ, FILE_SHARE_READ, nullptr, OPEN_EXISTING, FILE_ATTRIBUTE_NORMAL, nullptr);
+            if (mapped_file_ == INVALID_HANDLE_VALUE)
+                throw std::runtime_error("Cannot open file");
+            LARGE_INTEGER file_size;
+            if (!GetFileSizeEx(mapped_file_, &file_size) || file_size.QuadPart == 0) {
+                CloseHandle(mapped_file_);
+                mapped_file_ = INVALID_HANDLE_VALUE;
+                throw std::runtime_error("Cannot map file");
+            }
+            mapped_file_mapping_ = CreateFileMappingA(mapped_file_, nullptr, PAGE_READONLY, 0, 0, nullptr);
+            void *memory = mapped_file_mapping_ != nullptr ? MapViewOfFile(mapped_file_mapping_, FILE_MAP_READ, 0, 0, 0) : nullptr;
+            if (memory == nullptr) {
+                if (mapped_file_mapping_ != nullptr)
+                    CloseHandle(mapped_file_mapping_);
+                CloseHandle(mapped_file_);
+                mapped_file_mapping_ = nullptr;
+                mapped_file_ = INVALID_HANDLE_VALUE;
+                throw std::runtime_error("Cannot map file");
+            }
+            mapped_size_ = (size_t) file_size.QuadPart;
+#else
+            int fd = open(location.c_str(), O_RDONLY);
+            if (fd < 0)
+                throw std::runtime_error("Cannot open file");
+            struct stat file_stat;
+            if (fstat(fd, &file_stat) != 0 || file_stat.st_size == 0) {
+                close(fd);
+                throw std::runtime_error("Cannot map file");
+            }
+            void *memory = mmap(nullptr, (size_t) file_stat.st_size, PROT_READ, MAP_SHARED, fd, 0);
+            // the mapping stays valid after the descriptor is closed
+            close(fd);
+            if (memory == MAP_FAILED)
+                throw std::runtime_error("Cannot map file");
+            mapped_size_ = (size_t) file_stat.st_size;
+#endif
+            mapped_memory_ = (char *) memory;
+        }
+
+        void unmapFile() {
+#if defined(_WIN32)
+            UnmapViewOfFile(mapped_memory_);
+            CloseHandle(mapped_file_mapping_);
+            CloseHandle(mapped_file_);
+#else
+            munmap(mapped_memory_, mapped_size_);
+#endif
+            mapped_memory_ = nullptr;
+            mapped_size_ = 0;
+        }
+
         void addPoint(const void *data_point, labeltype label) {
             addPoint(data_point, label,-1);
         }
@@ -978,7 +1258,12 @@ namespace hnswlib {
             return result;
         };
 
-        tableint addPoint(const void *data_point, labeltype label, int level) {
+        /**
+         * Adds a point (or updates the point with the same label). With replace_deleted, the
+         * point takes the slot of a deleted element when there is one (its label is dropped and
+         * its neighbourhood repaired as in an update), and re-adding a deleted label revives it.
+         */
+        tableint addPoint(const void *data_point, labeltype label, int level, bool replace_deleted = false) {
 
             tableint cur_c = 0;
             {
@@ -988,6 +1273,9 @@ namespace hnswlib {
                 auto search = label_lookup_.find(label);
                 if (search != label_lookup_.end()) {
                     tableint existingInternalId = search->second;
+                    // unmarked while holding the guard, so no other insertion reuses its slot
+                    if (replace_deleted && isMarkedDeleted(existingInternalId))
+                        unmarkDeletedInternal(existingInternalId);
 
                     templock_curr.unlock();
 
@@ -996,6 +1284,21 @@ namespace hnswlib {
                     return existingInternalId;
                 }
 
+                tableint replacedInternalId;
+                if (replace_deleted && takeDeletedElement(replacedInternalId)) {
+                    label_lookup_.erase(getExternalLabel(replacedInternalId));
+                    label_lookup_[label] = replacedInternalId;
+
+                    templock_curr.unlock();
+
+                    std::unique_lock <std::mutex> lock_el_update(link_list_update_locks_[(replacedInternalId & (max_update_element_locks - 1))]);
+                    memcpy(getExternalLabeLp(replacedInternalId), &label, sizeof(labeltype));
+                    // unmarked before the update, which would otherwise link the slot to itself when it is the entry point
+                    unmarkDeletedInternal(replacedInternalId);
+                    updatePoint(data_point, replacedInternalId, 1.0);
+                    return replacedInternalId;
+                }
+
                 if (cur_element_count >= max_elements_) {
                     throw std::runtime_error("The number of elements exceeds the specified limit");
                 };
@@ -1035,6 +1338,7 @@ namespace hnswlib {
                 if (linkLists_[cur_c] == nullptr)
                     throw std::runtime_error("Not enough memory: addPoint failed to allocate linklist");
                 memset(linkLists_[cur_c], 0, size_links_per_element_ * curlevel + 1);
+                memory_tracker_.add(size_links_per_element_ * curlevel + 1);
             }
 
             if ((signed)currObj != -1) {
@@ -1101,12 +1405,22 @@ namespace hnswlib {
         };
 
         std::priority_queue<std::pair<dist_t, labeltype >>
-        searchKnn(const void *query_data, size_t k) const {
+        searchKnn(const void *query_data, size_t k, BaseFilterFunctor* isIdAllowed = nullptr, SearchStats* stats = nullptr) const {
+            return searchKnnWithEf(query_data, k, ef_, isIdAllowed, stats);
+        }
+
+        // Same as searchKnn, with the ef of this query (the ef_ of the index is neither read nor changed).
+        std::priority_queue<std::pair<dist_t, labeltype >>
+        searchKnnWithEf(const void *query_data, size_t k, size_t ef, BaseFilterFunctor* isIdAllowed = nullptr, SearchStats* stats = nullptr) const {
             std::priority_queue<std::pair<dist_t, labeltype >> result;
             if (cur_element_count == 0) return result;
 
             tableint currObj = enterpoint_node_;
             dist_t curdist = fstdistfunc_(query_data, getDataByInternalId(enterpoint_node_), dist_func_param_);
+            if (stats) {
+                stats->distance_computations++;
+                stats->layers += maxlevel_ + 1;
+            }
 
             for (int level = maxlevel_; level > 0; level--) {
                 bool changed = true;
@@ -1116,8 +1430,10 @@ namespace hnswlib {
 
                     data = (unsigned int *) get_linklist(currObj, level);
                     int size = getListCount(data);
-                    metric_hops++;
-                    metric_distance_computations+=size;
+                    if (stats) {
+                        stats->upper_layer_hops++;
+                        stats->distance_computations += size;
+                    }
 
                     tableint *datal = (tableint *) (data + 1);
                     for (int i = 0; i < size; i++) {
@@ -1136,13 +1452,23 @@ namespace hnswlib {
             }
 
             std::priority_queue<std::pair<dist_t, tableint>, std::vector<std::pair<dist_t, tableint>>, CompareByFirst> top_candidates;
-            if (has_deletions_) {                
-                top_candidates=searchBaseLayerST<true,true>(
-                        currObj, query_data, std::max(ef_, k));
+            if (stats) {
+                if (has_deletions_) {
+                    top_candidates=searchBaseLayerST<true,true>(
+                            currObj, query_data, std::max(ef, k), isIdAllowed, stats);
+                }
+                else{
+                    top_candidates=searchBaseLayerST<false,true>(
+                            currObj, query_data, std::max(ef, k), isIdAllowed, stats);
+                }
+            }
+            else if (has_deletions_) {
+                top_candidates=searchBaseLayerST<true>(
+                        currObj, query_data, std::max(ef, k), isIdAllowed);
             }
             else{
-                top_candidates=searchBaseLayerST<false,true>(
-                        currObj, query_data, std::max(ef_, k));
+                top_candidates=searchBaseLayerST<false>(
+                        currObj, query_data, std::max(ef, k), isIdAllowed);
             }
 
             while (top_candidates.size() > k) {
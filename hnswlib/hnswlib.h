@@ -23,6 +23,19 @@
 #endif
 #endif
 
+// The AVX, AVX2 and AVX-512 kernels are compiled for their own targets (whatever the flags of
+// the build) and selected at runtime, according to the features of the CPU (see GetSimdLevel).
+#if defined(USE_SSE) && defined(__GNUC__)
+#define USE_SIMD_DISPATCH
+#define TARGET_AVX __attribute__((target("avx")))
+#define TARGET_AVX2 __attribute__((target("avx2,fma,f16c")))
+#define TARGET_AVX512 __attribute__((target("avx512f")))
+#include <cpuid.h>
+#endif
+
+#include <algorithm>
+#include <atomic>
+#include <cstdint>
 #include <queue>
 #include <vector>
 #include <iostream>
@@ -52,6 +65,72 @@ namespace hnswlib {
     template<typename MTYPE>
     using DISTFUNC = MTYPE(*)(const void *, const void *, const void *);
 
+    // Instruction sets used by the distance kernels (AVX2 also implies FMA and F16C).
+    enum SimdLevel {
+        SIMD_NONE = 0,
+        SIMD_SSE = 1,
+        SIMD_AVX = 2,
+        SIMD_AVX2 = 3,
+        SIMD_AVX512 = 4
+    };
+
+#if defined(USE_SIMD_DISPATCH)
+    // Register state enabled by the OS (XCR0), required on top of the CPUID bits.
+    inline uint64_t ReadXcr0() {
+        uint32_t eax, edx;
+        __asm__ __volatile__("xgetbv" : "=a"(eax), "=d"(edx) : "c"(0));
+        return ((uint64_t) edx << 32) | eax;
+    }
+
+    // Horizontal sum of an AVX-512 register. The halves are extracted with a full zero mask, since
+    // the unmasked intrinsics (and _mm512_reduce_add_ps) start from an undefined vector which
+    // GCC 12 reports as (maybe-)uninitialized under -Wall.
+    TARGET_AVX512 inline float ReduceAddAVX512(__m512 v) {
+        float PORTABLE_ALIGN32 TmpRes[8];
+        __m512d halves = _mm512_castps_pd(v);
+        __m256 sum = _mm256_add_ps(_mm256_castpd_ps(_mm512_maskz_extractf64x4_pd((__mmask8) -1, halves, 0)),
+                                   _mm256_castpd_ps(_mm512_maskz_extractf64x4_pd((__mmask8) -1, halves, 1)));
+        _mm256_store_ps(TmpRes, sum);
+        return TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
+    }
+#endif
+
+    inline SimdLevel DetectSimdLevel() {
+#if defined(USE_SIMD_DISPATCH)
+        unsigned int eax, ebx, ecx, edx;
+        if (!__get_cpuid(1, &eax, &ebx, &ecx, &edx))
+            return SIMD_SSE;
+        bool osxsave = (ecx & bit_OSXSAVE) != 0;
+        bool avx = osxsave && (ecx & bit_AVX) && (ReadXcr0() & 0x6) == 0x6;
+        if (!avx)
+            return SIMD_SSE;
+        bool fma_f16c = (ecx & bit_FMA) && (ecx & bit_F16C);
+        if (__get_cpuid_max(0, nullptr) < 7)
+            return SIMD_AVX;
+        __cpuid_count(7, 0, eax, ebx, ecx, edx);
+        if (!(fma_f16c && (ebx & bit_AVX2)))
+            return SIMD_AVX;
+        bool avx512 = (ebx & bit_AVX512F) && (ReadXcr0() & 0xe6) == 0xe6;
+        return avx512 ? SIMD_AVX512 : SIMD_AVX2;
+#elif defined(USE_SSE)
+        return SIMD_SSE;
+#else
+        return SIMD_NONE;
+#endif
+    }
+
+    // Upper bound of the SIMD level (for tests and benchmarks of the slower kernels).
+    inline std::atomic<int> &MaxSimdLevel() {
+        static std::atomic<int> max_simd_level{SIMD_AVX512};
+        return max_simd_level;
+    }
+
+    // SIMD level of the kernels chosen by the spaces created from now on.
+    inline SimdLevel GetSimdLevel() {
+        static const SimdLevel detected_simd_level = DetectSimdLevel();
+        return (SimdLevel) std::min((int) detected_simd_level, MaxSimdLevel().load());
+    }
+
 
     template<typename MTYPE>
     class SpaceInterface {
@@ -66,11 +145,28 @@ namespace hnswlib {
         virtual ~SpaceInterface() {}
     };
 
+    // Filter applied to the labels during the search: only labels for which it
+    // returns true are admitted into the results (the others are still traversed).
+    class BaseFilterFunctor {
+    public:
+        virtual bool operator()(labeltype id) { return true; }
+        virtual ~BaseFilterFunctor() {}
+    };
+
+    // Work done by a single search (filled only when requested, see searchKnn).
+    struct SearchStats {
+        size_t distance_computations = 0;
+        size_t visited_nodes = 0;  // distinct nodes reached in the base layer
+        size_t layers = 0;  // layers traversed (including the base layer)
+        size_t upper_layer_hops = 0;  // neighbour lists scanned by the greedy search in the upper layers
+        size_t candidates_expanded = 0;  // base layer candidates whose neighbour lists were scanned
+    };
+
     template<typename dist_t>
     class AlgorithmInterface {
     public:
         virtual void addPoint(const void *datapoint, labeltype label)=0;
-        virtual std::priority_queue<std::pair<dist_t, labeltype >> searchKnn(const void *, size_t) const = 0;
+        virtual std::priority_queue<std::pair<dist_t, labeltype >> searchKnn(const void *, size_t, BaseFilterFunctor* isIdAllowed = nullptr, SearchStats* stats = nullptr) const = 0;
         template <typename Comp>
         std::vector<std::pair<dist_t, labeltype>> searchKnn(const void*, size_t, Comp) {
         }
@@ -84,5 +180,6 @@ namespace hnswlib {
 
 #include "space_l2.h"
 #include "space_ip.h"
+#include "space_quantized.h"
 #include "bruteforce.h"
 #include "hnswalg.h"
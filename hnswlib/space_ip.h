@@ -14,11 +14,10 @@ namespace hnswlib {
 
     }
 
-#if defined(USE_AVX)
+#if defined(USE_SSE)
 
-// Favor using AVX if available.
     static float
-    InnerProductSIMD4Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+    InnerProductSIMD4ExtSSE(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         float PORTABLE_ALIGN32 TmpRes[8];
         float *pVect1 = (float *) pVect1v;
         float *pVect2 = (float *) pVect2v;
@@ -30,26 +29,34 @@ namespace hnswlib {
         const float *pEnd1 = pVect1 + 16 * qty16;
         const float *pEnd2 = pVect1 + 4 * qty4;
 
-        __m256 sum256 = _mm256_set1_ps(0);
+        __m128 v1, v2;
+        __m128 sum_prod = _mm_set1_ps(0);
 
         while (pVect1 < pEnd1) {
-            //_mm_prefetch((char*)(pVect2 + 16), _MM_HINT_T0);
+            v1 = _mm_loadu_ps(pVect1);
+            pVect1 += 4;
+            v2 = _mm_loadu_ps(pVect2);
+            pVect2 += 4;
+            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
 
-            __m256 v1 = _mm256_loadu_ps(pVect1);
-            pVect1 += 8;
-            __m256 v2 = _mm256_loadu_ps(pVect2);
-            pVect2 += 8;
-            sum256 = _mm256_add_ps(sum256, _mm256_mul_ps(v1, v2));
+            v1 = _mm_loadu_ps(pVect1);
+            pVect1 += 4;
+            v2 = _mm_loadu_ps(pVect2);
+            pVect2 += 4;
+            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
 
-            v1 = _mm256_loadu_ps(pVect1);
-            pVect1 += 8;
-            v2 = _mm256_loadu_ps(pVect2);
-            pVect2 += 8;
-            sum256 = _mm256_add_ps(sum256, _mm256_mul_ps(v1, v2));
-        }
+            v1 = _mm_loadu_ps(pVect1);
+            pVect1 += 4;
+            v2 = _mm_loadu_ps(pVect2);
+            pVect2 += 4;
+            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
 
-        __m128 v1, v2;
-        __m128 sum_prod = _mm_add_ps(_mm256_extractf128_ps(sum256, 0), _mm256_extractf128_ps(sum256, 1));
+            v1 = _mm_loadu_ps(pVect1);
+            pVect1 += 4;
+            v2 = _mm_loadu_ps(pVect2);
+            pVect2 += 4;
+            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
+        }
 
         while (pVect1 < pEnd2) {
             v1 = _mm_loadu_ps(pVect1);
@@ -60,24 +67,21 @@ namespace hnswlib {
         }
 
         _mm_store_ps(TmpRes, sum_prod);
-        float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];;
-        return 1.0f - sum;
-}
+        float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
 
-#elif defined(USE_SSE)
+        return 1.0f - sum;
+    }
 
     static float
-    InnerProductSIMD4Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+    InnerProductSIMD16ExtSSE(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         float PORTABLE_ALIGN32 TmpRes[8];
         float *pVect1 = (float *) pVect1v;
         float *pVect2 = (float *) pVect2v;
         size_t qty = *((size_t *) qty_ptr);
 
         size_t qty16 = qty / 16;
-        size_t qty4 = qty / 4;
 
         const float *pEnd1 = pVect1 + 16 * qty16;
-        const float *pEnd2 = pVect1 + 4 * qty4;
 
         __m128 v1, v2;
         __m128 sum_prod = _mm_set1_ps(0);
@@ -107,36 +111,57 @@ namespace hnswlib {
             pVect2 += 4;
             sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
         }
-
-        while (pVect1 < pEnd2) {
-            v1 = _mm_loadu_ps(pVect1);
-            pVect1 += 4;
-            v2 = _mm_loadu_ps(pVect2);
-            pVect2 += 4;
-            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
-        }
-
         _mm_store_ps(TmpRes, sum_prod);
         float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
 
         return 1.0f - sum;
     }
 
-#endif
+    template<DISTFUNC<float> InnerProductSIMD16Ext>
+    static float
+    InnerProductSIMD16ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty16 = qty >> 4 << 4;
+        float res = InnerProductSIMD16Ext(pVect1v, pVect2v, &qty16);
+        float *pVect1 = (float *) pVect1v + qty16;
+        float *pVect2 = (float *) pVect2v + qty16;
 
-#if defined(USE_AVX)
+        size_t qty_left = qty - qty16;
+        float res_tail = InnerProduct(pVect1, pVect2, &qty_left);
+        return res + res_tail - 1.0f;
+    }
 
+    template<DISTFUNC<float> InnerProductSIMD4Ext>
     static float
-    InnerProductSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+    InnerProductSIMD4ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty4 = qty >> 2 << 2;
+
+        float res = InnerProductSIMD4Ext(pVect1v, pVect2v, &qty4);
+        size_t qty_left = qty - qty4;
+
+        float *pVect1 = (float *) pVect1v + qty4;
+        float *pVect2 = (float *) pVect2v + qty4;
+        float res_tail = InnerProduct(pVect1, pVect2, &qty_left);
+
+        return res + res_tail - 1.0f;
+    }
+#endif
+
+#if defined(USE_SIMD_DISPATCH)
+
+    TARGET_AVX static float
+    InnerProductSIMD4ExtAVX(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         float PORTABLE_ALIGN32 TmpRes[8];
         float *pVect1 = (float *) pVect1v;
         float *pVect2 = (float *) pVect2v;
         size_t qty = *((size_t *) qty_ptr);
 
         size_t qty16 = qty / 16;
-
+        size_t qty4 = qty / 4;
 
         const float *pEnd1 = pVect1 + 16 * qty16;
+        const float *pEnd2 = pVect1 + 4 * qty4;
 
         __m256 sum256 = _mm256_set1_ps(0);
 
@@ -156,16 +181,24 @@ namespace hnswlib {
             sum256 = _mm256_add_ps(sum256, _mm256_mul_ps(v1, v2));
         }
 
-        _mm256_store_ps(TmpRes, sum256);
-        float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
+        __m128 v1, v2;
+        __m128 sum_prod = _mm_add_ps(_mm256_extractf128_ps(sum256, 0), _mm256_extractf128_ps(sum256, 1));
+
+        while (pVect1 < pEnd2) {
+            v1 = _mm_loadu_ps(pVect1);
+            pVect1 += 4;
+            v2 = _mm_loadu_ps(pVect2);
+            pVect2 += 4;
+            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
+        }
 
+        _mm_store_ps(TmpRes, sum_prod);
+        float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
         return 1.0f - sum;
     }
 
-#elif defined(USE_SSE)
-
-      static float
-      InnerProductSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+    TARGET_AVX static float
+    InnerProductSIMD16ExtAVX(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         float PORTABLE_ALIGN32 TmpRes[8];
         float *pVect1 = (float *) pVect1v;
         float *pVect2 = (float *) pVect2v;
@@ -173,71 +206,62 @@ namespace hnswlib {
 
         size_t qty16 = qty / 16;
 
+
         const float *pEnd1 = pVect1 + 16 * qty16;
 
-        __m128 v1, v2;
-        __m128 sum_prod = _mm_set1_ps(0);
+        __m256 sum256 = _mm256_set1_ps(0);
 
         while (pVect1 < pEnd1) {
-            v1 = _mm_loadu_ps(pVect1);
-            pVect1 += 4;
-            v2 = _mm_loadu_ps(pVect2);
-            pVect2 += 4;
-            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
-
-            v1 = _mm_loadu_ps(pVect1);
-            pVect1 += 4;
-            v2 = _mm_loadu_ps(pVect2);
-            pVect2 += 4;
-            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
+            //_mm_prefetch((char*)(pVect2 + 16), _MM_HINT_T0);
 
-            v1 = _mm_loadu_ps(pVect1);
-            pVect1 += 4;
-            v2 = _mm_loadu_ps(pVect2);
-            pVect2 += 4;
-            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
+            __m256 v1 = _mm256_loadu_ps(pVect1);
+            pVect1 += 8;
+            __m256 v2 = _mm256_loadu_ps(pVect2);
+            pVect2 += 8;
+            sum256 = _mm256_add_ps(sum256, _mm256_mul_ps(v1, v2));
 
-            v1 = _mm_loadu_ps(pVect1);
-            pVect1 += 4;
-            v2 = _mm_loadu_ps(pVect2);
-            pVect2 += 4;
-            sum_prod = _mm_add_ps(sum_prod, _mm_mul_ps(v1, v2));
+            v1 = _mm256_loadu_ps(pVect1);
+            pVect1 += 8;
+            v2 = _mm256_loadu_ps(pVect2);
+            pVect2 += 8;
+            sum256 = _mm256_add_ps(sum256, _mm256_mul_ps(v1, v2));
         }
-        _mm_store_ps(TmpRes, sum_prod);
-        float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
+
+        _mm256_store_ps(TmpRes, sum256);
+        float sum = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
 
         return 1.0f - sum;
     }
 
-#endif
-
-#if defined(USE_SSE) || defined(USE_AVX)
-    static float
-    InnerProductSIMD16ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+    TARGET_AVX512 static float
+    InnerProductSIMD16ExtAVX512(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        float *pVect1 = (float *) pVect1v;
+        float *pVect2 = (float *) pVect2v;
         size_t qty = *((size_t *) qty_ptr);
-        size_t qty16 = qty >> 4 << 4;
-        float res = InnerProductSIMD16Ext(pVect1v, pVect2v, &qty16);
-        float *pVect1 = (float *) pVect1v + qty16;
-        float *pVect2 = (float *) pVect2v + qty16;
 
-        size_t qty_left = qty - qty16;
-        float res_tail = InnerProduct(pVect1, pVect2, &qty_left);
-        return res + res_tail - 1.0f;
-    }
+        size_t qty16 = qty / 16;
 
-    static float
-    InnerProductSIMD4ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
-        size_t qty = *((size_t *) qty_ptr);
-        size_t qty4 = qty >> 2 << 2;
+        const float *pEnd1 = pVect1 + 16 * qty16;
 
-        float res = InnerProductSIMD4Ext(pVect1v, pVect2v, &qty4);
-        size_t qty_left = qty - qty4;
+        const float *pEnd32 = pVect1 + 32 * (qty / 32);
 
-        float *pVect1 = (float *) pVect1v + qty4;
-        float *pVect2 = (float *) pVect2v + qty4;
-        float res_tail = InnerProduct(pVect1, pVect2, &qty_left);
+        // two accumulators, so that consecutive FMAs do not wait for each other
+        __m512 sum512 = _mm512_set1_ps(0);
+        __m512 sum512_2 = _mm512_set1_ps(0);
 
-        return res + res_tail - 1.0f;
+        while (pVect1 < pEnd32) {
+            sum512 = _mm512_fmadd_ps(_mm512_loadu_ps(pVect1), _mm512_loadu_ps(pVect2), sum512);
+            sum512_2 = _mm512_fmadd_ps(_mm512_loadu_ps(pVect1 + 16), _mm512_loadu_ps(pVect2 + 16), sum512_2);
+            pVect1 += 32;
+            pVect2 += 32;
+        }
+
+        if (pVect1 < pEnd1)
+            sum512 = _mm512_fmadd_ps(_mm512_loadu_ps(pVect1), _mm512_loadu_ps(pVect2), sum512);
+
+        float sum = ReduceAddAVX512(_mm512_add_ps(sum512, sum512_2));
+
+        return 1.0f - sum;
     }
 #endif
 
@@ -249,15 +273,34 @@ namespace hnswlib {
     public:
         InnerProductSpace(size_t dim) {
             fstdistfunc_ = InnerProduct;
-    #if defined(USE_AVX) || defined(USE_SSE)
-            if (dim % 16 == 0)
-                fstdistfunc_ = InnerProductSIMD16Ext;
-            else if (dim % 4 == 0)
-                fstdistfunc_ = InnerProductSIMD4Ext;
-            else if (dim > 16)
-                fstdistfunc_ = InnerProductSIMD16ExtResiduals;
-            else if (dim > 4)
-                fstdistfunc_ = InnerProductSIMD4ExtResiduals;
+    #if defined(USE_SSE)
+            SimdLevel simd_level = GetSimdLevel();
+            if (simd_level >= SIMD_SSE) {
+                DISTFUNC<float> simd16 = InnerProductSIMD16ExtSSE;
+                DISTFUNC<float> simd4 = InnerProductSIMD4ExtSSE;
+                DISTFUNC<float> simd16_residuals = InnerProductSIMD16ExtResiduals<InnerProductSIMD16ExtSSE>;
+                DISTFUNC<float> simd4_residuals = InnerProductSIMD4ExtResiduals<InnerProductSIMD4ExtSSE>;
+        #if defined(USE_SIMD_DISPATCH)
+                if (simd_level >= SIMD_AVX) {
+                    simd16 = InnerProductSIMD16ExtAVX;
+                    simd4 = InnerProductSIMD4ExtAVX;
+                    simd16_residuals = InnerProductSIMD16ExtResiduals<InnerProductSIMD16ExtAVX>;
+                    simd4_residuals = InnerProductSIMD4ExtResiduals<InnerProductSIMD4ExtAVX>;
+                }
+                if (simd_level >= SIMD_AVX512) {
+                    simd16 = InnerProductSIMD16ExtAVX512;
+                    simd16_residuals = InnerProductSIMD16ExtResiduals<InnerProductSIMD16ExtAVX512>;
+                }
+        #endif
+                if (dim % 16 == 0)
+                    fstdistfunc_ = simd16;
+                else if (dim % 4 == 0)
+                    fstdistfunc_ = simd4;
+                else if (dim > 16)
+                    fstdistfunc_ = simd16_residuals;
+                else if (dim > 4)
+                    fstdistfunc_ = simd4_residuals;
+            }
     #endif
             dim_ = dim;
             data_size_ = dim * sizeof(float);
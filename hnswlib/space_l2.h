@@ -19,46 +19,10 @@ namespace hnswlib {
         return (res);
     }
 
-#if defined(USE_AVX)
+#if defined(USE_SSE)
 
-    // Favor using AVX if available.
     static float
-    L2SqrSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
-        float *pVect1 = (float *) pVect1v;
-        float *pVect2 = (float *) pVect2v;
-        size_t qty = *((size_t *) qty_ptr);
-        float PORTABLE_ALIGN32 TmpRes[8];
-        size_t qty16 = qty >> 4;
-
-        const float *pEnd1 = pVect1 + (qty16 << 4);
-
-        __m256 diff, v1, v2;
-        __m256 sum = _mm256_set1_ps(0);
-
-        while (pVect1 < pEnd1) {
-            v1 = _mm256_loadu_ps(pVect1);
-            pVect1 += 8;
-            v2 = _mm256_loadu_ps(pVect2);
-            pVect2 += 8;
-            diff = _mm256_sub_ps(v1, v2);
-            sum = _mm256_add_ps(sum, _mm256_mul_ps(diff, diff));
-
-            v1 = _mm256_loadu_ps(pVect1);
-            pVect1 += 8;
-            v2 = _mm256_loadu_ps(pVect2);
-            pVect2 += 8;
-            diff = _mm256_sub_ps(v1, v2);
-            sum = _mm256_add_ps(sum, _mm256_mul_ps(diff, diff));
-        }
-
-        _mm256_store_ps(TmpRes, sum);
-        return TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
-    }
-
-#elif defined(USE_SSE)
-
-    static float
-    L2SqrSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+    L2SqrSIMD16ExtSSE(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         float *pVect1 = (float *) pVect1v;
         float *pVect2 = (float *) pVect2v;
         size_t qty = *((size_t *) qty_ptr);
@@ -104,25 +68,7 @@ namespace hnswlib {
         _mm_store_ps(TmpRes, sum);
         return TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
     }
-#endif
 
-#if defined(USE_SSE) || defined(USE_AVX)
-    static float
-    L2SqrSIMD16ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
-        size_t qty = *((size_t *) qty_ptr);
-        size_t qty16 = qty >> 4 << 4;
-        float res = L2SqrSIMD16Ext(pVect1v, pVect2v, &qty16);
-        float *pVect1 = (float *) pVect1v + qty16;
-        float *pVect2 = (float *) pVect2v + qty16;
-
-        size_t qty_left = qty - qty16;
-        float res_tail = L2Sqr(pVect1, pVect2, &qty_left);
-        return (res + res_tail);
-    }
-#endif
-
-
-#ifdef USE_SSE
     static float
     L2SqrSIMD4Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         float PORTABLE_ALIGN32 TmpRes[8];
@@ -150,6 +96,20 @@ namespace hnswlib {
         return TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
     }
 
+    template<DISTFUNC<float> L2SqrSIMD16Ext>
+    static float
+    L2SqrSIMD16ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty16 = qty >> 4 << 4;
+        float res = L2SqrSIMD16Ext(pVect1v, pVect2v, &qty16);
+        float *pVect1 = (float *) pVect1v + qty16;
+        float *pVect2 = (float *) pVect2v + qty16;
+
+        size_t qty_left = qty - qty16;
+        float res_tail = L2Sqr(pVect1, pVect2, &qty_left);
+        return (res + res_tail);
+    }
+
     static float
     L2SqrSIMD4ExtResiduals(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
         size_t qty = *((size_t *) qty_ptr);
@@ -166,6 +126,82 @@ namespace hnswlib {
     }
 #endif
 
+#if defined(USE_SIMD_DISPATCH)
+
+    TARGET_AVX static float
+    L2SqrSIMD16ExtAVX(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        float *pVect1 = (float *) pVect1v;
+        float *pVect2 = (float *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        float PORTABLE_ALIGN32 TmpRes[8];
+        size_t qty16 = qty >> 4;
+
+        const float *pEnd1 = pVect1 + (qty16 << 4);
+
+        __m256 diff, v1, v2;
+        __m256 sum = _mm256_set1_ps(0);
+
+        while (pVect1 < pEnd1) {
+            v1 = _mm256_loadu_ps(pVect1);
+            pVect1 += 8;
+            v2 = _mm256_loadu_ps(pVect2);
+            pVect2 += 8;
+            diff = _mm256_sub_ps(v1, v2);
+            sum = _mm256_add_ps(sum, _mm256_mul_ps(diff, diff));
+
+            v1 = _mm256_loadu_ps(pVect1);
+            pVect1 += 8;
+            v2 = _mm256_loadu_ps(pVect2);
+            pVect2 += 8;
+            diff = _mm256_sub_ps(v1, v2);
+            sum = _mm256_add_ps(sum, _mm256_mul_ps(diff, diff));
+        }
+
+        _mm256_store_ps(TmpRes, sum);
+        return TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
+    }
+
+    TARGET_AVX512 static float
+    L2SqrSIMD16ExtAVX512(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        float *pVect1 = (float *) pVect1v;
+        float *pVect2 = (float *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty16 = qty >> 4;
+
+        const float *pEnd1 = pVect1 + (qty16 << 4);
+
+        const float *pEnd32 = pVect1 + (qty >> 5 << 5);
+
+        __m512 diff, v1, v2;
+        // two accumulators, so that consecutive FMAs do not wait for each other
+        __m512 sum = _mm512_set1_ps(0);
+        __m512 sum2 = _mm512_set1_ps(0);
+
+        while (pVect1 < pEnd32) {
+            v1 = _mm512_loadu_ps(pVect1);
+            v2 = _mm512_loadu_ps(pVect2);
+            diff = _mm512_sub_ps(v1, v2);
+            sum = _mm512_fmadd_ps(diff, diff, sum);
+
+            v1 = _mm512_loadu_ps(pVect1 + 16);
+            v2 = _mm512_loadu_ps(pVect2 + 16);
+            diff = _mm512_sub_ps(v1, v2);
+            sum2 = _mm512_fmadd_ps(diff, diff, sum2);
+            pVect1 += 32;
+            pVect2 += 32;
+        }
+
+        if (pVect1 < pEnd1) {
+            v1 = _mm512_loadu_ps(pVect1);
+            v2 = _mm512_loadu_ps(pVect2);
+            diff = _mm512_sub_ps(v1, v2);
+            sum = _mm512_fmadd_ps(diff, diff, sum);
+        }
+
+        return ReduceAddAVX512(_mm512_add_ps(sum, sum2));
+    }
+#endif
+
     class L2Space : public SpaceInterface<float> {
 
         DISTFUNC<float> fstdistfunc_;
@@ -174,15 +210,29 @@ namespace hnswlib {
     public:
         L2Space(size_t dim) {
             fstdistfunc_ = L2Sqr;
-        #if defined(USE_SSE) || defined(USE_AVX)
-            if (dim % 16 == 0)
-                fstdistfunc_ = L2SqrSIMD16Ext;
-            else if (dim % 4 == 0)
-                fstdistfunc_ = L2SqrSIMD4Ext;
-            else if (dim > 16)
-                fstdistfunc_ = L2SqrSIMD16ExtResiduals;
-            else if (dim > 4)
-                fstdistfunc_ = L2SqrSIMD4ExtResiduals;
+        #if defined(USE_SSE)
+            SimdLevel simd_level = GetSimdLevel();
+            if (simd_level >= SIMD_SSE) {
+                DISTFUNC<float> simd16 = L2SqrSIMD16ExtSSE;
+                DISTFUNC<float> simd16_residuals = L2SqrSIMD16ExtResiduals<L2SqrSIMD16ExtSSE>;
+            #if defined(USE_SIMD_DISPATCH)
+                if (simd_level >= SIMD_AVX512) {
+                    simd16 = L2SqrSIMD16ExtAVX512;
+                    simd16_residuals = L2SqrSIMD16ExtResiduals<L2SqrSIMD16ExtAVX512>;
+                } else if (simd_level >= SIMD_AVX) {
+                    simd16 = L2SqrSIMD16ExtAVX;
+                    simd16_residuals = L2SqrSIMD16ExtResiduals<L2SqrSIMD16ExtAVX>;
+                }
+            #endif
+                if (dim % 16 == 0)
+                    fstdistfunc_ = simd16;
+                else if (dim % 4 == 0)
+                    fstdistfunc_ = L2SqrSIMD4Ext;
+                else if (dim > 16)
+                    fstdistfunc_ = simd16_residuals;
+                else if (dim > 4)
+                    fstdistfunc_ = L2SqrSIMD4ExtResiduals;
+            }
         #endif
             dim_ = dim;
             data_size_ = dim * sizeof(float);
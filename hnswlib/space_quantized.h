@@ -0,0 +1,432 @@
+#pragma once
+#include "hnswlib.h"
+#include <algorithm>
+#include <cmath>
+#include <cstdint>
+
+namespace hnswlib {
+
+    /**
+     * Space whose vectors are stored in a compact (quantized) format. Inputs are given as
+     * floats and encoded before being inserted or queried, so the distance function always
+     * compares two encoded vectors.
+     */
+    class QuantizedSpace : public SpaceInterface<float> {
+    public:
+        virtual void encode(const float *from, void *to) const = 0;
+
+        virtual void decode(const void *from, float *to) const = 0;
+    };
+
+    /*
+     * Half precision (IEEE 754 binary16) conversions. float -> half rounds to the nearest
+     * even value; half -> float goes through a table with the 65536 possible values.
+     */
+    static uint16_t
+    FloatToHalf(float value) {
+        uint32_t bits;
+        memcpy(&bits, &value, sizeof(bits));
+        uint32_t sign = (bits >> 16) & 0x8000;
+        uint32_t exponent = (bits >> 23) & 0xff;
+        uint32_t mantissa = bits & 0x7fffff;
+
+        if (exponent == 0xff) {
+            // infinity or NaN (keeping NaNs quiet)
+            return (uint16_t) (sign | 0x7c00 | (mantissa ? 0x200 | (mantissa >> 13) : 0));
+        }
+        int half_exponent = (int) exponent - 127 + 15;
+        if (half_exponent >= 0x1f) {
+            return (uint16_t) (sign | 0x7c00);
+        }
+        if (half_exponent <= 0) {
+            if (half_exponent < -10) {
+                return (uint16_t) sign;
+            }
+            // subnormal half: shift the mantissa (with its implicit bit) into place
+            mantissa |= 0x800000;
+            uint32_t shift = (uint32_t) (14 - half_exponent);
+            uint32_t half_mantissa = mantissa >> shift;
+            uint32_t remainder = mantissa & ((1u << shift) - 1);
+            uint32_t halfway = 1u << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half_mantissa & 1))) {
+                half_mantissa++;
+            }
+            return (uint16_t) (sign | half_mantissa);
+        }
+        uint32_t half = sign | ((uint32_t) half_exponent << 10) | (mantissa >> 13);
+        uint32_t remainder = mantissa & 0x1fff;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1))) {
+            // may carry into the exponent, which is still the right rounding (up to infinity)
+            half++;
+        }
+        return (uint16_t) half;
+    }
+
+    static float
+    HalfToFloatSlow(uint16_t half) {
+        uint32_t sign = ((uint32_t) half & 0x8000) << 16;
+        uint32_t exponent = (half >> 10) & 0x1f;
+        uint32_t mantissa = half & 0x3ff;
+        uint32_t bits;
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                bits = sign;
+            } else {
+                // subnormal half: normalize it
+                exponent = 127 - 15 + 1;
+                while (!(mantissa & 0x400)) {
+                    mantissa <<= 1;
+                    exponent--;
+                }
+                mantissa &= 0x3ff;
+                bits = sign | (exponent << 23) | (mantissa << 13);
+            }
+        } else if (exponent == 0x1f) {
+            bits = sign | 0x7f800000 | (mantissa << 13);
+        } else {
+            bits = sign | ((exponent - 15 + 127) << 23) | (mantissa << 13);
+        }
+        float value;
+        memcpy(&value, &bits, sizeof(value));
+        return value;
+    }
+
+    static const float *
+    HalfToFloatTable() {
+        static const std::vector<float> table = [] {
+            std::vector<float> values(1 << 16);
+            for (size_t i = 0; i < values.size(); i++) {
+                values[i] = HalfToFloatSlow((uint16_t) i);
+            }
+            return values;
+        }();
+        return table.data();
+    }
+
+    static float
+    HalfL2Sqr(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const uint16_t *pVect1 = (const uint16_t *) pVect1v;
+        const uint16_t *pVect2 = (const uint16_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        const float *table = HalfToFloatTable();
+
+        float res = 0;
+        for (size_t i = 0; i < qty; i++) {
+            float t = table[pVect1[i]] - table[pVect2[i]];
+            res += t * t;
+        }
+        return res;
+    }
+
+    static float
+    HalfInnerProduct(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const uint16_t *pVect1 = (const uint16_t *) pVect1v;
+        const uint16_t *pVect2 = (const uint16_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        const float *table = HalfToFloatTable();
+
+        float res = 0;
+        for (size_t i = 0; i < qty; i++) {
+            res += table[pVect1[i]] * table[pVect2[i]];
+        }
+        return 1.0f - res;
+    }
+
+#if defined(USE_SIMD_DISPATCH)
+
+    // Hardware conversion (8 halves at a time) with F16C.
+    TARGET_AVX2 static float
+    HalfL2SqrSIMD8Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const uint16_t *pVect1 = (const uint16_t *) pVect1v;
+        const uint16_t *pVect2 = (const uint16_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty8 = qty >> 3 << 3;
+        float PORTABLE_ALIGN32 TmpRes[8];
+
+        __m256 sum = _mm256_set1_ps(0);
+        for (size_t i = 0; i < qty8; i += 8) {
+            __m256 v1 = _mm256_cvtph_ps(_mm_loadu_si128((const __m128i *) (pVect1 + i)));
+            __m256 v2 = _mm256_cvtph_ps(_mm_loadu_si128((const __m128i *) (pVect2 + i)));
+            __m256 diff = _mm256_sub_ps(v1, v2);
+            sum = _mm256_add_ps(sum, _mm256_mul_ps(diff, diff));
+        }
+        _mm256_store_ps(TmpRes, sum);
+        float res = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
+
+        size_t qty_left = qty - qty8;
+        return res + HalfL2Sqr(pVect1 + qty8, pVect2 + qty8, &qty_left);
+    }
+
+    TARGET_AVX2 static float
+    HalfInnerProductSIMD8Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const uint16_t *pVect1 = (const uint16_t *) pVect1v;
+        const uint16_t *pVect2 = (const uint16_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty8 = qty >> 3 << 3;
+        float PORTABLE_ALIGN32 TmpRes[8];
+
+        __m256 sum = _mm256_set1_ps(0);
+        for (size_t i = 0; i < qty8; i += 8) {
+            __m256 v1 = _mm256_cvtph_ps(_mm_loadu_si128((const __m128i *) (pVect1 + i)));
+            __m256 v2 = _mm256_cvtph_ps(_mm_loadu_si128((const __m128i *) (pVect2 + i)));
+            sum = _mm256_add_ps(sum, _mm256_mul_ps(v1, v2));
+        }
+        _mm256_store_ps(TmpRes, sum);
+        float res = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
+
+        size_t qty_left = qty - qty8;
+        // the tail returns 1 - its dot product
+        return HalfInnerProduct(pVect1 + qty8, pVect2 + qty8, &qty_left) - res;
+    }
+
+    // AVX-512 conversion (16 halves at a time).
+    TARGET_AVX512 static float
+    HalfL2SqrSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const uint16_t *pVect1 = (const uint16_t *) pVect1v;
+        const uint16_t *pVect2 = (const uint16_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty16 = qty >> 4 << 4;
+
+        __m512 sum = _mm512_set1_ps(0);
+        for (size_t i = 0; i < qty16; i += 16) {
+            __m512 v1 = _mm512_maskz_cvtph_ps((__mmask16) -1, _mm256_loadu_si256((const __m256i *) (pVect1 + i)));
+            __m512 v2 = _mm512_maskz_cvtph_ps((__mmask16) -1, _mm256_loadu_si256((const __m256i *) (pVect2 + i)));
+            __m512 diff = _mm512_sub_ps(v1, v2);
+            sum = _mm512_add_ps(sum, _mm512_mul_ps(diff, diff));
+        }
+        float res = ReduceAddAVX512(sum);
+
+        size_t qty_left = qty - qty16;
+        return res + HalfL2Sqr(pVect1 + qty16, pVect2 + qty16, &qty_left);
+    }
+
+    TARGET_AVX512 static float
+    HalfInnerProductSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const uint16_t *pVect1 = (const uint16_t *) pVect1v;
+        const uint16_t *pVect2 = (const uint16_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty16 = qty >> 4 << 4;
+
+        __m512 sum = _mm512_set1_ps(0);
+        for (size_t i = 0; i < qty16; i += 16) {
+            __m512 v1 = _mm512_maskz_cvtph_ps((__mmask16) -1, _mm256_loadu_si256((const __m256i *) (pVect1 + i)));
+            __m512 v2 = _mm512_maskz_cvtph_ps((__mmask16) -1, _mm256_loadu_si256((const __m256i *) (pVect2 + i)));
+            sum = _mm512_add_ps(sum, _mm512_mul_ps(v1, v2));
+        }
+        float res = ReduceAddAVX512(sum);
+
+        size_t qty_left = qty - qty16;
+        // the tail returns 1 - its dot product
+        return HalfInnerProduct(pVect1 + qty16, pVect2 + qty16, &qty_left) - res;
+    }
+#endif
+
+    /**
+     * Vectors stored as half precision floats (2 bytes per dimension). The distance is the
+     * squared euclidean distance (L2) or 1 - inner product (IP), as in the float spaces.
+     */
+    class HalfSpace : public QuantizedSpace {
+
+        DISTFUNC<float> fstdistfunc_;
+        size_t data_size_;
+        size_t dim_;
+    public:
+        HalfSpace(size_t dim, bool inner_product) {
+            fstdistfunc_ = inner_product ? HalfInnerProduct : HalfL2Sqr;
+        #if defined(USE_SIMD_DISPATCH)
+            SimdLevel simd_level = GetSimdLevel();
+            if (simd_level >= SIMD_AVX512 && dim >= 16)
+                fstdistfunc_ = inner_product ? HalfInnerProductSIMD16Ext : HalfL2SqrSIMD16Ext;
+            else if (simd_level >= SIMD_AVX2 && dim >= 8)
+                fstdistfunc_ = inner_product ? HalfInnerProductSIMD8Ext : HalfL2SqrSIMD8Ext;
+        #endif
+            HalfToFloatTable();
+            dim_ = dim;
+            data_size_ = dim * sizeof(uint16_t);
+        }
+
+        void encode(const float *from, void *to) const {
+            uint16_t *halves = (uint16_t *) to;
+            for (size_t i = 0; i < dim_; i++) {
+                halves[i] = FloatToHalf(from[i]);
+            }
+        }
+
+        void decode(const void *from, float *to) const {
+            const uint16_t *halves = (const uint16_t *) from;
+            const float *table = HalfToFloatTable();
+            for (size_t i = 0; i < dim_; i++) {
+                to[i] = table[halves[i]];
+            }
+        }
+
+        size_t get_data_size() {
+            return data_size_;
+        }
+
+        DISTFUNC<float> get_dist_func() {
+            return fstdistfunc_;
+        }
+
+        void *get_dist_func_param() {
+            return &dim_;
+        }
+
+        ~HalfSpace() {}
+    };
+
+    /*
+     * Signed 8-bit vectors of normalized inputs: every component is stored as
+     * round(x * 127 / max|x|), followed by the scale max|x| / 127 of the vector (a float),
+     * so the full 8-bit range is used whatever the dimension. The dot product of two
+     * vectors is accumulated in integers and scaled back by the product of their scales.
+     */
+    static const float INT8_RANGE = 127.0f;
+
+    static float
+    Int8Scale(const int8_t *pVect, size_t qty) {
+        float scale;
+        memcpy(&scale, pVect + qty, sizeof(scale));
+        return scale;
+    }
+
+    static int32_t
+    Int8Dot(const int8_t *pVect1, const int8_t *pVect2, size_t qty) {
+        int32_t res = 0;
+        for (size_t i = 0; i < qty; i++) {
+            res += (int32_t) pVect1[i] * (int32_t) pVect2[i];
+        }
+        return res;
+    }
+
+    static float
+    Int8InnerProduct(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const int8_t *pVect1 = (const int8_t *) pVect1v;
+        const int8_t *pVect2 = (const int8_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        int32_t dot = Int8Dot(pVect1, pVect2, qty);
+        return 1.0f - dot * Int8Scale(pVect1, qty) * Int8Scale(pVect2, qty);
+    }
+
+#if defined(USE_SIMD_DISPATCH)
+
+    // 32 components per iteration: sign extension to 16 bits and multiply-add into 32-bit lanes.
+    TARGET_AVX2 static float
+    Int8InnerProductSIMD32Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const int8_t *pVect1 = (const int8_t *) pVect1v;
+        const int8_t *pVect2 = (const int8_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty32 = qty >> 5 << 5;
+        int32_t PORTABLE_ALIGN32 TmpRes[8];
+
+        __m256i sum = _mm256_setzero_si256();
+        for (size_t i = 0; i < qty32; i += 32) {
+            __m256i a = _mm256_loadu_si256((const __m256i *) (pVect1 + i));
+            __m256i b = _mm256_loadu_si256((const __m256i *) (pVect2 + i));
+            __m256i a_lo = _mm256_cvtepi8_epi16(_mm256_castsi256_si128(a));
+            __m256i a_hi = _mm256_cvtepi8_epi16(_mm256_extracti128_si256(a, 1));
+            __m256i b_lo = _mm256_cvtepi8_epi16(_mm256_castsi256_si128(b));
+            __m256i b_hi = _mm256_cvtepi8_epi16(_mm256_extracti128_si256(b, 1));
+            sum = _mm256_add_epi32(sum, _mm256_madd_epi16(a_lo, b_lo));
+            sum = _mm256_add_epi32(sum, _mm256_madd_epi16(a_hi, b_hi));
+        }
+        _mm256_store_si256((__m256i *) TmpRes, sum);
+        int32_t dot = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3] + TmpRes[4] + TmpRes[5] + TmpRes[6] + TmpRes[7];
+        dot += Int8Dot(pVect1 + qty32, pVect2 + qty32, qty - qty32);
+        return 1.0f - dot * Int8Scale(pVect1, qty) * Int8Scale(pVect2, qty);
+    }
+#endif
+
+#if defined(USE_SSE)
+
+    // 16 components per iteration (SSE2): sign extension via unpacking with the sign mask.
+    static float
+    Int8InnerProductSIMD16Ext(const void *pVect1v, const void *pVect2v, const void *qty_ptr) {
+        const int8_t *pVect1 = (const int8_t *) pVect1v;
+        const int8_t *pVect2 = (const int8_t *) pVect2v;
+        size_t qty = *((size_t *) qty_ptr);
+        size_t qty16 = qty >> 4 << 4;
+        int32_t PORTABLE_ALIGN32 TmpRes[4];
+
+        const __m128i zero = _mm_setzero_si128();
+        __m128i sum = _mm_setzero_si128();
+        for (size_t i = 0; i < qty16; i += 16) {
+            __m128i a = _mm_loadu_si128((const __m128i *) (pVect1 + i));
+            __m128i b = _mm_loadu_si128((const __m128i *) (pVect2 + i));
+            __m128i a_sign = _mm_cmpgt_epi8(zero, a);
+            __m128i b_sign = _mm_cmpgt_epi8(zero, b);
+            sum = _mm_add_epi32(sum, _mm_madd_epi16(_mm_unpacklo_epi8(a, a_sign), _mm_unpacklo_epi8(b, b_sign)));
+            sum = _mm_add_epi32(sum, _mm_madd_epi16(_mm_unpackhi_epi8(a, a_sign), _mm_unpackhi_epi8(b, b_sign)));
+        }
+        _mm_store_si128((__m128i *) TmpRes, sum);
+        int32_t dot = TmpRes[0] + TmpRes[1] + TmpRes[2] + TmpRes[3];
+        dot += Int8Dot(pVect1 + qty16, pVect2 + qty16, qty - qty16);
+        return 1.0f - dot * Int8Scale(pVect1, qty) * Int8Scale(pVect2, qty);
+    }
+#endif
+
+    /**
+     * Normalized vectors stored as signed bytes (1 byte per dimension, plus the scale of
+     * the vector) compared with 1 - inner product, i.e., the cosine distance.
+     */
+    class Int8CosineSpace : public QuantizedSpace {
+
+        DISTFUNC<float> fstdistfunc_;
+        size_t data_size_;
+        size_t dim_;
+    public:
+        Int8CosineSpace(size_t dim) {
+            fstdistfunc_ = Int8InnerProduct;
+        #if defined(USE_SSE)
+            SimdLevel simd_level = GetSimdLevel();
+            if (simd_level >= SIMD_SSE && dim >= 16)
+                fstdistfunc_ = Int8InnerProductSIMD16Ext;
+        #endif
+        #if defined(USE_SIMD_DISPATCH)
+            if (simd_level >= SIMD_AVX2 && dim >= 32)
+                fstdistfunc_ = Int8InnerProductSIMD32Ext;
+        #endif
+            dim_ = dim;
+            data_size_ = dim * sizeof(int8_t) + sizeof(float);
+        }
+
+        void encode(const float *from, void *to) const {
+            int8_t *bytes = (int8_t *) to;
+            float max_abs = 0.0f;
+            for (size_t i = 0; i < dim_; i++) {
+                max_abs = std::max(max_abs, std::fabs(from[i]));
+            }
+            // a zero vector keeps a zero scale (all its distances are 1)
+            float factor = max_abs > 0.0f ? INT8_RANGE / max_abs : 0.0f;
+            for (size_t i = 0; i < dim_; i++) {
+                float value = std::max(-INT8_RANGE, std::min(INT8_RANGE, from[i] * factor));
+                bytes[i] = (int8_t) std::lround(value);
+            }
+            float scale = max_abs / INT8_RANGE;
+            memcpy(bytes + dim_, &scale, sizeof(scale));
+        }
+
+        void decode(const void *from, float *to) const {
+            const int8_t *bytes = (const int8_t *) from;
+            float scale = Int8Scale(bytes, dim_);
+            for (size_t i = 0; i < dim_; i++) {
+                to[i] = bytes[i] * scale;
+            }
+        }
+
+        size_t get_data_size() {
+            return data_size_;
+        }
+
+        DISTFUNC<float> get_dist_func() {
+            return fstdistfunc_;
+        }
+
+        void *get_dist_func_param() {
+            return &dim_;
+        }
+
+        ~Int8CosineSpace() {}
+    };
+
+}
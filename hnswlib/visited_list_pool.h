@@ -1,11 +1,45 @@
 #pragma once
 
+#include <atomic>
+#include <deque>
 #include <mutex>
 #include <string.h>
 
 namespace hnswlib {
     typedef unsigned short int vl_type;
 
+    /**
+     * Counts the bytes allocated by an index, and by all the indexes of the process.
+     * Whatever is still counted when the tracker is destroyed is removed from the total.
+     */
+    class MemoryTracker {
+        std::atomic<size_t> bytes_{0};
+
+    public:
+        static std::atomic<size_t> &total() {
+            static std::atomic<size_t> total_bytes{0};
+            return total_bytes;
+        }
+
+        void add(size_t bytes) {
+            bytes_ += bytes;
+            total() += bytes;
+        }
+
+        void remove(size_t bytes) {
+            bytes_ -= bytes;
+            total() -= bytes;
+        }
+
+        size_t get() const {
+            return bytes_;
+        }
+
+        ~MemoryTracker() {
+            total() -= bytes_;
+        }
+    };
+
     class VisitedList {
     public:
         vl_type curV;
@@ -38,12 +72,20 @@ namespace hnswlib {
         std::deque<VisitedList *> pool;
         std::mutex poolguard;
         int numelements;
+        MemoryTracker *memory_tracker;
+
+        VisitedList *newVisitedList() {
+            if (memory_tracker)
+                memory_tracker->add(sizeof(VisitedList) + sizeof(vl_type) * numelements);
+            return new VisitedList(numelements);
+        }
 
     public:
-        VisitedListPool(int initmaxpools, int numelements1) {
+        VisitedListPool(int initmaxpools, int numelements1, MemoryTracker *memory_tracker = nullptr) :
+                memory_tracker(memory_tracker) {
             numelements = numelements1;
             for (int i = 0; i < initmaxpools; i++)
-                pool.push_front(new VisitedList(numelements));
+                pool.push_front(newVisitedList());
         }
 
         VisitedList *getFreeVisitedList() {
@@ -54,7 +96,7 @@ namespace hnswlib {
                     rez = pool.front();
                     pool.pop_front();
                 } else {
-                    rez = new VisitedList(numelements);
+                    rez = newVisitedList();
                 }
             }
             rez->reset();
@@ -71,6 +113,8 @@ namespace hnswlib {
                 VisitedList *rez = pool.front();
                 pool.pop_front();
                 delete rez;
+                if (memory_tracker)
+                    memory_tracker->remove(sizeof(VisitedList) + sizeof(vl_type) * numelements);
             }
         };
     };